@@ -26,6 +26,11 @@ import java.util.Date;
  */
 public class File {
 
+    public static final class EXTRACTION_STATUS {
+        // The parser did not extract the document before the deadline, so we only have part of its content
+        public static final String TIMEOUT = "timeout";
+    }
+
     private String extension;
     private String contentType;
     private Date created;
@@ -37,6 +42,7 @@ public class File {
     private String url;
     private Integer indexedChars;
     private String checksum;
+    private String extractionStatus;
 
     public String getExtension() {
         return extension;
@@ -125,4 +131,12 @@ public class File {
     public String getChecksum() {
         return checksum;
     }
+
+    public String getExtractionStatus() {
+        return extractionStatus;
+    }
+
+    public void setExtractionStatus(String extractionStatus) {
+        this.extractionStatus = extractionStatus;
+    }
 }
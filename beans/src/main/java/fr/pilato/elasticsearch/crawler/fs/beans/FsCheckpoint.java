@@ -0,0 +1,134 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Where a crawl run is in the directory tree. It is stored next to the job status file (_checkpoint.json)
+ * while a run is in progress, so an interrupted run can resume from where it stopped instead of
+ * walking the whole tree again.
+ * This class is thread safe.
+ */
+public class FsCheckpoint {
+
+    // The date the interrupted run started
+    private LocalDateTime scanDate;
+    // Directories which have been fully crawled, including all their subdirectories.
+    // When a directory is completed, its subdirectories are removed from this set.
+    private Set<String> completed = ConcurrentHashMap.newKeySet();
+    // Directories whose files have been crawled but whose subdirectories have not all been completed yet
+    private Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public FsCheckpoint() {
+    }
+
+    public FsCheckpoint(LocalDateTime scanDate) {
+        this.scanDate = scanDate;
+    }
+
+    public LocalDateTime getScanDate() {
+        return scanDate;
+    }
+
+    public void setScanDate(LocalDateTime scanDate) {
+        this.scanDate = scanDate;
+    }
+
+    public Set<String> getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(Set<String> completed) {
+        this.completed = ConcurrentHashMap.newKeySet();
+        this.completed.addAll(completed);
+    }
+
+    public Set<String> getPending() {
+        return pending;
+    }
+
+    public void setPending(Set<String> pending) {
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.pending.addAll(pending);
+    }
+
+    /**
+     * @param dir the directory path
+     * @return true if the directory and all its subdirectories have been crawled
+     */
+    public boolean isCompleted(String dir) {
+        return completed.contains(dir);
+    }
+
+    /**
+     * @param dir the directory path
+     * @return true if the files of the directory have been crawled
+     */
+    public boolean isPending(String dir) {
+        return pending.contains(dir);
+    }
+
+    /**
+     * Record that the files of a directory have been crawled
+     * @param dir the directory path
+     */
+    public void addPending(String dir) {
+        pending.add(dir);
+    }
+
+    /**
+     * Record that a directory and all its subdirectories have been crawled
+     * @param dir       the directory path
+     * @param subdirs   the full paths of its subdirectories which are not needed anymore
+     */
+    public void complete(String dir, Collection<String> subdirs) {
+        completed.add(dir);
+        pending.remove(dir);
+        completed.removeAll(subdirs);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FsCheckpoint that = (FsCheckpoint) o;
+        return Objects.equals(scanDate, that.scanDate) &&
+                Objects.equals(completed, that.completed) &&
+                Objects.equals(pending, that.pending);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(scanDate, completed, pending);
+    }
+
+    @Override
+    public String toString() {
+        return "FsCheckpoint{" + "scanDate=" + scanDate +
+                ", completed=" + completed.size() +
+                ", pending=" + pending.size() +
+                '}';
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.MetaFileHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.mapper;
+
+/**
+ * Provides utility methods to read and write job checkpoint files (_checkpoint.json)
+ */
+public class FsCheckpointFileHandler extends MetaFileHandler {
+
+    public static final String FILENAME = "_checkpoint.json";
+
+    public FsCheckpointFileHandler(Path root) {
+        super(root);
+    }
+
+    /**
+     * We read the checkpoint in ~/.fscrawler/{job_name}/_checkpoint.json
+     * @param jobname is the job_name
+     * @return the checkpoint
+     * @throws IOException in case of error while reading
+     */
+    public FsCheckpoint read(String jobname) throws IOException {
+        return mapper.readValue(readFile(jobname, FILENAME), FsCheckpoint.class);
+    }
+
+    /**
+     * We write the checkpoint to ~/.fscrawler/{job_name}/_checkpoint.json.
+     * The previous checkpoint is only replaced once the new one has been fully written.
+     * @param jobname is the job_name
+     * @param checkpoint the checkpoint to write
+     * @throws IOException in case of error while writing
+     */
+    public void write(String jobname, FsCheckpoint checkpoint) throws IOException {
+        writeFileAtomically(jobname, FILENAME, mapper.writeValueAsString(checkpoint));
+    }
+
+    /**
+     * We clean the existing checkpoint in ~/.fscrawler/{job_name}/_checkpoint.json
+     * @param jobname is the job_name
+     * @throws IOException in case of error while removing
+     */
+    public void clean(String jobname) throws IOException {
+        removeFile(jobname, FILENAME);
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The files and folders we have sent to the index, per directory.
+ * It is stored next to the job status file (_inventory.json), so we don't need to ask
+ * Elasticsearch what we have indexed in a directory to detect changes and removed files.
+ * This class is thread safe.
+ */
+public class FsInventory {
+
+    private Map<String, Directory> directories = new ConcurrentHashMap<>();
+
+    public Map<String, Directory> getDirectories() {
+        return directories;
+    }
+
+    public void setDirectories(Map<String, Directory> directories) {
+        this.directories = new ConcurrentHashMap<>(directories);
+    }
+
+    /**
+     * Get what we know about a directory
+     * @param path      the directory path
+     * @param loader    used to build the directory if we don't know it yet
+     * @return the directory
+     */
+    public Directory getDirectory(String path, Function<String, Directory> loader) {
+        return directories.computeIfAbsent(path, loader);
+    }
+
+    /**
+     * @param path the directory path
+     * @return what we know about a directory or null if we never saw it
+     */
+    public Directory getDirectory(String path) {
+        return directories.get(path);
+    }
+
+    /**
+     * Record a file
+     * @param dir       the directory of the file
+     * @param filename  the file name
+     * @param file      the file details
+     */
+    public void addFile(String dir, String filename, FileEntry file) {
+        directories.computeIfAbsent(dir, d -> new Directory()).getFiles().put(filename, file);
+    }
+
+    /**
+     * Forget about a file
+     * @param dir       the directory of the file
+     * @param filename  the file name
+     */
+    public void removeFile(String dir, String filename) {
+        Directory directory = directories.get(dir);
+        if (directory != null) {
+            directory.getFiles().remove(filename);
+        }
+    }
+
+    /**
+     * Record a folder
+     * @param dir       the parent directory
+     * @param folder    the full path of the folder
+     */
+    public void addFolder(String dir, String folder) {
+        directories.computeIfAbsent(dir, d -> new Directory()).getFolders().add(folder);
+    }
+
+    /**
+     * Forget about a directory, its files and all its subdirectories
+     * @param dir       the parent directory
+     * @param folder    the full path of the folder to remove
+     */
+    public void removeFolder(String dir, String folder) {
+        Directory parent = directories.get(dir);
+        if (parent != null) {
+            parent.getFolders().remove(folder);
+        }
+        removeTree(folder);
+    }
+
+    private void removeTree(String folder) {
+        Directory directory = directories.remove(folder);
+        if (directory != null) {
+            for (String subfolder : directory.getFolders()) {
+                removeTree(subfolder);
+            }
+        }
+    }
+
+    /**
+     * @return the number of files we know about
+     */
+    public long countFiles() {
+        return directories.values().stream().mapToLong(directory -> directory.getFiles().size()).sum();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FsInventory that = (FsInventory) o;
+        return Objects.equals(directories, that.directories);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(directories);
+    }
+
+    @Override
+    public String toString() {
+        return "FsInventory{" + "directories=" + directories.size() +
+                ", files=" + countFiles() +
+                '}';
+    }
+
+    /**
+     * The content of a directory
+     */
+    public static class Directory {
+        // Indexed files by name
+        private Map<String, FileEntry> files = new ConcurrentHashMap<>();
+        // Full paths of the crawled subfolders
+        private Set<String> folders = ConcurrentHashMap.newKeySet();
+        // The state of the directory when we listed it, used to skip the unchanged directories
+        private long lastModified = FileEntry.UNKNOWN;
+        private long links = FileEntry.UNKNOWN;
+
+        public Map<String, FileEntry> getFiles() {
+            return files;
+        }
+
+        public void setFiles(Map<String, FileEntry> files) {
+            this.files = new ConcurrentHashMap<>(files);
+        }
+
+        public Set<String> getFolders() {
+            return folders;
+        }
+
+        public void setFolders(Set<String> folders) {
+            this.folders = ConcurrentHashMap.newKeySet();
+            this.folders.addAll(folders);
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public long getLinks() {
+            return links;
+        }
+
+        public void setLinks(long links) {
+            this.links = links;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Directory directory = (Directory) o;
+            return lastModified == directory.lastModified &&
+                    links == directory.links &&
+                    Objects.equals(files, directory.files) &&
+                    Objects.equals(folders, directory.folders);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(files, folders, lastModified, links);
+        }
+    }
+
+    /**
+     * What we know about an indexed file
+     */
+    public static class FileEntry {
+        // The size and the modification date are unknown when the entry has been rebuilt from the index
+        public static final long UNKNOWN = -1;
+
+        private long size = UNKNOWN;
+        private long lastModified = UNKNOWN;
+        private String checksum;
+
+        public FileEntry() {
+
+        }
+
+        public FileEntry(long size, long lastModified, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public void setChecksum(String checksum) {
+            this.checksum = checksum;
+        }
+
+        /**
+         * @return true if we know the size and the date of the file
+         */
+        public boolean hasMetadata() {
+            return size != UNKNOWN && lastModified != UNKNOWN;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FileEntry fileEntry = (FileEntry) o;
+            return size == fileEntry.size &&
+                    lastModified == fileEntry.lastModified &&
+                    Objects.equals(checksum, fileEntry.checksum);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, checksum);
+        }
+
+        @Override
+        public String toString() {
+            return "FileEntry{" + "size=" + size +
+                    ", lastModified=" + lastModified +
+                    ", checksum='" + checksum + '\'' +
+                    '}';
+        }
+    }
+}
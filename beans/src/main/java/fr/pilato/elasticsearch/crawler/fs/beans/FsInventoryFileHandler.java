@@ -0,0 +1,73 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.MetaFileHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.mapper;
+
+/**
+ * Provides utility methods to read and write job inventory files (_inventory.json)
+ */
+public class FsInventoryFileHandler extends MetaFileHandler {
+
+    public static final String FILENAME = "_inventory.json";
+
+    public FsInventoryFileHandler(Path root) {
+        super(root);
+    }
+
+    /**
+     * We read the inventory in ~/.fscrawler/{job_name}/_inventory.json
+     * @param jobname is the job_name
+     * @return the inventory
+     * @throws IOException in case of error while reading
+     */
+    public FsInventory read(String jobname) throws IOException {
+        // The inventory can be too big to be read as a String
+        try (InputStream in = openFile(jobname, FILENAME)) {
+            return mapper.readValue(in, FsInventory.class);
+        }
+    }
+
+    /**
+     * We write the inventory to ~/.fscrawler/{job_name}/_inventory.json.
+     * The previous inventory is only replaced once the new one has been fully written.
+     * @param jobname is the job_name
+     * @param inventory the inventory to write
+     * @throws IOException in case of error while writing
+     */
+    public void write(String jobname, FsInventory inventory) throws IOException {
+        writeFileAtomically(jobname, FILENAME, out -> mapper.writeValue(out, inventory));
+    }
+
+    /**
+     * We clean the existing inventory in ~/.fscrawler/{job_name}/_inventory.json
+     * @param jobname is the job_name
+     * @throws IOException in case of error while removing
+     */
+    public void clean(String jobname) throws IOException {
+        removeFile(jobname, FILENAME);
+    }
+}
@@ -20,6 +20,7 @@
 package fr.pilato.elasticsearch.crawler.fs.beans;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -31,12 +32,23 @@ public class FsJob {
     private LocalDateTime lastrun;
     private long indexed;
     private long deleted;
+    // Documents indexed with only part of their content because the extraction timed out
+    private long timedOut;
+    // When the crawl is sharded, the node which ran the job and the shards it crawled
+    private String node;
+    private List<Integer> shards;
+    // When the changes are computed by the server, the last run which walked the whole tree
+    private LocalDateTime lastFullScan;
 
     public static class Builder {
         private String name;
         private LocalDateTime lastrun;
         private long indexed = 0;
         private long deleted = 0;
+        private long timedOut = 0;
+        private String node;
+        private List<Integer> shards;
+        private LocalDateTime lastFullScan;
 
         public Builder setName(String name) {
             this.name = name;
@@ -58,8 +70,33 @@ public class FsJob {
             return this;
         }
 
+        public Builder setTimedOut(long timedOut) {
+            this.timedOut = timedOut;
+            return this;
+        }
+
+        public Builder setNode(String node) {
+            this.node = node;
+            return this;
+        }
+
+        public Builder setShards(List<Integer> shards) {
+            this.shards = shards;
+            return this;
+        }
+
+        public Builder setLastFullScan(LocalDateTime lastFullScan) {
+            this.lastFullScan = lastFullScan;
+            return this;
+        }
+
         public FsJob build() {
-            return new FsJob(name, lastrun, indexed, deleted);
+            FsJob fsJob = new FsJob(name, lastrun, indexed, deleted);
+            fsJob.setTimedOut(timedOut);
+            fsJob.setNode(node);
+            fsJob.setShards(shards);
+            fsJob.setLastFullScan(lastFullScan);
+            return fsJob;
         }
     }
 
@@ -110,6 +147,38 @@ public class FsJob {
         this.deleted = deleted;
     }
 
+    public long getTimedOut() {
+        return timedOut;
+    }
+
+    public void setTimedOut(long timedOut) {
+        this.timedOut = timedOut;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public List<Integer> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<Integer> shards) {
+        this.shards = shards;
+    }
+
+    public LocalDateTime getLastFullScan() {
+        return lastFullScan;
+    }
+
+    public void setLastFullScan(LocalDateTime lastFullScan) {
+        this.lastFullScan = lastFullScan;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -119,7 +188,11 @@ public class FsJob {
 
         if (indexed != fsJob.indexed) return false;
         if (deleted != fsJob.deleted) return false;
+        if (timedOut != fsJob.timedOut) return false;
         if (!Objects.equals(name, fsJob.name)) return false;
+        if (!Objects.equals(node, fsJob.node)) return false;
+        if (!Objects.equals(shards, fsJob.shards)) return false;
+        if (!Objects.equals(lastFullScan, fsJob.lastFullScan)) return false;
         return Objects.equals(lastrun, fsJob.lastrun);
 
     }
@@ -130,6 +203,10 @@ public class FsJob {
         result = 31 * result + (lastrun != null ? lastrun.hashCode() : 0);
         result = 31 * result + (int) (indexed ^ (indexed >>> 32));
         result = 31 * result + (int) (deleted ^ (deleted >>> 32));
+        result = 31 * result + (int) (timedOut ^ (timedOut >>> 32));
+        result = 31 * result + (node != null ? node.hashCode() : 0);
+        result = 31 * result + (shards != null ? shards.hashCode() : 0);
+        result = 31 * result + (lastFullScan != null ? lastFullScan.hashCode() : 0);
         return result;
     }
 }
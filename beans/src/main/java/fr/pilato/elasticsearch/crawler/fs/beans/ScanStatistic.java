@@ -20,13 +20,14 @@
 package fr.pilato.elasticsearch.crawler.fs.beans;
 
 /**
- * Provide Scan Statistics
+ * Provide Scan Statistics. Counters can be updated from multiple crawler threads.
  *
  * @author David Pilato (aka dadoonet)
  */
 public class ScanStatistic {
     private int nbDocScan;
     private int nbDocDeleted;
+    private int nbDocTimedOut;
     private String rootPath;
     private String rootPathId;
 
@@ -45,31 +46,46 @@ public class ScanStatistic {
     /**
      * @return the nbDocScan
      */
-    public int getNbDocScan() {
+    public synchronized int getNbDocScan() {
         return nbDocScan;
     }
 
     /**
      * @param nbDocScan the nbDocScan to set
      */
-    public void setNbDocScan(int nbDocScan) {
+    public synchronized void setNbDocScan(int nbDocScan) {
         this.nbDocScan = nbDocScan;
     }
 
     /**
      * @return the nbDocDeleted
      */
-    public int getNbDocDeleted() {
+    public synchronized int getNbDocDeleted() {
         return nbDocDeleted;
     }
 
     /**
      * @param nbDocDeleted the nbDocDeleted to set
      */
-    public void setNbDocDeleted(int nbDocDeleted) {
+    public synchronized void setNbDocDeleted(int nbDocDeleted) {
         this.nbDocDeleted = nbDocDeleted;
     }
 
+    /**
+     * @return the number of documents we indexed with only part of their content
+     * because the extraction did not end before the deadline
+     */
+    public synchronized int getNbDocTimedOut() {
+        return nbDocTimedOut;
+    }
+
+    /**
+     * @param nbDocTimedOut the nbDocTimedOut to set
+     */
+    public synchronized void setNbDocTimedOut(int nbDocTimedOut) {
+        this.nbDocTimedOut = nbDocTimedOut;
+    }
+
     /**
      * @return the rootPath
      */
@@ -101,15 +117,22 @@ public class ScanStatistic {
     /**
      * Increment statistic for new files
      */
-    public void addFile() {
+    public synchronized void addFile() {
         this.nbDocScan++;
     }
 
     /**
      * Increment statistic for deleted files
      */
-    public void removeFile() {
+    public synchronized void removeFile() {
         this.nbDocDeleted++;
     }
 
+    /**
+     * Increment statistic for files which extraction timed out
+     */
+    public synchronized void timeoutFile() {
+        this.nbDocTimedOut++;
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class FsCheckpointTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        Path config = rootTmpDir.resolve(getCurrentTestName());
+        String jobName = "job";
+        Files.createDirectories(config.resolve(jobName));
+        FsCheckpointFileHandler handler = new FsCheckpointFileHandler(config);
+
+        FsCheckpoint checkpoint = new FsCheckpoint(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+        checkpoint.addPending("/tmp/docs");
+        checkpoint.addPending("/tmp/docs/a");
+        checkpoint.complete("/tmp/docs/a", List.of());
+        checkpoint.addPending("/tmp/docs/b");
+
+        handler.write(jobName, checkpoint);
+        assertThat(Files.exists(config.resolve(jobName).resolve(FsCheckpointFileHandler.FILENAME)), is(true));
+        // No temporary file should be left
+        assertThat(Files.exists(config.resolve(jobName).resolve(FsCheckpointFileHandler.FILENAME + ".tmp")), is(false));
+
+        FsCheckpoint read = handler.read(jobName);
+        assertThat(read, is(checkpoint));
+        assertThat(read.getScanDate(), is(LocalDateTime.of(2024, 1, 2, 3, 4, 5)));
+        assertThat(read.isCompleted("/tmp/docs/a"), is(true));
+        assertThat(read.isPending("/tmp/docs/b"), is(true));
+
+        handler.clean(jobName);
+        try {
+            handler.read(jobName);
+            fail("We should have removed the checkpoint");
+        } catch (NoSuchFileException ignored) {
+            // This is expected
+        }
+    }
+
+    @Test
+    public void testComplete() {
+        FsCheckpoint checkpoint = new FsCheckpoint(LocalDateTime.now());
+        checkpoint.addPending("/docs");
+        checkpoint.addPending("/docs/a");
+        checkpoint.addPending("/docs/a/b");
+        assertThat(checkpoint.isPending("/docs/a/b"), is(true));
+        assertThat(checkpoint.isCompleted("/docs/a/b"), is(false));
+
+        checkpoint.complete("/docs/a/b", List.of());
+        assertThat(checkpoint.isPending("/docs/a/b"), is(false));
+        assertThat(checkpoint.isCompleted("/docs/a/b"), is(true));
+
+        // Completing a directory only keeps the directory itself
+        checkpoint.complete("/docs/a", List.of("/docs/a/b"));
+        assertThat(checkpoint.getCompleted(), contains("/docs/a"));
+        assertThat(checkpoint.getPending(), contains("/docs"));
+
+        checkpoint.complete("/docs", List.of("/docs/a"));
+        assertThat(checkpoint.getCompleted(), contains("/docs"));
+        assertThat(checkpoint.getPending(), empty());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class FsInventoryTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        Path config = rootTmpDir.resolve(getCurrentTestName());
+        String jobName = "job";
+        Files.createDirectories(config.resolve(jobName));
+        FsInventoryFileHandler handler = new FsInventoryFileHandler(config);
+
+        FsInventory inventory = new FsInventory();
+        inventory.addFile("/tmp/docs", "foo.txt", new FsInventory.FileEntry(10, 1600000000000L, "abcd"));
+        inventory.addFile("/tmp/docs/sub", "bar.txt", new FsInventory.FileEntry(20, 1600000001000L, null));
+        inventory.addFile("/tmp/docs/sub", "baz.txt", new FsInventory.FileEntry());
+        inventory.addFolder("/tmp/docs", "/tmp/docs/sub");
+
+        handler.write(jobName, inventory);
+        assertThat(Files.exists(config.resolve(jobName).resolve(FsInventoryFileHandler.FILENAME)), is(true));
+        // No temporary file should be left
+        assertThat(Files.exists(config.resolve(jobName).resolve(FsInventoryFileHandler.FILENAME + ".tmp")), is(false));
+
+        FsInventory read = handler.read(jobName);
+        assertThat(read, is(inventory));
+        assertThat(read.countFiles(), is(3L));
+        assertThat(read.getDirectory("/tmp/docs/sub").getFiles().get("baz.txt").hasMetadata(), is(false));
+        assertThat(read.getDirectory("/tmp/docs").getFiles().get("foo.txt").hasMetadata(), is(true));
+
+        // Writing again replaces the existing inventory
+        read.removeFile("/tmp/docs", "foo.txt");
+        handler.write(jobName, read);
+        assertThat(handler.read(jobName).countFiles(), is(2L));
+
+        handler.clean(jobName);
+        try {
+            handler.read(jobName);
+            fail("We should have removed the inventory");
+        } catch (NoSuchFileException ignored) {
+            // This is expected
+        }
+    }
+
+    @Test
+    public void testRemoveFolder() {
+        FsInventory inventory = new FsInventory();
+        inventory.addFile("/docs", "foo.txt", new FsInventory.FileEntry());
+        inventory.addFolder("/docs", "/docs/a");
+        inventory.addFile("/docs/a", "bar.txt", new FsInventory.FileEntry());
+        inventory.addFolder("/docs/a", "/docs/a/b");
+        inventory.addFile("/docs/a/b", "baz.txt", new FsInventory.FileEntry());
+        inventory.addFolder("/docs", "/docs/c");
+        inventory.addFile("/docs/c", "qux.txt", new FsInventory.FileEntry());
+
+        inventory.removeFolder("/docs", "/docs/a");
+
+        assertThat(inventory.getDirectory("/docs").getFolders(), contains("/docs/c"));
+        assertThat(inventory.getDirectory("/docs/a"), nullValue());
+        assertThat(inventory.getDirectory("/docs/a/b"), nullValue());
+        assertThat(inventory.getDirectory("/docs/c").getFiles().keySet(), contains("qux.txt"));
+        assertThat(inventory.countFiles(), is(2L));
+    }
+
+    @Test
+    public void testLoadDirectoryOnce() {
+        FsInventory inventory = new FsInventory();
+        FsInventory.Directory loaded = new FsInventory.Directory();
+        loaded.getFiles().put("foo.txt", new FsInventory.FileEntry());
+        assertThat(inventory.getDirectory("/docs", path -> loaded), sameInstance(loaded));
+        assertThat(inventory.getDirectory("/docs", path -> new FsInventory.Directory()), sameInstance(loaded));
+    }
+}
@@ -24,6 +24,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.prettyMapper;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -54,6 +55,34 @@ public class FsJobParserTest extends AbstractFSCrawlerTestCase {
                         .setLastrun(LocalDateTime.now())
                         .setIndexed(1000)
                         .setDeleted(5)
+                        .setTimedOut(2)
+                        .build()
+        );
+    }
+
+    @Test
+    public void testParseShardedJob() throws IOException {
+        jobTester(
+                FsJob.builder()
+                        .setName(getCurrentTestName())
+                        .setLastrun(LocalDateTime.now())
+                        .setIndexed(1000)
+                        .setDeleted(5)
+                        .setNode("node-1")
+                        .setShards(Arrays.asList(1, 4, 7))
+                        .build()
+        );
+    }
+
+    @Test
+    public void testParseIncrementalJob() throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        jobTester(
+                FsJob.builder()
+                        .setName(getCurrentTestName())
+                        .setLastrun(now)
+                        .setIndexed(10)
+                        .setLastFullScan(now.minusDays(1))
                         .build()
         );
     }
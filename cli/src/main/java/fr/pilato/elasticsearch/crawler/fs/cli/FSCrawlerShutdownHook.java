@@ -17,7 +17,6 @@ package fr.pilato.elasticsearch.crawler.fs.cli;/*
  * under the License.
  */
 
-import fr.pilato.elasticsearch.crawler.fs.FsCrawlerImpl;
 import fr.pilato.elasticsearch.crawler.fs.rest.RestServer;
 
 import java.io.IOException;
@@ -27,9 +26,10 @@ import java.io.IOException;
  */
 class FSCrawlerShutdownHook extends Thread implements Runnable {
 
-    private final FsCrawlerImpl fsCrawler;
+    // The crawler of a single job or the daemon running many jobs
+    private final AutoCloseable fsCrawler;
 
-    FSCrawlerShutdownHook(FsCrawlerImpl fsCrawler) {
+    FSCrawlerShutdownHook(AutoCloseable fsCrawler) {
         this.fsCrawler = fsCrawler;
     }
 
@@ -41,6 +41,8 @@ class FSCrawlerShutdownHook extends Thread implements Runnable {
             RestServer.close();
         } catch (InterruptedException | IOException e) {
             Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // The crawler failed to close but we are stopping anyway
         }
     }
 }
@@ -21,7 +21,10 @@ package fr.pilato.elasticsearch.crawler.fs.cli;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import fr.pilato.elasticsearch.crawler.fs.FsCrawlerDaemon;
 import fr.pilato.elasticsearch.crawler.fs.FsCrawlerImpl;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsCheckpointFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsInventoryFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.beans.FsJobFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.framework.FSCrawlerLogger;
 import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
@@ -51,6 +54,7 @@ import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
@@ -86,6 +90,13 @@ public class FsCrawlerCli {
         @Parameter(names = "--rest", description = "Start REST Layer")
         private boolean rest = false;
 
+        @Parameter(names = "--daemon", description = "Run all the existing jobs, or the given jobs, in the same process.")
+        private boolean daemon = false;
+
+        @Parameter(names = "--daemon_threads", description = "Number of jobs which can be scanned at the same time " +
+                "in daemon mode. Default to the number of processors.")
+        private Integer daemonThreads = null;
+
         @Parameter(names = "--upgrade", description = "Upgrade elasticsearch indices from one old version to the last version.")
         private boolean upgrade = false;
 
@@ -120,7 +131,7 @@ public class FsCrawlerCli {
 
             if (commands.silent) {
                 // If the user did not enter any job name, nothing will be displayed
-                if (commands.jobName == null) {
+                if (commands.jobName == null && !commands.daemon) {
                     banner();
                     logger.warn("--silent is set but no job has been defined. Add a job name or remove --silent option. Exiting.");
                     jCommander.usage();
@@ -170,6 +181,11 @@ public class FsCrawlerCli {
         FsSettings fsSettings;
         FsSettingsFileHandler fsSettingsFileHandler = new FsSettingsFileHandler(configDir);
 
+        if (commands.daemon) {
+            runDaemon(commands, configDir, fsSettingsFileHandler);
+            return;
+        }
+
         String jobName;
 
         if (commands.jobName == null) {
@@ -201,31 +217,13 @@ public class FsCrawlerCli {
 
         // If we ask to reinit, we need to clean the status for the job
         if (commands.restart) {
-            logger.debug("Cleaning existing status for job [{}]...", jobName);
-            new FsJobFileHandler(configDir).clean(jobName);
+            cleanJobStatus(configDir, jobName);
         }
 
         try {
             logger.debug("Starting job [{}]...", jobName);
             fsSettings = fsSettingsFileHandler.read(jobName);
-
-            // Check default settings
-            if (fsSettings.getFs() == null) {
-                fsSettings.setFs(Fs.DEFAULT);
-            }
-
-            if (fsSettings.getServer() != null) {
-                if (fsSettings.getServer().getProtocol().equals(PROTOCOL.FTP) && fsSettings.getServer().getPort() == PROTOCOL.SSH_PORT) {
-                    fsSettings.getServer().setPort(PROTOCOL.FTP_PORT);
-                }
-                if (fsSettings.getServer().getProtocol().equals(PROTOCOL.FTP) && StringUtils.isEmpty(fsSettings.getServer().getUsername())) {
-                    fsSettings.getServer().setUsername("anonymous");
-                }
-            }
-
-            if (fsSettings.getElasticsearch() == null) {
-                fsSettings.setElasticsearch(Elasticsearch.DEFAULT());
-            }
+            applyDefaultSettings(fsSettings);
 
             String username = commands.username;
             if (fsSettings.getElasticsearch().getUsername() != null) {
@@ -276,18 +274,7 @@ public class FsCrawlerCli {
             return;
         }
 
-        // We add a special case here in case someone tries to use workplace search
-        if (fsSettings.getWorkplaceSearch() != null) {
-            logger.info("Workplace Search integration is an experimental feature. " +
-                    "As is it is not fully implemented and settings might change in the future.");
-            if (commands.loop == -1 || commands.loop > 1) {
-                logger.warn("Workplace Search integration does not support yet watching a directory. " +
-                        "It will be able to run only once and exit. We manually force from --loop {} to --loop 1. " +
-                        "If you want to remove this message next time, please start FSCrawler with --loop 1",
-                        commands.loop);
-                commands.loop = 1;
-            }
-        }
+        commands.loop = checkWorkplaceSearchLoop(fsSettings, commands.loop);
 
         try (FsCrawlerImpl fsCrawler = new FsCrawlerImpl(configDir, fsSettings, commands.loop, commands.rest)) {
             Runtime.getRuntime().addShutdownHook(new FSCrawlerShutdownHook(fsCrawler));
@@ -317,6 +304,117 @@ public class FsCrawlerCli {
         }
     }
 
+    private static void cleanJobStatus(Path configDir, String jobName) throws IOException {
+        logger.debug("Cleaning existing status for job [{}]...", jobName);
+        new FsJobFileHandler(configDir).clean(jobName);
+        new FsInventoryFileHandler(configDir).clean(jobName);
+        new FsCheckpointFileHandler(configDir).clean(jobName);
+    }
+
+    private static void applyDefaultSettings(FsSettings fsSettings) {
+        // Check default settings
+        if (fsSettings.getFs() == null) {
+            fsSettings.setFs(Fs.DEFAULT);
+        }
+
+        if (fsSettings.getServer() != null) {
+            if (fsSettings.getServer().getProtocol().equals(PROTOCOL.FTP) && fsSettings.getServer().getPort() == PROTOCOL.SSH_PORT) {
+                fsSettings.getServer().setPort(PROTOCOL.FTP_PORT);
+            }
+            if (fsSettings.getServer().getProtocol().equals(PROTOCOL.FTP) && StringUtils.isEmpty(fsSettings.getServer().getUsername())) {
+                fsSettings.getServer().setUsername("anonymous");
+            }
+        }
+
+        if (fsSettings.getElasticsearch() == null) {
+            fsSettings.setElasticsearch(Elasticsearch.DEFAULT());
+        }
+    }
+
+    /**
+     * We add a special case here in case someone tries to use workplace search
+     * @return the number of runs we can do
+     */
+    private static int checkWorkplaceSearchLoop(FsSettings fsSettings, int loop) {
+        if (fsSettings.getWorkplaceSearch() != null) {
+            logger.info("Workplace Search integration is an experimental feature. " +
+                    "As is it is not fully implemented and settings might change in the future.");
+            if (loop == -1 || loop > 1) {
+                logger.warn("Workplace Search integration does not support yet watching a directory. " +
+                        "It will be able to run only once and exit. We manually force from --loop {} to --loop 1. " +
+                        "If you want to remove this message next time, please start FSCrawler with --loop 1",
+                        loop);
+                return 1;
+            }
+        }
+        return loop;
+    }
+
+    /**
+     * Run many jobs in the same process. They share the Elasticsearch clients and the Tika parsers.
+     */
+    private static void runDaemon(FsCrawlerCommand commands, Path configDir, FsSettingsFileHandler fsSettingsFileHandler)
+            throws IOException {
+        if (commands.rest) {
+            logger.warn("The REST layer can not be started in daemon mode. Ignoring --rest.");
+        }
+
+        List<String> jobNames = commands.jobName == null ? FsCrawlerJobsUtil.listExistingJobs(configDir) : commands.jobName;
+        List<FsSettings> jobs = new ArrayList<>();
+        for (String jobName : jobNames) {
+            if (commands.restart) {
+                cleanJobStatus(configDir, jobName);
+            }
+
+            FsSettings fsSettings;
+            try {
+                fsSettings = fsSettingsFileHandler.read(jobName);
+            } catch (NoSuchFileException e) {
+                logger.error("job [{}] does not exist. Skipping it.", jobName);
+                continue;
+            }
+            applyDefaultSettings(fsSettings);
+
+            if (fsSettings.getElasticsearch().getUsername() == null && commands.username != null) {
+                fsSettings.getElasticsearch().setUsername(commands.username);
+            }
+            if (fsSettings.getElasticsearch().getUsername() != null && fsSettings.getElasticsearch().getPassword() == null) {
+                logger.error("job [{}] needs a password for [{}] which can not be asked in daemon mode. Skipping it.",
+                        jobName, fsSettings.getElasticsearch().getUsername());
+                continue;
+            }
+
+            if (FsCrawlerValidator.validateSettings(logger, fsSettings, false)) {
+                logger.error("job [{}] has incorrect settings. Skipping it.", jobName);
+                continue;
+            }
+            jobs.add(fsSettings);
+        }
+
+        if (jobs.isEmpty()) {
+            logger.warn("No job to run from [{}]. Exiting.", configDir);
+            return;
+        }
+
+        int threads = commands.daemonThreads == null ?
+                Math.min(jobs.size(), Runtime.getRuntime().availableProcessors()) : commands.daemonThreads;
+        try (FsCrawlerDaemon daemon = new FsCrawlerDaemon(configDir, Math.max(1, threads))) {
+            Runtime.getRuntime().addShutdownHook(new FSCrawlerShutdownHook(daemon));
+            for (FsSettings fsSettings : jobs) {
+                daemon.addJob(fsSettings, checkWorkplaceSearchLoop(fsSettings, commands.loop));
+            }
+            daemon.start();
+
+            // We just have to wait until the process is stopped
+            while (!daemon.isClosed()) {
+                sleep();
+            }
+        } catch (Exception e) {
+            logger.fatal("Fatal error received while running the crawler daemon: [{}]", e.getMessage());
+            logger.debug("error caught", e);
+        }
+    }
+
     private static boolean startEsClient(FsCrawlerImpl fsCrawler) {
         try {
             fsCrawler.start();
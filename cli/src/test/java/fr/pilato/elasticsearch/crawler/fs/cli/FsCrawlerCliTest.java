@@ -19,6 +19,10 @@
 
 package fr.pilato.elasticsearch.crawler.fs.cli;
 
+import fr.pilato.elasticsearch.crawler.fs.beans.FsCheckpoint;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsCheckpointFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsInventory;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsInventoryFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.beans.FsJob;
 import fr.pilato.elasticsearch.crawler.fs.beans.FsJobFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
@@ -31,6 +35,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
 
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.copyDefaultResources;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -86,13 +91,19 @@ public class FsCrawlerCliTest extends AbstractFSCrawlerTestCase {
 
         fsSettingsFileHandler.write(FsSettings.builder(jobName).build());
         fsJobFileHandler.write(jobName, FsJob.builder().build());
+        new FsInventoryFileHandler(metadataDir).write(jobName, new FsInventory());
+        new FsCheckpointFileHandler(metadataDir).write(jobName, new FsCheckpoint(LocalDateTime.now()));
 
         assertThat(Files.exists(jobDir.resolve(FsJobFileHandler.FILENAME)), is(true));
+        assertThat(Files.exists(jobDir.resolve(FsInventoryFileHandler.FILENAME)), is(true));
+        assertThat(Files.exists(jobDir.resolve(FsCheckpointFileHandler.FILENAME)), is(true));
 
         String[] args = { "--config_dir", metadataDir.toString(), "--loop", "0", "--restart", jobName };
 
         FsCrawlerCli.main(args);
 
         assertThat(Files.exists(jobDir.resolve(FsJobFileHandler.FILENAME)), is(false));
+        assertThat(Files.exists(jobDir.resolve(FsInventoryFileHandler.FILENAME)), is(false));
+        assertThat(Files.exists(jobDir.resolve(FsCheckpointFileHandler.FILENAME)), is(false));
     }
 }
@@ -0,0 +1,203 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
+import fr.pilato.elasticsearch.crawler.fs.framework.pipeline.PipelineStage;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.Pipeline;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The staged crawl pipeline: the walker threads submit files to the read stage which opens the files,
+ * the parse stage extracts the content and the bulk stage sends the documents to the bulk processor.
+ * Stages are linked by bounded queues so when a stage falls behind, the previous stages and finally
+ * the walker threads have to wait.
+ * @param <R> Type of the documents
+ */
+class FsCrawlPipeline<R> {
+    private static final Logger logger = LogManager.getLogger(FsCrawlPipeline.class);
+    private static final long STATS_INTERVAL_SECONDS = 10;
+
+    private final FileAbstractor<?> path;
+    private final FsFileIndexer<R> indexer;
+    private final boolean readContent;
+    private final boolean continueOnError;
+    private final long bufferSize;
+    private final PipelineStage<PipelineFile> readStage;
+    private final PipelineStage<PipelineFile> parseStage;
+    private final PipelineStage<R> bulkStage;
+    private final ScheduledExecutorService reporter;
+
+    FsCrawlPipeline(FileAbstractor<?> path, Fs fs, FsFileIndexer<R> indexer) {
+        this.path = path;
+        this.indexer = indexer;
+        this.readContent = fs.isIndexContent() || fs.isStoreSource();
+        this.continueOnError = fs.isContinueOnError();
+        Pipeline settings = fs.getPipeline();
+        this.bufferSize = settings.getBufferSize().getBytes();
+        int readThreads = Math.min(settings.getReadThreads(), path.getMaxConcurrency());
+        // The bulk processor sends one bulk at a time, so more threads would only wait for each other
+        bulkStage = new PipelineStage<>("bulk", 1, settings.getQueueSize(), indexer::send);
+        // The files waiting to be parsed may hold an open stream on the source
+        parseStage = new PipelineStage<>("parse", settings.getParseThreads(), settings.getQueueSize(), this::parse,
+                this::discard);
+        readStage = new PipelineStage<>("read", readThreads, settings.getQueueSize(), this::read);
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fs-crawler-pipeline-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() {
+        bulkStage.start();
+        parseStage.start();
+        readStage.start();
+        reporter.scheduleAtFixedRate(() -> logger.debug("Pipeline stats: {}", this),
+                STATS_INTERVAL_SECONDS, STATS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    void submit(FileAbstractModel file, String dirname) throws Exception {
+        if (indexer.isClosed()) {
+            return;
+        }
+        readStage.submit(new PipelineFile(file, dirname));
+    }
+
+    private void read(PipelineFile pipelineFile) throws Exception {
+        if (readContent) {
+            try {
+                InputStream inputStream = path.getInputStream(pipelineFile.file);
+                if (pipelineFile.file.getSize() <= bufferSize) {
+                    // We read the file in memory so the source is released as soon as possible
+                    try {
+                        pipelineFile.inputStream = new ByteArrayInputStream(inputStream.readAllBytes());
+                    } finally {
+                        path.closeInputStream(inputStream);
+                    }
+                } else {
+                    pipelineFile.inputStream = inputStream;
+                    pipelineFile.streamed = true;
+                }
+            } catch (Exception e) {
+                if (continueOnError) {
+                    logger.warn("Unable to read {}, skipping...: {}", pipelineFile.file.getName(), e.getMessage());
+                    return;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            parseStage.submit(pipelineFile);
+        } catch (Exception e) {
+            closeStream(pipelineFile);
+            throw e;
+        }
+    }
+
+    private void parse(PipelineFile pipelineFile) throws Exception {
+        R document;
+        try {
+            document = indexer.parse(pipelineFile.file, pipelineFile.dirname, pipelineFile.inputStream);
+        } catch (Exception e) {
+            if (continueOnError) {
+                logger.warn("Unable to index {}, skipping...: {}", pipelineFile.file.getName(), e.getMessage());
+                return;
+            }
+            throw e;
+        } finally {
+            closeStream(pipelineFile);
+        }
+
+        if (document != null) {
+            bulkStage.submit(document);
+        }
+    }
+
+    private void closeStream(PipelineFile pipelineFile) throws Exception {
+        if (pipelineFile.streamed && pipelineFile.inputStream != null) {
+            pipelineFile.streamed = false;
+            path.closeInputStream(pipelineFile.inputStream);
+        }
+    }
+
+    private void discard(PipelineFile pipelineFile) {
+        try {
+            closeStream(pipelineFile);
+        } catch (Exception e) {
+            logger.warn("Unable to close {}: {}", pipelineFile.file.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Wait for all the files to go through all the stages
+     */
+    void finish() throws Exception {
+        try {
+            readStage.finish();
+            parseStage.finish();
+            bulkStage.finish();
+            logger.info("Pipeline stats: {}", this);
+        } finally {
+            reporter.shutdownNow();
+        }
+    }
+
+    /**
+     * Stop all the stages as soon as possible
+     */
+    void abort() {
+        reporter.shutdownNow();
+        readStage.abort();
+        parseStage.abort();
+        bulkStage.abort();
+    }
+
+    @Override
+    public String toString() {
+        return readStage + ", " + parseStage + ", " + bulkStage;
+    }
+
+    /**
+     * A file going through the pipeline
+     */
+    private static class PipelineFile {
+        private final FileAbstractModel file;
+        private final String dirname;
+        private InputStream inputStream;
+        // True if the stream is still open on the source and must be closed by the parse stage
+        private boolean streamed;
+
+        private PipelineFile(FileAbstractModel file, String dirname) {
+            this.file = file;
+            this.dirname = dirname;
+        }
+    }
+}
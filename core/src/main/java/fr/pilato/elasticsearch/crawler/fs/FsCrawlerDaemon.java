@@ -0,0 +1,289 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient;
+import fr.pilato.elasticsearch.crawler.fs.client.IElasticsearchClient;
+import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerDocumentService;
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerDocumentServiceElasticsearchImpl;
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerDocumentServiceWorkplaceSearchImpl;
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerManagementService;
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerManagementServiceElasticsearchImpl;
+import fr.pilato.elasticsearch.crawler.fs.settings.Elasticsearch;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many jobs in the same JVM. The jobs share:
+ * <ul>
+ *     <li>one Elasticsearch client, with its connections and its bulk processor, per target cluster</li>
+ *     <li>the Tika parsers for the same Tika settings</li>
+ *     <li>a pool of threads which runs the scans</li>
+ * </ul>
+ * Between two scans, a job does not hold any thread unless it watches for changes.
+ * Every job keeps its own status, inventory and statistics in its own directory.
+ */
+public class FsCrawlerDaemon implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(FsCrawlerDaemon.class);
+
+    private final Path config;
+    private final ScheduledThreadPoolExecutor scheduler;
+    // The jobs which watch for changes wait for them in their own thread, so they don't hold a scheduler thread
+    private final ExecutorService watchers;
+    private final Map<List<Object>, ElasticsearchClient> clients = new LinkedHashMap<>();
+    private final List<Job> jobs = new ArrayList<>();
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    /**
+     * @param config    the config dir, where the job settings and status files are
+     * @param threads   the number of jobs which can be scanned at the same time
+     */
+    public FsCrawlerDaemon(Path config, int threads) {
+        FsCrawlerUtil.createDirIfMissing(config);
+        this.config = config;
+
+        AtomicInteger schedulerThreads = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "fs-crawler-daemon-" + schedulerThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // We don't wait for the next runs when we stop
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        AtomicInteger watcherThreads = new AtomicInteger();
+        this.watchers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fs-crawler-daemon-watcher-" + watcherThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Add a job. It must be called before {@link #start()}.
+     * @param settings  the job settings which must have been validated with FsCrawlerValidator before
+     * @param loop      the number of runs for this job, or {@link FsCrawlerImpl#LOOP_INFINITE}
+     */
+    public void addJob(FsSettings settings, int loop) {
+        if (started) {
+            throw new IllegalStateException("Jobs must be added before starting the daemon");
+        }
+
+        // Generate the directory where we write status and other files
+        try {
+            Files.createDirectories(config.resolve(settings.getName()));
+        } catch (IOException e) {
+            throw new RuntimeException("Can not create the job config directory", e);
+        }
+
+        IElasticsearchClient client = getClient(settings.getElasticsearch());
+        FsCrawlerManagementService managementService = new FsCrawlerManagementServiceElasticsearchImpl(settings, client);
+        FsCrawlerDocumentService documentService;
+        if (settings.getWorkplaceSearch() == null) {
+            documentService = new FsCrawlerDocumentServiceElasticsearchImpl(settings, client);
+        } else {
+            // Workplace Search has its own client
+            documentService = new FsCrawlerDocumentServiceWorkplaceSearchImpl(config, settings);
+        }
+        FsParser parser = FsCrawlerImpl.buildFsParser(config, settings, managementService, documentService, loop);
+        jobs.add(new Job(settings, managementService, documentService, parser));
+    }
+
+    /**
+     * Get the client for a cluster. The jobs which send their documents to the same cluster
+     * with the same credentials and bulk settings share the same client.
+     */
+    private IElasticsearchClient getClient(Elasticsearch elasticsearch) {
+        Elasticsearch cluster = Elasticsearch.builder()
+                .setNodes(elasticsearch.getNodes())
+                .setUsername(elasticsearch.getUsername())
+                .setPassword(elasticsearch.getPassword())
+                .setPathPrefix(elasticsearch.getPathPrefix())
+                .setSslVerification(elasticsearch.getSslVerification())
+                .setBulkSize(elasticsearch.getBulkSize())
+                .setFlushInterval(elasticsearch.getFlushInterval())
+                .setByteSize(elasticsearch.getByteSize())
+                .build();
+        // The password is not part of Elasticsearch#equals()
+        List<Object> key = Arrays.asList(cluster, cluster.getPassword());
+        return clients.computeIfAbsent(key, k -> new ElasticsearchClient(config,
+                FsSettings.builder("fscrawler-daemon-" + (clients.size() + 1)).setElasticsearch(cluster).build()));
+    }
+
+    /**
+     * @return the number of Elasticsearch clients shared by the jobs
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Connect to the clusters and schedule the jobs. A job which can not be started is skipped.
+     * @throws Exception if we can not connect to a cluster
+     */
+    public void start() throws Exception {
+        started = true;
+        logger.info("Starting FS crawler daemon with [{}] jobs sending documents to [{}] clusters",
+                jobs.size(), clients.size());
+        for (ElasticsearchClient client : clients.values()) {
+            client.start();
+        }
+
+        for (Job job : jobs) {
+            try {
+                job.managementService.start();
+                job.documentService.start();
+                job.documentService.createSchema();
+            } catch (Exception e) {
+                logger.error("Can not start job [{}]: {}. Skipping it.", job.settings.getName(), e.getMessage());
+                logger.debug("error caught", e);
+                continue;
+            }
+            logger.info("FS crawler started for [{}] for [{}] every [{}]", job.settings.getName(),
+                    job.settings.getFs().getUrl(), job.settings.getFs().getUpdateRate());
+            runningJobs.incrementAndGet();
+            schedule(job, 0);
+        }
+    }
+
+    /**
+     * @return true if the daemon has been closed or if all the jobs are done
+     */
+    public boolean isClosed() {
+        return closed || (started && runningJobs.get() == 0);
+    }
+
+    private void schedule(Job job, long delay) {
+        try {
+            scheduler.schedule(() -> crawl(job), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // We are closing
+            stopped(job);
+        }
+    }
+
+    /**
+     * Run a scan of a job and plan the next one
+     */
+    private void crawl(Job job) {
+        boolean again;
+        try {
+            again = !closed && job.parser.crawl();
+        } catch (RuntimeException e) {
+            logger.warn("Error while crawling job [{}]: {}", job.settings.getName(), e.getMessage());
+            logger.debug("error caught", e);
+            again = !closed;
+        }
+        if (!again || closed) {
+            stopped(job);
+            return;
+        }
+
+        if (job.parser.isWatching()) {
+            try {
+                watchers.execute(() -> {
+                    job.parser.waitForNextRun();
+                    schedule(job, 0);
+                });
+            } catch (RejectedExecutionException e) {
+                stopped(job);
+            }
+        } else {
+            logger.debug("Next run of job [{}] in [{}]", job.settings.getName(), job.settings.getFs().getUpdateRate());
+            schedule(job, job.settings.getFs().getUpdateRate().millis());
+        }
+    }
+
+    private void stopped(Job job) {
+        logger.info("FS crawler job [{}] is stopped after {} run{}", job.settings.getName(),
+                job.parser.getRunNumber(), job.parser.getRunNumber() > 1 ? "s" : "");
+        runningJobs.decrementAndGet();
+    }
+
+    @Override
+    public void close() throws InterruptedException, IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        logger.debug("Closing FS crawler daemon");
+
+        for (Job job : jobs) {
+            job.parser.close();
+            synchronized (job.parser.getSemaphore()) {
+                job.parser.getSemaphore().notifyAll();
+            }
+        }
+
+        scheduler.shutdown();
+        watchers.shutdown();
+        while (!scheduler.awaitTermination(500, TimeUnit.MILLISECONDS) || !watchers.awaitTermination(500, TimeUnit.MILLISECONDS)) {
+            logger.debug("FS crawler daemon is still running");
+        }
+
+        // Stop the child JVMs which extract the documents, if any
+        TikaInstance.close();
+
+        for (Job job : jobs) {
+            job.managementService.close();
+            job.documentService.close();
+        }
+        for (ElasticsearchClient client : clients.values()) {
+            client.close();
+        }
+        logger.info("FS crawler daemon stopped");
+    }
+
+    private static class Job {
+        private final FsSettings settings;
+        private final FsCrawlerManagementService managementService;
+        private final FsCrawlerDocumentService documentService;
+        private final FsParser parser;
+
+        private Job(FsSettings settings, FsCrawlerManagementService managementService,
+                    FsCrawlerDocumentService documentService, FsParser parser) {
+            this.settings = settings;
+            this.managementService = managementService;
+            this.documentService = documentService;
+            this.parser = parser;
+        }
+    }
+}
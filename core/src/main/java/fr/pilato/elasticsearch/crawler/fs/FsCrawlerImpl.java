@@ -29,6 +29,7 @@ import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerManagementServiceElas
 import fr.pilato.elasticsearch.crawler.fs.settings.FsCrawlerValidator;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 import fr.pilato.elasticsearch.crawler.fs.settings.Server;
+import fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -119,21 +120,7 @@ public class FsCrawlerImpl implements AutoCloseable {
 
         // Start the crawler thread - but not if only in rest mode
         if (loop != 0) {
-            // What is the protocol used?
-            if (settings.getServer() == null || Server.PROTOCOL.LOCAL.equals(settings.getServer().getProtocol())) {
-                // Local FS
-                fsParser = new FsParserLocal(settings, config, managementService, documentService, loop);
-            } else if (Server.PROTOCOL.SSH.equals(settings.getServer().getProtocol())) {
-                // Remote SSH FS
-                fsParser = new FsParserSsh(settings, config, managementService, documentService, loop);
-            } else if (Server.PROTOCOL.FTP.equals(settings.getServer().getProtocol())) {
-                // Remote FTP FS
-                fsParser = new FsParserFTP(settings, config, managementService, documentService, loop);
-            } else {
-                // Non supported protocol
-                throw new RuntimeException(settings.getServer().getProtocol() + " is not supported yet. Please use " +
-                        Server.PROTOCOL.LOCAL + " or " + Server.PROTOCOL.SSH);
-            }
+            fsParser = buildFsParser(config, settings, managementService, documentService, loop);
         } else {
             // We start a No-OP parser
             fsParser = new FsParserNoop(settings);
@@ -166,6 +153,9 @@ public class FsCrawlerImpl implements AutoCloseable {
             logger.debug("FS crawler thread is now stopped");
         }
 
+        // Stop the child JVMs which extract the documents, if any
+        TikaInstance.close();
+
         managementService.close();
         documentService.close();
         logger.debug("ES Client Manager stopped");
@@ -173,6 +163,27 @@ public class FsCrawlerImpl implements AutoCloseable {
         logger.info("FS crawler [{}] stopped", settings.getName());
     }
 
+    /**
+     * Build the parser for the protocol of the job
+     */
+    static FsParser buildFsParser(Path config, FsSettings settings, FsCrawlerManagementService managementService,
+                                  FsCrawlerDocumentService documentService, Integer loop) {
+        if (settings.getServer() == null || Server.PROTOCOL.LOCAL.equals(settings.getServer().getProtocol())) {
+            // Local FS
+            return new FsParserLocal(settings, config, managementService, documentService, loop);
+        } else if (Server.PROTOCOL.SSH.equals(settings.getServer().getProtocol())) {
+            // Remote SSH FS
+            return new FsParserSsh(settings, config, managementService, documentService, loop);
+        } else if (Server.PROTOCOL.FTP.equals(settings.getServer().getProtocol())) {
+            // Remote FTP FS
+            return new FsParserFTP(settings, config, managementService, documentService, loop);
+        } else {
+            // Non supported protocol
+            throw new RuntimeException(settings.getServer().getProtocol() + " is not supported yet. Please use " +
+                    Server.PROTOCOL.LOCAL + " or " + Server.PROTOCOL.SSH);
+        }
+    }
+
     public FsParser getFsParser() {
         return fsParser;
     }
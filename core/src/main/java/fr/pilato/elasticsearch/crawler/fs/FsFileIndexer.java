@@ -0,0 +1,54 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+
+import java.io.InputStream;
+
+/**
+ * What the crawl pipeline and the per file executor need from the parser: turn a file into a document
+ * and send this document.
+ * @param <R> Type of the documents
+ */
+interface FsFileIndexer<R> {
+
+    /**
+     * Read and parse a file
+     * @param file          the file
+     * @param dirname       the directory of the file
+     * @param inputStream   the content of the file. Null when the content is not needed.
+     * @return the document to send or null if the file must not be indexed
+     * @throws Exception In case of problems
+     */
+    R parse(FileAbstractModel file, String dirname, InputStream inputStream) throws Exception;
+
+    /**
+     * Send a document
+     * @param document the document returned by {@link #parse(FileAbstractModel, String, InputStream)}
+     * @throws Exception In case of problems
+     */
+    void send(R document) throws Exception;
+
+    /**
+     * @return true if the crawler is closing, so we should not start anything new
+     */
+    boolean isClosed();
+}
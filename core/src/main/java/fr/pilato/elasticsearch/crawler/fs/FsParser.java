@@ -22,9 +22,36 @@ package fr.pilato.elasticsearch.crawler.fs;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class FsParser implements Runnable {
-    static final Object semaphore = new Object();
+    // Each parser has its own lock, so closing a job only wakes up its own crawler
+    final Object semaphore = new Object();
     final AtomicInteger runNumber = new AtomicInteger(0);
-    boolean closed;
+    volatile boolean closed;
+
+    @Override
+    public void run() {
+        closed = false;
+        while (crawl()) {
+            waitForNextRun();
+        }
+    }
+
+    /**
+     * Run a full scan
+     * @return false if we should not run again, because we have been closed or we reached the number of runs
+     */
+    abstract boolean crawl();
+
+    /**
+     * Wait until the next full scan or until we are closed
+     */
+    abstract void waitForNextRun();
+
+    /**
+     * @return true if we are indexing the changes as they happen between two full scans
+     */
+    boolean isWatching() {
+        return false;
+    }
 
     void close() {
         this.closed = true;
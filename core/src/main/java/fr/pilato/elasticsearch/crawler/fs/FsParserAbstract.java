@@ -21,22 +21,33 @@ package fr.pilato.elasticsearch.crawler.fs;
 
 import fr.pilato.elasticsearch.crawler.fs.beans.Attributes;
 import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.beans.File;
 import fr.pilato.elasticsearch.crawler.fs.beans.Folder;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsCheckpoint;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsCheckpointFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsInventory;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsInventoryFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.beans.FsJob;
 import fr.pilato.elasticsearch.crawler.fs.beans.FsJobFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.beans.ScanStatistic;
+import fr.pilato.elasticsearch.crawler.fs.crawler.DirectoryState;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
 import fr.pilato.elasticsearch.crawler.fs.crawler.fs.FileAbstractorFile;
+import fr.pilato.elasticsearch.crawler.fs.crawler.fs.FileWatcher;
 import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
 import fr.pilato.elasticsearch.crawler.fs.framework.FSCrawlerLogger;
+import fr.pilato.elasticsearch.crawler.fs.framework.FilenameMatcher;
 import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
 import fr.pilato.elasticsearch.crawler.fs.framework.OsValidator;
 import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
 import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerDocumentService;
 import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerManagementService;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.settings.Server;
 import fr.pilato.elasticsearch.crawler.fs.settings.Server.PROTOCOL;
+import fr.pilato.elasticsearch.crawler.fs.tika.ContentTypeDetector;
 import fr.pilato.elasticsearch.crawler.fs.tika.TikaDocParser;
 import fr.pilato.elasticsearch.crawler.fs.tika.XmlDocParser;
 import org.apache.logging.log4j.LogManager;
@@ -47,14 +58,35 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.*;
@@ -67,35 +99,71 @@ public abstract class FsParserAbstract extends FsParser {
 
     final FsSettings fsSettings;
     private final FsJobFileHandler fsJobFileHandler;
+    private final FsInventoryFileHandler fsInventoryFileHandler;
+    private final FsCheckpointFileHandler fsCheckpointFileHandler;
 
     private final FsCrawlerManagementService managementService;
     private final FsCrawlerDocumentService documentService;
     private final Integer loop;
-    private final MessageDigest messageDigest;
+    private final ThreadLocal<MessageDigest> messageDigest;
     private final String pathSeparator;
+    private final FilenameMatcher includes;
+    private final FilenameMatcher excludes;
+    private final SignTool signTool;
 
     private ScanStatistic stats;
+    private volatile FsCrawlPipeline<IndexRequest> pipeline;
+    private volatile FsPerFileExecutor<IndexRequest> perFileExecutor;
+    private volatile FileWatcher watcher;
+    private volatile FsInventory inventory;
+    private volatile FsCheckpoint checkpoint;
+    // The walkers hold the read lock while they work on a directory, so a checkpoint written under
+    // the write lock never sees a directory which has only been partially processed
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean checkpointing = new AtomicBoolean();
+    private volatile long nextCheckpoint;
+    // Null unless the crawl of the tree is shared with other nodes
+    private final FsShardCoordinator coordinator;
+    private ScheduledExecutorService leaseRenewal;
+    // The folders which are being removed in the background
+    private final Queue<String> deleteTasks = new ConcurrentLinkedQueue<>();
 
     FsParserAbstract(FsSettings fsSettings, Path config, FsCrawlerManagementService managementService, FsCrawlerDocumentService documentService, Integer loop) {
         this.fsSettings = fsSettings;
         this.fsJobFileHandler = new FsJobFileHandler(config);
+        this.fsInventoryFileHandler = new FsInventoryFileHandler(config);
+        this.fsCheckpointFileHandler = new FsCheckpointFileHandler(config);
         this.managementService = managementService;
         this.documentService = documentService;
 
         this.loop = loop;
+        // Every run starts with its own statistics
+        this.stats = new ScanStatistic(fsSettings.getFs().getUrl());
         logger.debug("creating fs crawler thread [{}] for [{}] every [{}]", fsSettings.getName(),
                 fsSettings.getFs().getUrl(),
                 fsSettings.getFs().getUpdateRate());
 
-        // Create MessageDigest instance
-        if (fsSettings.getFs().getChecksum() != null) {
+        // Create MessageDigest instances (one per crawler thread)
+        messageDigest = ThreadLocal.withInitial(() -> {
+            if (fsSettings.getFs().getChecksum() == null) {
+                return null;
+            }
             try {
-                messageDigest = MessageDigest.getInstance(fsSettings.getFs().getChecksum());
+                return MessageDigest.getInstance(fsSettings.getFs().getChecksum());
             } catch (NoSuchAlgorithmException e) {
                 throw new RuntimeException("This should never happen as we checked that previously");
             }
+        });
+
+        // We compile the includes and excludes rules once for the whole job
+        includes = FilenameMatcher.compile(fsSettings.getFs().getIncludes());
+        excludes = FilenameMatcher.compile(fsSettings.getFs().getExcludes());
+        signTool = SignTool.getInstance(fsSettings.getFs().getIdHash());
+
+        if (fsSettings.getFs().getSharding() != null && fsSettings.getFs().getSharding().isEnabled()) {
+            coordinator = new FsShardCoordinator(managementService.getLeaseService(), fsSettings.getFs().getSharding());
         } else {
-            messageDigest = null;
+            coordinator = null;
         }
 
         pathSeparator = FsCrawlerUtil.getPathSeparator(fsSettings.getFs().getUrl());
@@ -107,98 +175,524 @@ public abstract class FsParserAbstract extends FsParser {
 
     protected abstract FileAbstractor<?> buildFileAbstractor();
 
+    /**
+     * Build a watcher which reports the changes happening on the file system between two runs
+     * @return null if the implementation does not support watching for changes
+     * @throws IOException if the watcher can not be created
+     */
+    protected FileWatcher buildWatcher() throws IOException {
+        return null;
+    }
+
+    @Override
+    void close() {
+        super.close();
+        closeWatcher();
+        stopLeaseRenewal();
+        // We stop the in-flight files
+        abortFileWorkers();
+    }
+
     @Override
     public void run() {
         logger.info("FS crawler started for [{}] for [{}] every [{}]", fsSettings.getName(),
                 fsSettings.getFs().getUrl(),
                 fsSettings.getFs().getUpdateRate());
-        closed = false;
-        while (true) {
+        super.run();
+    }
+
+    @Override
+    boolean crawl() {
+        if (closed) {
+            logger.debug("FS crawler thread [{}] is now marked as closed...", fsSettings.getName());
+            return false;
+        }
+
+        int run = runNumber.incrementAndGet();
+        FileAbstractor<?> path = null;
+
+        try {
+            logger.debug("Fs crawler thread [{}] is now running. Run #{}...", fsSettings.getName(), run);
+            stats = new ScanStatistic(fsSettings.getFs().getUrl());
+
+            path = buildFileAbstractor();
+            path.open();
+
+            if (!path.exists(fsSettings.getFs().getUrl())) {
+                throw new RuntimeException(fsSettings.getFs().getUrl() + " doesn't exists.");
+            }
+
+            String rootPathId = signTool.hash(fsSettings.getFs().getUrl());
+            stats.setRootPathId(rootPathId);
+
+            if (fsSettings.getFs().isInventory() && inventory == null) {
+                inventory = loadInventory(fsSettings.getName());
+            }
+
+            if (coordinator != null) {
+                startLeaseRenewal();
+                Set<Integer> acquired = coordinator.rebalance();
+                if (inventory != null && !acquired.isEmpty()) {
+                    forgetShards(acquired);
+                }
+                logger.info("Node [{}] crawls the shards {} of [{}]", coordinator.getNode(), coordinator.getOwnedShards(),
+                        fsSettings.getFs().getUrl());
+            }
+
+            // We start watching before the scan, so we don't miss changes happening while we are scanning
+            if (fsSettings.getFs().isWatch() && watcher == null) {
+                startWatcher();
+            }
+
+            LocalDateTime scanDatenew = LocalDateTime.now();
+            FsJob fsJob = getFsJob(fsSettings.getName());
+            LocalDateTime scanDate = fsJob == null ? null : fsJob.getLastrun();
+            LocalDateTime lastFullScan = fsJob == null ? null : fsJob.getLastFullScan();
+
+            if (fsSettings.getFs().getCheckpointInterval() != null) {
+                checkpoint = loadCheckpoint(fsSettings.getName(), scanDatenew);
+                // When we resume an interrupted run, the next run must see the changes which happened since it started
+                scanDatenew = checkpoint.getScanDate();
+                nextCheckpoint = System.currentTimeMillis() + fsSettings.getFs().getCheckpointInterval().millis();
+            }
+
+            // We only index the root directory once (first run)
+            // That means that we don't have a scanDate yet
+            if (scanDate == null && fsSettings.getFs().isIndexFolders()) {
+                indexDirectory(fsSettings.getFs().getUrl());
+            }
+
+            if (scanDate == null) {
+                scanDate = LocalDateTime.MIN;
+            }
+
+            startFileWorkers(path);
+
+            int walkerThreads = Math.min(fsSettings.getFs().getWalkerThreads(), path.getMaxConcurrency());
+            if (walkerThreads < fsSettings.getFs().getWalkerThreads()) {
+                logger.debug("Walker threads limited from [{}] to [{}] by the [{}] file abstractor",
+                        fsSettings.getFs().getWalkerThreads(), walkerThreads, path.getClass().getSimpleName());
+            }
+
+            boolean fullScan = !isIncrementalScan(scanDate, lastFullScan) || !indexChangedFiles(path, scanDate);
+            if (!fullScan) {
+                logger.debug("Only the changes reported by the server have been indexed");
+            } else if (walkerThreads > 1) {
+                addFilesInParallel(path, fsSettings.getFs().getUrl(), scanDate, walkerThreads);
+            } else {
+                addFilesRecursively(path, fsSettings.getFs().getUrl(), scanDate);
+            }
+
             if (closed) {
-                logger.debug("FS crawler thread [{}] is now marked as closed...", fsSettings.getName());
-                return;
+                abortFileWorkers();
+            } else {
+                finishFileWorkers();
             }
 
-            int run = runNumber.incrementAndGet();
-            FileAbstractor<?> path = null;
+            waitForDeleteTasks();
 
-            try {
-                logger.debug("Fs crawler thread [{}] is now running. Run #{}...", fsSettings.getName(), run);
-                stats = new ScanStatistic(fsSettings.getFs().getUrl());
+            if (stats.getNbDocTimedOut() > 0) {
+                logger.warn("[{}] documents have been indexed with only part of their content as their extraction timed out. " +
+                        "See documents.log for the list of documents.", stats.getNbDocTimedOut());
+            }
 
-                path = buildFileAbstractor();
-                path.open();
+            if (inventory != null && !closed) {
+                fsInventoryFileHandler.write(fsSettings.getName(), inventory);
+            }
 
-                if (!path.exists(fsSettings.getFs().getUrl())) {
-                    throw new RuntimeException(fsSettings.getFs().getUrl() + " doesn't exists.");
+            if (checkpoint != null && closed) {
+                logger.info("The crawl of [{}] has been stopped. The next run will resume from the last checkpoint.",
+                        fsSettings.getFs().getUrl());
+            } else {
+                if (coordinator != null && !closed) {
+                    coordinator.complete(scanDatenew.minus(2, ChronoUnit.SECONDS));
+                }
+                updateFsJob(fsSettings.getName(), scanDatenew, fullScan, lastFullScan);
+                if (checkpoint != null) {
+                    fsCheckpointFileHandler.clean(fsSettings.getName());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error while crawling {}: {}", fsSettings.getFs().getUrl(), e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+            if (logger.isDebugEnabled()) {
+                logger.warn("Full stacktrace", e);
+            }
+        } finally {
+            checkpoint = null;
+            abortFileWorkers();
+            pipeline = null;
+            perFileExecutor = null;
+            if (path != null) {
+                try {
+                    path.close();
+                } catch (Exception e) {
+                    logger.warn("Error while closing the connection: {}", e.getMessage());
+                    if (logger.isDebugEnabled()) {
+                        logger.warn("Full stacktrace", e);
+                    }
                 }
+            }
+        }
 
-                String rootPathId = SignTool.sign(fsSettings.getFs().getUrl());
-                stats.setRootPathId(rootPathId);
+        if (loop > 0 && run >= loop) {
+            logger.info("FS crawler is stopping after {} run{}", run, run > 1 ? "s" : "");
+            closed = true;
+            closeWatcher();
+            stopLeaseRenewal();
+            return false;
+        }
+        return true;
+    }
 
-                LocalDateTime scanDatenew = LocalDateTime.now();
-                LocalDateTime scanDate = getLastDateFromMeta(fsSettings.getName());
+    @Override
+    void waitForNextRun() {
+        try {
+            logger.debug("Fs crawler is going to sleep for {}", fsSettings.getFs().getUpdateRate());
 
-                // We only index the root directory once (first run)
-                // That means that we don't have a scanDate yet
-                if (scanDate == null && fsSettings.getFs().isIndexFolders()) {
-                    indexDirectory(fsSettings.getFs().getUrl());
-                }
+            // The problem here is that there is no wait to close the thread while we are sleeping.
+            // Which leads to Zombie threads in our tests
 
-                if (scanDate == null) {
-                    scanDate = LocalDateTime.MIN;
+            if (!closed) {
+                if (watcher != null) {
+                    // We index the changes as they happen until the next full scan
+                    watchForChanges(fsSettings.getFs().getUpdateRate().millis());
+                } else {
+                    synchronized (semaphore) {
+                        semaphore.wait(fsSettings.getFs().getUpdateRate().millis());
+                    }
                 }
+                logger.debug("Fs crawler is now waking up again...");
+            }
+        } catch (InterruptedException e) {
+            logger.debug("Fs crawler thread has been interrupted: [{}]", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                addFilesRecursively(path, fsSettings.getFs().getUrl(), scanDate);
+    @Override
+    boolean isWatching() {
+        return watcher != null;
+    }
+
+    private void startWatcher() {
+        try {
+            watcher = buildWatcher();
+            if (watcher == null) {
+                logger.warn("Watching for changes is not supported by [{}]. We will only scan every [{}].",
+                        getClass().getSimpleName(), fsSettings.getFs().getUpdateRate());
+            } else {
+                logger.info("Watching [{}] directories for changes. Next full scan in [{}].",
+                        watcher.getWatchedDirectories(), fsSettings.getFs().getUpdateRate());
+            }
+        } catch (IOException e) {
+            logger.warn("Can not watch [{}] for changes: [{}]. We will only scan every [{}].",
+                    fsSettings.getFs().getUrl(), e.getMessage(), fsSettings.getFs().getUpdateRate());
+        }
+    }
 
-                updateFsJob(fsSettings.getName(), scanDatenew);
+    private void closeWatcher() {
+        FileWatcher currentWatcher = watcher;
+        watcher = null;
+        if (currentWatcher != null) {
+            try {
+                currentWatcher.close();
+            } catch (IOException e) {
+                logger.warn("Error while closing the watcher: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Renew our leases in the background, including while we are waiting for the next run,
+     * so the other nodes don't take our shards
+     */
+    private void startLeaseRenewal() {
+        if (leaseRenewal != null) {
+            return;
+        }
+        leaseRenewal = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fs-crawler-lease-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(coordinator.getLeaseDuration() / 3, 1);
+        leaseRenewal.scheduleAtFixedRate(() -> {
+            try {
+                coordinator.renew();
             } catch (Exception e) {
-                logger.warn("Error while crawling {}: {}", fsSettings.getFs().getUrl(), e.getMessage() == null ? e.getClass().getName() : e.getMessage());
-                if (logger.isDebugEnabled()) {
-                    logger.warn("Full stacktrace", e);
-                }
-            } finally {
-                if (path != null) {
-                    try {
-                        path.close();
-                    } catch (Exception e) {
-                        logger.warn("Error while closing the connection: {}", e.getMessage());
-                        if (logger.isDebugEnabled()) {
-                            logger.warn("Full stacktrace", e);
-                        }
-                    }
+                logger.warn("Can not renew the leases of node [{}]: {}", coordinator.getNode(), e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop renewing our leases and give them back so the other nodes can take our shards right away
+     */
+    private synchronized void stopLeaseRenewal() {
+        if (leaseRenewal == null) {
+            return;
+        }
+        leaseRenewal.shutdownNow();
+        leaseRenewal = null;
+        try {
+            coordinator.release();
+        } catch (Exception e) {
+            logger.warn("Can not release the leases of node [{}]: {}", coordinator.getNode(), e.getMessage());
+        }
+    }
+
+    /**
+     * Forget what the inventory knows about the shards we just took: another node might have crawled them since
+     */
+    private void forgetShards(Set<Integer> shards) {
+        FsInventory.Directory root = inventory.getDirectory(fsSettings.getFs().getUrl());
+        if (root == null) {
+            return;
+        }
+        root.getFiles().keySet().removeIf(name -> shards.contains(coordinator.shardOf(name)));
+        for (String folder : new ArrayList<>(root.getFolders())) {
+            if (shards.contains(coordinator.shardOf(folder))) {
+                inventory.removeFolder(fsSettings.getFs().getUrl(), folder);
+            }
+        }
+        // The root directory can not be skipped as we need to find the folders of the new shards
+        root.setLastModified(FsInventory.FileEntry.UNKNOWN);
+    }
+
+    /**
+     * Check if a file or a directory is crawled by this node
+     * @param dir   the parent directory
+     * @param name  the name or the full path of the file or directory
+     * @return false if the crawl is sharded and the entry belongs to a shard of another node
+     */
+    private boolean isOwned(String dir, String name) {
+        return coordinator == null || !dir.equals(fsSettings.getFs().getUrl()) || coordinator.owns(name);
+    }
+
+    /**
+     * The date of the previous run for a file or a directory. When the crawl is sharded, the top level
+     * entries use the date their shard has been crawled for the last time, whichever node did it.
+     */
+    private LocalDateTime getLastScanDate(String dir, String name, LocalDateTime lastScanDate) {
+        if (coordinator == null || !dir.equals(fsSettings.getFs().getUrl())) {
+            return lastScanDate;
+        }
+        LocalDateTime shardScanDate = coordinator.getLastScanDate(name);
+        return shardScanDate == null ? LocalDateTime.MIN : shardScanDate;
+    }
+
+    /**
+     * Check if we should watch a directory. We apply the same rules as the full scan.
+     * @param dir   the directory
+     * @return true if the directory is indexable and does not contain a .fscrawlerignore file
+     */
+    boolean isWatchableDirectory(Path dir) {
+        String dirname = toCrawlerPath(dir);
+        if (!dirname.equals(fsSettings.getFs().getUrl())) {
+            String virtualFileName = computeVirtualPathName(fsSettings.getFs().getUrl(), dirname);
+            if (!isIndexable(true, virtualFileName, includes, excludes)) {
+                return false;
+            }
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            for (Path child : children) {
+                if (child.getFileName().toString().equalsIgnoreCase(FSCRAWLER_IGNORE_FILENAME)) {
+                    logger.debug("We found a [{}] file in folder: [{}]. We don't watch it.", FSCRAWLER_IGNORE_FILENAME, dir);
+                    return false;
                 }
             }
+        } catch (IOException e) {
+            logger.debug("Can not list [{}]: {}", dir, e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The path as the crawler knows it: the root dir is fs.url as defined by the user
+     */
+    private String toCrawlerPath(Path path) {
+        if (path.equals(Paths.get(fsSettings.getFs().getUrl()))) {
+            return fsSettings.getFs().getUrl();
+        }
+        return path.toString();
+    }
 
-            if (loop > 0 && run >= loop) {
-                logger.info("FS crawler is stopping after {} run{}", run, run > 1 ? "s" : "");
-                closed = true;
+    /**
+     * Index the changes reported by the watcher
+     * @param duration  how long we should watch before running a full scan, in milliseconds
+     */
+    private void watchForChanges(long duration) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+        while (!closed) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            FileWatcher currentWatcher = watcher;
+            if (remaining <= 0 || currentWatcher == null) {
                 return;
             }
 
+            FileWatcher.Changes changes;
             try {
-                logger.debug("Fs crawler is going to sleep for {}", fsSettings.getFs().getUpdateRate());
+                changes = currentWatcher.poll(remaining, fsSettings.getFs().getWatchDelay().millis());
+            } catch (ClosedWatchServiceException e) {
+                logger.debug("The watcher has been closed");
+                return;
+            }
 
-                // The problem here is that there is no wait to close the thread while we are sleeping.
-                // Which leads to Zombie threads in our tests
+            if (changes.isOverflow()) {
+                logger.info("Some changes might have been lost. Running a full scan of [{}].", fsSettings.getFs().getUrl());
+                return;
+            }
+            if (!changes.isEmpty()) {
+                logger.debug("Indexing changes: {}", changes);
+                try {
+                    indexChanges(changes);
+                } catch (Exception e) {
+                    logger.warn("Error while indexing changes from {}: {}", fsSettings.getFs().getUrl(),
+                            e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+                    if (logger.isDebugEnabled()) {
+                        logger.warn("Full stacktrace", e);
+                    }
+                }
+            }
+        }
+    }
 
-                if (!closed) {
-                    synchronized (semaphore) {
-                        semaphore.wait(fsSettings.getFs().getUpdateRate().millis());
-                        logger.debug("Fs crawler is now waking up again...");
+    private void indexChanges(FileWatcher.Changes changes) throws Exception {
+        FileAbstractor<?> path = buildFileAbstractor();
+        path.open();
+        try {
+            stats = new ScanStatistic(fsSettings.getFs().getUrl());
+            stats.setRootPathId(signTool.hash(fsSettings.getFs().getUrl()));
+
+            if (fsSettings.getFs().isIndexFolders()) {
+                for (Path dir : changes.getCreatedDirectories()) {
+                    indexDirectory(toCrawlerPath(dir));
+                }
+            }
+
+            for (Path file : changes.getChangedFiles()) {
+                if (closed) {
+                    return;
+                }
+                String filepath = toCrawlerPath(file.getParent());
+                FileAbstractModel child = path.getFile(filepath, file.getFileName().toString());
+                // The file might have been removed since
+                if (child == null || !child.isFile()) {
+                    continue;
+                }
+                if (child.getName().equalsIgnoreCase(FSCRAWLER_IGNORE_FILENAME)) {
+                    logger.debug("A [{}] file has been added in [{}]. It will be applied on the next full scan.",
+                            FSCRAWLER_IGNORE_FILENAME, filepath);
+                    continue;
+                }
+                String virtualFileName = computeVirtualPathName(stats.getRootPath(), computeRealPathName(filepath, child.getName()));
+                if (!isIndexable(false, virtualFileName, includes, excludes)) {
+                    logger.debug("  - ignored file: {}", virtualFileName);
+                } else if (!isFileSizeUnderLimit(fsSettings.getFs().getIgnoreAbove(), child.getSize())) {
+                    logger.debug("file [{}] has a size [{}] above the limit [{}]. We skip it.", child.getName(),
+                            new ByteSizeValue(child.getSize()), fsSettings.getFs().getIgnoreAbove());
+                } else {
+                    logger.debug("  - changed file: {}", virtualFileName);
+                    readAndIndexFile(path, child, filepath);
+                }
+            }
+
+            if (fsSettings.getFs().isRemoveDeleted()) {
+                for (Path file : changes.getDeletedFiles()) {
+                    String filepath = toCrawlerPath(file.getParent());
+                    String filename = file.getFileName().toString();
+                    String virtualFileName = computeVirtualPathName(stats.getRootPath(), computeRealPathName(filepath, filename));
+                    if (isIndexable(false, virtualFileName, includes, excludes)) {
+                        logger.debug("  - removed file: {}", virtualFileName);
+                        esDelete(documentService, fsSettings.getElasticsearch().getIndex(), generateIdFromFilename(filename, filepath));
+                        stats.removeFile();
+                        if (inventory != null) {
+                            inventory.removeFile(filepath, filename);
+                        }
+                    }
+                }
+
+                for (Path dir : changes.getDeletedDirectories()) {
+                    String dirname = toCrawlerPath(dir);
+                    logger.debug("  - removed directory: {}", dirname);
+                    // The watcher only reports the top of a removed tree, so we remove its subdirectories as well,
+                    // even when the folders are not indexed
+                    removeEsDirectoryRecursively(dirname);
+                    if (inventory != null) {
+                        inventory.removeFolder(toCrawlerPath(dir.getParent()), dirname);
                     }
                 }
-            } catch (InterruptedException e) {
-                logger.debug("Fs crawler thread has been interrupted: [{}]", e.getMessage());
-                Thread.currentThread().interrupt();
             }
+            logger.debug("Changes indexed: [{}] files indexed, [{}] files removed", stats.getNbDocScan(), stats.getNbDocDeleted());
+        } finally {
+            path.close();
         }
     }
 
-    private LocalDateTime getLastDateFromMeta(String jobName) throws IOException {
+    /**
+     * Read the inventory of the job. If we don't have one yet, it will be rebuilt from the index
+     * while we walk the directories.
+     */
+    private FsInventory loadInventory(String jobName) throws IOException {
         try {
-            FsJob fsJob = fsJobFileHandler.read(jobName);
-            return fsJob.getLastrun();
+            FsInventory fsInventory = fsInventoryFileHandler.read(jobName);
+            logger.debug("Inventory loaded: {}", fsInventory);
+            return fsInventory;
+        } catch (NoSuchFileException e) {
+            logger.debug("No inventory found for [{}]. We will build it from the index.", jobName);
+            return new FsInventory();
+        }
+    }
+
+    /**
+     * Get what we have indexed in a directory. When the inventory does not know the directory yet,
+     * we ask the index.
+     */
+    private FsInventory.Directory inventoryDirectory(String path) throws Exception {
+        FsInventory.Directory directory = inventory.getDirectory(path);
+        if (directory != null) {
+            return directory;
+        }
+        FsInventory.Directory loaded = new FsInventory.Directory();
+        for (String file : managementService.getFileDirectory(path)) {
+            // We don't know the size and the date of the files indexed before we had an inventory
+            loaded.getFiles().put(file, new FsInventory.FileEntry());
+        }
+        if (fsSettings.getFs().isIndexFolders()) {
+            for (String folder : managementService.getFolderDirectory(path)) {
+                loaded.getFolders().add(folder);
+            }
+        }
+        return inventory.getDirectory(path, p -> loaded);
+    }
+
+    /**
+     * Check if a file has been modified since we indexed it
+     */
+    private boolean isModified(FileAbstractModel file, FsInventory.FileEntry entry, LocalDateTime lastScanDate) {
+        if (entry == null) {
+            // We never indexed this file, even if it has an old date (moved or extracted from an archive)
+            return true;
+        }
+        if (entry.hasMetadata()) {
+            return entry.getSize() != file.getSize() || entry.getLastModified() != toEpochMilli(file.getLastModifiedDate());
+        }
+        return isModified(file, lastScanDate);
+    }
+
+    private static boolean isModified(FileAbstractModel file, LocalDateTime lastScanDate) {
+        return file.getLastModifiedDate().isAfter(lastScanDate) ||
+                (file.getCreationDate() != null && file.getCreationDate().isAfter(lastScanDate));
+    }
+
+    private static long toEpochMilli(LocalDateTime date) {
+        return date == null ? FsInventory.FileEntry.UNKNOWN : date.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private FsJob getFsJob(String jobName) throws IOException {
+        try {
+            return fsJobFileHandler.read(jobName);
         } catch (NoSuchFileException e) {
             // The file does not exist yet
         }
@@ -209,20 +703,199 @@ public abstract class FsParserAbstract extends FsParser {
      * Update the job metadata
      * @param jobName job name
      * @param scanDate last date we scan the dirs
+     * @param fullScan true if we walked all the dirs
+     * @param lastFullScan last date we walked all the dirs before this run
      * @throws Exception In case of error
      */
-    private void updateFsJob(String jobName, LocalDateTime scanDate) throws Exception {
+    private void updateFsJob(String jobName, LocalDateTime scanDate, boolean fullScan, LocalDateTime lastFullScan)
+            throws Exception {
         // We need to round that latest date to the lower second and
         // remove 2 seconds.
         // See #82: https://github.com/dadoonet/fscrawler/issues/82
         scanDate = scanDate.minus(2, ChronoUnit.SECONDS);
-        FsJob fsJob = FsJob.builder()
+        FsJob.Builder fsJob = FsJob.builder()
                 .setName(jobName)
                 .setLastrun(scanDate)
+                .setLastFullScan(fullScan ? scanDate : lastFullScan)
                 .setIndexed(stats.getNbDocScan())
                 .setDeleted(stats.getNbDocDeleted())
-                .build();
-        fsJobFileHandler.write(jobName, fsJob);
+                .setTimedOut(stats.getNbDocTimedOut());
+        if (coordinator != null) {
+            fsJob.setNode(coordinator.getNode()).setShards(coordinator.getOwnedShards());
+        }
+        fsJobFileHandler.write(jobName, fsJob.build());
+    }
+
+    /**
+     * Check if we can index only the changes reported by the server instead of walking all the directories.
+     * We still walk all the directories from time to time, as this is the only way to detect the removed files.
+     */
+    private boolean isIncrementalScan(LocalDateTime scanDate, LocalDateTime lastFullScan) {
+        Server server = fsSettings.getServer();
+        if (server == null || !Server.CHANGE_DETECTION.FIND.equals(server.getChangeDetection())) {
+            return false;
+        }
+        if (scanDate == LocalDateTime.MIN || lastFullScan == null) {
+            logger.debug("No full scan has been done yet");
+            return false;
+        }
+        if (coordinator != null) {
+            logger.debug("The shards of the root directory are crawled with a full scan");
+            return false;
+        }
+        if (checkpoint != null && (!checkpoint.getCompleted().isEmpty() || !checkpoint.getPending().isEmpty())) {
+            logger.debug("We need to finish the full scan which has been interrupted");
+            return false;
+        }
+        if (server.getFullScanInterval() != null &&
+                lastFullScan.plus(server.getFullScanInterval().millis(), ChronoUnit.MILLIS).isBefore(LocalDateTime.now())) {
+            logger.debug("Last full scan was at [{}]. Running a new one.", lastFullScan);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Index the files the server reports as changed since the last run
+     * @return false if the server could not give us the changes, so we need to walk all the directories
+     */
+    private boolean indexChangedFiles(FileAbstractor<?> path, LocalDateTime lastScanDate) throws Exception {
+        Collection<FileAbstractModel> changes;
+        try {
+            // We always need the ignore files, even the old ones, to know which directories we must skip
+            changes = path.getChangedFiles(fsSettings.getFs().getUrl(), lastScanDate,
+                    Collections.singletonList(FSCRAWLER_IGNORE_FILENAME));
+        } catch (Exception e) {
+            logger.warn("Can not get the changes from the server: {}. Falling back to a full scan.", e.getMessage());
+            if (logger.isDebugEnabled()) {
+                logger.warn("Full stacktrace", e);
+            }
+            return false;
+        }
+        if (changes == null) {
+            logger.warn("The [{}] file abstractor can not get the changes from the server. Falling back to a full scan.",
+                    path.getClass().getSimpleName());
+            return false;
+        }
+        logger.debug("[{}] files and folders changed since [{}]", changes.size(), lastScanDate);
+
+        Set<String> ignoredDirs = new HashSet<>();
+        for (FileAbstractModel change : changes) {
+            if (change.isFile() && change.getName().equalsIgnoreCase(FSCRAWLER_IGNORE_FILENAME)) {
+                logger.debug("We found a [{}] file in folder: [{}]. Let's skip it.", FSCRAWLER_IGNORE_FILENAME, change.getPath());
+                ignoredDirs.add(change.getPath());
+            }
+        }
+
+        // The new directories we crawled entirely, so we don't need to index again what they contain
+        Set<String> crawledDirs = new HashSet<>();
+        for (FileAbstractModel change : changes) {
+            if (closed) {
+                logger.debug("FS crawler thread [{}] is now marked as closed...", fsSettings.getName());
+                break;
+            }
+            String filepath = change.getPath();
+            if (change.getName().equalsIgnoreCase(FSCRAWLER_IGNORE_FILENAME) || !isWithinIndexableDirectory(filepath, ignoredDirs)) {
+                continue;
+            }
+            if (isWithinDirectory(filepath, crawledDirs)) {
+                logger.debug("  - already crawled within: {}", change.getFullpath());
+                continue;
+            }
+
+            String virtualFileName = computeVirtualPathName(stats.getRootPath(), change.getFullpath());
+            if (!isIndexable(change.isDirectory(), virtualFileName, includes, excludes)) {
+                logger.debug("  - ignored file/dir: {}", virtualFileName);
+            } else if (change.isDirectory()) {
+                logger.debug("  - changed folder: {}", virtualFileName);
+                // When a directory is moved into the tree, only its own ctime changes, so find does not report its content
+                boolean known = isKnownDirectory(filepath, change.getFullpath());
+                if (fsSettings.getFs().isIndexFolders()) {
+                    indexDirectory(change.getFullpath());
+                }
+                if (inventory != null) {
+                    inventory.addFolder(filepath, change.getFullpath());
+                }
+                if (!known) {
+                    logger.debug("  - new folder: {}. Crawling all its content.", virtualFileName);
+                    addFilesRecursively(path, change.getFullpath(), LocalDateTime.MIN);
+                    crawledDirs.add(change.getFullpath());
+                }
+            } else if (!isFileSizeUnderLimit(fsSettings.getFs().getIgnoreAbove(), change.getSize())) {
+                logger.debug("file [{}] has a size [{}] above the limit [{}]. We skip it.", change.getName(),
+                        new ByteSizeValue(change.getSize()), fsSettings.getFs().getIgnoreAbove());
+            } else {
+                logger.debug("  - changed file: {}", virtualFileName);
+                submitFile(path, change, filepath);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if we have already indexed a directory, either in the inventory or in the index
+     * @param parent the parent directory
+     * @param dir    the full path of the directory
+     * @return false if we never saw this directory
+     */
+    private boolean isKnownDirectory(String parent, String dir) throws Exception {
+        if (inventory != null) {
+            return inventory.getDirectory(dir) != null || inventoryDirectory(parent).getFolders().contains(dir);
+        }
+        if (fsSettings.getFs().isIndexFolders()) {
+            boolean known = false;
+            // We read all the pages so the search is closed
+            for (String folder : managementService.getFolderDirectory(parent)) {
+                known |= folder.equals(dir);
+            }
+            return known;
+        }
+        // Without the folders, we only know the directories which have files in the index
+        return managementService.getFileDirectory(dir).iterator().hasNext();
+    }
+
+    /**
+     * Check if dir is one of the directories or is below one of them
+     */
+    private boolean isWithinDirectory(String dir, Set<String> dirs) {
+        if (dirs.isEmpty()) {
+            return false;
+        }
+        while (true) {
+            if (dirs.contains(dir)) {
+                return true;
+            }
+            int index = dir.lastIndexOf(pathSeparator);
+            if (index <= 0) {
+                return false;
+            }
+            dir = dir.substring(0, index);
+        }
+    }
+
+    /**
+     * Check that none of the directories from the root dir to dir is excluded or contains a .fscrawlerignore file
+     */
+    private boolean isWithinIndexableDirectory(String dir, Set<String> ignoredDirs) {
+        String root = fsSettings.getFs().getUrl();
+        while (true) {
+            if (ignoredDirs.contains(dir)) {
+                logger.debug("  - ignored file/dir within: {}", dir);
+                return false;
+            }
+            if (dir.equals(root) || !dir.startsWith(root)) {
+                return true;
+            }
+            if (!isIndexable(true, computeVirtualPathName(stats.getRootPath(), dir), includes, excludes)) {
+                logger.debug("  - ignored file/dir within: {}", dir);
+                return false;
+            }
+            int index = dir.lastIndexOf(pathSeparator);
+            if (index < 0) {
+                return true;
+            }
+            dir = index == 0 ? pathSeparator : dir.substring(0, index);
+        }
     }
 
     private void addFilesRecursively(FileAbstractor<?> path, String filepath, LocalDateTime lastScanDate)
@@ -235,9 +908,244 @@ public abstract class FsParserAbstract extends FsParser {
             return;
         }
 
+        DirectoryContent content = startDirectory(path, filepath, lastScanDate);
+        if (content == null) {
+            return;
+        }
+        for (String subdir : content.subdirs) {
+            addFilesRecursively(path, subdir, getLastScanDate(filepath, subdir, lastScanDate));
+        }
+        completeDirectory(path, filepath, content);
+    }
+
+    /**
+     * Walk the tree using a work-stealing pool: sibling directories are listed and indexed concurrently.
+     * Delete detection for a directory only happens once all its subdirectories have been processed,
+     * as with the sequential walk.
+     */
+    private void addFilesInParallel(FileAbstractor<?> path, String filepath, LocalDateTime lastScanDate, int parallelism)
+            throws Exception {
+        logger.debug("indexing [{}] content with [{}] walker threads", filepath, parallelism);
+        ForkJoinPool pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("fs-crawler-walker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        try {
+            pool.invoke(new DirectoryTask(path, filepath, lastScanDate));
+        } catch (DirectoryTaskException e) {
+            // The pool might have wrapped the original exception again
+            Throwable cause = e;
+            while (cause instanceof DirectoryTaskException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private final FileAbstractor<?> path;
+        private final String filepath;
+        private final LocalDateTime lastScanDate;
+
+        private DirectoryTask(FileAbstractor<?> path, String filepath, LocalDateTime lastScanDate) {
+            this.path = path;
+            this.filepath = filepath;
+            this.lastScanDate = lastScanDate;
+        }
+
+        @Override
+        protected void compute() {
+            logger.debug("indexing [{}] content", filepath);
+
+            if (closed) {
+                logger.debug("FS crawler thread [{}] is now marked as closed...", fsSettings.getName());
+                return;
+            }
+
+            try {
+                DirectoryContent content = startDirectory(path, filepath, lastScanDate);
+                if (content == null) {
+                    return;
+                }
+                List<DirectoryTask> subtasks = new ArrayList<>(content.subdirs.size());
+                for (String subdir : content.subdirs) {
+                    subtasks.add(new DirectoryTask(path, subdir, getLastScanDate(filepath, subdir, lastScanDate)));
+                }
+                invokeAll(subtasks);
+                completeDirectory(path, filepath, content);
+            } catch (DirectoryTaskException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new DirectoryTaskException(e);
+            }
+        }
+    }
+
+    private static class DirectoryTaskException extends RuntimeException {
+        private DirectoryTaskException(Throwable cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Index the content of a directory before we walk its subdirectories
+     * @return null if the directory has been fully crawled before the previous run was interrupted
+     */
+    private DirectoryContent startDirectory(FileAbstractor<?> path, String filepath, LocalDateTime lastScanDate)
+            throws Exception {
+        FsCheckpoint current = checkpoint;
+        if (current == null) {
+            return indexDirectoryContent(path, filepath, lastScanDate);
+        }
+        if (current.isCompleted(filepath)) {
+            logger.debug("[{}] has been crawled before the previous run was interrupted. Skipping it.", filepath);
+            return null;
+        }
+        checkpointLock.readLock().lock();
+        try {
+            DirectoryContent content = indexDirectoryContent(path, filepath, lastScanDate);
+            current.addPending(filepath);
+            return content;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Detect the removed documents once all the subdirectories of a directory have been walked
+     */
+    private void completeDirectory(FileAbstractor<?> path, String filepath, DirectoryContent content) throws Exception {
+        FsCheckpoint current = checkpoint;
+        if (current != null) {
+            checkpointLock.readLock().lock();
+        }
+        try {
+            if (!content.skipped) {
+                removeDeletedDocuments(filepath, content);
+                updateInventory(filepath, content);
+            }
+            // If we have been stopped, some subdirectories might not have been crawled
+            if (current != null && !closed) {
+                current.complete(filepath, content.subdirs);
+            }
+        } finally {
+            if (current != null) {
+                checkpointLock.readLock().unlock();
+            }
+        }
+        if (current != null) {
+            checkpointIfNeeded(path, current);
+        }
+    }
+
+    /**
+     * Read the checkpoint of a previous run which has been interrupted. If we don't have one, we start a new one.
+     */
+    private FsCheckpoint loadCheckpoint(String jobName, LocalDateTime scanDate) throws IOException {
+        try {
+            FsCheckpoint previous = fsCheckpointFileHandler.read(jobName);
+            logger.info("Resuming the crawl started at [{}]: [{}] directories have already been crawled.",
+                    previous.getScanDate(), previous.getCompleted().size() + previous.getPending().size());
+            return previous;
+        } catch (NoSuchFileException e) {
+            logger.debug("No checkpoint found for [{}]. Starting a new crawl.", jobName);
+            return new FsCheckpoint(scanDate);
+        }
+    }
+
+    /**
+     * Write the checkpoint when fs.checkpoint_interval has elapsed. Only one walker writes it while the other
+     * ones wait, and we wait for all the submitted files to be indexed before, so the checkpoint never
+     * covers a file which is not in the index yet.
+     */
+    private void checkpointIfNeeded(FileAbstractor<?> path, FsCheckpoint current) throws Exception {
+        if (closed || System.currentTimeMillis() < nextCheckpoint || !checkpointing.compareAndSet(false, true)) {
+            return;
+        }
+        checkpointLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            long start = System.nanoTime();
+            // We wait for the in-flight files and start again with fresh workers
+            finishFileWorkers();
+            if (pipeline != null) {
+                FsCrawlPipeline<IndexRequest> newPipeline = new FsCrawlPipeline<>(path, fsSettings.getFs(), fileIndexer);
+                newPipeline.start();
+                pipeline = newPipeline;
+            }
+            if (perFileExecutor != null) {
+                perFileExecutor = new FsPerFileExecutor<>(path, fsSettings.getFs(), fileIndexer);
+            }
+            documentService.flush();
+            managementService.flush();
+            waitForDeleteTasks();
+            if (inventory != null) {
+                fsInventoryFileHandler.write(fsSettings.getName(), inventory);
+            }
+            fsCheckpointFileHandler.write(fsSettings.getName(), current);
+            logger.debug("Checkpoint written in [{}] ms: [{}]", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), current);
+        } finally {
+            nextCheckpoint = System.currentTimeMillis() + fsSettings.getFs().getCheckpointInterval().millis();
+            checkpointLock.writeLock().unlock();
+            checkpointing.set(false);
+        }
+    }
+
+    /**
+     * What we found in a directory. We only keep the names we got from the listing, hashed, so
+     * checking the documents we have in the index against them does not depend on the size of the directory.
+     */
+    static class DirectoryContent {
+        // Names of the indexable files
+        final Set<String> files = new HashSet<>();
+        // Full paths of the subdirectories we need to crawl. They are also the indexable folders if we index folders.
+        final Set<String> subdirs = new LinkedHashSet<>();
+        // True if the directory did not change since the last run, so we did not list it
+        private boolean skipped;
+        // The state of the directory before we listed it, if we can rely on it on the next run
+        private DirectoryState state;
+    }
+
+    /**
+     * Index the files and folders which are directly within a directory
+     * @return the content of the directory we need for the rest of the walk and for the delete detection
+     */
+    private DirectoryContent indexDirectoryContent(FileAbstractor<?> path, String filepath, LocalDateTime lastScanDate)
+            throws Exception {
+        DirectoryContent content = new DirectoryContent();
+        // The files have been indexed before the previous run was interrupted
+        final boolean indexed = checkpoint != null && checkpoint.isPending(filepath);
+        final FsInventory.Directory known = inventory == null ? null : inventoryDirectory(filepath);
+
+        if (known != null && fsSettings.getFs().isSkipUnchangedFolders()) {
+            DirectoryState state = path.getDirectoryState(filepath);
+            if (state != null) {
+                if (isUnchanged(known, state)) {
+                    logger.debug("[{}] did not change since the last run. Skipping it.", filepath);
+                    content.skipped = true;
+                    for (String folder : known.getFolders()) {
+                        if (isOwned(filepath, folder)) {
+                            content.subdirs.add(folder);
+                        }
+                    }
+                    return content;
+                }
+                // The directory could still change within the same tick of a coarse clock, so we don't trust too recent dates
+                if (state.getLastModifiedDate().isBefore(LocalDateTime.now().minusSeconds(2))) {
+                    content.state = state;
+                }
+            }
+        }
+
         final Collection<FileAbstractModel> children = path.getFiles(filepath);
-        Collection<String> fsFiles = new ArrayList<>();
-        Collection<String> fsFolders = new ArrayList<>();
 
         if (children != null) {
             boolean ignoreFolder = false;
@@ -255,53 +1163,46 @@ public abstract class FsParserAbstract extends FsParser {
                 for (FileAbstractModel child : children) {
                     logger.trace("FileAbstractModel = {}", child);
                     String filename = child.getName();
+                    if (!isOwned(filepath, filename)) {
+                        logger.debug("  - crawled by another node: {}", filename);
+                        continue;
+                    }
 
                     String virtualFileName = computeVirtualPathName(stats.getRootPath(), computeRealPathName(filepath, filename));
 
                     // https://github.com/dadoonet/fscrawler/issues/1 : Filter documents
-                    boolean isIndexable = isIndexable(child.isDirectory(), virtualFileName, fsSettings.getFs().getIncludes(), fsSettings.getFs().getExcludes());
+                    boolean isIndexable = isIndexable(child.isDirectory(), virtualFileName, includes, excludes);
 
                     logger.debug("[{}] can be indexed: [{}]", virtualFileName, isIndexable);
                     if (isIndexable) {
                         if (child.isFile()) {
                             logger.debug("  - file: {}", virtualFileName);
-                            fsFiles.add(filename);
-                            if (child.getLastModifiedDate().isAfter(lastScanDate) ||
-                                    (child.getCreationDate() != null && child.getCreationDate().isAfter(lastScanDate))) {
-                                if (isFileSizeUnderLimit(fsSettings.getFs().getIgnoreAbove(), child.getSize())) {
-                                    InputStream inputStream = null;
-                                    try {
-                                        if (fsSettings.getFs().isIndexContent() || fsSettings.getFs().isStoreSource()) {
-                                            inputStream = path.getInputStream(child);
-                                        }
-                                        indexFile(child, stats, filepath, inputStream, child.getSize());
-                                        stats.addFile();
-                                    } catch (Exception e) {
-                                        if (fsSettings.getFs().isContinueOnError()) {
-                                            logger.warn("Unable to index {}, skipping...: {}", filename, e.getMessage());
-                                        } else {
-                                            throw e;
-                                        }
-                                    } finally {
-                                        if (inputStream != null) {
-                                            path.closeInputStream(inputStream);
-                                        }
-                                    }
-                                } else {
+                            content.files.add(filename);
+                            LocalDateTime fileScanDate = getLastScanDate(filepath, filename, lastScanDate);
+                            boolean modified = !indexed && (known == null ? isModified(child, fileScanDate) :
+                                    isModified(child, known.getFiles().get(filename), fileScanDate));
+                            if (modified) {
+                                if (!isFileSizeUnderLimit(fsSettings.getFs().getIgnoreAbove(), child.getSize())) {
                                     logger.debug("file [{}] has a size [{}] above the limit [{}]. We skip it.", filename,
                                             new ByteSizeValue(child.getSize()), fsSettings.getFs().getIgnoreAbove());
+                                } else {
+                                    submitFile(path, child, filepath);
                                 }
+                            } else if (indexed) {
+                                logger.debug("    - already indexed before the previous run was interrupted");
                             } else {
                                 logger.debug("    - not modified: creation date {} , file date {}, last scan date {}",
-                                        child.getCreationDate(), child.getLastModifiedDate(), lastScanDate);
+                                        child.getCreationDate(), child.getLastModifiedDate(), fileScanDate);
                             }
                         } else if (child.isDirectory()) {
                             logger.debug("  - folder: {}", filename);
                             if (fsSettings.getFs().isIndexFolders()) {
-                                fsFolders.add(child.getFullpath());
                                 indexDirectory(child.getFullpath());
                             }
-                            addFilesRecursively(path, child.getFullpath(), lastScanDate);
+                            content.subdirs.add(child.getFullpath());
+                            if (inventory != null) {
+                                inventory.addFolder(filepath, child.getFullpath());
+                            }
                         } else {
                             logger.debug("  - other: {}", filename);
                             logger.debug("Not a file nor a dir. Skipping {}", child.getFullpath());
@@ -313,39 +1214,102 @@ public abstract class FsParserAbstract extends FsParser {
             }
         }
 
-        // TODO Optimize
-        // if (path.isDirectory() && path.lastModified() > lastScanDate
-        // && lastScanDate != 0) {
+        return content;
+    }
+
+    /**
+     * Check if a directory is in the same state as when we listed it during a previous run
+     */
+    private static boolean isUnchanged(FsInventory.Directory known, DirectoryState state) {
+        return known.getLastModified() != FsInventory.FileEntry.UNKNOWN &&
+                known.getLastModified() == toEpochMilli(state.getLastModifiedDate()) &&
+                known.getLinks() == state.getLinks();
+    }
 
+    /**
+     * Forget the subdirectories which are not there anymore and remember the state of the directory
+     * once it has been fully crawled
+     */
+    private void updateInventory(String filepath, DirectoryContent content) {
+        if (inventory == null || closed) {
+            return;
+        }
+        FsInventory.Directory directory = inventory.getDirectory(filepath, p -> new FsInventory.Directory());
+        // The inventory can be modified while we iterate over it
+        for (String folder : directory.getFolders()) {
+            if (!content.subdirs.contains(folder)) {
+                inventory.removeFolder(filepath, folder);
+            }
+        }
+        if (content.state != null) {
+            directory.setLastModified(toEpochMilli(content.state.getLastModifiedDate()));
+            directory.setLinks(content.state.getLinks());
+        }
+    }
+
+    /**
+     * Read a file and index it from the current thread
+     */
+    private void readAndIndexFile(FileAbstractor<?> path, FileAbstractModel file, String filepath) throws Exception {
+        InputStream inputStream = null;
+        try {
+            if (fsSettings.getFs().isIndexContent() || fsSettings.getFs().isStoreSource() || isMagicBytesDetection()) {
+                inputStream = path.getInputStream(file);
+            }
+            indexFile(file, stats, filepath, inputStream, file.getSize());
+            stats.addFile();
+        } catch (Exception e) {
+            if (fsSettings.getFs().isContinueOnError()) {
+                logger.warn("Unable to index {}, skipping...: {}", file.getName(), e.getMessage());
+            } else {
+                throw e;
+            }
+        } finally {
+            if (inputStream != null) {
+                path.closeInputStream(inputStream);
+            }
+        }
+    }
+
+    /**
+     * Remove from the index the files and folders which are not anymore within a directory
+     */
+    void removeDeletedDocuments(String filepath, DirectoryContent content) throws Exception {
         if (fsSettings.getFs().isRemoveDeleted()) {
             logger.debug("Looking for removed files in [{}]...", filepath);
-            Collection<String> esFiles = getFileDirectory(filepath);
+            Iterable<String> esFiles = getFileDirectory(filepath);
 
             // for the delete files
             for (String esfile : esFiles) {
                 logger.trace("Checking file [{}]", esfile);
 
                 String virtualFileName = computeVirtualPathName(stats.getRootPath(), computeRealPathName(filepath, esfile));
-                if (isIndexable(false, virtualFileName, fsSettings.getFs().getIncludes(), fsSettings.getFs().getExcludes())
-                        && !fsFiles.contains(esfile)) {
+                if (isIndexable(false, virtualFileName, includes, excludes) && isOwned(filepath, esfile)
+                        && !content.files.contains(esfile)) {
                     logger.trace("Removing file [{}] in elasticsearch/workplace", esfile);
                     esDelete(documentService, fsSettings.getElasticsearch().getIndex(), generateIdFromFilename(esfile, filepath));
                     stats.removeFile();
+                    if (inventory != null) {
+                        inventory.removeFile(filepath, esfile);
+                    }
                 }
             }
 
             if (fsSettings.getFs().isIndexFolders()) {
                 logger.debug("Looking for removed directories in [{}]...", filepath);
-                Collection<String> esFolders = getFolderDirectory(filepath);
+                Iterable<String> esFolders = getFolderDirectory(filepath);
 
                 // for the delete folder
                 for (String esfolder : esFolders) {
                     String virtualFileName = computeVirtualPathName(stats.getRootPath(), computeRealPathName(filepath, esfolder));
-                    if (isIndexable(true, virtualFileName, fsSettings.getFs().getIncludes(), fsSettings.getFs().getExcludes())) {
+                    if (isIndexable(true, virtualFileName, includes, excludes) && isOwned(filepath, esfolder)) {
                         logger.trace("Checking directory [{}]", esfolder);
-                        if (!fsFolders.contains(esfolder)) {
+                        if (!content.subdirs.contains(esfolder)) {
                             logger.trace("Removing recursively directory [{}] in elasticsearch", esfolder);
                             removeEsDirectoryRecursively(esfolder);
+                            if (inventory != null) {
+                                inventory.removeFolder(filepath, esfolder);
+                            }
                         }
                     }
                 }
@@ -353,19 +1317,26 @@ public abstract class FsParserAbstract extends FsParser {
         }
     }
 
-    private Collection<String> getFileDirectory(String path)
+    private Iterable<String> getFileDirectory(String path)
             throws Exception {
         // If the crawler is being closed, we return
         if (closed) {
-            return new ArrayList<>();
+            return Collections.emptyList();
+        }
+        if (inventory != null) {
+            // The inventory can be modified while we iterate over it, so we don't need to copy it
+            return inventoryDirectory(path).getFiles().keySet();
         }
         return managementService.getFileDirectory(path);
     }
 
-    private Collection<String> getFolderDirectory(String path) throws Exception {
+    private Iterable<String> getFolderDirectory(String path) throws Exception {
         // If the crawler is being closed, we return
         if (closed) {
-            return new ArrayList<>();
+            return Collections.emptyList();
+        }
+        if (inventory != null) {
+            return inventoryDirectory(path).getFolders();
         }
         return managementService.getFolderDirectory(path);
     }
@@ -375,6 +1346,143 @@ public abstract class FsParserAbstract extends FsParser {
      */
     private void indexFile(FileAbstractModel fileAbstractModel, ScanStatistic stats, String dirname, InputStream inputStream,
                            long filesize) throws Exception {
+        IndexRequest request = prepareIndexRequest(fileAbstractModel, stats, dirname, inputStream, filesize);
+        if (request != null) {
+            sendIndexRequest(request);
+        }
+    }
+
+    /**
+     * A document which is ready to be sent to the document service, either as a Doc or as a raw json
+     */
+    private static class IndexRequest {
+        private final String id;
+        private final String virtualPath;
+        private final String message;
+        private Doc doc;
+        private String json;
+
+        private IndexRequest(String id, String virtualPath, String message) {
+            this.id = id;
+            this.virtualPath = virtualPath;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Start the pipeline or the per file executor, when they are enabled, so the walker threads can hand the
+     * files over to them
+     */
+    private void startFileWorkers(FileAbstractor<?> path) {
+        if (fsSettings.getFs().getPipeline().isEnabled()) {
+            if (path.getMaxConcurrency() > 1) {
+                FsCrawlPipeline<IndexRequest> newPipeline = new FsCrawlPipeline<>(path, fsSettings.getFs(), fileIndexer);
+                newPipeline.start();
+                pipeline = newPipeline;
+            } else {
+                logger.warn("The pipeline mode can not be used with the [{}] file abstractor which supports only one connection. " +
+                        "Files will be indexed by the walker thread.", path.getClass().getSimpleName());
+            }
+        }
+
+        if (fsSettings.getFs().isThreadPerFile()) {
+            if (pipeline == null) {
+                perFileExecutor = new FsPerFileExecutor<>(path, fsSettings.getFs(), fileIndexer);
+            } else {
+                logger.warn("thread_per_file can not be used with the pipeline mode. Ignoring it.");
+            }
+        }
+    }
+
+    /**
+     * Index a file: through the pipeline or the per file executor if any, or right away by the walker thread
+     */
+    private void submitFile(FileAbstractor<?> path, FileAbstractModel file, String filepath) throws Exception {
+        FsCrawlPipeline<IndexRequest> currentPipeline = pipeline;
+        FsPerFileExecutor<IndexRequest> currentExecutor = perFileExecutor;
+        if (currentPipeline != null) {
+            // The file will be read, parsed and indexed by the pipeline stages
+            currentPipeline.submit(file, filepath);
+        } else if (currentExecutor != null) {
+            // The file will be read and parsed in its own thread
+            currentExecutor.submit(file, filepath);
+        } else {
+            readAndIndexFile(path, file, filepath);
+        }
+    }
+
+    /**
+     * Wait for the files handed over to the pipeline or to the per file executor
+     */
+    private void finishFileWorkers() throws Exception {
+        FsCrawlPipeline<IndexRequest> currentPipeline = pipeline;
+        if (currentPipeline != null) {
+            currentPipeline.finish();
+        }
+        FsPerFileExecutor<IndexRequest> currentExecutor = perFileExecutor;
+        if (currentExecutor != null) {
+            currentExecutor.finish();
+        }
+    }
+
+    /**
+     * Stop the files handed over to the pipeline or to the per file executor
+     */
+    private void abortFileWorkers() {
+        FsCrawlPipeline<IndexRequest> currentPipeline = pipeline;
+        if (currentPipeline != null) {
+            currentPipeline.abort();
+        }
+        FsPerFileExecutor<IndexRequest> currentExecutor = perFileExecutor;
+        if (currentExecutor != null) {
+            currentExecutor.abort();
+        }
+    }
+
+    /**
+     * Gives the crawl pipeline and the per file executor access to the parsing and the sending of the documents
+     */
+    private final FsFileIndexer<IndexRequest> fileIndexer = new FsFileIndexer<IndexRequest>() {
+        @Override
+        public IndexRequest parse(FileAbstractModel file, String dirname, InputStream inputStream) throws Exception {
+            IndexRequest request = prepareIndexRequest(file, stats, dirname, inputStream, file.getSize());
+            stats.addFile();
+            return request;
+        }
+
+        @Override
+        public void send(IndexRequest request) {
+            sendIndexRequest(request);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    };
+
+    /**
+     * Read and parse a file and record it in the inventory
+     * @return the document to index or null if the document should not be indexed
+     */
+    private IndexRequest prepareIndexRequest(FileAbstractModel fileAbstractModel, ScanStatistic stats, String dirname,
+                                             InputStream inputStream, long filesize) throws Exception {
+        IndexRequest request = buildIndexRequest(fileAbstractModel, stats, dirname, inputStream, filesize);
+        if (inventory != null) {
+            // We also record the files which are filtered out, so we don't parse them again until they change
+            String checksum = request != null && request.doc != null ? request.doc.getFile().getChecksum() : null;
+            inventory.addFile(dirname, fileAbstractModel.getName(), new FsInventory.FileEntry(fileAbstractModel.getSize(),
+                    toEpochMilli(fileAbstractModel.getLastModifiedDate()), checksum));
+        }
+        return request;
+    }
+
+    /**
+     * Read and parse a file
+     * @return the document to index or null if the document should not be indexed
+     */
+    private IndexRequest buildIndexRequest(FileAbstractModel fileAbstractModel, ScanStatistic stats, String dirname,
+                                           InputStream inputStream, long filesize) throws Exception {
         final String filename = fileAbstractModel.getName();
         final LocalDateTime created = fileAbstractModel.getCreationDate();
         final LocalDateTime lastModified = fileAbstractModel.getLastModifiedDate();
@@ -384,6 +1492,7 @@ public abstract class FsParserAbstract extends FsParser {
 
         logger.debug("fetching content from [{}],[{}]", dirname, filename);
         String fullFilename = computeRealPathName(dirname, filename);
+        String virtualPath = computeVirtualPathName(stats.getRootPath(), fullFilename);
 
         // Create the Doc object (only needed when we have add_as_inner_object: true (default) or when we don't index json or xml)
         String id = generateIdFromFilename(filename, dirname);
@@ -409,9 +1518,9 @@ public abstract class FsParserAbstract extends FsParser {
 
             // Path
             // Encoded version of the dir this file belongs to
-            doc.getPath().setRoot(SignTool.sign(dirname));
+            doc.getPath().setRoot(signTool.hashDirectory(dirname));
             // The virtual URL (not including the initial root dir)
-            doc.getPath().setVirtual(computeVirtualPathName(stats.getRootPath(), fullFilename));
+            doc.getPath().setVirtual(virtualPath);
             // The real and complete filename
             doc.getPath().setReal(fullFilename);
             // Path
@@ -428,7 +1537,12 @@ public abstract class FsParserAbstract extends FsParser {
             // Attributes
 
             // If needed, we generate the content in addition to metadata
-            if (fsSettings.getFs().isJsonSupport()) {
+            if (fsSettings.getFs().isMetadataOnly()) {
+                // We never parse the file. At most, we read its first bytes to find its content type.
+                if (!Fs.CONTENT_TYPE_DETECTION.NONE.equals(fsSettings.getFs().getContentTypeDetection())) {
+                    doc.getFile().setContentType(ContentTypeDetector.detect(filename, inputStream));
+                }
+            } else if (fsSettings.getFs().isJsonSupport()) {
                 // https://github.com/dadoonet/fscrawler/issues/5 : Support JSon files
                 doc.setObject(asMap(inputStream));
             } else if (fsSettings.getFs().isXmlSupport()) {
@@ -436,68 +1550,75 @@ public abstract class FsParserAbstract extends FsParser {
                 doc.setObject(XmlDocParser.generateMap(inputStream));
             } else {
                 // Extracting content with Tika
-                TikaDocParser.generate(fsSettings, inputStream, filename, fullFilename, doc, messageDigest, filesize);
+                TikaDocParser.generate(fsSettings, inputStream, filename, fullFilename, doc, messageDigest.get(), filesize);
+                if (File.EXTRACTION_STATUS.TIMEOUT.equals(doc.getFile().getExtractionStatus())) {
+                    stats.timeoutFile();
+                }
             }
 
             // We index the data structure
             if (isIndexable(doc.getContent(), fsSettings.getFs().getFilters())) {
-                if (!closed) {
-                    FSCrawlerLogger.documentDebug(id,
-                            computeVirtualPathName(stats.getRootPath(), fullFilename),
-                            "Indexing content");
-                    documentService.index(
-                            fsSettings.getElasticsearch().getIndex(),
-                            id,
-                            doc,
-                            fsSettings.getElasticsearch().getPipeline());
-                } else {
-                    logger.warn("trying to add new file while closing crawler. Document [{}]/[{}] has been ignored",
-                            fsSettings.getElasticsearch().getIndex(), id);
-                }
+                IndexRequest request = new IndexRequest(id, virtualPath, "Indexing content");
+                request.doc = doc;
+                return request;
             } else {
                 logger.debug("We ignore file [{}] because it does not match all the patterns {}", filename,
                         fsSettings.getFs().getFilters());
             }
         } else {
             if (fsSettings.getFs().isJsonSupport()) {
-                FSCrawlerLogger.documentDebug(generateIdFromFilename(filename, dirname),
-                        computeVirtualPathName(stats.getRootPath(), fullFilename),
-                        "Indexing json content");
                 // We index the json content directly
-                if (!closed) {
-                    documentService.indexRawJson(
-                            fsSettings.getElasticsearch().getIndex(),
-                            id,
-                            read(inputStream),
-                            fsSettings.getElasticsearch().getPipeline());
-                } else {
-                    logger.warn("trying to add new file while closing crawler. Document [{}]/[{}] has been ignored",
-                            fsSettings.getElasticsearch().getIndex(), id);
-                }
+                IndexRequest request = new IndexRequest(id, virtualPath, "Indexing json content");
+                request.json = read(inputStream);
+                return request;
             } else if (fsSettings.getFs().isXmlSupport()) {
-                FSCrawlerLogger.documentDebug(generateIdFromFilename(filename, dirname),
-                        computeVirtualPathName(stats.getRootPath(), fullFilename),
-                        "Indexing xml content");
                 // We index the xml content directly (after transformation to json)
-                if (!closed) {
-                    documentService.indexRawJson(
-                            fsSettings.getElasticsearch().getIndex(),
-                            id,
-                            XmlDocParser.generate(inputStream),
-                            fsSettings.getElasticsearch().getPipeline());
-                } else {
-                    logger.warn("trying to add new file while closing crawler. Document [{}]/[{}] has been ignored",
-                            fsSettings.getElasticsearch().getIndex(), id);
-                }
+                IndexRequest request = new IndexRequest(id, virtualPath, "Indexing xml content");
+                request.json = XmlDocParser.generate(inputStream);
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Send a document to the document service
+     */
+    private void sendIndexRequest(IndexRequest request) {
+        if (!closed) {
+            FSCrawlerLogger.documentDebug(request.id, request.virtualPath, request.message);
+            if (request.doc != null) {
+                documentService.index(
+                        fsSettings.getElasticsearch().getIndex(),
+                        request.id,
+                        request.doc,
+                        fsSettings.getElasticsearch().getPipeline());
+            } else {
+                documentService.indexRawJson(
+                        fsSettings.getElasticsearch().getIndex(),
+                        request.id,
+                        request.json,
+                        fsSettings.getElasticsearch().getPipeline());
             }
+        } else {
+            logger.warn("trying to add new file while closing crawler. Document [{}]/[{}] has been ignored",
+                    fsSettings.getElasticsearch().getIndex(), request.id);
         }
     }
 
-    private String generateIdFromFilename(String filename, String filepath) throws NoSuchAlgorithmException {
+    /**
+     * @return true if we read the first bytes of the files to detect their content type
+     */
+    private boolean isMagicBytesDetection() {
+        return fsSettings.getFs().isMetadataOnly() &&
+                Fs.CONTENT_TYPE_DETECTION.MAGIC.equals(fsSettings.getFs().getContentTypeDetection());
+    }
+
+    private String generateIdFromFilename(String filename, String filepath) {
         String filepathForId = filepath.replace("\\", "/");
         String filenameForId = filename.replace("\\", "").replace("/", "");
         String idSource = filepathForId.endsWith("/") ? filepathForId.concat(filenameForId) : filepathForId.concat("/").concat(filenameForId);
-        return fsSettings.getFs().isFilenameAsId() ? filename : SignTool.sign(idSource);
+        return fsSettings.getFs().isFilenameAsId() ? filename : signTool.hash(idSource);
     }
 
     private String read(InputStream input) throws IOException {
@@ -527,9 +1648,9 @@ public abstract class FsParserAbstract extends FsParser {
     private void indexDirectory(String path) throws Exception {
         String name = path.substring(path.lastIndexOf(pathSeparator) + 1);
         String rootdir = path.substring(0, path.lastIndexOf(pathSeparator));
-        Folder folder = new Folder(name, SignTool.sign(rootdir), path, computeVirtualPathName(stats.getRootPath(), path));
+        Folder folder = new Folder(name, signTool.hashDirectory(rootdir), path, computeVirtualPathName(stats.getRootPath(), path));
 
-        indexDirectory(SignTool.sign(path), folder);
+        indexDirectory(signTool.hash(path), folder);
     }
 
     /**
@@ -537,36 +1658,42 @@ public abstract class FsParserAbstract extends FsParser {
      */
     private void removeEsDirectoryRecursively(final String path) throws Exception {
         logger.debug("Delete folder [{}]", path);
-        Collection<String> listFile = getFileDirectory(path);
-
-        for (String esfile : listFile) {
-            esDelete(managementService, fsSettings.getElasticsearch().getIndex(), SignTool.sign(path.concat(pathSeparator).concat(esfile)));
-        }
-
-        Collection<String> listFolder = getFolderDirectory(path);
-        for (String esfolder : listFolder) {
-            removeEsDirectoryRecursively(esfolder);
+        if (closed) {
+            logger.warn("trying to remove a folder while closing crawler. Folder [{}] has been ignored", path);
+            return;
         }
-
-        esDelete(managementService, fsSettings.getElasticsearch().getIndexFolder(), SignTool.sign(path));
+        // The whole subtree is removed by the cluster while we keep on crawling
+        deleteTasks.add(managementService.deleteDirectoryRecursively(path));
     }
 
     /**
-     * Remove a document with the document service
+     * Wait for the directories we asked to remove to be fully removed
      */
-    private void esDelete(FsCrawlerDocumentService service, String index, String id) throws IOException {
-        logger.debug("Deleting {}/{}", index, id);
-        if (!closed) {
-            service.delete(index, id);
-        } else {
-            logger.warn("trying to remove a file while closing crawler. Document [{}]/[{}] has been ignored", index, id);
+    private void waitForDeleteTasks() throws InterruptedException {
+        long wait = 10;
+        while (!deleteTasks.isEmpty() && !closed) {
+            for (Iterator<String> iterator = deleteTasks.iterator(); iterator.hasNext(); ) {
+                String task = iterator.next();
+                try {
+                    if (managementService.isDeleteDone(task)) {
+                        iterator.remove();
+                    }
+                } catch (Exception e) {
+                    logger.warn("Error while removing a folder: {}", e.getMessage());
+                    iterator.remove();
+                }
+            }
+            if (!deleteTasks.isEmpty()) {
+                Thread.sleep(wait);
+                wait = Math.min(wait * 2, 1000);
+            }
         }
     }
 
     /**
-     * Remove a document with the management service
+     * Remove a document with the document service
      */
-    private void esDelete(FsCrawlerManagementService service, String index, String id) {
+    private void esDelete(FsCrawlerDocumentService service, String index, String id) throws IOException {
         logger.debug("Deleting {}/{}", index, id);
         if (!closed) {
             service.delete(index, id);
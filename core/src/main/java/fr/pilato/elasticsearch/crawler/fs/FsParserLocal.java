@@ -21,11 +21,14 @@ package fr.pilato.elasticsearch.crawler.fs;
 
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
 import fr.pilato.elasticsearch.crawler.fs.crawler.fs.FileAbstractorFile;
+import fr.pilato.elasticsearch.crawler.fs.crawler.fs.FileWatcher;
 import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerDocumentService;
 import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerManagementService;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class FsParserLocal extends FsParserAbstract {
 
@@ -37,4 +40,10 @@ public class FsParserLocal extends FsParserAbstract {
     protected FileAbstractor<?> buildFileAbstractor() {
         return new FileAbstractorFile(fsSettings);
     }
+
+    @Override
+    protected FileWatcher buildWatcher() throws IOException {
+        return new FileWatcher(Paths.get(fsSettings.getFs().getUrl()), this::isWatchableDirectory,
+                fsSettings.getFs().isFollowSymlinks());
+    }
 }
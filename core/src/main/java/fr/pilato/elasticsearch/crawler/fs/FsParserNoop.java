@@ -32,25 +32,26 @@ public class FsParserNoop extends FsParser {
     }
 
     @Override
-    public void run() {
-        closed = false;
-
-        while (!closed) {
-            // This is doing nothing
-            try {
-                logger.debug("Fs crawler is going to sleep for {}", fsSettings.getFs().getUpdateRate());
-
-                // The problem here is that there is no wait to close the thread while we are sleeping.
-                // Which leads to Zombie threads in our tests
-
-                synchronized (semaphore) {
-                    semaphore.wait(fsSettings.getFs().getUpdateRate().millis());
-                    logger.debug("Fs crawler is now waking up again...");
-                }
-            } catch (InterruptedException e) {
-                logger.debug("Fs crawler thread has been interrupted: [{}]", e.getMessage());
-                Thread.currentThread().interrupt();
+    boolean crawl() {
+        // This is doing nothing
+        return !closed;
+    }
+
+    @Override
+    void waitForNextRun() {
+        try {
+            logger.debug("Fs crawler is going to sleep for {}", fsSettings.getFs().getUpdateRate());
+
+            // The problem here is that there is no wait to close the thread while we are sleeping.
+            // Which leads to Zombie threads in our tests
+
+            synchronized (semaphore) {
+                semaphore.wait(fsSettings.getFs().getUpdateRate().millis());
+                logger.debug("Fs crawler is now waking up again...");
             }
+        } catch (InterruptedException e) {
+            logger.debug("Fs crawler thread has been interrupted: [{}]", e.getMessage());
+            Thread.currentThread().interrupt();
         }
     }
 }
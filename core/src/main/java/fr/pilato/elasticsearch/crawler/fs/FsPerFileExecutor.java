@@ -0,0 +1,212 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
+import fr.pilato.elasticsearch.crawler.fs.framework.VirtualThreads;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the fetch and the parsing of every file in its own thread (a virtual thread when the JVM supports it).
+ * Reading the files is mostly waiting for I/O, so threads are cheap, but the parsing is CPU bound and is
+ * limited by a semaphore to fs.max_parsing_threads concurrent files.
+ * @param <R> Type of the documents
+ */
+class FsPerFileExecutor<R> {
+    private static final Logger logger = LogManager.getLogger(FsPerFileExecutor.class);
+
+    // Maximum number of files being processed or waiting, to keep memory and threads bounded
+    private static final int MAX_FILES_IN_FLIGHT_VIRTUAL = 1000;
+    private static final int MAX_FILES_IN_FLIGHT_PLATFORM = 100;
+    // Remote files up to this size are downloaded in memory. Bigger ones are copied to a temporary file.
+    static final long MAX_FILE_SIZE_IN_MEMORY = 10 * 1024 * 1024;
+
+    private final FileAbstractor<?> path;
+    private final FsFileIndexer<R> indexer;
+    private final boolean readContent;
+    private final boolean continueOnError;
+    private final ExecutorService executor;
+    private final Semaphore parsing;
+    private final Semaphore fetching;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    FsPerFileExecutor(FileAbstractor<?> path, Fs fs, FsFileIndexer<R> indexer) {
+        this.path = path;
+        this.indexer = indexer;
+        this.readContent = fs.isIndexContent() || fs.isStoreSource();
+        this.continueOnError = fs.isContinueOnError();
+        this.executor = VirtualThreads.newThreadPerTaskExecutor("fs-crawler-file");
+        this.maxInFlight = VirtualThreads.isAvailable() ? MAX_FILES_IN_FLIGHT_VIRTUAL : MAX_FILES_IN_FLIGHT_PLATFORM;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.parsing = new Semaphore(fs.getMaxParsingThreads());
+        // When the file abstractor can not open files concurrently, we read them one at a time
+        this.fetching = path.getMaxConcurrency() == Integer.MAX_VALUE ? null : new Semaphore(path.getMaxConcurrency());
+        logger.debug("Running one {} thread per file with [{}] parsing threads",
+                VirtualThreads.isAvailable() ? "virtual" : "platform", fs.getMaxParsingThreads());
+    }
+
+    void submit(FileAbstractModel file, String dirname) throws Exception {
+        if (indexer.isClosed()) {
+            return;
+        }
+        checkFailure();
+        inFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    process(file, dirname);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    if (continueOnError) {
+                        logger.warn("Unable to index {}, skipping...: {}", file.getName(), e.getMessage());
+                    } else {
+                        failure.compareAndSet(null, e);
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void process(FileAbstractModel file, String dirname) throws Exception {
+        // We don't start anything new when the crawler is closing or when another file failed
+        if (indexer.isClosed() || failure.get() != null) {
+            return;
+        }
+        if (fetching == null || !readContent) {
+            // The file is opened only once we can parse it, so the files which are waiting don't hold
+            // an open file descriptor
+            parsing.acquire();
+            try {
+                InputStream inputStream = readContent ? path.getInputStream(file) : null;
+                try {
+                    index(file, dirname, inputStream);
+                } finally {
+                    if (inputStream != null) {
+                        path.closeInputStream(inputStream);
+                    }
+                }
+            } finally {
+                parsing.release();
+            }
+            return;
+        }
+
+        // Downloading a remote file is waiting for I/O, so it does not take a parsing permit.
+        // The file is then fully copied so no connection is held while we wait for a permit.
+        try (InputStream inputStream = fetch(file)) {
+            parsing.acquire();
+            try {
+                index(file, dirname, inputStream);
+            } finally {
+                parsing.release();
+            }
+        }
+    }
+
+    private void index(FileAbstractModel file, String dirname, InputStream inputStream) throws Exception {
+        if (indexer.isClosed()) {
+            return;
+        }
+        R document = indexer.parse(file, dirname, inputStream);
+        if (document != null) {
+            indexer.send(document);
+        }
+    }
+
+    /**
+     * Download a file from a connection which can not be shared, so the connection is released before
+     * the parsing starts: in memory for small files, in a temporary file which is removed once closed
+     * for the bigger ones.
+     */
+    private InputStream fetch(FileAbstractModel file) throws Exception {
+        fetching.acquire();
+        try {
+            InputStream inputStream = path.getInputStream(file);
+            try {
+                if (file.getSize() >= 0 && file.getSize() <= MAX_FILE_SIZE_IN_MEMORY) {
+                    return new ByteArrayInputStream(inputStream.readAllBytes());
+                }
+                return spool(inputStream);
+            } finally {
+                path.closeInputStream(inputStream);
+            }
+        } finally {
+            fetching.release();
+        }
+    }
+
+    private InputStream spool(InputStream inputStream) throws IOException {
+        Path tmp = Files.createTempFile("fscrawler-", ".tmp");
+        try {
+            Files.copy(inputStream, tmp, StandardCopyOption.REPLACE_EXISTING);
+            return Files.newInputStream(tmp, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private void checkFailure() throws Exception {
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Wait for all the submitted files to be processed
+     * @throws Exception the first error raised while processing the files if any
+     */
+    void finish() throws Exception {
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        executor.shutdown();
+        checkFailure();
+    }
+
+    /**
+     * Interrupt the in-flight files
+     */
+    void abort() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerLeaseService;
+import fr.pilato.elasticsearch.crawler.fs.service.FsLease;
+import fr.pilato.elasticsearch.crawler.fs.settings.Sharding;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Share the crawl of a directory tree between several nodes. The top level entries of the tree
+ * are dispatched in shards by hashing their names and a node only crawls the shards it holds a
+ * lease on. Every node renews its leases and its own heartbeat lease while it is running, so the
+ * shards of a node which died are taken by the other nodes once its leases expired.
+ */
+class FsShardCoordinator {
+    private static final Logger logger = LogManager.getLogger(FsShardCoordinator.class);
+
+    static final String SHARD_LEASE_PREFIX = "shard_";
+    static final String NODE_LEASE_PREFIX = "node_";
+
+    private final FsCrawlerLeaseService leaseService;
+    private final String node;
+    private final int shards;
+    private final long leaseDuration;
+    private final LongSupplier clock;
+
+    // The leases we own, by shard
+    private final Map<Integer, FsLease> owned = new ConcurrentSkipListMap<>();
+    private FsLease heartbeat;
+
+    FsShardCoordinator(FsCrawlerLeaseService leaseService, Sharding sharding) {
+        this(leaseService, sharding.getNode(), sharding.getShards(), sharding.getLeaseDuration().millis(), System::currentTimeMillis);
+    }
+
+    FsShardCoordinator(FsCrawlerLeaseService leaseService, String node, int shards, long leaseDuration, LongSupplier clock) {
+        this.leaseService = leaseService;
+        this.node = node;
+        this.shards = shards;
+        this.leaseDuration = leaseDuration;
+        this.clock = clock;
+    }
+
+    String getNode() {
+        return node;
+    }
+
+    long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    /**
+     * Compute the shard of a top level entry. The hash of a String is stable across JVMs
+     * so all the nodes agree on it.
+     * @param name the name of the top level file or directory. A full path is accepted.
+     * @return the shard
+     */
+    int shardOf(String name) {
+        int separator = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+        return Math.floorMod(name.substring(separator + 1).hashCode(), shards);
+    }
+
+    boolean owns(String name) {
+        return owned.containsKey(shardOf(name));
+    }
+
+    List<Integer> getOwnedShards() {
+        return new ArrayList<>(owned.keySet());
+    }
+
+    /**
+     * @return the date of the last crawl of the shard of a top level entry, or null if it has never been crawled
+     */
+    LocalDateTime getLastScanDate(String name) {
+        FsLease lease = owned.get(shardOf(name));
+        return lease == null ? null : lease.getLastScan();
+    }
+
+    /**
+     * Take our fair share of the shards according to the number of live nodes and give back
+     * the shards we own above it, so they can be taken by the other nodes. This is called before each run.
+     * @return the shards we did not own before
+     * @throws Exception In case of problems with the lease service
+     */
+    synchronized Set<Integer> rebalance() throws Exception {
+        long now = clock.getAsLong();
+        renew(now);
+
+        Collection<FsLease> leases = leaseService.getAll();
+        long liveNodes = leases.stream()
+                .filter(lease -> lease.getId().startsWith(NODE_LEASE_PREFIX) && !lease.isExpired(now))
+                .count();
+        int fairShare = (int) ((shards + Math.max(liveNodes, 1) - 1) / Math.max(liveNodes, 1));
+        logger.debug("[{}] live nodes share [{}] shards: we can own up to [{}] shards", liveNodes, shards, fairShare);
+
+        // We give back the shards above our fair share
+        List<Integer> ownedShards = getOwnedShards();
+        for (int i = ownedShards.size() - 1; i >= 0 && owned.size() > fairShare; i--) {
+            release(ownedShards.get(i));
+        }
+
+        Set<Integer> busy = new TreeSet<>();
+        for (FsLease lease : leases) {
+            if (lease.getId().startsWith(SHARD_LEASE_PREFIX) && !lease.isExpired(now) && !node.equals(lease.getNode())) {
+                busy.add(Integer.parseInt(lease.getId().substring(SHARD_LEASE_PREFIX.length())));
+            }
+        }
+
+        Set<Integer> acquired = new TreeSet<>();
+        for (int shard = 0; shard < shards && owned.size() < fairShare; shard++) {
+            if (!owned.containsKey(shard) && !busy.contains(shard) && acquire(shard, now)) {
+                acquired.add(shard);
+            }
+        }
+        if (!acquired.isEmpty()) {
+            logger.info("Node [{}] took shards {}", node, acquired);
+        }
+        return acquired;
+    }
+
+    /**
+     * Renew our heartbeat and the leases we own
+     * @throws Exception In case of problems with the lease service
+     */
+    synchronized void renew() throws Exception {
+        renew(clock.getAsLong());
+    }
+
+    /**
+     * Remember that the shards we own have been fully crawled
+     * @param scanDate the date the crawl started
+     * @throws Exception In case of problems with the lease service
+     */
+    synchronized void complete(LocalDateTime scanDate) throws Exception {
+        long now = clock.getAsLong();
+        for (FsLease lease : new ArrayList<>(owned.values())) {
+            lease.setLastScan(scanDate);
+            lease.setExpires(now + leaseDuration);
+            if (!leaseService.put(lease)) {
+                lost(lease);
+            }
+        }
+    }
+
+    /**
+     * Give back all our leases so the other nodes can take our shards without waiting for them to expire
+     * @throws Exception In case of problems with the lease service
+     */
+    synchronized void release() throws Exception {
+        for (Integer shard : getOwnedShards()) {
+            release(shard);
+        }
+        if (heartbeat != null) {
+            heartbeat.setExpires(0);
+            leaseService.put(heartbeat);
+            heartbeat = null;
+        }
+    }
+
+    private void renew(long now) throws Exception {
+        beat(now);
+        for (FsLease lease : new ArrayList<>(owned.values())) {
+            lease.setExpires(now + leaseDuration);
+            if (!leaseService.put(lease)) {
+                lost(lease);
+            }
+        }
+    }
+
+    private void beat(long now) throws Exception {
+        if (heartbeat != null) {
+            heartbeat.setExpires(now + leaseDuration);
+            if (leaseService.put(heartbeat)) {
+                return;
+            }
+        }
+        // We don't know the current version of our heartbeat yet
+        heartbeat = leaseService.get(NODE_LEASE_PREFIX + node);
+        if (heartbeat == null) {
+            heartbeat = new FsLease(NODE_LEASE_PREFIX + node);
+        }
+        heartbeat.setNode(node);
+        heartbeat.setExpires(now + leaseDuration);
+        if (!leaseService.put(heartbeat)) {
+            logger.warn("Can not write the heartbeat of node [{}]. Is another node running with the same name?", node);
+            heartbeat = null;
+        }
+    }
+
+    private boolean acquire(int shard, long now) throws Exception {
+        FsLease lease = leaseService.get(SHARD_LEASE_PREFIX + shard);
+        if (lease == null) {
+            lease = new FsLease(SHARD_LEASE_PREFIX + shard);
+        } else if (!lease.isExpired(now) && !node.equals(lease.getNode())) {
+            return false;
+        }
+        if (lease.getNode() != null && !node.equals(lease.getNode())) {
+            logger.debug("Lease [{}] of node [{}] expired", lease.getId(), lease.getNode());
+        }
+        lease.setNode(node);
+        lease.setExpires(now + leaseDuration);
+        if (!leaseService.put(lease)) {
+            logger.debug("Another node took [{}] before us", lease.getId());
+            return false;
+        }
+        owned.put(shard, lease);
+        return true;
+    }
+
+    private void release(int shard) throws Exception {
+        FsLease lease = owned.remove(shard);
+        if (lease != null) {
+            logger.debug("Node [{}] gives back [{}]", node, lease.getId());
+            lease.setNode(null);
+            lease.setExpires(0);
+            leaseService.put(lease);
+        }
+    }
+
+    private void lost(FsLease lease) {
+        logger.warn("Node [{}] lost [{}] which has been taken by another node", node, lease.getId());
+        owned.values().remove(lease);
+    }
+}
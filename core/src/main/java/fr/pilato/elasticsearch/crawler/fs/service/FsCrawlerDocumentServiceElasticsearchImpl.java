@@ -33,16 +33,32 @@ import org.apache.logging.log4j.Logger;
 import java.io.IOException;
 import java.nio.file.Path;
 
-import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.serialize;
 
 public class FsCrawlerDocumentServiceElasticsearchImpl implements FsCrawlerDocumentService {
 
     private static final Logger logger = LogManager.getLogger(FsCrawlerDocumentServiceElasticsearchImpl.class);
 
     private final IElasticsearchClient client;
+    private final FsSettings settings;
+    // True when the client is shared with other jobs, so we must not start or close it
+    private final boolean sharedClient;
 
     public FsCrawlerDocumentServiceElasticsearchImpl(Path config, FsSettings settings) {
         this.client = new ElasticsearchClient(config, settings);
+        this.settings = settings;
+        this.sharedClient = false;
+    }
+
+    /**
+     * Build a service on top of a client which is shared with other jobs.
+     * The client must be started before and closed by its owner.
+     * @param settings  the job settings
+     * @param client    the shared client
+     */
+    public FsCrawlerDocumentServiceElasticsearchImpl(FsSettings settings, IElasticsearchClient client) {
+        this.client = client;
+        this.settings = settings;
+        this.sharedClient = true;
     }
 
     public IElasticsearchClient getClient() {
@@ -51,13 +67,25 @@ public class FsCrawlerDocumentServiceElasticsearchImpl implements FsCrawlerDocum
 
     @Override
     public void start() throws IOException, ElasticsearchClientException {
-        client.start();
+        if (sharedClient) {
+            // The shared client did not check the pipeline of this job when it started
+            String pipeline = settings.getElasticsearch().getPipeline();
+            if (pipeline != null && !client.isExistingPipeline(pipeline)) {
+                throw new RuntimeException("You defined pipeline:" + pipeline + ", but it does not exist.");
+            }
+        } else {
+            client.start();
+        }
         logger.debug("Elasticsearch Document Service started");
     }
 
     @Override
     public void close() throws IOException {
-        client.close();
+        if (sharedClient) {
+            client.flush();
+        } else {
+            client.close();
+        }
         logger.debug("Elasticsearch Document Service stopped");
     }
 
@@ -68,12 +96,13 @@ public class FsCrawlerDocumentServiceElasticsearchImpl implements FsCrawlerDocum
 
     @Override
     public void createSchema() throws Exception {
-        client.createIndices();
+        client.createIndices(settings);
     }
 
     @Override
     public void index(String index, String id, Doc doc, String pipeline) {
-        indexRawJson(index, id, serialize(doc), pipeline);
+        logger.debug("Indexing {}/{}?pipeline={}", index, id, pipeline);
+        client.index(index, id, doc, pipeline);
     }
 
     @Override
@@ -0,0 +1,54 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.service;
+
+import java.util.Collection;
+
+/**
+ * Store the leases which are used to share the crawl of a directory tree between several nodes.
+ * A lease is only written if nobody modified it since we read it, so two nodes can never
+ * both believe they own the same lease.
+ */
+public interface FsCrawlerLeaseService {
+
+    /**
+     * Read a lease
+     * @param id the lease id
+     * @return the lease or null if it has never been written
+     * @throws Exception In case of problems
+     */
+    FsLease get(String id) throws Exception;
+
+    /**
+     * Write a lease if it did not change since we read it. If the lease has no version, it is only
+     * written if it does not exist yet.
+     * @param lease the lease to write. Its version is updated when the lease has been written.
+     * @return false if another node modified the lease in the meantime
+     * @throws Exception In case of problems
+     */
+    boolean put(FsLease lease) throws Exception;
+
+    /**
+     * Read all the leases
+     * @return all the known leases
+     * @throws Exception In case of problems
+     */
+    Collection<FsLease> getAll() throws Exception;
+}
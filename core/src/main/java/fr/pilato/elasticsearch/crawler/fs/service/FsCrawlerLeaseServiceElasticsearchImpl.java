@@ -0,0 +1,130 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.service;
+
+import com.jayway.jsonpath.DocumentContext;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchHit;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchResponse;
+import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClientException;
+import fr.pilato.elasticsearch.crawler.fs.client.IElasticsearchClient;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.INDEX_SUFFIX_COORDINATION;
+import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.parseJsonAsDocumentContext;
+import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.serialize;
+
+/**
+ * Store the leases in a small coordination index within the target cluster. We rely on the
+ * optimistic concurrency control of Elasticsearch (if_seq_no and if_primary_term) to make sure
+ * that only one node wins when two nodes try to take the same lease.
+ */
+public class FsCrawlerLeaseServiceElasticsearchImpl implements FsCrawlerLeaseService {
+
+    private static final Logger logger = LogManager.getLogger(FsCrawlerLeaseServiceElasticsearchImpl.class);
+
+    private static final String INDEX_SETTINGS = "{\"settings\":{\"number_of_shards\":1}," +
+            "\"mappings\":{\"dynamic\":false,\"properties\":{\"node\":{\"type\":\"keyword\"},\"expires\":{\"type\":\"long\"}}}}";
+    private static final int REQUEST_SIZE = 10000;
+
+    private final IElasticsearchClient client;
+    private final String index;
+    private volatile boolean indexCreated;
+
+    public FsCrawlerLeaseServiceElasticsearchImpl(FsSettings settings, IElasticsearchClient client) {
+        this.client = client;
+        this.index = settings.getElasticsearch().getIndex() + INDEX_SUFFIX_COORDINATION;
+    }
+
+    @Override
+    public FsLease get(String id) throws Exception {
+        createIndexIfNeeded();
+        if (!client.exists(index, id)) {
+            return null;
+        }
+        ESSearchHit hit = client.get(index, id);
+        FsLease lease = fromJson(id, hit.getSource());
+        lease.setVersion(new long[]{hit.getSeqNo(), hit.getPrimaryTerm()});
+        return lease;
+    }
+
+    @Override
+    public boolean put(FsLease lease) throws Exception {
+        createIndexIfNeeded();
+        Map<String, Object> source = new HashMap<>();
+        source.put("node", lease.getNode());
+        source.put("expires", lease.getExpires());
+        if (lease.getLastScan() != null) {
+            source.put("last_scan", lease.getLastScan().toString());
+        }
+        long[] version = (long[]) lease.getVersion();
+        ESSearchHit hit = client.indexSingleIfMatch(index, lease.getId(), serialize(source),
+                version == null ? null : version[0], version == null ? null : version[1]);
+        if (hit == null) {
+            logger.debug("Lease [{}] has been modified by another node", lease.getId());
+            return false;
+        }
+        lease.setVersion(new long[]{hit.getSeqNo(), hit.getPrimaryTerm()});
+        return true;
+    }
+
+    @Override
+    public Collection<FsLease> getAll() throws Exception {
+        createIndexIfNeeded();
+        client.refresh(index);
+        ESSearchResponse response = client.search(new ESSearchRequest().withIndex(index).withSize(REQUEST_SIZE));
+        Collection<FsLease> leases = new ArrayList<>();
+        if (response.getHits() != null) {
+            for (ESSearchHit hit : response.getHits()) {
+                leases.add(fromJson(hit.getId(), hit.getSource()));
+            }
+        }
+        return leases;
+    }
+
+    private void createIndexIfNeeded() throws ElasticsearchClientException {
+        if (!indexCreated) {
+            client.createIndex(index, true, INDEX_SETTINGS);
+            indexCreated = true;
+        }
+    }
+
+    private static FsLease fromJson(String id, String json) {
+        DocumentContext document = parseJsonAsDocumentContext(json);
+        Map<String, Object> source = document.read("$");
+        FsLease lease = new FsLease(id);
+        lease.setNode((String) source.get("node"));
+        if (source.get("expires") != null) {
+            lease.setExpires(((Number) source.get("expires")).longValue());
+        }
+        if (source.get("last_scan") != null) {
+            lease.setLastScan(LocalDateTime.parse((String) source.get("last_scan")));
+        }
+        return lease;
+    }
+}
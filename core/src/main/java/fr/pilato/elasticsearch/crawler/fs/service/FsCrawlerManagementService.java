@@ -29,18 +29,18 @@ public interface FsCrawlerManagementService extends FsCrawlerService {
     /**
      * Retrieve the list of files that are currently available within a dir
      * @param path the virtual path
-     * @return a list of known files
+     * @return the known files. They are read lazily while iterating.
      * @throws Exception In case of problems
      */
-    Collection<String> getFileDirectory(String path) throws Exception;
+    Iterable<String> getFileDirectory(String path) throws Exception;
 
     /**
      * Retrieve the list of sub folders that are currently available within a dir
      * @param path the virtual path
-     * @return a list of known folders
+     * @return the known folders. They are read lazily while iterating.
      * @throws Exception In case of problems
      */
-    Collection<String> getFolderDirectory(String path) throws Exception;
+    Iterable<String> getFolderDirectory(String path) throws Exception;
 
     /**
      * Store a visited directory. It will be used to compare old dirs vs
@@ -58,4 +58,32 @@ public interface FsCrawlerManagementService extends FsCrawlerService {
      * @param id        Document ID
      */
     void delete(String index, String id);
+
+    /**
+     * Remove a directory, its files and all its subdirectories. The removal runs in the background.
+     * @param path the real path of the directory
+     * @return an id to follow the removal
+     * @throws Exception In case of problems
+     * @see #isDeleteDone(String)
+     */
+    String deleteDirectoryRecursively(String path) throws Exception;
+
+    /**
+     * Check if the removal of a directory is done
+     * @param id the id of the removal
+     * @return true if the removal is done
+     * @throws Exception In case the removal failed
+     */
+    boolean isDeleteDone(String id) throws Exception;
+
+    /**
+     * Flush any pending operation
+     */
+    void flush();
+
+    /**
+     * Get the service which stores the leases when several nodes share the same crawl
+     * @return the lease service
+     */
+    FsCrawlerLeaseService getLeaseService();
 }
@@ -21,13 +21,17 @@ package fr.pilato.elasticsearch.crawler.fs.service;
 
 import com.jayway.jsonpath.JsonPath;
 import fr.pilato.elasticsearch.crawler.fs.beans.Folder;
+import fr.pilato.elasticsearch.crawler.fs.client.ESBoolQuery;
+import fr.pilato.elasticsearch.crawler.fs.client.ESPrefixQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchHit;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchIterator;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
-import fr.pilato.elasticsearch.crawler.fs.client.ESSearchResponse;
+import fr.pilato.elasticsearch.crawler.fs.client.ESTask;
 import fr.pilato.elasticsearch.crawler.fs.client.ESTermQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient;
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClientException;
 import fr.pilato.elasticsearch.crawler.fs.client.IElasticsearchClient;
+import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
 import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 import org.apache.logging.log4j.LogManager;
@@ -35,8 +39,8 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Function;
 
 import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.serialize;
 
@@ -44,16 +48,30 @@ public class FsCrawlerManagementServiceElasticsearchImpl implements FsCrawlerMan
 
     private static final Logger logger = LogManager.getLogger(FsCrawlerManagementServiceElasticsearchImpl.class);
 
-    // TODO Optimize it. We can probably use a search for a big array of filenames instead of
-    // searching fo 10000 files (which is somehow limited).
-    private static final int REQUEST_SIZE = 10000;
+    // Number of hits we read for each page when listing a directory
+    private static final int REQUEST_SIZE = 1000;
 
     private final IElasticsearchClient client;
     private final FsSettings settings;
+    // True when the client is shared with other jobs, so we must not start or close it
+    private final boolean sharedClient;
 
     public FsCrawlerManagementServiceElasticsearchImpl(Path config, FsSettings settings) {
         this.settings = settings;
         this.client = new ElasticsearchClient(config, settings);
+        this.sharedClient = false;
+    }
+
+    /**
+     * Build a service on top of a client which is shared with other jobs.
+     * The client must be started before and closed by its owner.
+     * @param settings  the job settings
+     * @param client    the shared client
+     */
+    public FsCrawlerManagementServiceElasticsearchImpl(FsSettings settings, IElasticsearchClient client) {
+        this.settings = settings;
+        this.client = client;
+        this.sharedClient = true;
     }
 
     public IElasticsearchClient getClient() {
@@ -62,13 +80,19 @@ public class FsCrawlerManagementServiceElasticsearchImpl implements FsCrawlerMan
 
     @Override
     public void start() throws IOException, ElasticsearchClientException {
-        client.start();
+        if (!sharedClient) {
+            client.start();
+        }
         logger.debug("Elasticsearch Management Service started");
     }
 
     @Override
     public void close() throws IOException {
-        client.close();
+        if (sharedClient) {
+            client.flush();
+        } else {
+            client.close();
+        }
         logger.debug("Elasticsearch Management Service stopped");
     }
 
@@ -78,60 +102,66 @@ public class FsCrawlerManagementServiceElasticsearchImpl implements FsCrawlerMan
     }
 
     @Override
-    public Collection<String> getFileDirectory(String path)
-            throws Exception {
+    public Iterable<String> getFileDirectory(String path) {
+        String pathRoot = SignTool.getInstance(settings.getFs().getIdHash()).hashDirectory(path);
+        logger.trace("Querying elasticsearch for files in dir [path.root:{}]", pathRoot);
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("Querying elasticsearch for files in dir [path.root:{}]", SignTool.sign(path));
-        }
-
-        Collection<String> files = new ArrayList<>();
-        ESSearchResponse response = client.search(
+        // We read all the files page by page, whatever their number
+        return () -> new ESHitIterator<>(client.searchAll(
                 new ESSearchRequest()
                         .withIndex(settings.getElasticsearch().getIndex())
                         .withSize(REQUEST_SIZE)
                         .addStoredField("file.filename")
-                        .withESQuery(new ESTermQuery("path.root", SignTool.sign(path))));
-
-        if (response.getHits() != null) {
-            for (ESSearchHit hit : response.getHits()) {
-                String name;
-                if (hit.getStoredFields() != null
-                        && hit.getStoredFields().get("file.filename") != null) {
-                    // In case someone disabled _source which is not recommended
-                    name = hit.getStoredFields().get("file.filename").get(0);
-                } else {
-                    // Houston, we have a problem ! We can't get the old files from ES
-                    logger.warn("Can't find stored field name to check existing filenames in path [{}]. " +
-                            "Please set store: true on field [file.filename]", path);
-                    throw new RuntimeException("Mapping is incorrect: please set stored: true on field [file.filename].");
-                }
-                files.add(name);
+                        .withESQuery(new ESTermQuery("path.root", pathRoot))), hit -> {
+            if (hit.getStoredFields() != null
+                    && hit.getStoredFields().get("file.filename") != null) {
+                // In case someone disabled _source which is not recommended
+                return hit.getStoredFields().get("file.filename").get(0);
             }
-        }
-
-        logger.trace("We found: {}", files);
-
-        return files;
+            // Houston, we have a problem ! We can't get the old files from ES
+            logger.warn("Can't find stored field name to check existing filenames in path [{}]. " +
+                    "Please set store: true on field [file.filename]", path);
+            throw new RuntimeException("Mapping is incorrect: please set stored: true on field [file.filename].");
+        });
     }
 
     @Override
-    public Collection<String> getFolderDirectory(String path) throws Exception {
-        Collection<String> files = new ArrayList<>();
-
-        ESSearchResponse response = client.search(
+    public Iterable<String> getFolderDirectory(String path) {
+        String pathRoot = SignTool.getInstance(settings.getFs().getIdHash()).hashDirectory(path);
+        return () -> new ESHitIterator<>(client.searchAll(
                 new ESSearchRequest()
                         .withIndex(settings.getElasticsearch().getIndexFolder())
-                        .withSize(REQUEST_SIZE) // TODO: WHAT? DID I REALLY WROTE THAT? :p
-                        .withESQuery(new ESTermQuery("path.root", SignTool.sign(path))));
+                        .withSize(REQUEST_SIZE)
+                        .withESQuery(new ESTermQuery("path.root", pathRoot))),
+                hit -> JsonPath.read(hit.getSource(), "$.path.real"));
+    }
 
-        if (response.getHits() != null) {
-            for (ESSearchHit hit : response.getHits()) {
-                files.add(JsonPath.read(hit.getSource(), "$.path.real"));
-            }
+    /**
+     * Transform the hits while we iterate over them. The underlying iterator is closed if we fail.
+     */
+    private static class ESHitIterator<T> implements Iterator<T> {
+        private final ESSearchIterator hits;
+        private final Function<ESSearchHit, T> mapper;
+
+        private ESHitIterator(ESSearchIterator hits, Function<ESSearchHit, T> mapper) {
+            this.hits = hits;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hits.hasNext();
         }
 
-        return files;
+        @Override
+        public T next() {
+            try {
+                return mapper.apply(hits.next());
+            } catch (RuntimeException e) {
+                hits.close();
+                throw e;
+            }
+        }
     }
 
     @Override
@@ -143,4 +173,41 @@ public class FsCrawlerManagementServiceElasticsearchImpl implements FsCrawlerMan
     public void delete(String index, String id) {
         client.delete(index, id);
     }
+
+    @Override
+    public String deleteDirectoryRecursively(String path) throws Exception {
+        // The directory itself and everything which is below it, in both indices
+        String separator = FsCrawlerUtil.getPathSeparator(settings.getFs().getUrl());
+        return client.deleteByQuery(settings.getElasticsearch().getIndex() + "," + settings.getElasticsearch().getIndexFolder(),
+                new ESBoolQuery()
+                        .addShould(new ESTermQuery("path.real", path))
+                        .addShould(new ESPrefixQuery("path.real", path.endsWith(separator) ? path : path + separator)));
+    }
+
+    @Override
+    public boolean isDeleteDone(String id) throws Exception {
+        ESTask task = client.getTask(id);
+        if (!task.isCompleted()) {
+            logger.trace("Task [{}] removed [{}] documents so far", id, task.getDeleted());
+            return false;
+        }
+        if (task.getError() != null) {
+            throw new ElasticsearchClientException("Task [" + id + "] failed: " + task.getError());
+        }
+        if (task.getFailures() > 0) {
+            logger.warn("Task [{}] could not remove [{}] documents", id, task.getFailures());
+        }
+        logger.debug("Task [{}] removed [{}] documents", id, task.getDeleted());
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        client.flush();
+    }
+
+    @Override
+    public FsCrawlerLeaseService getLeaseService() {
+        return new FsCrawlerLeaseServiceElasticsearchImpl(settings, client);
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * A lease gives a node the right to crawl a shard until it expires.
+ * Nodes also hold a lease on their own name which acts as a heartbeat.
+ */
+public class FsLease {
+
+    private final String id;
+    private String node;
+    private long expires;
+    private LocalDateTime lastScan;
+    // Opaque version given by the lease service when the lease has been read or written
+    private Object version;
+
+    public FsLease(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the node which owns the lease or null if it has been released
+     */
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    /**
+     * @return the date in milliseconds after which another node can take the lease
+     */
+    public long getExpires() {
+        return expires;
+    }
+
+    public void setExpires(long expires) {
+        this.expires = expires;
+    }
+
+    /**
+     * @return the date of the last crawl of the shard which fully completed, whichever node ran it
+     */
+    public LocalDateTime getLastScan() {
+        return lastScan;
+    }
+
+    public void setLastScan(LocalDateTime lastScan) {
+        this.lastScan = lastScan;
+    }
+
+    public Object getVersion() {
+        return version;
+    }
+
+    public void setVersion(Object version) {
+        this.version = version;
+    }
+
+    public boolean isExpired(long now) {
+        return node == null || expires <= now;
+    }
+
+    @Override
+    public String toString() {
+        return "FsLease{" + "id='" + id + '\'' +
+                ", node='" + node + '\'' +
+                ", expires=" + expires +
+                ", lastScan=" + lastScan +
+                '}';
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to David Pilato under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerDocumentService;
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerManagementService;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class DirectoryContentTest extends AbstractFSCrawlerTestCase {
+
+    private static final String DIR = Fs.DEFAULT_DIR;
+
+    private final List<String> deletedFiles = new ArrayList<>();
+    private final List<String> deletedFolders = new ArrayList<>();
+
+    /**
+     * Creates a management service which knows the files and the folders we indexed in DIR and
+     * records the folders we remove
+     */
+    private FsCrawlerManagementService managementService(Iterable<String> files, Iterable<String> folders) {
+        return (FsCrawlerManagementService) Proxy.newProxyInstance(FsCrawlerManagementService.class.getClassLoader(),
+                new Class<?>[]{FsCrawlerManagementService.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getFileDirectory":
+                            return DIR.equals(args[0]) ? files : Collections.emptyList();
+                        case "getFolderDirectory":
+                            return DIR.equals(args[0]) ? folders : Collections.emptyList();
+                        case "deleteDirectoryRecursively":
+                            deletedFolders.add((String) args[0]);
+                            return "task";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Creates a document service which only records the documents we remove
+     */
+    private FsCrawlerDocumentService documentService() {
+        return (FsCrawlerDocumentService) Proxy.newProxyInstance(FsCrawlerDocumentService.class.getClassLoader(),
+                new Class<?>[]{FsCrawlerDocumentService.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("delete")) {
+                        deletedFiles.add((String) args[1]);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private FsParserAbstract parser(Fs.Builder fs, Iterable<String> files, Iterable<String> folders) {
+        // We use the filenames as ids so we can easily check what has been removed
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(fs.setUrl(DIR).setFilenameAsId(true).build())
+                .build();
+        return new FsParserLocal(fsSettings, rootTmpDir, managementService(files, folders), documentService(), 0);
+    }
+
+    @Test
+    public void testRemovedFiles() throws Exception {
+        FsParserAbstract parser = parser(Fs.builder(), List.of("foo.txt", "bar.txt", "baz.txt"), List.of());
+        FsParserAbstract.DirectoryContent content = new FsParserAbstract.DirectoryContent();
+        content.files.add("foo.txt");
+        content.files.add("bar.txt");
+
+        parser.removeDeletedDocuments(DIR, content);
+        assertThat(deletedFiles, contains("baz.txt"));
+        assertThat(deletedFolders, empty());
+    }
+
+    @Test
+    public void testExcludedFilesAreKept() throws Exception {
+        FsParserAbstract parser = parser(Fs.builder().setExcludes(List.of("*.log")), List.of("foo.txt", "old.log"), List.of());
+        FsParserAbstract.DirectoryContent content = new FsParserAbstract.DirectoryContent();
+
+        parser.removeDeletedDocuments(DIR, content);
+        assertThat(deletedFiles, contains("foo.txt"));
+    }
+
+    @Test
+    public void testRemovedFolders() throws Exception {
+        FsParserAbstract parser = parser(Fs.builder().setIndexFolders(true), List.of(),
+                List.of(DIR + "/subdir", DIR + "/gone"));
+        FsParserAbstract.DirectoryContent content = new FsParserAbstract.DirectoryContent();
+        content.subdirs.add(DIR + "/subdir");
+
+        parser.removeDeletedDocuments(DIR, content);
+        assertThat(deletedFiles, empty());
+        assertThat(deletedFolders, contains(DIR + "/gone"));
+    }
+
+    @Test
+    public void testRemoveDeletedDisabled() throws Exception {
+        FsParserAbstract parser = parser(Fs.builder().setRemoveDeleted(false).setIndexFolders(true),
+                List.of("foo.txt"), List.of(DIR + "/gone"));
+
+        parser.removeDeletedDocuments(DIR, new FsParserAbstract.DirectoryContent());
+        assertThat(deletedFiles, empty());
+        assertThat(deletedFolders, empty());
+    }
+
+    @Test
+    public void testSubdirsKeepTheirOrder() {
+        FsParserAbstract.DirectoryContent content = new FsParserAbstract.DirectoryContent();
+        // The subdirectories are crawled in the order we found them
+        content.subdirs.add(DIR + "/subdir");
+        content.subdirs.add(DIR + "/another");
+        content.subdirs.add(DIR + "/subdir");
+        assertThat(content.subdirs, contains(DIR + "/subdir", DIR + "/another"));
+    }
+
+    /**
+     * Measure the delete detection for 1k, 100k and 1M files, when 1% of the files have been removed.
+     * Run it for bigger directories with -Dtests.benchmark.files=1000000
+     */
+    @Test
+    public void testRemovedFilesBenchmark() throws Exception {
+        int maxFiles = getSystemProperty("tests.benchmark.files", 100000);
+        for (int nbFiles : new int[]{ 1000, 100000, 1000000 }) {
+            if (nbFiles > maxFiles) {
+                logger.info("[{}] files: skipped. Run with -Dtests.benchmark.files={}", nbFiles, nbFiles);
+                continue;
+            }
+            List<String> indexed = new ArrayList<>(nbFiles);
+            FsParserAbstract.DirectoryContent content = new FsParserAbstract.DirectoryContent();
+            for (int i = 0; i < nbFiles; i++) {
+                String name = "file-" + i + ".txt";
+                indexed.add(name);
+                if (i % 100 != 0) {
+                    content.files.add(name);
+                }
+            }
+            deletedFiles.clear();
+            FsParserAbstract parser = parser(Fs.builder(), indexed, List.of());
+
+            long start = System.nanoTime();
+            parser.removeDeletedDocuments(DIR, content);
+            long nanos = System.nanoTime() - start;
+            assertThat(deletedFiles, hasSize(nbFiles / 100));
+            logger.info("[{}] files: [{}] files/s", nbFiles, filesPerSecond(nbFiles, nanos));
+        }
+    }
+
+    private static long filesPerSecond(long files, long nanos) {
+        return nanos == 0 ? files : files * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+}
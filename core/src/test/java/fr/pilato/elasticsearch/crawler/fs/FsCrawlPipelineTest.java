@@ -0,0 +1,92 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeUnit;
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.Pipeline;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class FsCrawlPipelineTest extends AbstractFSCrawlerTestCase {
+
+    private static FsCrawlPipeline<String> pipeline(MemoryFileAbstractor path, Pipeline.Builder settings,
+                                                    RecordingFileIndexer indexer) {
+        FsCrawlPipeline<String> pipeline = new FsCrawlPipeline<>(path,
+                Fs.builder().setPipeline(settings.setEnabled(true).build()).build(), indexer);
+        pipeline.start();
+        return pipeline;
+    }
+
+    @Test
+    public void testAllFilesGoThroughTheStages() throws Exception {
+        MemoryFileAbstractor path = new MemoryFileAbstractor(Integer.MAX_VALUE);
+        RecordingFileIndexer indexer = new RecordingFileIndexer(false).skip("file-7.txt");
+        // Half of the files are bigger than the buffer and are streamed from the source
+        FsCrawlPipeline<String> pipeline = pipeline(path, Pipeline.builder()
+                .setReadThreads(2)
+                .setParseThreads(4)
+                .setQueueSize(5)
+                .setBufferSize(new ByteSizeValue(9, ByteSizeUnit.BYTES)), indexer);
+
+        for (int i = 0; i < 100; i++) {
+            pipeline.submit(path.add("file-" + i + ".txt", "content " + i), MemoryFileAbstractor.DIR);
+        }
+        pipeline.finish();
+
+        assertThat(indexer.getSent().size(), is(99));
+        assertThat(indexer.getSent(), hasEntry("file-1.txt", "content 1"));
+        assertThat(indexer.getSent(), hasEntry("file-42.txt", "content 42"));
+        assertThat(indexer.getSent(), not(hasKey("file-7.txt")));
+        assertThat(path.getOpen(), is(0));
+    }
+
+    @Test
+    public void testAbortClosesTheQueuedStreams() throws Exception {
+        MemoryFileAbstractor path = new MemoryFileAbstractor(Integer.MAX_VALUE);
+        RecordingFileIndexer indexer = new RecordingFileIndexer(true);
+        // The files are bigger than the buffer, so their stream stay open until they are parsed
+        FsCrawlPipeline<String> pipeline = pipeline(path, Pipeline.builder()
+                .setReadThreads(1)
+                .setParseThreads(1)
+                .setQueueSize(10)
+                .setBufferSize(new ByteSizeValue(1, ByteSizeUnit.BYTES)), indexer);
+
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit(path.add("file-" + i + ".txt", "content " + i), MemoryFileAbstractor.DIR);
+        }
+        // One file is being parsed and the others are waiting for the parse stage
+        assertThat(awaitBusy(() -> indexer.getParsing() == 1 && path.getOpened() == 5), is(true));
+        assertThat(path.getOpen(), is(5));
+
+        // The file being parsed is interrupted and closed by the parse stage, the queued ones are discarded
+        pipeline.abort();
+        assertThat(awaitBusy(() -> path.getOpen() == 0), is(true));
+        indexer.release();
+        assertThat(indexer.getSent().isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+public class FsPerFileExecutorTest extends AbstractFSCrawlerTestCase {
+
+    private static FsPerFileExecutor<String> executor(MemoryFileAbstractor path, Fs.Builder fs, RecordingFileIndexer indexer) {
+        return new FsPerFileExecutor<>(path, fs.build(), indexer);
+    }
+
+    @Test
+    public void testAllFilesAreIndexed() throws Exception {
+        MemoryFileAbstractor path = new MemoryFileAbstractor(Integer.MAX_VALUE);
+        RecordingFileIndexer indexer = new RecordingFileIndexer(false).skip("file-7.txt");
+        FsPerFileExecutor<String> executor = executor(path, Fs.builder().setMaxParsingThreads(2), indexer);
+
+        for (int i = 0; i < 50; i++) {
+            executor.submit(path.add("file-" + i + ".txt", "content " + i), MemoryFileAbstractor.DIR);
+        }
+        executor.finish();
+
+        assertThat(indexer.getSent().size(), is(49));
+        assertThat(indexer.getSent(), hasEntry("file-1.txt", "content 1"));
+        assertThat(indexer.getSent(), not(hasKey("file-7.txt")));
+        assertThat(path.getOpen(), is(0));
+    }
+
+    @Test
+    public void testLocalFilesAreOpenedOnlyWhenTheyCanBeParsed() throws Exception {
+        MemoryFileAbstractor path = new MemoryFileAbstractor(Integer.MAX_VALUE);
+        RecordingFileIndexer indexer = new RecordingFileIndexer(true);
+        FsPerFileExecutor<String> executor = executor(path, Fs.builder().setMaxParsingThreads(2), indexer);
+
+        for (int i = 0; i < 20; i++) {
+            executor.submit(path.add("file-" + i + ".txt", "content " + i), MemoryFileAbstractor.DIR);
+        }
+
+        // Only the files which hold a parsing permit are open
+        assertThat(awaitBusy(() -> indexer.getParsing() == 2), is(true));
+        assertThat(path.getOpen(), is(2));
+
+        indexer.release();
+        executor.finish();
+        assertThat(indexer.getSent().size(), is(20));
+        assertThat(path.getOpen(), is(0));
+    }
+
+    @Test
+    public void testRemoteFilesAreDownloadedWhileOthersAreParsed() throws Exception {
+        // A single connection, like FTP or SSH
+        MemoryFileAbstractor path = new MemoryFileAbstractor(1);
+        RecordingFileIndexer indexer = new RecordingFileIndexer(true);
+        FsPerFileExecutor<String> executor = executor(path, Fs.builder().setMaxParsingThreads(1), indexer);
+
+        executor.submit(path.add("small.txt", "in memory"), MemoryFileAbstractor.DIR);
+        // When we don't know the size, the file is copied to a temporary file
+        executor.submit(path.add("unknown.txt", "spooled", -1), MemoryFileAbstractor.DIR);
+        executor.submit(path.add("other.txt", "in memory too"), MemoryFileAbstractor.DIR);
+
+        // All the files are downloaded and the connection is released, although only one is parsed
+        assertThat(awaitBusy(() -> path.getOpened() == 3 && path.getOpen() == 0), is(true));
+        assertThat(indexer.getParsing(), is(1));
+
+        indexer.release();
+        executor.finish();
+        assertThat(indexer.getSent().size(), is(3));
+        assertThat(indexer.getSent(), hasEntry("small.txt", "in memory"));
+        assertThat(indexer.getSent(), hasEntry("unknown.txt", "spooled"));
+        assertThat(indexer.getSent(), hasEntry("other.txt", "in memory too"));
+    }
+
+    @Test
+    public void testFailureIsReported() throws Exception {
+        MemoryFileAbstractor path = new MemoryFileAbstractor(Integer.MAX_VALUE);
+        RecordingFileIndexer indexer = new RecordingFileIndexer(false).failOn("file-3.txt");
+        FsPerFileExecutor<String> executor = executor(path, Fs.builder().setMaxParsingThreads(2), indexer);
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                executor.submit(path.add("file-" + i + ".txt", "content " + i), MemoryFileAbstractor.DIR);
+            }
+            executor.finish();
+            fail("We should have caught the parsing failure");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Can not parse file-3.txt"));
+        } finally {
+            executor.abort();
+        }
+    }
+
+    @Test
+    public void testContinueOnError() throws Exception {
+        MemoryFileAbstractor path = new MemoryFileAbstractor(Integer.MAX_VALUE);
+        RecordingFileIndexer indexer = new RecordingFileIndexer(false).failOn("file-3.txt");
+        FsPerFileExecutor<String> executor = executor(path,
+                Fs.builder().setMaxParsingThreads(2).setContinueOnError(true), indexer);
+
+        for (int i = 0; i < 10; i++) {
+            executor.submit(path.add("file-" + i + ".txt", "content " + i), MemoryFileAbstractor.DIR);
+        }
+        executor.finish();
+        assertThat(indexer.getSent().size(), is(9));
+        assertThat(path.getOpen(), is(0));
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.service.FsCrawlerLeaseService;
+import fr.pilato.elasticsearch.crawler.fs.service.FsLease;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FsShardCoordinatorTest extends AbstractFSCrawlerTestCase {
+
+    private static final int SHARDS = 8;
+    private static final long LEASE_DURATION = 60_000;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final LocalLeaseService leaseService = new LocalLeaseService();
+
+    private FsShardCoordinator node(String name) {
+        return new FsShardCoordinator(leaseService, name, SHARDS, LEASE_DURATION, clock::get);
+    }
+
+    @Test
+    public void testSingleNodeOwnsAllShards() throws Exception {
+        FsShardCoordinator node1 = node("node1");
+        assertThat(node1.rebalance(), hasSize(SHARDS));
+        assertThat(node1.getOwnedShards(), hasSize(SHARDS));
+        for (String name : new String[]{"foo", "bar", "/tmp/es/baz"}) {
+            assertThat(node1.owns(name), is(true));
+        }
+    }
+
+    @Test
+    public void testShardOf() {
+        FsShardCoordinator node1 = node("node1");
+        assertThat(node1.shardOf("/tmp/es/foo"), is(node1.shardOf("foo")));
+        assertThat(node1.shardOf("c:\\es\\foo"), is(node1.shardOf("foo")));
+        assertThat(node1.shardOf("foo"), is(Math.floorMod("foo".hashCode(), SHARDS)));
+    }
+
+    @Test
+    public void testNodesShareTheShards() throws Exception {
+        FsShardCoordinator node1 = node("node1");
+        FsShardCoordinator node2 = node("node2");
+
+        node1.rebalance();
+        // node2 joins: node1 owns everything so node2 can not get anything yet
+        assertThat(node2.rebalance(), empty());
+        // On its next run, node1 gives back the shards above its fair share
+        node1.rebalance();
+        assertThat(node1.getOwnedShards(), hasSize(SHARDS / 2));
+        assertThat(node2.rebalance(), hasSize(SHARDS / 2));
+
+        // Every shard is owned by exactly one node
+        Set<Integer> all = new HashSet<>(node1.getOwnedShards());
+        for (Integer shard : node2.getOwnedShards()) {
+            assertThat(all.add(shard), is(true));
+        }
+        assertThat(all, hasSize(SHARDS));
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        FsShardCoordinator node1 = node("node1");
+        FsShardCoordinator node2 = node("node2");
+        node1.rebalance();
+        node2.rebalance();
+        node1.rebalance();
+        node2.rebalance();
+        assertThat(node2.getOwnedShards(), hasSize(SHARDS / 2));
+
+        // node1 crawled its shards then died
+        LocalDateTime scanDate = LocalDateTime.now();
+        node1.complete(scanDate);
+        int shard = node1.getOwnedShards().get(0);
+
+        // Its leases are still valid for a while
+        clock.addAndGet(LEASE_DURATION / 2);
+        node2.rebalance();
+        assertThat(node2.getOwnedShards(), hasSize(SHARDS / 2));
+
+        // node2 is alive and renews its leases, but node1's ones expire
+        node2.renew();
+        clock.addAndGet(LEASE_DURATION);
+        assertThat(node2.rebalance(), hasSize(SHARDS / 2));
+        assertThat(node2.getOwnedShards(), hasSize(SHARDS));
+
+        // node2 knows when node1 crawled the shard for the last time
+        String name = nameOfShard(node2, shard);
+        assertThat(node2.getLastScanDate(name), is(scanDate));
+    }
+
+    @Test
+    public void testLostLease() throws Exception {
+        FsShardCoordinator node1 = node("node1");
+        FsShardCoordinator node2 = node("node2");
+        node1.rebalance();
+
+        // node1 was paused longer than its leases and node2 took them all
+        clock.addAndGet(LEASE_DURATION * 2);
+        assertThat(node2.rebalance(), hasSize(SHARDS));
+
+        // node1 can not renew its leases anymore
+        node1.renew();
+        assertThat(node1.getOwnedShards(), empty());
+        assertThat(node1.rebalance(), empty());
+    }
+
+    @Test
+    public void testOnlyOneNodeWinsALease() throws Exception {
+        FsShardCoordinator node1 = node("node1");
+        node1.rebalance();
+        FsLease lease = leaseService.get(FsShardCoordinator.SHARD_LEASE_PREFIX + 0);
+        clock.addAndGet(LEASE_DURATION * 2);
+
+        // Two nodes read the same expired lease but only the first write wins
+        FsLease copy1 = leaseService.get(lease.getId());
+        FsLease copy2 = leaseService.get(lease.getId());
+        copy1.setNode("node2");
+        copy2.setNode("node3");
+        assertThat(leaseService.put(copy1), is(true));
+        assertThat(leaseService.put(copy2), is(false));
+        assertThat(leaseService.get(lease.getId()).getNode(), is("node2"));
+
+        // A lease which does not exist can only be created once
+        FsLease new1 = new FsLease("new");
+        FsLease new2 = new FsLease("new");
+        assertThat(leaseService.put(new1), is(true));
+        assertThat(leaseService.put(new2), is(false));
+    }
+
+    @Test
+    public void testRelease() throws Exception {
+        FsShardCoordinator node1 = node("node1");
+        FsShardCoordinator node2 = node("node2");
+        node1.rebalance();
+        node1.complete(LocalDateTime.now());
+        node1.release();
+        assertThat(node1.getOwnedShards(), empty());
+
+        // node2 does not have to wait for the leases to expire
+        assertThat(node2.rebalance(), hasSize(SHARDS));
+        assertThat(leaseService.get(FsShardCoordinator.NODE_LEASE_PREFIX + "node1").isExpired(clock.get()), is(true));
+        assertThat(node2.getLastScanDate(nameOfShard(node2, 0)), notNullValue());
+    }
+
+    @Test
+    public void testNewShardHasNoScanDate() throws Exception {
+        FsShardCoordinator node1 = node("node1");
+        node1.rebalance();
+        assertThat(node1.getLastScanDate("foo"), nullValue());
+    }
+
+    private static String nameOfShard(FsShardCoordinator coordinator, int shard) {
+        for (int i = 0; ; i++) {
+            String name = "dir" + i;
+            if (coordinator.shardOf(name) == shard) {
+                return name;
+            }
+        }
+    }
+
+    /**
+     * A local stand-in for the coordination index with the same optimistic concurrency control:
+     * a write only succeeds if the lease did not change since it has been read.
+     */
+    private static class LocalLeaseService implements FsCrawlerLeaseService {
+        private final Map<String, FsLease> leases = new HashMap<>();
+
+        @Override
+        public synchronized FsLease get(String id) {
+            FsLease lease = leases.get(id);
+            return lease == null ? null : copy(lease);
+        }
+
+        @Override
+        public synchronized boolean put(FsLease lease) {
+            FsLease current = leases.get(lease.getId());
+            Object currentVersion = current == null ? null : current.getVersion();
+            if (currentVersion == null ? lease.getVersion() != null : !currentVersion.equals(lease.getVersion())) {
+                return false;
+            }
+            FsLease stored = copy(lease);
+            stored.setVersion(currentVersion == null ? 1L : (Long) currentVersion + 1);
+            leases.put(lease.getId(), stored);
+            lease.setVersion(stored.getVersion());
+            return true;
+        }
+
+        @Override
+        public synchronized Collection<FsLease> getAll() {
+            Collection<FsLease> all = new ArrayList<>();
+            for (FsLease lease : leases.values()) {
+                all.add(copy(lease));
+            }
+            return all;
+        }
+
+        private static FsLease copy(FsLease lease) {
+            FsLease copy = new FsLease(lease.getId());
+            copy.setNode(lease.getNode());
+            copy.setExpires(lease.getExpires());
+            copy.setLastScan(lease.getLastScan());
+            copy.setVersion(lease.getVersion());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A file abstractor which serves files from memory and counts the streams which are open
+ */
+class MemoryFileAbstractor extends FileAbstractor<String> {
+    static final String DIR = "/memory";
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final int maxConcurrency;
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+
+    MemoryFileAbstractor(int maxConcurrency) {
+        super(FsSettings.builder("memory").build());
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Add a file
+     * @param name      name of the file
+     * @param content   content of the file
+     * @param size      the size we announce for this file, which can be -1 when it is unknown
+     * @return the file
+     */
+    FileAbstractModel add(String name, String content, long size) {
+        files.put(name, content.getBytes(StandardCharsets.UTF_8));
+        LocalDateTime now = LocalDateTime.now();
+        return new FileAbstractModel(name, true, now, now, now, "txt", DIR, DIR + "/" + name, size, null, null, 0);
+    }
+
+    FileAbstractModel add(String name, String content) {
+        return add(name, content, content.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    /**
+     * @return the number of streams which have been opened so far
+     */
+    int getOpened() {
+        return opened.get();
+    }
+
+    /**
+     * @return the number of streams which are open right now
+     */
+    int getOpen() {
+        return open.get();
+    }
+
+    @Override
+    public FileAbstractModel toFileAbstractModel(String path, String file) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public InputStream getInputStream(FileAbstractModel file) {
+        opened.incrementAndGet();
+        open.incrementAndGet();
+        return new ByteArrayInputStream(files.get(file.getName()));
+    }
+
+    @Override
+    public void closeInputStream(InputStream inputStream) {
+        open.decrementAndGet();
+    }
+
+    @Override
+    public Collection<FileAbstractModel> getFiles(String dir) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean exists(String dir) {
+        return DIR.equals(dir);
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An indexer which reads the whole content of the files and records the documents it sends.
+ * The parsing can be blocked until {@link #release()} is called.
+ */
+class RecordingFileIndexer implements FsFileIndexer<String> {
+    private final Map<String, String> sent = new ConcurrentHashMap<>();
+    private final AtomicInteger parsing = new AtomicInteger();
+    private final CountDownLatch released;
+    private volatile String failOn;
+    private volatile String skip;
+
+    RecordingFileIndexer(boolean blocked) {
+        this.released = new CountDownLatch(blocked ? 1 : 0);
+    }
+
+    /**
+     * Throw an exception when parsing this file
+     */
+    RecordingFileIndexer failOn(String filename) {
+        this.failOn = filename;
+        return this;
+    }
+
+    /**
+     * Don't index this file
+     */
+    RecordingFileIndexer skip(String filename) {
+        this.skip = filename;
+        return this;
+    }
+
+    void release() {
+        released.countDown();
+    }
+
+    /**
+     * @return the number of files being parsed right now
+     */
+    int getParsing() {
+        return parsing.get();
+    }
+
+    /**
+     * @return the content of the documents we sent by file name
+     */
+    Map<String, String> getSent() {
+        return sent;
+    }
+
+    @Override
+    public String parse(FileAbstractModel file, String dirname, InputStream inputStream) throws Exception {
+        parsing.incrementAndGet();
+        try {
+            released.await();
+            if (file.getName().equals(failOn)) {
+                throw new IllegalStateException("Can not parse " + file.getName());
+            }
+            if (file.getName().equals(skip)) {
+                return null;
+            }
+            return file.getName() + ":" + new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            parsing.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void send(String document) {
+        int separator = document.indexOf(':');
+        sent.put(document.substring(0, separator), document.substring(separator + 1));
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded pool of connections to a remote server. A connection is used by one thread at a time:
+ * it is borrowed for a listing or for the whole lifetime of a retrieved stream and then released.
+ * Connections which stayed idle for too long are closed and connections which stayed idle
+ * for a while are validated before being handed out again.
+ * @param <T> the type of connection
+ */
+public class ConnectionPool<T> implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ConnectionPool.class);
+
+    /**
+     * Most servers close the connections which are idle for 5 minutes
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 240_000;
+    public static final long DEFAULT_VALIDATE_AFTER_MS = 10_000;
+
+    /**
+     * Opens, checks and closes the connections of a pool
+     * @param <T> the type of connection
+     */
+    public interface Connector<T> {
+        /**
+         * Open a new connection which is ready to be used
+         */
+        T connect() throws Exception;
+
+        /**
+         * A cheap check, without any round trip to the server
+         */
+        boolean isConnected(T connection);
+
+        /**
+         * Check that a connection which stayed idle for a while is still usable.
+         * By default, it only calls {@link #isConnected(Object)}.
+         */
+        default boolean validate(T connection) throws Exception {
+            return isConnected(connection);
+        }
+
+        /**
+         * Close a connection which might be broken. It must not throw any exception.
+         */
+        void disconnect(T connection);
+
+        /**
+         * Close a healthy connection. By default, it calls {@link #disconnect(Object)}.
+         */
+        default void close(T connection) {
+            disconnect(connection);
+        }
+    }
+
+    private static class IdleConnection<T> {
+        private final T connection;
+        private final long releasedAt;
+
+        private IdleConnection(T connection, long releasedAt) {
+            this.connection = connection;
+            this.releasedAt = releasedAt;
+        }
+    }
+
+    private final String name;
+    private final Connector<T> connector;
+    private final int maxConnections;
+    private final long idleTimeoutMs;
+    private final long validateAfterMs;
+    private final Semaphore permits;
+    // Most recently released connections are at the head so the oldest ones can expire at the tail
+    private final Deque<IdleConnection<T>> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(String name, Connector<T> connector, int maxConnections) {
+        this(name, connector, maxConnections, DEFAULT_IDLE_TIMEOUT_MS, DEFAULT_VALIDATE_AFTER_MS);
+    }
+
+    public ConnectionPool(String name, Connector<T> connector, int maxConnections, long idleTimeoutMs, long validateAfterMs) {
+        this.name = name;
+        this.connector = connector;
+        this.maxConnections = maxConnections;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validateAfterMs = validateAfterMs;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return the number of connections currently opened and waiting in the pool
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * Borrow a connection. It blocks until a connection is available and opens a new one
+     * if no healthy idle connection can be reused. The connection must then be given back
+     * with {@link #release(Object)} or {@link #invalidate(Object)}.
+     */
+    public T borrow() throws IOException {
+        if (closed) {
+            throw new IOException("The " + name + " connection pool is closed");
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a " + name + " connection");
+        }
+
+        try {
+            evictIdle();
+            IdleConnection<T> connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isHealthy(connection)) {
+                    return connection.connection;
+                }
+                connector.disconnect(connection.connection);
+            }
+            logger.trace("Opening a new {} connection", name);
+            return connector.connect();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        } catch (Exception e) {
+            permits.release();
+            throw new IOException("Can not open a " + name + " connection: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Give back a connection which can be reused
+     */
+    public void release(T connection) {
+        if (closed) {
+            connector.close(connection);
+        } else if (!connector.isConnected(connection)) {
+            connector.disconnect(connection);
+        } else {
+            idle.offerFirst(new IdleConnection<>(connection, System.currentTimeMillis()));
+        }
+        permits.release();
+    }
+
+    /**
+     * Give back a connection which is broken. It is closed and a new one will be opened when needed.
+     */
+    public void invalidate(T connection) {
+        connector.disconnect(connection);
+        permits.release();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        IdleConnection<T> connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connector.close(connection.connection);
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        IdleConnection<T> connection;
+        while ((connection = idle.peekLast()) != null && now - connection.releasedAt > idleTimeoutMs) {
+            if (idle.removeLastOccurrence(connection)) {
+                logger.trace("Closing a {} connection which was idle for [{}] ms", name, now - connection.releasedAt);
+                connector.close(connection.connection);
+            }
+        }
+    }
+
+    private boolean isHealthy(IdleConnection<T> connection) {
+        if (!connector.isConnected(connection.connection)) {
+            return false;
+        }
+        if (System.currentTimeMillis() - connection.releasedAt < validateAfterMs) {
+            return true;
+        }
+        try {
+            return connector.validate(connection.connection);
+        } catch (Exception e) {
+            logger.debug("{} connection is not usable anymore: {}", name, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler;
+
+import java.time.LocalDateTime;
+
+/**
+ * What the file system tells about a directory without listing it
+ */
+public class DirectoryState {
+    public static final long UNKNOWN_LINKS = -1;
+
+    private final LocalDateTime lastModifiedDate;
+    private final long links;
+
+    /**
+     * @param lastModifiedDate  the modification date of the directory, which changes when an entry is added, removed or renamed
+     * @param links             the number of hard links of the directory (2 + the number of subdirectories on most POSIX
+     *                          file systems) or {@link #UNKNOWN_LINKS}
+     */
+    public DirectoryState(LocalDateTime lastModifiedDate, long links) {
+        this.lastModifiedDate = lastModifiedDate;
+        this.links = links;
+    }
+
+    public LocalDateTime getLastModifiedDate() {
+        return lastModifiedDate;
+    }
+
+    public long getLinks() {
+        return links;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryState{" + "lastModifiedDate=" + lastModifiedDate +
+                ", links=" + links +
+                '}';
+    }
+}
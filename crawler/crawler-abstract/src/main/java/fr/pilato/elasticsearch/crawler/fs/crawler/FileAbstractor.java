@@ -22,6 +22,7 @@ package fr.pilato.elasticsearch.crawler.fs.crawler;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 
 import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.Collection;
 
 public abstract class FileAbstractor<T> {
@@ -35,12 +36,64 @@ public abstract class FileAbstractor<T> {
 
     public abstract Collection<FileAbstractModel> getFiles(String dir) throws Exception;
 
+    /**
+     * Get a single file from a directory. Implementations should override this when they can
+     * read a file without listing the whole directory.
+     * @param dir       the directory
+     * @param filename  the name of the file within the directory
+     * @return the file or null if it does not exist
+     * @throws Exception in case of error
+     */
+    public FileAbstractModel getFile(String dir, String filename) throws Exception {
+        for (FileAbstractModel file : getFiles(dir)) {
+            if (file.getName().equals(filename)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the state of a directory without listing it. Implementations should override this when they can
+     * read the attributes of a directory with a single call.
+     * @param dir   the directory
+     * @return the state of the directory or null if it can not be read cheaply
+     * @throws Exception in case of error
+     */
+    public DirectoryState getDirectoryState(String dir) throws Exception {
+        return null;
+    }
+
+    /**
+     * Get with a single call the files and the directories of a tree which changed since a given date.
+     * Implementations should override this when the server can find the changes itself, so we don't
+     * have to list every directory. Removed files can not be detected this way.
+     * @param dir       the root of the tree
+     * @param since     we want the files and directories which changed after this date
+     * @param names     names of the files we always want to get, even when they did not change
+     * @return the changed files and directories or null if the implementation can not find them
+     * @throws Exception in case of error
+     */
+    public Collection<FileAbstractModel> getChangedFiles(String dir, LocalDateTime since, Collection<String> names)
+            throws Exception {
+        return null;
+    }
+
     public abstract boolean exists(String dir);
 
     public abstract void open() throws Exception;
 
     public abstract void close() throws Exception;
 
+    /**
+     * Get the maximum number of threads which can use this abstractor at the same time.
+     * Implementations which are backed by a single remote connection must override this.
+     * @return the maximum number of concurrent callers
+     */
+    public int getMaxConcurrency() {
+        return Integer.MAX_VALUE;
+    }
+
     protected FileAbstractor(FsSettings fsSettings) {
         this.fsSettings = fsSettings;
     }
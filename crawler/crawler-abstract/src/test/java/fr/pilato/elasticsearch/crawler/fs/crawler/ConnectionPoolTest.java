@@ -0,0 +1,208 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+
+public class ConnectionPoolTest extends AbstractFSCrawlerTestCase {
+
+    private static class FakeConnection {
+        private boolean connected = true;
+        private boolean healthy = true;
+        private boolean closed = false;
+    }
+
+    private static class FakeConnector implements ConnectionPool.Connector<FakeConnection> {
+        private final AtomicInteger opened = new AtomicInteger();
+        private final AtomicInteger validated = new AtomicInteger();
+        private volatile boolean failing = false;
+
+        @Override
+        public FakeConnection connect() throws IOException {
+            if (failing) {
+                throw new IOException("Connection refused");
+            }
+            opened.incrementAndGet();
+            return new FakeConnection();
+        }
+
+        @Override
+        public boolean isConnected(FakeConnection connection) {
+            return connection.connected;
+        }
+
+        @Override
+        public boolean validate(FakeConnection connection) {
+            validated.incrementAndGet();
+            return connection.healthy;
+        }
+
+        @Override
+        public void disconnect(FakeConnection connection) {
+            connection.connected = false;
+        }
+
+        @Override
+        public void close(FakeConnection connection) {
+            connection.closed = true;
+            disconnect(connection);
+        }
+    }
+
+    private final FakeConnector connector = new FakeConnector();
+
+    @Test
+    public void testReuseConnections() throws IOException {
+        try (ConnectionPool<FakeConnection> pool = new ConnectionPool<>("fake", connector, 2)) {
+            FakeConnection connection = pool.borrow();
+            pool.release(connection);
+            assertThat(pool.getIdleConnections(), is(1));
+            assertThat(pool.borrow(), sameInstance(connection));
+            assertThat(pool.getIdleConnections(), is(0));
+            pool.release(connection);
+            assertThat(connector.opened.get(), is(1));
+            assertThat(connector.validated.get(), is(0));
+        }
+    }
+
+    @Test
+    public void testEvictIdleConnections() throws Exception {
+        try (ConnectionPool<FakeConnection> pool = new ConnectionPool<>("fake", connector, 2, 0,
+                ConnectionPool.DEFAULT_VALIDATE_AFTER_MS)) {
+            FakeConnection connection = pool.borrow();
+            pool.release(connection);
+            awaitBusy(() -> false, 10, TimeUnit.MILLISECONDS);
+            FakeConnection other = pool.borrow();
+            assertThat(other, not(sameInstance(connection)));
+            assertThat(connection.closed, is(true));
+            pool.release(other);
+            assertThat(connector.opened.get(), is(2));
+        }
+    }
+
+    @Test
+    public void testValidateIdleConnections() throws IOException {
+        try (ConnectionPool<FakeConnection> pool = new ConnectionPool<>("fake", connector, 2,
+                ConnectionPool.DEFAULT_IDLE_TIMEOUT_MS, 0)) {
+            FakeConnection connection = pool.borrow();
+            pool.release(connection);
+            assertThat(pool.borrow(), sameInstance(connection));
+            assertThat(connector.validated.get(), is(1));
+
+            // The server closed the connection
+            connection.healthy = false;
+            pool.release(connection);
+            FakeConnection other = pool.borrow();
+            assertThat(other, not(sameInstance(connection)));
+            assertThat(connection.connected, is(false));
+            pool.release(other);
+        }
+    }
+
+    @Test
+    public void testInvalidateConnections() throws IOException {
+        try (ConnectionPool<FakeConnection> pool = new ConnectionPool<>("fake", connector, 1)) {
+            FakeConnection connection = pool.borrow();
+            pool.invalidate(connection);
+            assertThat(connection.connected, is(false));
+            assertThat(pool.getIdleConnections(), is(0));
+
+            // A connection which was closed while being used is not reused
+            connection = pool.borrow();
+            connection.connected = false;
+            pool.release(connection);
+            assertThat(pool.getIdleConnections(), is(0));
+            pool.release(pool.borrow());
+            assertThat(connector.opened.get(), is(3));
+        }
+    }
+
+    @Test
+    public void testConnectionFailure() throws IOException {
+        try (ConnectionPool<FakeConnection> pool = new ConnectionPool<>("fake", connector, 1)) {
+            connector.failing = true;
+            try {
+                pool.borrow();
+                fail("We should not be able to open a connection");
+            } catch (IOException ignored) {
+            }
+            // We did not lose the permit
+            connector.failing = false;
+            pool.release(pool.borrow());
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        ConnectionPool<FakeConnection> pool = new ConnectionPool<>("fake", connector, 2);
+        FakeConnection idle = pool.borrow();
+        FakeConnection used = pool.borrow();
+        pool.release(idle);
+        pool.close();
+        assertThat(idle.closed, is(true));
+        assertThat(used.closed, is(false));
+        pool.release(used);
+        assertThat(used.closed, is(true));
+        try {
+            pool.borrow();
+            fail("We should not be able to borrow from a closed pool");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void testMaxConnections() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ConnectionPool<FakeConnection> pool = new ConnectionPool<>("fake", connector, 2)) {
+            FakeConnection first = pool.borrow();
+            FakeConnection second = pool.borrow();
+            CountDownLatch waiting = new CountDownLatch(1);
+            Future<FakeConnection> third = executor.submit(() -> {
+                waiting.countDown();
+                return pool.borrow();
+            });
+            waiting.await();
+            awaitBusy(third::isDone, 200, TimeUnit.MILLISECONDS);
+            assertThat(third.isDone(), is(false));
+            pool.release(second);
+            assertThat(third.get(10, TimeUnit.SECONDS), sameInstance(second));
+            pool.release(first);
+            pool.release(second);
+            assertThat(connector.opened.get(), is(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -19,38 +19,65 @@
 
 package fr.pilato.elasticsearch.crawler.fs.crawler.fs;
 
+import fr.pilato.elasticsearch.crawler.fs.crawler.DirectoryState;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
+import fr.pilato.elasticsearch.crawler.fs.framework.OsValidator;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
-import java.io.IOException;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getCreationTime;
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getFileExtension;
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getFilePermissions;
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getGroupName;
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getLastAccessTime;
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getModificationTime;
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getOwnerName;
 
 public class FileAbstractorFile extends FileAbstractor<File> {
     private final Logger logger = LogManager.getLogger(FileAbstractorFile.class);
 
+    // All the attributes we need, read with a single stat call
+    private static final String UNIX_ATTRIBUTES =
+            "unix:size,lastModifiedTime,lastAccessTime,creationTime,isRegularFile,isSymbolicLink,permissions,uid,gid";
+    private static final LinkOption[] FOLLOW_LINKS = new LinkOption[0];
+    private static final LinkOption[] NOFOLLOW_LINKS = new LinkOption[] { LinkOption.NOFOLLOW_LINKS };
+
     public FileAbstractorFile(FsSettings fsSettings) {
         super(fsSettings);
     }
 
     public static String separator = File.separator;
 
+    // Set to false once we know that the platform does not support the unix attribute view
+    private volatile boolean unixAttributes = true;
+
+    // Resolving a user or a group name can be a network call (LDAP, NIS...), so we only do it once per id
+    private final Map<Integer, String> ownerNames = new ConcurrentHashMap<>();
+    private final Map<Integer, String> groupNames = new ConcurrentHashMap<>();
+
     private String resolveSeparator(String path) {
         if (separator.equals("/")) {
             return path.replace("\\", "/");
@@ -60,19 +87,116 @@ public class FileAbstractorFile extends FileAbstractor<File> {
 
     @Override
     public FileAbstractModel toFileAbstractModel(String path, File file) {
+        try {
+            return toFileAbstractModel(path, file.toPath(), FOLLOW_LINKS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Build the model of a file with one single call to the file system to read its attributes
+     * @param dir       the directory of the file
+     * @param file      the file
+     * @param options   whether we follow symbolic links or not
+     * @return the file model
+     * @throws IOException if the attributes can not be read
+     */
+    private FileAbstractModel toFileAbstractModel(String dir, Path file, LinkOption[] options) throws IOException {
+        if (unixAttributes) {
+            try {
+                Map<String, Object> attributes = Files.readAttributes(file, UNIX_ATTRIBUTES, options);
+                if ((Boolean) attributes.get("isSymbolicLink")) {
+                    return null;
+                }
+                @SuppressWarnings("unchecked")
+                Set<PosixFilePermission> permissions = (Set<PosixFilePermission>) attributes.get("permissions");
+                return toFileAbstractModel(dir, file,
+                        (Boolean) attributes.get("isRegularFile"),
+                        (FileTime) attributes.get("lastModifiedTime"),
+                        (FileTime) attributes.get("creationTime"),
+                        (FileTime) attributes.get("lastAccessTime"),
+                        (Long) attributes.get("size"),
+                        ownerName(file, (Integer) attributes.get("uid"), options),
+                        groupName(file, (Integer) attributes.get("gid"), options),
+                        getFilePermissions(permissions));
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                logger.debug("unix attributes are not available on this platform. Reading the attributes one by one.");
+                unixAttributes = false;
+            }
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, options);
+        if (attributes.isSymbolicLink()) {
+            return null;
+        }
+        File legacyFile = file.toFile();
+        return toFileAbstractModel(dir, file,
+                attributes.isRegularFile(),
+                attributes.lastModifiedTime(),
+                attributes.creationTime(),
+                attributes.lastAccessTime(),
+                attributes.size(),
+                getOwnerName(legacyFile),
+                getGroupName(legacyFile),
+                OsValidator.WINDOWS ? -1 : getFilePermissions(legacyFile));
+    }
+
+    private FileAbstractModel toFileAbstractModel(String dir, Path file, boolean regularFile, FileTime lastModified,
+                                                  FileTime created, FileTime lastAccessed, long size,
+                                                  String owner, String group, int permissions) {
+        String fullpath = file.toAbsolutePath().toString();
         return new FileAbstractModel(
-                file.getName(),
-                file.isFile(),
-                getModificationTime(file),
-                getCreationTime(file),
-                getLastAccessTime(file),
-                getFileExtension(file),
-                resolveSeparator(path),
-                resolveSeparator(file.getAbsolutePath()),
-                file.length(),
-                getOwnerName(file),
-                getGroupName(file),
-                getFilePermissions(file));
+                file.getFileName().toString(),
+                regularFile,
+                toLocalDateTime(lastModified),
+                toLocalDateTime(created),
+                toLocalDateTime(lastAccessed),
+                FilenameUtils.getExtension(fullpath).toLowerCase(),
+                resolveSeparator(dir),
+                resolveSeparator(fullpath),
+                size,
+                owner,
+                group,
+                permissions);
+    }
+
+    private static LocalDateTime toLocalDateTime(FileTime time) {
+        return time == null ? null : LocalDateTime.ofInstant(time.toInstant(), ZoneId.systemDefault());
+    }
+
+    private String ownerName(Path file, Integer uid, LinkOption[] options) {
+        String name = ownerNames.get(uid);
+        if (name == null) {
+            try {
+                name = Files.getOwner(file, options).getName();
+                ownerNames.put(uid, name);
+            } catch (Exception e) {
+                logger.warn("Failed to determine 'owner' of {}: {}", file, e.getMessage());
+            }
+        }
+        return name;
+    }
+
+    private String groupName(Path file, Integer gid, LinkOption[] options) {
+        String name = groupNames.get(gid);
+        if (name == null) {
+            try {
+                name = Files.readAttributes(file, PosixFileAttributes.class, options).group().getName();
+                groupNames.put(gid, name);
+            } catch (Exception e) {
+                logger.warn("Failed to determine 'group' of {}: {}", file, e.getMessage());
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Read the attributes of a file found in a directory
+     * @return the file model or null if this is a symbolic link we should not follow
+     */
+    private FileAbstractModel readFile(String dir, Path file) throws IOException {
+        return toFileAbstractModel(dir, file, fsSettings.getFs().isFollowSymlinks() ? FOLLOW_LINKS : NOFOLLOW_LINKS);
     }
 
     @Override
@@ -89,29 +213,57 @@ public class FileAbstractorFile extends FileAbstractor<File> {
     public Collection<FileAbstractModel> getFiles(String dir) {
         logger.debug("Listing local files from {}", dir);
 
-        File[] files = new File(dir).listFiles(file -> {
-            if (fsSettings.getFs().isFollowSymlinks()) return true;
-            return !Files.isSymbolicLink(file.toPath());
-        });
-        Collection<FileAbstractModel> result;
-
-        if (files != null) {
-            result = new ArrayList<>(files.length);
-
-            // Iterate other files
-            for (File file : files) {
-                result.add(toFileAbstractModel(dir, file));
+        Collection<FileAbstractModel> result = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(dir))) {
+            for (Path file : files) {
+                try {
+                    FileAbstractModel model = readFile(dir, file);
+                    if (model != null) {
+                        result.add(model);
+                    }
+                } catch (IOException e) {
+                    // The file might have been removed since we listed it or this is a broken link
+                    logger.debug("Can not read attributes of [{}]: {}. Skipping it.", file, e.getMessage());
+                }
             }
-        } else {
-            logger.debug("Symlink on windows gives null for listFiles(). Skipping [{}]", dir);
+        } catch (IOException e) {
+            logger.debug("Can not list [{}]: {}. Skipping it.", dir, e.getMessage());
             result = Collections.emptyList();
         }
 
-
         logger.debug("{} local files found", result.size());
         return result;
     }
 
+    @Override
+    public FileAbstractModel getFile(String dir, String filename) throws IOException {
+        try {
+            return readFile(dir, Paths.get(dir, filename));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public DirectoryState getDirectoryState(String dir) throws IOException {
+        Path path = Paths.get(dir);
+        FileTime lastModified;
+        long links = DirectoryState.UNKNOWN_LINKS;
+        if (unixAttributes) {
+            try {
+                Map<String, Object> attributes = Files.readAttributes(path, "unix:lastModifiedTime,nlink");
+                lastModified = (FileTime) attributes.get("lastModifiedTime");
+                links = ((Number) attributes.get("nlink")).longValue();
+                return new DirectoryState(LocalDateTime.ofInstant(lastModified.toInstant(), ZoneId.systemDefault()), links);
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                logger.debug("unix attributes are not available on this platform. Only using the modification date of the directories.");
+                unixAttributes = false;
+            }
+        }
+        lastModified = Files.getLastModifiedTime(path);
+        return new DirectoryState(LocalDateTime.ofInstant(lastModified.toInstant(), ZoneId.systemDefault()), links);
+    }
+
     @Override
     public boolean exists(String dir) {
         return new File(dir).exists();
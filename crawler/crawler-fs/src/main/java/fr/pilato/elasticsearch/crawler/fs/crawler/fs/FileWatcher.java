@@ -0,0 +1,300 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler.fs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watch a local directory tree for changes. Every directory is registered to a {@link WatchService}
+ * (inotify on Linux) and the events are collected in batches by {@link #poll(long, long)}.
+ */
+public class FileWatcher implements Closeable {
+    private static final Logger logger = LogManager.getLogger(FileWatcher.class);
+
+    // A batch is never collected for more than this number of quiet periods, even if events keep coming
+    private static final int MAX_QUIET_PERIODS_PER_BATCH = 10;
+
+    private final WatchService watchService;
+    private final Predicate<Path> directoryFilter;
+    private final boolean followSymlinks;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    /**
+     * Create a watcher and register the whole tree
+     * @param root              the root directory to watch
+     * @param directoryFilter   directories which are not accepted are not watched, nor their subdirectories
+     * @param followSymlinks    true if we should follow symbolic links
+     * @throws IOException      if the tree can not be registered
+     */
+    public FileWatcher(Path root, Predicate<Path> directoryFilter, boolean followSymlinks) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.directoryFilter = directoryFilter;
+        this.followSymlinks = followSymlinks;
+        try {
+            registerTree(root, null);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        logger.debug("Watching [{}] directories from [{}]", keys.size(), root);
+    }
+
+    /**
+     * Wait for changes and coalesce them. The first event is waited for up to timeout. Then we keep
+     * collecting events until nothing happens during the quiet period.
+     * @param timeout       maximum time to wait for the first event, in milliseconds
+     * @param quietPeriod   time without any event which ends the batch, in milliseconds
+     * @return the changes, which are empty if nothing happened before the timeout
+     * @throws InterruptedException if interrupted while waiting
+     * @throws java.nio.file.ClosedWatchServiceException if the watcher has been closed
+     */
+    public Changes poll(long timeout, long quietPeriod) throws InterruptedException {
+        Changes changes = new Changes();
+        WatchKey key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(quietPeriod * MAX_QUIET_PERIODS_PER_BATCH);
+        while (key != null) {
+            handle(key, changes);
+            if (changes.overflow || System.nanoTime() > deadline) {
+                break;
+            }
+            key = watchService.poll(quietPeriod, TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    /**
+     * @return the number of directories which are currently watched
+     */
+    public int getWatchedDirectories() {
+        return keys.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void handle(WatchKey key, Changes changes) {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                logger.debug("Too many events in [{}]. Some changes have been lost.", dir);
+                changes.overflow = true;
+                continue;
+            }
+
+            Path child = dir.resolve((Path) event.context());
+            logger.trace("Event [{}] on [{}]", event.kind(), child);
+            if (event.kind() == ENTRY_DELETE) {
+                changes.deleted(child, unregisterTree(child));
+            } else if (Files.isDirectory(child, linkOptions())) {
+                // Modifications on a directory only mean that its content changed which we will get from its own events
+                if (event.kind() == ENTRY_CREATE) {
+                    try {
+                        registerTree(child, changes);
+                    } catch (IOException e) {
+                        logger.debug("Can not watch [{}]: {}", child, e.getMessage());
+                        changes.overflow = true;
+                    }
+                }
+            } else {
+                changes.changed(child);
+            }
+        }
+
+        if (!key.reset()) {
+            // The directory is not accessible anymore
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Register a directory and all its subdirectories
+     * @param changes if not null, the directories and files we find are added to the changes as they might
+     *                have been created before we were able to watch them
+     */
+    private void registerTree(Path start, Changes changes) throws IOException {
+        Set<FileVisitOption> options = followSymlinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : Collections.emptySet();
+        Files.walkFileTree(start, options, Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!directoryFilter.test(dir)) {
+                    logger.trace("Not watching [{}]", dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                if (changes != null) {
+                    changes.createdDirectories.add(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (changes != null && attrs.isRegularFile()) {
+                    changes.changed(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.debug("Can not visit [{}]: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Stop watching a directory and its subdirectories
+     * @return true if the path was a watched directory
+     */
+    private boolean unregisterTree(Path dir) {
+        boolean wasWatched = false;
+        Iterator<Map.Entry<WatchKey, Path>> iterator = keys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<WatchKey, Path> entry = iterator.next();
+            if (entry.getValue().startsWith(dir)) {
+                wasWatched |= entry.getValue().equals(dir);
+                entry.getKey().cancel();
+                iterator.remove();
+            }
+        }
+        return wasWatched;
+    }
+
+    private LinkOption[] linkOptions() {
+        return followSymlinks ? new LinkOption[0] : new LinkOption[] { LinkOption.NOFOLLOW_LINKS };
+    }
+
+    /**
+     * The changes collected during a batch. When the same path gets several events, only the last one counts.
+     */
+    public static class Changes {
+        private final Set<Path> createdDirectories = new LinkedHashSet<>();
+        private final Set<Path> changedFiles = new LinkedHashSet<>();
+        private final Set<Path> deletedFiles = new LinkedHashSet<>();
+        private final Set<Path> deletedDirectories = new LinkedHashSet<>();
+        private boolean overflow = false;
+
+        private void changed(Path file) {
+            deletedFiles.remove(file);
+            changedFiles.add(file);
+        }
+
+        private void deleted(Path path, boolean directory) {
+            changedFiles.remove(path);
+            createdDirectories.remove(path);
+            if (directory) {
+                deletedDirectories.add(path);
+            } else {
+                deletedFiles.add(path);
+            }
+        }
+
+        /**
+         * @return directories which have been created
+         */
+        public Collection<Path> getCreatedDirectories() {
+            return createdDirectories;
+        }
+
+        /**
+         * @return files which have been created or modified. Some of them might not exist anymore.
+         */
+        public Collection<Path> getChangedFiles() {
+            return changedFiles;
+        }
+
+        /**
+         * @return files which have been removed
+         */
+        public Collection<Path> getDeletedFiles() {
+            return deletedFiles;
+        }
+
+        /**
+         * @return watched directories which have been removed
+         */
+        public Collection<Path> getDeletedDirectories() {
+            return deletedDirectories;
+        }
+
+        /**
+         * @return true if some events have been lost, so a full scan is needed
+         */
+        public boolean isOverflow() {
+            return overflow;
+        }
+
+        /**
+         * @return true if nothing changed
+         */
+        public boolean isEmpty() {
+            return !overflow && createdDirectories.isEmpty() && changedFiles.isEmpty() &&
+                    deletedFiles.isEmpty() && deletedDirectories.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Changes{" + "createdDirectories=" + createdDirectories.size() +
+                    ", changedFiles=" + changedFiles.size() +
+                    ", deletedFiles=" + deletedFiles.size() +
+                    ", deletedDirectories=" + deletedDirectories.size() +
+                    ", overflow=" + overflow +
+                    '}';
+        }
+    }
+}
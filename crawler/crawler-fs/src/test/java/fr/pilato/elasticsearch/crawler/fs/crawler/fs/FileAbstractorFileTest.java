@@ -0,0 +1,195 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.DirectoryState;
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getCreationTime;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getFileExtension;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getFilePermissions;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getGroupName;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getLastAccessTime;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getModificationTime;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getOwnerName;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FileAbstractorFileTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testDirectoryState() throws IOException {
+        Path dir = Files.createDirectories(rootTmpDir.resolve(getCurrentTestName()));
+        FileAbstractorFile abstractor = new FileAbstractorFile(FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder().setUrl(dir.toString()).build())
+                .build());
+
+        Instant past = Instant.now().minus(10, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS);
+        Files.setLastModifiedTime(dir, FileTime.from(past));
+        DirectoryState state = abstractor.getDirectoryState(dir.toString());
+        assertThat(state.getLastModifiedDate(), is(LocalDateTime.ofInstant(past, ZoneId.systemDefault())));
+
+        // Adding a subdirectory changes the modification date and the number of links when the file system reports them
+        Files.createDirectory(dir.resolve("subdir"));
+        DirectoryState newState = abstractor.getDirectoryState(dir.toString());
+        assertThat(newState.getLastModifiedDate(), not(state.getLastModifiedDate()));
+        if (state.getLinks() > 1) {
+            assertThat(newState.getLinks(), is(state.getLinks() + 1));
+        }
+    }
+
+    @Test
+    public void testGetFiles() throws IOException {
+        Path dir = createTree(rootTmpDir.resolve(getCurrentTestName()), 2, 10);
+        Files.createSymbolicLink(dir.resolve("link.txt"), dir.resolve("file-0.txt"));
+        FileAbstractorFile abstractor = new FileAbstractorFile(FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder().setUrl(dir.toString()).build())
+                .build());
+
+        // We must read exactly the same attributes as when reading them one by one
+        List<FileAbstractModel> files = sorted(abstractor.getFiles(dir.toString()));
+        List<FileAbstractModel> expected = sorted(legacyGetFiles(dir.toString(), false));
+        assertThat(files.size(), is(11));
+        assertThat(files.toString(), is(expected.toString()));
+
+        // Symbolic links are followed only if asked
+        FileAbstractorFile followingAbstractor = new FileAbstractorFile(FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder().setUrl(dir.toString()).setFollowSymlinks(true).build())
+                .build());
+        assertThat(followingAbstractor.getFiles(dir.toString()).size(), is(12));
+        assertThat(abstractor.getFile(dir.toString(), "link.txt"), nullValue());
+        assertThat(followingAbstractor.getFile(dir.toString(), "link.txt").isFile(), is(true));
+        assertThat(abstractor.getFile(dir.toString(), "file-0.txt").toString(), is(expected.stream().filter(file -> file.getName().equals("file-0.txt")).findFirst().orElseThrow().toString()));
+        assertThat(abstractor.getFile(dir.toString(), "unknown.txt"), nullValue());
+    }
+
+    /**
+     * Compare the listing with the one we had when each attribute was read with its own call.
+     * Run it on a bigger tree with -Dtests.benchmark.files=100000
+     */
+    @Test
+    public void testListingBenchmark() throws IOException {
+        int filesPerDir = 100;
+        int dirs = Math.max(1, getSystemProperty("tests.benchmark.files", 2000) / filesPerDir);
+        Path dir = createTree(rootTmpDir.resolve(getCurrentTestName()), dirs, filesPerDir);
+        FileAbstractorFile abstractor = new FileAbstractorFile(FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder().setUrl(dir.toString()).build())
+                .build());
+
+        // Warm up
+        walk(dir, d -> legacyGetFiles(d, false));
+        walk(dir, abstractor::getFiles);
+
+        long start = System.nanoTime();
+        long legacyFiles = walk(dir, d -> legacyGetFiles(d, false));
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long files = walk(dir, abstractor::getFiles);
+        long nanos = System.nanoTime() - start;
+
+        assertThat(files, is(legacyFiles));
+        logger.info("Listing [{}] files: one call per attribute [{}] files/s, one call per file [{}] files/s",
+                files, filesPerSecond(legacyFiles, legacyNanos), filesPerSecond(files, nanos));
+    }
+
+    private interface Lister {
+        Collection<FileAbstractModel> list(String dir) throws IOException;
+    }
+
+    private static long walk(Path root, Lister lister) throws IOException {
+        long count = 0;
+        for (FileAbstractModel file : lister.list(root.toString())) {
+            count++;
+            if (file.isDirectory()) {
+                count += walk(Path.of(file.getFullpath()), lister);
+            }
+        }
+        return count;
+    }
+
+    private static long filesPerSecond(long files, long nanos) {
+        return nanos == 0 ? files : files * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    private static Path createTree(Path root, int dirs, int filesPerDir) throws IOException {
+        Files.createDirectories(root);
+        for (int d = 0; d < dirs; d++) {
+            Path dir = d == 0 ? root : Files.createDirectories(root.resolve("dir-" + d));
+            for (int f = 0; f < filesPerDir; f++) {
+                Files.writeString(dir.resolve("file-" + f + ".txt"), "content of file " + f);
+            }
+        }
+        return root;
+    }
+
+    private static List<FileAbstractModel> sorted(Collection<FileAbstractModel> files) {
+        List<FileAbstractModel> list = new ArrayList<>(files);
+        list.sort(Comparator.comparing(FileAbstractModel::getName));
+        return list;
+    }
+
+    /**
+     * How the files were listed before: each attribute was read with its own call
+     */
+    private static Collection<FileAbstractModel> legacyGetFiles(String dir, boolean followSymlinks) {
+        File[] files = new File(dir).listFiles(file -> followSymlinks || !Files.isSymbolicLink(file.toPath()));
+        Collection<FileAbstractModel> result = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                result.add(new FileAbstractModel(
+                        file.getName(),
+                        file.isFile(),
+                        getModificationTime(file),
+                        getCreationTime(file),
+                        getLastAccessTime(file),
+                        getFileExtension(file),
+                        dir,
+                        file.getAbsolutePath(),
+                        file.length(),
+                        getOwnerName(file),
+                        getGroupName(file),
+                        getFilePermissions(file)));
+            }
+        }
+        return result;
+    }
+}
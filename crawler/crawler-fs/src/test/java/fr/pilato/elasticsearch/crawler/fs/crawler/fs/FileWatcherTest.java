@@ -0,0 +1,150 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class FileWatcherTest extends AbstractFSCrawlerTestCase {
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long QUIET_PERIOD = 500;
+
+    private Path root;
+    private FileWatcher watcher;
+
+    @Before
+    public void createTree() throws IOException {
+        root = rootTmpDir.resolve(getCurrentTestName());
+        Files.createDirectories(root.resolve("subdir1").resolve("subdir2"));
+        Files.createDirectories(root.resolve("excluded"));
+        Files.writeString(root.resolve("subdir1").resolve("existing.txt"), "existing");
+    }
+
+    @After
+    public void closeWatcher() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    private void startWatcher(Predicate<Path> filter) throws IOException {
+        watcher = new FileWatcher(root, filter, false);
+    }
+
+    /**
+     * Poll until the condition is true as events might come in several batches
+     */
+    private FileWatcher.Changes pollUntil(Predicate<FileWatcher.Changes> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        FileWatcher.Changes changes = watcher.poll(TIMEOUT, QUIET_PERIOD);
+        while (!condition.test(changes) && System.currentTimeMillis() < deadline) {
+            changes = watcher.poll(TIMEOUT, QUIET_PERIOD);
+        }
+        return changes;
+    }
+
+    @Test
+    public void testRegisterTree() throws IOException {
+        startWatcher(dir -> true);
+        assertThat(watcher.getWatchedDirectories(), is(4));
+    }
+
+    @Test
+    public void testFilteredDirectories() throws Exception {
+        startWatcher(dir -> !dir.getFileName().toString().equals("excluded"));
+        assertThat(watcher.getWatchedDirectories(), is(3));
+
+        Files.writeString(root.resolve("excluded").resolve("ignored.txt"), "ignored");
+        Files.writeString(root.resolve("subdir1").resolve("watched.txt"), "watched");
+
+        FileWatcher.Changes changes = pollUntil(c -> c.getChangedFiles().contains(root.resolve("subdir1").resolve("watched.txt")));
+        assertThat(changes.getChangedFiles(), hasItem(root.resolve("subdir1").resolve("watched.txt")));
+        assertThat(changes.getChangedFiles(), not(hasItem(root.resolve("excluded").resolve("ignored.txt"))));
+    }
+
+    @Test
+    public void testCoalesceEvents() throws Exception {
+        startWatcher(dir -> true);
+        Path file = root.resolve("subdir1").resolve("subdir2").resolve("new.txt");
+        Files.writeString(file, "one");
+        Files.writeString(file, "two");
+        Files.writeString(file, "three");
+
+        FileWatcher.Changes changes = pollUntil(c -> c.getChangedFiles().contains(file));
+        assertThat(changes.getChangedFiles().size(), is(1));
+        assertThat(changes.getChangedFiles(), hasItem(file));
+        assertThat(changes.getDeletedFiles().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testCreatedDirectory() throws Exception {
+        startWatcher(dir -> true);
+        Path newDir = root.resolve("newdir");
+        Files.createDirectories(newDir.resolve("nested"));
+        Files.writeString(newDir.resolve("nested").resolve("file.txt"), "file");
+
+        FileWatcher.Changes changes = pollUntil(c -> c.getChangedFiles().contains(newDir.resolve("nested").resolve("file.txt")));
+        assertThat(changes.getCreatedDirectories(), hasItem(newDir));
+        assertThat(changes.getChangedFiles(), hasItem(newDir.resolve("nested").resolve("file.txt")));
+
+        // The new directories are now watched
+        assertThat(watcher.getWatchedDirectories(), is(6));
+        Path later = newDir.resolve("nested").resolve("later.txt");
+        Files.writeString(later, "later");
+        changes = pollUntil(c -> c.getChangedFiles().contains(later));
+        assertThat(changes.getChangedFiles(), hasItem(later));
+    }
+
+    @Test
+    public void testDeletedFilesAndDirectories() throws Exception {
+        startWatcher(dir -> true);
+        Path existing = root.resolve("subdir1").resolve("existing.txt");
+        Path subdir2 = root.resolve("subdir1").resolve("subdir2");
+        Files.delete(existing);
+        Files.delete(subdir2);
+
+        FileWatcher.Changes changes = pollUntil(c -> c.getDeletedDirectories().contains(subdir2) &&
+                c.getDeletedFiles().contains(existing));
+        assertThat(changes.getDeletedFiles(), hasItem(existing));
+        assertThat(changes.getDeletedDirectories(), hasItems(subdir2));
+        assertThat(watcher.getWatchedDirectories(), is(3));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        startWatcher(dir -> true);
+        FileWatcher.Changes changes = watcher.poll(100, QUIET_PERIOD);
+        assertThat(changes.isEmpty(), is(true));
+    }
+}
@@ -21,13 +21,55 @@ package fr.pilato.elasticsearch.crawler.fs.crawler.ftp;
 
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.toOctalPermission;
 
+import java.util.Calendar;
+import java.util.Locale;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.parser.MLSxEntryParser;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class FTPUtils {
   private static final Logger logger = LogManager.getLogger(FTPUtils.class);
 
+  /**
+   * MLSD sends the current and the parent directories as {@code type=cdir} and {@code type=pdir} entries.
+   */
+  public static boolean isCurrentOrParentDirectory(final FTPFile file) {
+    String fact = getFact(file, "type");
+    return "cdir".equalsIgnoreCase(fact) || "pdir".equalsIgnoreCase(fact);
+  }
+
+  /**
+   * Reads the creation date from the {@code create} fact some servers send with MLSD.
+   * @return null when we don't have it
+   */
+  public static Calendar getCreationDate(final FTPFile file) {
+    String fact = getFact(file, "create");
+    return fact == null ? null : MLSxEntryParser.parseGMTdateTime(fact);
+  }
+
+  /**
+   * Reads a fact from a MLSD entry which looks like {@code type=file;size=5;modify=20240102030405; name}.
+   * @return null if the entry does not come from MLSD or does not have this fact
+   */
+  static String getFact(final FTPFile file, final String name) {
+    String raw = file.getRawListing();
+    if (raw == null) {
+      return null;
+    }
+    int end = raw.indexOf(' ');
+    if (end < 0) {
+      return null;
+    }
+    String prefix = name.toLowerCase(Locale.ROOT) + "=";
+    for (String fact : raw.substring(0, end).split(";")) {
+      if (fact.toLowerCase(Locale.ROOT).startsWith(prefix)) {
+        return fact.substring(prefix.length());
+      }
+    }
+    return null;
+  }
+
   /**
    * Determines FTPFile permissions.
    */
@@ -19,10 +19,12 @@
 
 package fr.pilato.elasticsearch.crawler.fs.crawler.ftp;
 
+import fr.pilato.elasticsearch.crawler.fs.crawler.ConnectionPool;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 import fr.pilato.elasticsearch.crawler.fs.settings.Server;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
@@ -34,6 +36,8 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.net.PrintCommandListener;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPCmd;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
 import org.apache.commons.net.ftp.FTPFile;
 import org.apache.commons.net.ftp.FTPReply;
 import org.apache.logging.log4j.LogManager;
@@ -45,19 +49,30 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.stream.Collectors;
 
 public class FileAbstractorFTP extends FileAbstractor<FTPFile> {
     private final Logger logger = LogManager.getLogger(FileAbstractorFTP.class);
 
-    private FTPClient ftp;
+    /**
+     * When the server closes a connection, we retry once with a new connection
+     */
+    private static final int MAX_ATTEMPTS = 2;
+
+    private ConnectionPool<FTPClient> pool;
 
     private final OutputStream loggerOutputStream = IoBuilder.forLogger(logger).buildOutputStream();
 
     private final PrintCommandListener ftpListener = new PrintCommandListener(new PrintWriter(loggerOutputStream));
 
-    private boolean isUtf8 = false;
+    private volatile boolean isUtf8 = false;
+
+    /**
+     * When the server supports MLSD (RFC 3659), we get precise dates instead of the LIST ones
+     */
+    private volatile boolean isMlsd = false;
 
     private static final String ALTERNATIVE_ENCODING = "GBK";
 
@@ -83,10 +98,11 @@ public class FileAbstractorFTP extends FileAbstractor<FTPFile> {
         return new FileAbstractModel(
                 filename,
                 file.isFile(),
-                // We are using here the local TimeZone as a reference. If the remote system is under another TZ, this might cause issues
-                LocalDateTime.ofInstant(Instant.ofEpochMilli(file.getTimestamp().getTimeInMillis()), ZoneId.systemDefault()),
-                // We don't have the creation date
-                null,
+                // With LIST, we are using here the local TimeZone as a reference. If the remote system is under another TZ,
+                // this might cause issues. With MLSD, dates are always sent in UTC.
+                toLocalDateTime(file.getTimestamp()),
+                // We only have the creation date when the server sends it with MLSD
+                toLocalDateTime(FTPUtils.getCreationDate(file)),
                 // We don't have the access date
                 null,
                 extension,
@@ -107,32 +123,51 @@ public class FileAbstractorFTP extends FileAbstractor<FTPFile> {
             fullPath = new String(fullPath.getBytes(ALTERNATIVE_ENCODING), FTP.DEFAULT_CONTROL_ENCODING);
         }
 
-        InputStream inputStream = ftp.retrieveFileStream(fullPath);
-        if (inputStream != null) {
-            return inputStream;
-        } else {
-            throw new IOException(String.format("FTP client can not retrieve stream for [%s]", file.getFullpath()));
+        for (int attempt = 1; ; attempt++) {
+            // The connection stays borrowed until the stream is closed
+            FTPClient client = pool.borrow();
+            InputStream inputStream;
+            try {
+                inputStream = client.retrieveFileStream(fullPath);
+            } catch (FTPConnectionClosedException e) {
+                pool.invalidate(client);
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("FTP connection closed while retrieving [{}]. Reconnecting.", file.getFullpath());
+                continue;
+            } catch (IOException | RuntimeException e) {
+                pool.invalidate(client);
+                throw e;
+            }
+
+            if (inputStream == null) {
+                pool.release(client);
+                throw new IOException(String.format("FTP client can not retrieve stream for [%s]", file.getFullpath()));
+            }
+            return new PooledInputStream(client, inputStream);
         }
     }
 
     @Override
     public void closeInputStream(InputStream inputStream) throws IOException {
+        // This completes the pending retrieval and gives the connection back to the pool
         inputStream.close();
-        // This is necessary if we want to retrieve multiple streams one by one
-        ftp.completePendingCommand();
     }
 
     @Override
     public Collection<FileAbstractModel> getFiles(String dir) throws IOException {
         logger.debug("Listing files from {}", dir);
-        String ftpDir = new String(dir.getBytes(ALTERNATIVE_ENCODING), FTP.DEFAULT_CONTROL_ENCODING);
-        if (isUtf8) {
-            ftpDir = new String(dir.getBytes(StandardCharsets.UTF_8), FTP.DEFAULT_CONTROL_ENCODING);
-        }
+        String ftpDir = new String(dir.getBytes(isUtf8 ? StandardCharsets.UTF_8.displayName() : ALTERNATIVE_ENCODING),
+                FTP.DEFAULT_CONTROL_ENCODING);
 
-        FTPFile[] ftpFiles = ftp.listFiles(ftpDir);
+        FTPFile[] ftpFiles = execute(client -> listFiles(client, ftpDir));
         if (ftpFiles == null) return null;
         List<FTPFile> files = Arrays.stream(ftpFiles).filter(file -> {
+            // MLSD also sends the current and the parent directories
+            if (FTPUtils.isCurrentOrParentDirectory(file)) return false;
+            // We don't know how to crawl devices or links which are not resolved by MLSD
+            if (file.getType() == FTPFile.UNKNOWN_TYPE) return false;
             if (fsSettings.getFs().isFollowSymlinks()) return true;
             return !file.isSymbolicLink();
         }).collect(Collectors.toList());
@@ -149,16 +184,35 @@ public class FileAbstractorFTP extends FileAbstractor<FTPFile> {
         return result;
     }
 
+    private FTPFile[] listFiles(FTPClient client, String dir) throws IOException {
+        if (isMlsd) {
+            FTPFile[] files = client.mlistDir(dir);
+            int reply = client.getReplyCode();
+            if (reply != FTPReply.UNRECOGNIZED_COMMAND && reply != FTPReply.COMMAND_NOT_IMPLEMENTED &&
+                    reply != FTPReply.COMMAND_NOT_IMPLEMENTED_FOR_PARAMETER) {
+                return files;
+            }
+            logger.warn("The FTP server advertised MLSD but does not support it: {}. Falling back to LIST.",
+                    client.getReplyString().trim());
+            isMlsd = false;
+        }
+        return client.listFiles(dir);
+    }
+
+    private static LocalDateTime toLocalDateTime(Calendar calendar) {
+        if (calendar == null) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(calendar.getTimeInMillis()), ZoneId.systemDefault());
+    }
+
     @Override
     public boolean exists(String dir) {
         try {
             logger.debug("Checking dir existence: " + dir);
-            if (isUtf8) {
-                dir = new String(dir.getBytes(StandardCharsets.UTF_8), FTP.DEFAULT_CONTROL_ENCODING);
-            } else {
-                dir = new String(dir.getBytes(ALTERNATIVE_ENCODING), FTP.DEFAULT_CONTROL_ENCODING);
-            }
-            return ftp.changeWorkingDirectory(dir);
+            String ftpDir = new String(dir.getBytes(isUtf8 ? StandardCharsets.UTF_8.displayName() : ALTERNATIVE_ENCODING),
+                    FTP.DEFAULT_CONTROL_ENCODING);
+            return execute(client -> client.changeWorkingDirectory(ftpDir));
         } catch (IOException e) {
             return false;
         }
@@ -166,25 +220,140 @@ public class FileAbstractorFTP extends FileAbstractor<FTPFile> {
 
     @Override
     public void open() throws IOException {
-        ftp = new FTPClient();
-        if (logger.isTraceEnabled() || logger.isDebugEnabled()) {
-            ftp.addProtocolCommandListener(ftpListener);
+        pool = new ConnectionPool<>("FTP", new FTPConnector(), getMaxConcurrency());
+        // We open a first connection so we fail fast if the server can not be reached
+        FTPClient client = pool.borrow();
+        try {
+            // MLST and MLSD come together (RFC 3659) but servers only advertise MLST.
+            // We detect it once per run, so a fallback to LIST sticks for the other connections.
+            isMlsd = client.hasFeature(FTPCmd.MLST);
+            logger.debug("FTP server supports MLSD: {}", isMlsd);
+        } finally {
+            pool.release(client);
         }
-        // send a safe command (i.e. NOOP) over the control connection to reset the router's idle timer
-        ftp.setControlKeepAliveTimeout(300);
-        openFTPConnection();
     }
 
     @Override
-    public void close() throws IOException {
-        ftp.logout();
-        ftp.disconnect();
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        // Each connection can only run one command (or one retrieval) at a time
+        return Math.max(1, fsSettings.getServer().getMaxConnections());
+    }
+
+    private class FTPConnector implements ConnectionPool.Connector<FTPClient> {
+        @Override
+        public FTPClient connect() throws IOException {
+            return openFTPConnection();
+        }
+
+        @Override
+        public boolean isConnected(FTPClient client) {
+            return client.isConnected();
+        }
+
+        @Override
+        public boolean validate(FTPClient client) throws IOException {
+            return client.sendNoOp();
+        }
+
+        @Override
+        public void disconnect(FTPClient client) {
+            try {
+                client.disconnect();
+            } catch (IOException e) {
+                logger.trace("Can not disconnect from the FTP server: {}", e.getMessage());
+            }
+        }
+
+        @Override
+        public void close(FTPClient client) {
+            try {
+                if (client.isConnected()) {
+                    client.logout();
+                }
+            } catch (IOException e) {
+                logger.trace("Can not logout from the FTP server: {}", e.getMessage());
+            }
+            disconnect(client);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FTPOperation<T> {
+        T apply(FTPClient client) throws IOException;
     }
 
-    private void openFTPConnection() throws IOException {
+    /**
+     * Run an operation with a connection borrowed from the pool
+     */
+    private <T> T execute(FTPOperation<T> operation) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            FTPClient client = pool.borrow();
+            try {
+                T result = operation.apply(client);
+                pool.release(client);
+                return result;
+            } catch (FTPConnectionClosedException e) {
+                pool.invalidate(client);
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("FTP connection closed by the server. Reconnecting.");
+            } catch (IOException | RuntimeException e) {
+                pool.invalidate(client);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * A stream which completes the retrieval and releases its connection when closed
+     */
+    private class PooledInputStream extends FilterInputStream {
+        private final FTPClient client;
+        private boolean closed = false;
+
+        private PooledInputStream(FTPClient client, InputStream in) {
+            super(in);
+            this.client = client;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+                // This is necessary if we want to retrieve another stream with the same connection
+                if (!client.completePendingCommand()) {
+                    logger.debug("FTP retrieval did not complete successfully: {}", client.getReplyString());
+                }
+            } catch (IOException | RuntimeException e) {
+                pool.invalidate(client);
+                throw e;
+            }
+            pool.release(client);
+        }
+    }
+
+    private FTPClient openFTPConnection() throws IOException {
         Server server = fsSettings.getServer();
         logger.debug("Opening FTP connection to {}@{}", server.getUsername(), server.getHostname());
 
+        FTPClient ftp = new FTPClient();
+        if (logger.isTraceEnabled() || logger.isDebugEnabled()) {
+            ftp.addProtocolCommandListener(ftpListener);
+        }
+        // send a safe command (i.e. NOOP) over the control connection to reset the router's idle timer
+        ftp.setControlKeepAliveTimeout(300);
         ftp.connect(server.getHostname(), server.getPort());
 
         // checking FTP client connection.
@@ -209,5 +378,6 @@ public class FileAbstractorFTP extends FileAbstractor<FTPFile> {
         ftp.enterLocalPassiveMode();
 
         logger.debug("FTP connection successful");
+        return ftp;
     }
 }
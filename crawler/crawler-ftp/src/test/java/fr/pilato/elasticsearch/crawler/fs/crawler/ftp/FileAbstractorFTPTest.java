@@ -21,6 +21,8 @@ package fr.pilato.elasticsearch.crawler.fs.crawler.ftp;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
@@ -29,15 +31,23 @@ import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCa
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Collection;
+import java.util.Date;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockftpserver.core.command.StaticReplyCommandHandler;
 import org.mockftpserver.fake.FakeFtpServer;
 import org.mockftpserver.fake.UserAccount;
 import org.mockftpserver.fake.filesystem.DirectoryEntry;
@@ -50,6 +60,7 @@ public class FileAbstractorFTPTest extends AbstractFSCrawlerTestCase {
     private FakeFtpServer fakeFtpServer;
     private final String nestedDir = "/nested";
     private final String permissionDir = "/permission";
+    private final String benchmarkDir = "/benchmark";
     private final String user = "user";
     private final String pass = "pass";
 
@@ -222,4 +233,219 @@ public class FileAbstractorFTPTest extends AbstractFSCrawlerTestCase {
 
         ftp.close();
     }
+
+    @Test
+    public void testConcurrentDownloads() throws Exception {
+        addFiles(100, 1024);
+        int connections = 4;
+        FileAbstractorFTP ftp = new FileAbstractorFTP(buildSettings(connections));
+        ftp.open();
+        assertThat(ftp.getMaxConcurrency(), is(connections));
+        try {
+            assertThat(downloadAll(ftp, connections), is(100L * 1024));
+        } finally {
+            ftp.close();
+        }
+    }
+
+    @Test
+    public void testReconnectWhenServerClosesConnection() throws Exception {
+        FileAbstractorFTP ftp = new FileAbstractorFTP(buildSettings(1));
+        ftp.open();
+        try {
+            assertThat(ftp.getFiles(nestedDir).size(), is(3));
+            // The server drops all the connections we have in the pool
+            shutDown();
+            setup();
+            assertThat(ftp.getFiles(nestedDir).size(), is(3));
+            FileAbstractModel file = ftp.getFiles(nestedDir + "/buzz").iterator().next();
+            InputStream inputStream = ftp.getInputStream(file);
+            assertThat(IOUtils.toString(inputStream, StandardCharsets.UTF_8).length(), is(5));
+            ftp.closeInputStream(inputStream);
+        } finally {
+            ftp.close();
+        }
+    }
+
+    /**
+     * This benchmark compares the download throughput with one and with several connections.
+     * You can run it with more files with -Dtests.benchmark.files=10000
+     */
+    @Test
+    public void testDownloadBenchmark() throws Exception {
+        int files = getSystemProperty("tests.benchmark.files", 200);
+        int size = 64 * 1024;
+        addFiles(files, size);
+
+        for (int connections : new int[]{1, 4}) {
+            FileAbstractorFTP ftp = new FileAbstractorFTP(buildSettings(connections));
+            ftp.open();
+            try {
+                long start = System.nanoTime();
+                long bytes = downloadAll(ftp, connections);
+                long durationMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+                assertThat(bytes, is((long) files * size));
+                logger.info("Downloaded [{}] files with [{}] connection(s) in [{}] ms: [{}] files/s, [{}] MB/s",
+                        files, connections, durationMs, files * 1000L / durationMs, bytes / 1024 / 1024 * 1000 / durationMs);
+            } finally {
+                ftp.close();
+            }
+        }
+    }
+
+    @Test
+    public void testListWithMlsd() throws Exception {
+        MlsdCommandHandler.enable(fakeFtpServer);
+        Instant modified = Instant.parse("2024-01-02T03:04:05Z");
+        fakeFtpServer.getFileSystem().getEntry(nestedDir + "/buzz/hello.txt").setLastModified(Date.from(modified));
+
+        FileAbstractorFTP ftp = new FileAbstractorFTP(buildSettings(1));
+        ftp.open();
+        try {
+            Collection<FileAbstractModel> files = ftp.getFiles(nestedDir);
+            assertThat(files.size(), is(3));
+            FileAbstractModel buzz = files.stream().filter(file -> file.getName().equals("buzz")).findFirst().orElseThrow();
+            assertThat(buzz.isDirectory(), is(true));
+
+            files = ftp.getFiles(buzz.getFullpath());
+            assertThat(files.size(), is(2));
+            FileAbstractModel hello = files.stream().filter(file -> file.getName().equals("hello.txt")).findFirst().orElseThrow();
+            assertThat(hello.isFile(), is(true));
+            assertThat(hello.getSize(), is(5L));
+            assertThat(hello.getFullpath(), is(nestedDir + "/buzz/hello.txt"));
+            // MLSD gives us the seconds and the creation date
+            assertThat(hello.getLastModifiedDate(), is(LocalDateTime.ofInstant(modified, ZoneId.systemDefault())));
+            assertThat(hello.getCreationDate(), is(LocalDateTime.ofInstant(
+                    modified.minusMillis(MlsdCommandHandler.CREATION_OFFSET_MS), ZoneId.systemDefault())));
+
+            InputStream inputStream = ftp.getInputStream(hello);
+            assertThat(IOUtils.toString(inputStream, StandardCharsets.UTF_8), is("hello"));
+            ftp.closeInputStream(inputStream);
+        } finally {
+            ftp.close();
+        }
+    }
+
+    @Test
+    public void testListFallbackToList() throws Exception {
+        // The server advertises MLST but does not implement MLSD
+        MlsdCommandHandler.enable(fakeFtpServer);
+        fakeFtpServer.setCommandHandler("MLSD", new StaticReplyCommandHandler(502, "Command not implemented"));
+
+        FileAbstractorFTP ftp = new FileAbstractorFTP(buildSettings(1));
+        ftp.open();
+        try {
+            Collection<FileAbstractModel> files = ftp.getFiles(nestedDir);
+            assertThat(files.size(), is(3));
+            for (FileAbstractModel file : files) {
+                assertThat(file.getLastModifiedDate(), notNullValue());
+                assertThat(file.getCreationDate(), nullValue());
+            }
+            assertThat(ftp.getFiles(nestedDir + "/buzz").size(), is(2));
+        } finally {
+            ftp.close();
+        }
+    }
+
+    @Test
+    public void testListFallbackToListSticksForNewConnections() throws Exception {
+        MlsdCommandHandler.enable(fakeFtpServer);
+        StaticReplyCommandHandler mlsd = new StaticReplyCommandHandler(502, "Command not implemented");
+        fakeFtpServer.setCommandHandler("MLSD", mlsd);
+
+        FileAbstractorFTP ftp = new FileAbstractorFTP(buildSettings(2));
+        ftp.open();
+        try {
+            Collection<FileAbstractModel> files = ftp.getFiles(nestedDir + "/buzz");
+            assertThat(mlsd.numberOfInvocations(), is(1));
+            FileAbstractModel hello = files.stream().filter(file -> file.getName().equals("hello.txt")).findFirst().orElseThrow();
+
+            // The first connection stays borrowed, so the next listing opens a new one
+            InputStream inputStream = ftp.getInputStream(hello);
+            try {
+                assertThat(ftp.getFiles(nestedDir).size(), is(3));
+            } finally {
+                ftp.closeInputStream(inputStream);
+            }
+            assertThat(mlsd.numberOfInvocations(), is(1));
+        } finally {
+            ftp.close();
+        }
+    }
+
+    /**
+     * This benchmark compares the cost of listing a big directory with LIST and with MLSD.
+     * You can run it with more files with -Dtests.benchmark.files=50000
+     */
+    @Test
+    public void testListingBenchmark() throws Exception {
+        int files = getSystemProperty("tests.benchmark.files", 5000);
+        addFiles(files, 1);
+
+        for (boolean mlsd : new boolean[]{false, true}) {
+            if (mlsd) {
+                MlsdCommandHandler.enable(fakeFtpServer);
+            }
+            FileAbstractorFTP ftp = new FileAbstractorFTP(buildSettings(1));
+            ftp.open();
+            try {
+                long start = System.nanoTime();
+                assertThat(ftp.getFiles(benchmarkDir).size(), is(files));
+                long durationMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+                logger.info("Listed [{}] entries with [{}] in [{}] ms: [{}] entries/s",
+                        files, mlsd ? "MLSD" : "LIST", durationMs, files * 1000L / durationMs);
+            } finally {
+                ftp.close();
+            }
+        }
+    }
+
+    private FsSettings buildSettings(int maxConnections) {
+        return FsSettings.builder("fake")
+                .setServer(
+                        Server.builder()
+                                .setHostname("localhost")
+                                .setUsername(user)
+                                .setPassword(pass)
+                                .setPort(fakeFtpServer.getServerControlPort())
+                                .setMaxConnections(maxConnections)
+                                .build()
+                )
+                .build();
+    }
+
+    private void addFiles(int files, int size) {
+        FileSystem fileSystem = fakeFtpServer.getFileSystem();
+        fileSystem.add(new DirectoryEntry(benchmarkDir));
+        String content = new String(new char[size]).replace('\0', 'a');
+        for (int i = 0; i < files; i++) {
+            fileSystem.add(new FileEntry(benchmarkDir + "/file-" + i + ".txt", content));
+        }
+    }
+
+    /**
+     * Download all the files of the benchmark dir with as many threads as connections
+     * @return the number of bytes we read
+     */
+    private long downloadAll(FileAbstractorFTP ftp, int threads) throws Exception {
+        Collection<FileAbstractModel> files = ftp.getFiles(benchmarkDir);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> downloads = files.stream().map(file -> executor.submit(() -> {
+                InputStream inputStream = ftp.getInputStream(file);
+                try {
+                    return IOUtils.toByteArray(inputStream).length;
+                } finally {
+                    ftp.closeInputStream(inputStream);
+                }
+            })).collect(Collectors.toList());
+            long bytes = 0;
+            for (Future<Integer> download : downloads) {
+                bytes += download.get();
+            }
+            return bytes;
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler.ftp;
+
+import org.mockftpserver.core.command.Command;
+import org.mockftpserver.core.command.ReplyCodes;
+import org.mockftpserver.core.command.StaticReplyCommandHandler;
+import org.mockftpserver.core.session.Session;
+import org.mockftpserver.fake.FakeFtpServer;
+import org.mockftpserver.fake.command.AbstractFakeCommandHandler;
+import org.mockftpserver.fake.filesystem.FileSystemEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * MockFtpServer does not implement MLSD (RFC 3659). This handler sends the facts
+ * we read from the fake file system. The creation date is the last modified date minus one hour.
+ */
+class MlsdCommandHandler extends AbstractFakeCommandHandler {
+
+    static final long CREATION_OFFSET_MS = 3_600_000;
+
+    /**
+     * Make the server advertise and support MLSD
+     */
+    static void enable(FakeFtpServer server) {
+        server.setCommandHandler("FEAT", new StaticReplyCommandHandler(211, "Features:\r\n MLST type*;size*;modify*;create*;\r\nEnd"));
+        server.setCommandHandler("MLSD", new MlsdCommandHandler());
+    }
+
+    @Override
+    protected void handle(Command command, Session session) {
+        verifyLoggedIn(session);
+        String path = getRealPath(session, command.getParameter(0));
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        StringBuilder listing = new StringBuilder();
+        listing.append("type=cdir; .").append(endOfLine());
+        listing.append("type=pdir; ..").append(endOfLine());
+        for (Object o : (List<?>) getFileSystem().listFiles(path)) {
+            FileSystemEntry entry = (FileSystemEntry) o;
+            Date modified = entry.getLastModified();
+            listing.append("type=").append(entry.isDirectory() ? "dir" : "file")
+                    .append(";size=").append(entry.getSize())
+                    .append(";modify=").append(format.format(modified))
+                    .append(";create=").append(format.format(new Date(modified.getTime() - CREATION_OFFSET_MS)))
+                    .append(";unix.owner=").append(entry.getOwner())
+                    .append(";unix.group=").append(entry.getGroup())
+                    .append("; ").append(entry.getName()).append(endOfLine());
+        }
+
+        session.sendReply(ReplyCodes.TRANSFER_DATA_INITIAL_OK, "Opening data connection for MLSD");
+        session.openDataConnection();
+        byte[] data = listing.toString().getBytes(StandardCharsets.UTF_8);
+        session.sendData(data, data.length);
+        session.closeDataConnection();
+        session.sendReply(ReplyCodes.TRANSFER_DATA_FINAL_OK, "Transfer complete");
+    }
+}
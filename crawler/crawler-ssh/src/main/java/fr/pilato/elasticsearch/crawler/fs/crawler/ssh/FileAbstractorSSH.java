@@ -20,32 +20,46 @@
 package fr.pilato.elasticsearch.crawler.fs.crawler.ssh;
 
 import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import fr.pilato.elasticsearch.crawler.fs.crawler.ConnectionPool;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 import fr.pilato.elasticsearch.crawler.fs.settings.Server;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 import java.util.stream.Collectors;
 
 public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
     private final Logger logger = LogManager.getLogger(FileAbstractorSSH.class);
 
-    private ChannelSftp sftp;
+    /**
+     * When a channel is closed, we retry once with a new channel
+     */
+    private static final int MAX_ATTEMPTS = 2;
+
+    private SftpConnector connector;
+    private ConnectionPool<ChannelSftp> pool;
 
     public FileAbstractorSSH(FsSettings fsSettings) {
         super(fsSettings);
@@ -73,11 +87,23 @@ public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
 
     @Override
     public InputStream getInputStream(FileAbstractModel file) throws Exception {
-        return sftp.get(file.getFullpath());
+        for (int attempt = 1; ; attempt++) {
+            // The channel stays borrowed until the stream is closed
+            ChannelSftp sftp = pool.borrow();
+            try {
+                return new PooledInputStream(sftp, sftp.get(file.getFullpath()));
+            } catch (Exception e) {
+                if (!giveBack(sftp, attempt)) {
+                    throw e;
+                }
+                logger.debug("SFTP channel closed while retrieving [{}]. Reconnecting.", file.getFullpath());
+            }
+        }
     }
 
     @Override
     public void closeInputStream(InputStream inputStream) throws IOException {
+        // This gives the channel back to the pool
         inputStream.close();
     }
 
@@ -87,7 +113,7 @@ public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
         logger.debug("Listing local files from {}", dir);
         Vector<ChannelSftp.LsEntry> ls;
 
-        ls = sftp.ls(dir);
+        ls = execute(sftp -> sftp.ls(dir));
         if (ls == null) return null;
 
         Collection<FileAbstractModel> result = new ArrayList<>(ls.size());
@@ -102,10 +128,50 @@ public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
         return result;
     }
 
+    @Override
+    public Collection<FileAbstractModel> getChangedFiles(String dir, LocalDateTime since, Collection<String> names) throws Exception {
+        String command = RemoteFind.command(dir, since, names);
+        logger.debug("Running [{}] on the server", command);
+
+        Session session = connector.acquireSession();
+        ChannelExec exec = null;
+        try {
+            exec = (ChannelExec) session.openChannel("exec");
+            exec.setCommand(command);
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            exec.setErrStream(err);
+            InputStream in = exec.getInputStream();
+            exec.connect();
+
+            List<FileAbstractModel> files = RemoteFind.parse(in);
+            // The exit status is only known once the channel is closed
+            while (!exec.isClosed()) {
+                Thread.sleep(10);
+            }
+            int status = exec.getExitStatus();
+            if (status != 0) {
+                String error = err.toString(StandardCharsets.UTF_8).trim();
+                if (files.isEmpty()) {
+                    throw new IOException("Command [" + command + "] failed with exit status " + status + ": " + error);
+                }
+                // Like when a directory can not be read. We still have all the other changes.
+                logger.warn("Command [{}] exited with status {}: {}", command, status, error);
+            }
+
+            logger.debug("{} changed files found in {}", files.size(), dir);
+            return files;
+        } finally {
+            if (exec != null) {
+                exec.disconnect();
+            }
+            connector.releaseSession(session);
+        }
+    }
+
     @Override
     public boolean exists(String dir) {
         try {
-            sftp.ls(dir);
+            execute(sftp -> sftp.ls(dir));
         } catch (Exception e) {
             return false;
         }
@@ -114,18 +180,183 @@ public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
 
     @Override
     public void open() throws Exception {
-        sftp = openSSHConnection(fsSettings.getServer());
+        connector = new SftpConnector(fsSettings.getServer());
+        pool = new ConnectionPool<>("SFTP", connector, getMaxConcurrency());
+        // We open a first channel so we fail fast if the server can not be reached
+        pool.release(pool.borrow());
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+        if (connector != null) {
+            connector.close();
+        }
     }
 
     @Override
-    public void close() throws Exception {
-        if (sftp != null) {
-            sftp.getSession().disconnect();
+    public int getMaxConcurrency() {
+        // A sftp channel can not be shared between threads, so this is the number of channels we can open
+        return Math.max(1, fsSettings.getServer().getMaxConnections());
+    }
+
+    @FunctionalInterface
+    private interface SftpOperation<T> {
+        T apply(ChannelSftp sftp) throws Exception;
+    }
+
+    /**
+     * Run an operation with a channel borrowed from the pool
+     */
+    private <T> T execute(SftpOperation<T> operation) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            ChannelSftp sftp = pool.borrow();
+            T result;
+            try {
+                result = operation.apply(sftp);
+            } catch (Exception e) {
+                if (!giveBack(sftp, attempt)) {
+                    throw e;
+                }
+                logger.debug("SFTP channel closed. Reconnecting.");
+                continue;
+            }
+            pool.release(sftp);
+            return result;
+        }
+    }
+
+    /**
+     * Give back a channel after a failure
+     * @return true if the channel was closed and we can retry with a new one
+     */
+    private boolean giveBack(ChannelSftp sftp, int attempt) {
+        if (connector.isConnected(sftp)) {
+            // The channel is fine, this is a "real" error like a missing file
+            pool.release(sftp);
+            return false;
+        }
+        pool.invalidate(sftp);
+        return attempt < MAX_ATTEMPTS;
+    }
+
+    /**
+     * A stream which releases its channel when closed
+     */
+    private class PooledInputStream extends FilterInputStream {
+        private final ChannelSftp sftp;
+        private boolean closed = false;
+
+        private PooledInputStream(ChannelSftp sftp, InputStream in) {
+            super(in);
+            this.sftp = sftp;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } catch (IOException | RuntimeException e) {
+                pool.invalidate(sftp);
+                throw e;
+            }
+            pool.release(sftp);
+        }
+    }
+
+    /**
+     * Opens the sftp channels over one or more SSH sessions. A new channel is opened on the
+     * session which has the fewest channels, and a new session is opened only when all the
+     * sessions already have channels and we did not reach server.max_sessions yet.
+     */
+    private class SftpConnector implements ConnectionPool.Connector<ChannelSftp> {
+        private final Server server;
+        // Number of open channels per session
+        private final Map<Session, Integer> sessions = new HashMap<>();
+        private final Map<ChannelSftp, Session> channels = new HashMap<>();
+
+        private SftpConnector(Server server) {
+            this.server = server;
+        }
+
+        @Override
+        public ChannelSftp connect() throws JSchException {
+            Session session = acquireSession();
+            try {
+                ChannelSftp sftp = openSftpChannel(server, session);
+                synchronized (this) {
+                    channels.put(sftp, session);
+                }
+                return sftp;
+            } catch (JSchException | RuntimeException e) {
+                releaseSession(session);
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean isConnected(ChannelSftp sftp) {
+            // This also checks that the session is still connected
+            return sftp.isConnected() && !sftp.isClosed();
+        }
+
+        @Override
+        public void disconnect(ChannelSftp sftp) {
             sftp.disconnect();
+            Session session;
+            synchronized (this) {
+                session = channels.remove(sftp);
+            }
+            if (session != null) {
+                releaseSession(session);
+            }
+        }
+
+        private synchronized Session acquireSession() throws JSchException {
+            // We forget about the sessions which have been closed by the server
+            sessions.keySet().removeIf(session -> {
+                if (session.isConnected()) {
+                    return false;
+                }
+                logger.debug("SSH session to {} has been closed", session.getHost());
+                session.disconnect();
+                return true;
+            });
+
+            Session session = null;
+            int channelsInSession = Integer.MAX_VALUE;
+            for (Map.Entry<Session, Integer> entry : sessions.entrySet()) {
+                if (entry.getValue() < channelsInSession) {
+                    session = entry.getKey();
+                    channelsInSession = entry.getValue();
+                }
+            }
+            if (session == null || (channelsInSession > 0 && sessions.size() < server.getMaxSessions())) {
+                session = openSSHSession(server);
+                channelsInSession = 0;
+            }
+            sessions.put(session, channelsInSession + 1);
+            return session;
+        }
+
+        private synchronized void releaseSession(Session session) {
+            sessions.computeIfPresent(session, (s, count) -> count - 1);
+        }
+
+        private synchronized void close() {
+            sessions.keySet().forEach(Session::disconnect);
+            sessions.clear();
+            channels.clear();
         }
     }
 
-    private ChannelSftp openSSHConnection(Server server) throws Exception {
+    private Session openSSHSession(Server server) throws JSchException {
         logger.debug("Opening SSH connection to {}@{}", server.getUsername(), server.getHostname());
 
         JSch jsch = new JSch();
@@ -148,7 +379,11 @@ public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
             throw e;
         }
 
-        //Open a new session for SFTP.
+        return session;
+    }
+
+    private ChannelSftp openSftpChannel(Server server, Session session) throws JSchException {
+        //Open a new channel for SFTP.
         Channel channel = session.openChannel("sftp");
         channel.connect();
 
@@ -0,0 +1,151 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler.ssh;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Finds the changed files with the GNU find command, so the server sends all the changes of a tree
+ * in a single stream instead of us listing every directory.
+ */
+final class RemoteFind {
+
+    // type, size, modification date, access date, user id, group id, permissions and path. The path comes
+    // last and each entry ends with a NUL char, so we support any file name.
+    private static final String FORMAT = "%y %s %T@ %A@ %U %G %m %p\\0";
+    private static final int FIELDS = 8;
+
+    // File types from st_mode, as they are sent by sftp
+    private static final int S_IFDIR = 0040000;
+    private static final int S_IFREG = 0100000;
+    private static final int S_IFLNK = 0120000;
+
+    private RemoteFind() {
+    }
+
+    /**
+     * Build the command which prints all the files and directories within dir which have been modified or
+     * moved (the change time is updated) since a date, and all the files named as one of the given names.
+     */
+    static String command(String dir, LocalDateTime since, Collection<String> names) {
+        String reference = quote("@" + since.atZone(ZoneId.systemDefault()).toEpochSecond());
+        StringBuilder command = new StringBuilder("find ")
+                .append(quote(dir))
+                .append(" -mindepth 1 \\( -newermt ").append(reference)
+                .append(" -o -newerct ").append(reference);
+        for (String name : names) {
+            command.append(" -o -name ").append(quote(name));
+        }
+        return command.append(" \\) -printf ").append(quote(FORMAT)).toString();
+    }
+
+    /**
+     * Read the entries printed by the command
+     * @param in    the output of the command
+     * @return the files and directories. Other types of files are ignored.
+     */
+    static List<FileAbstractModel> parse(InputStream in) throws IOException {
+        List<FileAbstractModel> files = new ArrayList<>();
+        InputStream input = new BufferedInputStream(in);
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == 0) {
+                FileAbstractModel file = toFileAbstractModel(entry.toString(StandardCharsets.UTF_8));
+                if (file != null) {
+                    files.add(file);
+                }
+                entry.reset();
+            } else {
+                entry.write(b);
+            }
+        }
+        return files;
+    }
+
+    static FileAbstractModel toFileAbstractModel(String entry) {
+        String[] fields = entry.split(" ", FIELDS);
+        if (fields.length < FIELDS) {
+            throw new IllegalArgumentException("Can not read the entry [" + entry + "]");
+        }
+
+        int type;
+        switch (fields[0]) {
+            case "d":
+                type = S_IFDIR;
+                break;
+            case "f":
+                type = S_IFREG;
+                break;
+            case "l":
+                // Like with sftp, the links are read as files
+                type = S_IFLNK;
+                break;
+            default:
+                return null;
+        }
+
+        String fullpath = fields[7];
+        int index = fullpath.lastIndexOf('/');
+        String path = index <= 0 ? "/" : fullpath.substring(0, index);
+        String filename = fullpath.substring(index + 1);
+
+        return new FileAbstractModel(
+                filename,
+                type != S_IFDIR,
+                toLocalDateTime(fields[2]),
+                // We don't have the creation date
+                null,
+                toLocalDateTime(fields[3]),
+                FilenameUtils.getExtension(filename),
+                path,
+                fullpath,
+                Long.parseLong(fields[1]),
+                fields[4],
+                fields[5],
+                type | Integer.parseInt(fields[6], 8));
+    }
+
+    /**
+     * Read a date like 1700000000.1234567890. We only keep the seconds as we only have the seconds with sftp.
+     */
+    private static LocalDateTime toLocalDateTime(String seconds) {
+        int dot = seconds.indexOf('.');
+        long epochSecond = Long.parseLong(dot < 0 ? seconds : seconds.substring(0, dot));
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\"'\"'") + "'";
+    }
+}
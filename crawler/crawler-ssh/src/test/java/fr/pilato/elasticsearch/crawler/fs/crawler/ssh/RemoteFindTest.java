@@ -0,0 +1,135 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.crawler.ssh;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assume.assumeTrue;
+
+public class RemoteFindTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testCommand() {
+        LocalDateTime since = LocalDateTime.of(2023, 11, 14, 22, 13, 20);
+        String command = RemoteFind.command("/data/it's here", since, Collections.singletonList(".fscrawlerignore"));
+        assertThat(command.startsWith("find '/data/it'\"'\"'s here' -mindepth 1 \\( -newermt '@"), is(true));
+        assertThat(command.contains(" -o -name '.fscrawlerignore' \\) -printf '"), is(true));
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        String output = "f 12 1700000000.1234567890 1700000100.0000000000 1000 1001 644 /data/foo.txt\0" +
+                "d 4096 1700000000.0000000000 1700000000.0000000000 0 0 755 /data/sub dir\0" +
+                "s 0 1700000000.0000000000 1700000000.0000000000 0 0 755 /data/socket\0" +
+                "f 0 1700000000.0000000000 1700000000.0000000000 0 0 600 /data/sub dir/with\nnew line\0";
+
+        List<FileAbstractModel> files = RemoteFind.parse(new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)));
+        assertThat(files, hasSize(3));
+
+        FileAbstractModel file = files.get(0);
+        assertThat(file.getName(), is("foo.txt"));
+        assertThat(file.isFile(), is(true));
+        assertThat(file.getPath(), is("/data"));
+        assertThat(file.getFullpath(), is("/data/foo.txt"));
+        assertThat(file.getExtension(), is("txt"));
+        assertThat(file.getSize(), is(12L));
+        assertThat(file.getOwner(), is("1000"));
+        assertThat(file.getGroup(), is("1001"));
+        assertThat(file.getPermissions(), is(0100644));
+        assertThat(file.getCreationDate(), nullValue());
+        assertThat(file.getLastModifiedDate().getNano(), is(0));
+
+        FileAbstractModel dir = files.get(1);
+        assertThat(dir.getName(), is("sub dir"));
+        assertThat(dir.isDirectory(), is(true));
+        assertThat(dir.getPermissions(), is(0040755));
+
+        assertThat(files.get(2).getName(), is("with\nnew line"));
+        assertThat(files.get(2).getPath(), is("/data/sub dir"));
+    }
+
+    /**
+     * We run the command with the local shell as if it was the remote server
+     */
+    @Test
+    public void testLocalFind() throws Exception {
+        assumeTrue("GNU find is needed", runs("find", "--version"));
+
+        Path root = rootTmpDir.resolve("remote-find");
+        Files.createDirectories(root.resolve("sub"));
+        Files.writeString(root.resolve("foo.txt"), "foo");
+        Files.writeString(root.resolve("sub").resolve("bar's.txt"), "bar");
+        Files.writeString(root.resolve("sub").resolve(".fscrawlerignore"), "");
+        List<String> names = Collections.singletonList(".fscrawlerignore");
+
+        // Everything changed since the last hour
+        Set<String> changed = find(RemoteFind.command(root.toString(), LocalDateTime.now().minusHours(1), names));
+        assertThat(changed, containsInAnyOrder(
+                root.resolve("foo.txt").toString(),
+                root.resolve("sub").toString(),
+                root.resolve("sub").resolve("bar's.txt").toString(),
+                root.resolve("sub").resolve(".fscrawlerignore").toString()));
+
+        // Nothing changed, but we always get the ignore files
+        changed = find(RemoteFind.command(root.toString(), LocalDateTime.now().plusHours(1), names));
+        assertThat(changed, containsInAnyOrder(root.resolve("sub").resolve(".fscrawlerignore").toString()));
+    }
+
+    private static Set<String> find(String command) throws Exception {
+        Process process = new ProcessBuilder("sh", "-c", command).start();
+        List<FileAbstractModel> files;
+        try (InputStream in = process.getInputStream()) {
+            files = RemoteFind.parse(in);
+        }
+        assertThat(process.waitFor(10, TimeUnit.SECONDS), is(true));
+        assertThat(process.exitValue(), is(0));
+        return files.stream().map(FileAbstractModel::getFullpath).collect(Collectors.toSet());
+    }
+
+    private static boolean runs(String... command) {
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            process.getInputStream().readAllBytes();
+            return process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.List;
 public class ESBoolQuery extends ESQuery {
 
     final List<ESQuery> mustClauses = new ArrayList<>();
+    final List<ESQuery> shouldClauses = new ArrayList<>();
 
     public ESBoolQuery() {
         super(null);
@@ -38,4 +39,16 @@ public class ESBoolQuery extends ESQuery {
     public List<ESQuery> getMustClauses() {
         return mustClauses;
     }
+
+    /**
+     * Add a clause. When we have should clauses, at least one of them must match.
+     */
+    public ESBoolQuery addShould(ESQuery query) {
+        this.shouldClauses.add(query);
+        return this;
+    }
+
+    public List<ESQuery> getShouldClauses() {
+        return shouldClauses;
+    }
 }
@@ -27,6 +27,9 @@ public class ESSearchHit {
     private String index;
     private String id;
     private Long version;
+    private Long seqNo;
+    private Long primaryTerm;
+    private List<Object> sort;
     private String source;
     private Map<String, List<String>> storedFields;
     private final Map<String, List<String>> highlightFields = new HashMap<>();
@@ -79,4 +82,28 @@ public class ESSearchHit {
         this.version = version;
     }
 
+    public Long getSeqNo() {
+        return seqNo;
+    }
+
+    public void setSeqNo(Long seqNo) {
+        this.seqNo = seqNo;
+    }
+
+    public List<Object> getSort() {
+        return sort;
+    }
+
+    public void setSort(List<Object> sort) {
+        this.sort = sort;
+    }
+
+    public Long getPrimaryTerm() {
+        return primaryTerm;
+    }
+
+    public void setPrimaryTerm(Long primaryTerm) {
+        this.primaryTerm = primaryTerm;
+    }
+
 }
@@ -0,0 +1,160 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Iterate over all the hits matching a search request, whatever their number. Pages are only fetched
+ * when needed with search_after, so we never hold more than one page in memory. Most of the searches fit
+ * in one page, so the first page is a plain search. When it is full and the cluster supports it, we read
+ * the hits again within a point in time and skip the ones we already returned. The point in time is released
+ * once all the hits have been read. Close the iterator if you stop before.
+ */
+public class ESSearchIterator implements Iterator<ESSearchHit>, Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ESSearchIterator.class);
+
+    static final String KEEP_ALIVE = "1m";
+
+    private final IElasticsearchClient client;
+    private final ESSearchRequest request;
+    private final String index;
+    private final int pageSize;
+    private final boolean pointInTime;
+
+    private Iterator<ESSearchHit> page = Collections.emptyIterator();
+    private List<Object> searchAfter;
+    private boolean started;
+    private boolean lastPage;
+    private String pointInTimeId;
+    // The ids of the first page, which we must skip when we read the hits again within a point in time
+    private Set<String> firstPage;
+
+    /**
+     * @param client        the client
+     * @param request       the request to run. It will be modified to get the next pages.
+     * @param pageSize      the number of hits we read for each page
+     * @param pointInTime   true if the cluster supports point in time and _shard_doc sorting
+     */
+    ESSearchIterator(IElasticsearchClient client, ESSearchRequest request, int pageSize, boolean pointInTime) {
+        this.client = client;
+        this.request = request;
+        this.index = request.getIndex();
+        this.pageSize = pageSize;
+        this.pointInTime = pointInTime;
+    }
+
+    @Override
+    public boolean hasNext() {
+        // A page can be empty once we removed the hits of the first page
+        while (!page.hasNext() && !lastPage) {
+            try {
+                fetchNextPage();
+            } catch (ElasticsearchClientException e) {
+                close();
+                throw new RuntimeException("Can not read the next hits from " + index + ": " + e.getMessage(), e);
+            }
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public ESSearchHit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    private void fetchNextPage() throws ElasticsearchClientException {
+        if (!started) {
+            started = true;
+            request.withSize(pageSize);
+            if (!pointInTime) {
+                // Without a point in time, we don't have a consistent view of the index but _id is still a unique sort key
+                request.withSort("_id");
+            }
+        } else if (pointInTime && pointInTimeId == null) {
+            // The first page was full, so we need a consistent view of the index to read the next ones
+            pointInTimeId = client.openPointInTime(index, KEEP_ALIVE);
+            request.withIndex(null).withSort("_shard_doc");
+        }
+        if (pointInTimeId != null) {
+            request.withPointInTime(pointInTimeId, KEEP_ALIVE);
+        }
+        if (searchAfter != null) {
+            request.withSearchAfter(searchAfter);
+        }
+
+        ESSearchResponse response = client.search(request);
+        if (response.getPointInTimeId() != null) {
+            pointInTimeId = response.getPointInTimeId();
+        }
+        List<ESSearchHit> hits = response.getHits();
+        logger.trace("Read a page of [{}] hits from [{}]", hits.size(), index);
+        boolean full = hits.size() >= pageSize;
+        if (full) {
+            searchAfter = hits.get(hits.size() - 1).getSort();
+        }
+        if (pointInTimeId == null && pointInTime && full) {
+            // We will read the first page again within the point in time
+            firstPage = new HashSet<>(hits.size());
+            for (ESSearchHit hit : hits) {
+                firstPage.add(hit.getId());
+            }
+            searchAfter = null;
+        } else if (firstPage != null) {
+            hits = hits.stream().filter(hit -> !firstPage.contains(hit.getId())).collect(Collectors.toList());
+        }
+        if (!full) {
+            lastPage = true;
+            close();
+        }
+        page = hits.iterator();
+    }
+
+    /**
+     * Release the point in time if any
+     */
+    @Override
+    public void close() {
+        lastPage = true;
+        if (pointInTimeId != null) {
+            String id = pointInTimeId;
+            pointInTimeId = null;
+            try {
+                client.closePointInTime(id);
+            } catch (ElasticsearchClientException e) {
+                logger.debug("Can not close the point in time. It will expire after [{}]: {}", KEEP_ALIVE, e.getMessage());
+            }
+        }
+    }
+}
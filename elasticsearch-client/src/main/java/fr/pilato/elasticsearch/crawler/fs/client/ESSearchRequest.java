@@ -31,6 +31,9 @@ public class ESSearchRequest {
     private final List<String> storedFields = new ArrayList<>();
     private final List<String> highlighters = new ArrayList<>();
     private final List<ESTermsAggregation> aggregations = new ArrayList<>();
+    private String pointInTimeId;
+    private String pointInTimeKeepAlive;
+    private List<Object> searchAfter;
 
     public String getIndex() {
         return index;
@@ -94,4 +97,36 @@ public class ESSearchRequest {
         this.aggregations.add(aggregation);
         return this;
     }
+
+    public String getPointInTimeId() {
+        return pointInTimeId;
+    }
+
+    public String getPointInTimeKeepAlive() {
+        return pointInTimeKeepAlive;
+    }
+
+    /**
+     * Search within a point in time. The index must not be set as it is given by the point in time.
+     * @param id        the point in time id
+     * @param keepAlive how long the point in time should be kept after this request, like "1m"
+     */
+    public ESSearchRequest withPointInTime(String id, String keepAlive) {
+        this.pointInTimeId = id;
+        this.pointInTimeKeepAlive = keepAlive;
+        return this;
+    }
+
+    public List<Object> getSearchAfter() {
+        return searchAfter;
+    }
+
+    /**
+     * Get the hits which are after the given sort values
+     * @param searchAfter the sort values of the last hit of the previous page
+     */
+    public ESSearchRequest withSearchAfter(List<Object> searchAfter) {
+        this.searchAfter = searchAfter;
+        return this;
+    }
 }
@@ -29,6 +29,7 @@ public class ESSearchResponse {
     private long totalHits;
     private final Map<String, ESTermsAggregation> aggregations = new HashMap<>();
     private final String json;
+    private String pointInTimeId;
 
     public ESSearchResponse(String json) {
         this.json = json;
@@ -65,4 +66,15 @@ public class ESSearchResponse {
     public String getJson() {
         return json;
     }
+
+    /**
+     * @return the id of the point in time to use for the next request, if we searched within a point in time
+     */
+    public String getPointInTimeId() {
+        return pointInTimeId;
+    }
+
+    public void setPointInTimeId(String pointInTimeId) {
+        this.pointInTimeId = pointInTimeId;
+    }
 }
@@ -45,7 +45,7 @@ public class ElasticsearchBulkResponse extends FsCrawlerBulkResponse<Elasticsear
             Map<String, Object> jsonItemResponse = ((List<Map<String, Object>>) document.read("$..[?(@._id == '" + id + "')]")).get(0);
             String index = (String) jsonItemResponse.get("_index");
             BulkItemResponse<ElasticsearchOperation> itemResponse = new BulkItemResponse<>();
-            itemResponse.setOperation(new ElasticsearchIndexOperation(index, id, null, null));
+            itemResponse.setOperation(new ElasticsearchIndexOperation(index, id, null, (String) null));
             Map<String, Object> error = (Map<String, Object>) jsonItemResponse.get("error");
             if (error != null) {
                 String errorMessage = (String) error.get("reason");
@@ -41,6 +41,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
 import org.glassfish.jersey.logging.LoggingFeature;
 
@@ -51,6 +52,7 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ConnectException;
 import java.nio.file.Path;
 import java.security.KeyManagementException;
@@ -80,6 +82,7 @@ public class ElasticsearchClient implements IElasticsearchClient {
 
     // TODO this should be configurable
     public static final int CHECK_NODES_EVERY = 10;
+    static final int DEFAULT_PAGE_SIZE = 1000;
 
     private Client client = null;
     private FsCrawlerBulkProcessor<ElasticsearchOperation, ElasticsearchBulkRequest, ElasticsearchBulkResponse> bulkProcessor = null;
@@ -373,8 +376,8 @@ public class ElasticsearchClient implements IElasticsearchClient {
 
     @Override
     public void index(String index, String id, Doc doc, String pipeline) {
-        String json = serialize(doc);
-        indexRawJson(index, id, json, pipeline);
+        // The document will be serialized in the bulk request
+        bulkProcessor.add(new ElasticsearchIndexOperation(index, id, pipeline, doc));
     }
 
     @Override
@@ -393,6 +396,37 @@ public class ElasticsearchClient implements IElasticsearchClient {
         httpPut(url, json);
     }
 
+    @Override
+    public ESSearchHit indexSingleIfMatch(String index, String id, String json, Long seqNo, Long primaryTerm) throws ElasticsearchClientException {
+        logger.trace("JSon indexed if [{}/{}] matches: {}", seqNo, primaryTerm, json);
+        String url = index + "/" + INDEX_TYPE_DOC + "/" + id;
+        try {
+            String response;
+            if (seqNo == null) {
+                response = httpPut(url, json, new AbstractMap.SimpleImmutableEntry<>("op_type", "create"));
+            } else {
+                response = httpPut(url, json,
+                        new AbstractMap.SimpleImmutableEntry<>("if_seq_no", seqNo),
+                        new AbstractMap.SimpleImmutableEntry<>("if_primary_term", primaryTerm));
+            }
+            DocumentContext document = parseJsonAsDocumentContext(response);
+            ESSearchHit hit = new ESSearchHit();
+            hit.setIndex(document.read("$._index"));
+            hit.setId(document.read("$._id"));
+            hit.setVersion(document.read("$._version", Long.class));
+            hit.setSeqNo(document.read("$._seq_no", Long.class));
+            hit.setPrimaryTerm(document.read("$._primary_term", Long.class));
+            hit.setSource(json);
+            return hit;
+        } catch (WebApplicationException e) {
+            if (e.getResponse().getStatus() == Response.Status.CONFLICT.getStatusCode()) {
+                logger.debug("Document [{}/{}] has been modified by someone else", index, id);
+                return null;
+            }
+            throw new ElasticsearchClientException("Can not index document " + index + "/" + id, e);
+        }
+    }
+
     @Override
     public void delete(String index, String id) {
         bulkProcessor.add(new ElasticsearchDeleteOperation(index, id));
@@ -430,6 +464,11 @@ public class ElasticsearchClient implements IElasticsearchClient {
 
     @Override
     public void createIndices() throws Exception {
+        createIndices(settings);
+    }
+
+    @Override
+    public void createIndices(FsSettings settings) throws Exception {
         Path jobMappingDir = config.resolve(settings.getName()).resolve("_mappings");
 
         // If needed, we create the new settings for this files index
@@ -452,7 +491,8 @@ public class ElasticsearchClient implements IElasticsearchClient {
 
         String url = "";
 
-        if (!isNullOrEmpty(request.getIndex())) {
+        // When searching within a point in time, the index is given by the point in time
+        if (!isNullOrEmpty(request.getIndex()) && request.getPointInTimeId() == null) {
             url += request.getIndex();
         }
 
@@ -498,6 +538,24 @@ public class ElasticsearchClient implements IElasticsearchClient {
             body.getAndUpdate(s -> s += "\"sort\" : [\"" + request.getSort() + "\"]");
             bodyEmpty = false;
         }
+        if (request.getPointInTimeId() != null) {
+            if (!bodyEmpty) {
+                body.getAndUpdate(s -> s += ",");
+            }
+            body.getAndUpdate(s -> s += "\"pit\" : {\"id\":\"" + request.getPointInTimeId() + "\"");
+            if (request.getPointInTimeKeepAlive() != null) {
+                body.getAndUpdate(s -> s += ",\"keep_alive\":\"" + request.getPointInTimeKeepAlive() + "\"");
+            }
+            body.getAndUpdate(s -> s += "}");
+            bodyEmpty = false;
+        }
+        if (request.getSearchAfter() != null) {
+            if (!bodyEmpty) {
+                body.getAndUpdate(s -> s += ",");
+            }
+            body.getAndUpdate(s -> s += "\"search_after\" : " + serialize(request.getSearchAfter()));
+            bodyEmpty = false;
+        }
         if (!request.getHighlighters().isEmpty()) {
             if (!bodyEmpty) {
                 body.getAndUpdate(s -> s += ",");
@@ -540,6 +598,9 @@ public class ElasticsearchClient implements IElasticsearchClient {
 
             // Parse
             DocumentContext document = parseJsonAsDocumentContext(response);
+            if (request.getPointInTimeId() != null) {
+                esSearchResponse.setPointInTimeId(document.read("$.pit_id"));
+            }
             if (majorVersion < 7) {
                 esSearchResponse.setTotalHits(document.read("$.hits.total"));
             } else {
@@ -577,6 +638,14 @@ public class ElasticsearchClient implements IElasticsearchClient {
                     // No stored fields
                 }
                 // hits.hits[].fields":{"foo.bar":["bar"]}}
+
+                // Parse the sort values if any, so we can search after this hit
+                try {
+                    List<Object> sort = document.read("$.hits.hits[" + hitNum + "].sort");
+                    esSearchHit.setSort(sort);
+                } catch (PathNotFoundException ignored) {
+                    // Not sorted
+                }
                 esSearchResponse.addHit(esSearchHit);
             }
 
@@ -607,7 +676,7 @@ public class ElasticsearchClient implements IElasticsearchClient {
     private String toElasticsearchQuery(ESQuery query) {
         if (query instanceof ESTermQuery) {
             ESTermQuery esQuery = (ESTermQuery) query;
-            return "\"term\": { \"" + esQuery.getField() +  "\": \"" + esQuery.getValue() + "\"}";
+            return "\"term\": { \"" + esQuery.getField() +  "\": " + serialize(esQuery.getValue()) + "}";
         }
         if (query instanceof ESMatchQuery) {
             ESMatchQuery esQuery = (ESMatchQuery) query;
@@ -615,7 +684,7 @@ public class ElasticsearchClient implements IElasticsearchClient {
         }
         if (query instanceof ESPrefixQuery) {
             ESPrefixQuery esQuery = (ESPrefixQuery) query;
-            return "\"prefix\": { \"" + esQuery.getField() +  "\": \"" + esQuery.getValue() + "\"}";
+            return "\"prefix\": { \"" + esQuery.getField() +  "\": " + serialize(esQuery.getValue()) + "}";
         }
         if (query instanceof ESRangeQuery) {
             ESRangeQuery esQuery = (ESRangeQuery) query;
@@ -645,12 +714,117 @@ public class ElasticsearchClient implements IElasticsearchClient {
                 localQuery.append("}");
                 hasClauses = true;
             }
-            localQuery.append("]}");
+            localQuery.append("]");
+            if (!esQuery.getShouldClauses().isEmpty()) {
+                localQuery.append(", \"should\" : [");
+                hasClauses = false;
+                for (ESQuery clause : esQuery.getShouldClauses()) {
+                    if (hasClauses) {
+                        localQuery.append(",");
+                    }
+                    localQuery.append("{");
+                    localQuery.append(toElasticsearchQuery(clause));
+                    localQuery.append("}");
+                    hasClauses = true;
+                }
+                localQuery.append("], \"minimum_should_match\" : 1");
+            }
+            localQuery.append("}");
             return localQuery.toString();
         }
         throw new IllegalArgumentException("Query " + query.getClass().getSimpleName() + " not implemented yet");
     }
 
+    @Override
+    public String deleteByQuery(String index, ESQuery query) throws ElasticsearchClientException {
+        logger.debug("delete by query in [{}]", index);
+        String response = httpPost(index + "/_delete_by_query", "{\"query\" : {" + toElasticsearchQuery(query) + "}}",
+                new AbstractMap.SimpleImmutableEntry<>("conflicts", "proceed"),
+                new AbstractMap.SimpleImmutableEntry<>("ignore_unavailable", "true"),
+                new AbstractMap.SimpleImmutableEntry<>("refresh", "true"),
+                new AbstractMap.SimpleImmutableEntry<>("wait_for_completion", "false"));
+        String taskId = parseJsonAsDocumentContext(response).read("$.task");
+        logger.debug("delete by query in [{}] is running as task [{}]", index, taskId);
+        return taskId;
+    }
+
+    @Override
+    public ESTask getTask(String taskId) throws ElasticsearchClientException {
+        String response = httpGet("_tasks/" + taskId);
+        DocumentContext document = parseJsonAsDocumentContext(response);
+        ESTask task = new ESTask(taskId);
+        task.setCompleted(document.read("$.completed"));
+        // While the task is running, we only have its status
+        String statusPath = task.isCompleted() ? "$.response" : "$.task.status";
+        try {
+            task.setDeleted(document.read(statusPath + ".deleted", Long.class));
+        } catch (PathNotFoundException ignored) {
+            // No status yet
+        }
+        if (task.isCompleted()) {
+            try {
+                List<Object> failures = document.read("$.response.failures");
+                task.setFailures(failures.size());
+            } catch (PathNotFoundException ignored) {
+                // No failure
+            }
+            try {
+                task.setError(document.read("$.error.reason"));
+            } catch (PathNotFoundException ignored) {
+                // No error
+            }
+        }
+        return task;
+    }
+
+    @Override
+    public ESSearchIterator searchAll(ESSearchRequest request) {
+        int pageSize = request.getSize() == null ? DEFAULT_PAGE_SIZE : request.getSize();
+        boolean pointInTime;
+        try {
+            pointInTime = isPointInTimeSupported(getVersion());
+        } catch (ElasticsearchClientException e) {
+            throw new RuntimeException("Can not read the version of the cluster: " + e.getMessage(), e);
+        }
+        return new ESSearchIterator(this, request, pageSize, pointInTime);
+    }
+
+    /**
+     * Point in time and the _shard_doc sort exist since 7.12
+     * @param version the elasticsearch version, like 7.12.0
+     * @return true if we can use a point in time
+     */
+    static boolean isPointInTimeSupported(String version) {
+        if (isNullOrEmpty(version)) {
+            return false;
+        }
+        String[] digits = version.split("\\.");
+        try {
+            int major = Integer.parseInt(digits[0]);
+            int minor = digits.length > 1 ? Integer.parseInt(digits[1]) : 0;
+            return major > 7 || (major == 7 && minor >= 12);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String openPointInTime(String index, String keepAlive) throws ElasticsearchClientException {
+        logger.debug("open point in time on [{}]", index);
+        String response = httpPost(index + "/_pit", null, new AbstractMap.SimpleImmutableEntry<>("keep_alive", keepAlive));
+        return parseJsonAsDocumentContext(response).read("$.id");
+    }
+
+    @Override
+    public void closePointInTime(String id) throws ElasticsearchClientException {
+        logger.debug("close point in time");
+        try {
+            httpDelete("_pit", "{\"id\":\"" + id + "\"}");
+        } catch (NotFoundException e) {
+            logger.debug("Point in time was already released");
+        }
+    }
+
     @Override
     public void deleteIndex(String index) throws ElasticsearchClientException {
         logger.debug("delete index [{}]", index);
@@ -687,6 +861,12 @@ public class ElasticsearchClient implements IElasticsearchClient {
         hit.setIndex(document.read("$._index"));
         hit.setId(document.read("$._id"));
         hit.setVersion(Integer.toUnsignedLong(document.read("$._version")));
+        // Old versions do not give the sequence number
+        Map<String, Object> metadata = document.read("$");
+        if (metadata.containsKey("_seq_no")) {
+            hit.setSeqNo(document.read("$._seq_no", Long.class));
+            hit.setPrimaryTerm(document.read("$._primary_term", Long.class));
+        }
         hit.setSource(extractJsonFromPath(document, "$._source"));
         return hit;
     }
@@ -712,6 +892,11 @@ public class ElasticsearchClient implements IElasticsearchClient {
         return response;
     }
 
+    @Override
+    public String bulk(InputStream ndjson) throws ElasticsearchClientException {
+        return httpPost("_bulk", ndjson);
+    }
+
     private void createIndex(Path jobMappingDir, int elasticsearchVersion, String indexSettingsFile, String indexName) throws Exception {
         try {
             // If needed, we create the new settings for this files index
@@ -771,6 +956,10 @@ public class ElasticsearchClient implements IElasticsearchClient {
                 logger.trace("{} {}/{} gives {}", method, node, path == null ? "" : path, response);
                 return response;
             }
+            if (data instanceof InputStream) {
+                // We send the stream while we read it instead of reading it all to compute its length
+                callBuilder.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+            }
             String response = callBuilder.method(method, Entity.json(data), String.class);
             logger.trace("{} {}/{} gives {}", method, node, path == null ? "" : path, response);
             return response;
@@ -19,18 +19,39 @@
 
 package fr.pilato.elasticsearch.crawler.fs.client;
 
-import fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import fr.pilato.elasticsearch.crawler.fs.framework.bulk.Engine;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static fr.pilato.elasticsearch.crawler.fs.client.IElasticsearchClient.INDEX_TYPE_DOC;
+import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.mapper;
 
+/**
+ * Send the bulk requests to Elasticsearch. The documents are serialized directly in a buffer which is
+ * then streamed to Elasticsearch, so the bulk request is never copied. The buffers are reused from one
+ * bulk request to the next one.
+ */
 public class ElasticsearchEngine implements Engine<ElasticsearchOperation, ElasticsearchBulkRequest, ElasticsearchBulkResponse> {
     private static final Logger logger = LogManager.getLogger(ElasticsearchEngine.class);
+
+    // Bulk requests are sent one at a time by the bulk processor, so we rarely need more than one buffer
+    private static final int MAX_POOLED_BUFFERS = 2;
+    // A buffer which grew bigger than this after a huge bulk request is not reused
+    private static final int MAX_POOLED_BUFFER_SIZE = 32 * 1024 * 1024;
+
     private final IElasticsearchClient elasticsearchClient;
+    private final Queue<BulkBuffer> buffers = new ConcurrentLinkedQueue<>();
 
     public ElasticsearchEngine(IElasticsearchClient elasticsearchClient) {
         this.elasticsearchClient = elasticsearchClient;
@@ -38,51 +59,89 @@ public class ElasticsearchEngine implements Engine<ElasticsearchOperation, Elast
 
     @Override
     public ElasticsearchBulkResponse bulk(ElasticsearchBulkRequest request) {
-        StringBuilder ndjson = new StringBuilder();
-
-        request.getOperations().forEach(r -> {
-            StringBuilder bulkRequest = new StringBuilder();
-            // Header
-            bulkRequest.append("{\"")
-                    .append(r.getOperation().toString().toLowerCase(Locale.ROOT))
-                    .append("\":{\"_index\":\"")
-                    .append(r.getIndex())
-                    .append("\"");
+        BulkBuffer ndjson = buffers.poll();
+        if (ndjson == null) {
+            ndjson = new BulkBuffer();
+        }
+        try {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(ndjson)) {
+                // Each line ends with a new line, so we don't need any other separator
+                generator.setRootValueSeparator(null);
+                for (ElasticsearchOperation operation : request.getOperations()) {
+                    writeOperation(generator, operation);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
 
-            if (elasticsearchClient.getMajorVersion() < 7) {
-                // Before version 7, the _type was needed
-                bulkRequest.append(",\"_type\":\"")
-                        .append(INDEX_TYPE_DOC)
-                        .append("\"");
+            if (logger.isTraceEnabled()) {
+                logger.trace("Full bulk request {}", ndjson.toString(StandardCharsets.UTF_8));
+            }
+            logger.debug("Sending a bulk request of [{}] documents ([{}] bytes) to the Elasticsearch service",
+                    request.numberOfActions(), ndjson.size());
+            String response;
+            try {
+                response = elasticsearchClient.bulk(ndjson.toInputStream());
+            } catch (ElasticsearchClientException e) {
+                return new ElasticsearchBulkResponse(e);
+            }
+            return new ElasticsearchBulkResponse(response);
+        } finally {
+            ndjson.reset();
+            if (ndjson.capacity() <= MAX_POOLED_BUFFER_SIZE && buffers.size() < MAX_POOLED_BUFFERS) {
+                buffers.offer(ndjson);
             }
+        }
+    }
 
-            bulkRequest.append(",\"_id\":\"")
-                    .append(r.getId())
-                    .append("\"");
+    private void writeOperation(JsonGenerator generator, ElasticsearchOperation operation) throws IOException {
+        // Header
+        generator.writeStartObject();
+        generator.writeFieldName(operation.getOperation().toString().toLowerCase(Locale.ROOT));
+        generator.writeStartObject();
+        generator.writeStringField("_index", operation.getIndex());
+        if (elasticsearchClient.getMajorVersion() < 7) {
+            // Before version 7, the _type was needed
+            generator.writeStringField("_type", INDEX_TYPE_DOC);
+        }
+        generator.writeStringField("_id", operation.getId());
+        if (operation instanceof ElasticsearchIndexOperation && ((ElasticsearchIndexOperation) operation).getPipeline() != null) {
+            generator.writeStringField("pipeline", ((ElasticsearchIndexOperation) operation).getPipeline());
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
 
-            if (r instanceof ElasticsearchIndexOperation && ((ElasticsearchIndexOperation) r).getPipeline() != null) {
-                bulkRequest
-                        .append(",\"pipeline\":\"")
-                        .append(((ElasticsearchIndexOperation) r).getPipeline())
-                        .append("\"");
-            }
-            bulkRequest.append("}}\n");
-            if (r instanceof ElasticsearchIndexOperation) {
-                ElasticsearchIndexOperation indexOp = (ElasticsearchIndexOperation) r;
-                bulkRequest.append(JsonUtil.serialize(JsonUtil.deserialize(indexOp.getJson(), Object.class))).append("\n");
+        if (operation instanceof ElasticsearchIndexOperation) {
+            ElasticsearchIndexOperation indexOp = (ElasticsearchIndexOperation) operation;
+            if (indexOp.getDoc() != null) {
+                // The content is escaped while it's written in the bulk request
+                mapper.writeValue(generator, indexOp.getDoc());
+            } else {
+                // The json document might be pretty printed, so we copy it token by token to have it on a single line
+                try (JsonParser parser = mapper.getFactory().createParser(indexOp.getJson())) {
+                    parser.nextToken();
+                    generator.copyCurrentStructure(parser);
+                }
             }
-            logger.trace("Adding to bulk request: {}", bulkRequest);
-            ndjson.append(bulkRequest);
-        });
+            generator.writeRaw('\n');
+        }
+    }
 
-        logger.trace("Full bulk request {}", ndjson);
-        logger.debug("Sending a bulk request of [{}] documents to the Elasticsearch service", request.numberOfActions());
-        String response;
-        try {
-            response = elasticsearchClient.bulk(ndjson.toString());
-        } catch (ElasticsearchClientException e) {
-            return new ElasticsearchBulkResponse(e);
+    /**
+     * A buffer which can be read without copying it
+     */
+    private static class BulkBuffer extends ByteArrayOutputStream {
+        private BulkBuffer() {
+            super(64 * 1024);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+
+        private InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
         }
-        return new ElasticsearchBulkResponse(response);
     }
 }
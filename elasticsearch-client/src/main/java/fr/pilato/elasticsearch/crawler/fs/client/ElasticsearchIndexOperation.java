@@ -19,22 +19,44 @@
 
 package fr.pilato.elasticsearch.crawler.fs.client;
 
+import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+
 public class ElasticsearchIndexOperation extends ElasticsearchOperation {
 
     private final String pipeline;
     private final String json;
+    private final Doc doc;
 
     public ElasticsearchIndexOperation(String index, String id, String pipeline, String json) {
+        this(index, id, pipeline, json, null);
+    }
+
+    /**
+     * The document is only serialized when the bulk request is sent, directly in the bulk request
+     */
+    public ElasticsearchIndexOperation(String index, String id, String pipeline, Doc doc) {
+        this(index, id, pipeline, null, doc);
+    }
+
+    private ElasticsearchIndexOperation(String index, String id, String pipeline, String json, Doc doc) {
         super(Operation.INDEX, index, id);
         this.pipeline = pipeline;
         this.json = json;
+        this.doc = doc;
     }
 
     public String getPipeline() {
         return pipeline;
     }
 
+    /**
+     * @return the json document or null if we index a {@link Doc}
+     */
     public String getJson() {
         return json;
     }
+
+    public Doc getDoc() {
+        return doc;
+    }
 }
@@ -21,9 +21,11 @@ package fr.pilato.elasticsearch.crawler.fs.client;
 
 
 import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -119,6 +121,18 @@ public interface IElasticsearchClient extends Closeable {
      */
     void indexSingle(String index, String id, String json, String pipeline) throws ElasticsearchClientException;
 
+    /**
+     * Index a single document only if it has not been modified since we read it
+     * @param index         Index name
+     * @param id            Document ID
+     * @param json          Document to index
+     * @param seqNo         Sequence number of the document when we read it. Null if the document must not exist yet.
+     * @param primaryTerm   Primary term of the document when we read it. Null if the document must not exist yet.
+     * @return the indexed document with its new sequence number and primary term or null if another
+     * client modified or created the document in the meantime
+     */
+    ESSearchHit indexSingleIfMatch(String index, String id, String json, Long seqNo, Long primaryTerm) throws ElasticsearchClientException;
+
     /**
      * Delete a document using a BulkProcessor behind the scenes
      * @param index     Index name
@@ -133,6 +147,23 @@ public interface IElasticsearchClient extends Closeable {
      */
     void deleteSingle(String index, String id) throws ElasticsearchClientException;
 
+    /**
+     * Remove all the documents matching a query with the Delete By Query API. The deletion runs in the
+     * background on the cluster, so this method does not wait for it.
+     * @param index Index name. Several indices can be given separated by a comma.
+     * @param query Query matching the documents to remove
+     * @return the id of the task which removes the documents
+     * @see #getTask(String) to follow the task
+     */
+    String deleteByQuery(String index, ESQuery query) throws ElasticsearchClientException;
+
+    /**
+     * Get the status of a background task
+     * @param taskId the task id
+     * @return the task status
+     */
+    ESTask getTask(String taskId) throws ElasticsearchClientException;
+
     /**
      * Create all needed indices
      * @throws Exception in case of error
@@ -141,6 +172,15 @@ public interface IElasticsearchClient extends Closeable {
     @Deprecated
     void createIndices() throws Exception;
 
+    /**
+     * Create all needed indices for a job when the client is shared by several jobs
+     * @param settings the job settings
+     * @throws Exception in case of error
+     * @deprecated replace with an index template
+     */
+    @Deprecated
+    void createIndices(FsSettings settings) throws Exception;
+
     /**
      * Run a search
      * @param request Search Request
@@ -148,6 +188,27 @@ public interface IElasticsearchClient extends Closeable {
      */
     ESSearchResponse search(ESSearchRequest request) throws ElasticsearchClientException;
 
+    /**
+     * Read all the hits matching a search request, page by page. Nothing is read until we iterate.
+     * @param request Search Request. Its size is used as the page size.
+     * @return An iterator over all the hits. Close it if you don't read all the hits.
+     */
+    ESSearchIterator searchAll(ESSearchRequest request);
+
+    /**
+     * Open a point in time on an index
+     * @param index     Index name
+     * @param keepAlive How long the point in time should be kept, like "1m"
+     * @return the point in time id
+     */
+    String openPointInTime(String index, String keepAlive) throws ElasticsearchClientException;
+
+    /**
+     * Release a point in time
+     * @param id the point in time id
+     */
+    void closePointInTime(String id) throws ElasticsearchClientException;
+
     /**
      * Remove an index
      * @param index Index name
@@ -193,4 +254,11 @@ public interface IElasticsearchClient extends Closeable {
      * @return  the outcome
      */
     String bulk(String ndjson) throws ElasticsearchClientException;
+
+    /**
+     * Send a _bulk request to Elasticsearch while it's read from a stream
+     * @param ndjson    the bulk content to send
+     * @return  the outcome
+     */
+    String bulk(InputStream ndjson) throws ElasticsearchClientException;
 }
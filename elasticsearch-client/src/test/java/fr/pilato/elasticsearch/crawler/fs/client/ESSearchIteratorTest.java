@@ -0,0 +1,122 @@
+/*
+ * Licensed to David Pilato under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+public class ESSearchIteratorTest extends AbstractFSCrawlerTestCase {
+
+    /**
+     * Creates a client which holds the documents doc-0 to doc-(size-1) and records the requests it receives.
+     * Without a point in time, the hits come in the reverse order, like if they were sorted by score.
+     */
+    private static IElasticsearchClient recordingClient(int size, List<String> requests) {
+        return (IElasticsearchClient) Proxy.newProxyInstance(IElasticsearchClient.class.getClassLoader(),
+                new Class<?>[]{IElasticsearchClient.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "openPointInTime":
+                            requests.add("open");
+                            return "pit";
+                        case "closePointInTime":
+                            requests.add("close");
+                            return null;
+                        case "search":
+                            ESSearchRequest request = (ESSearchRequest) args[0];
+                            List<Integer> docs = new ArrayList<>();
+                            for (int i = 0; i < size; i++) {
+                                docs.add(i);
+                            }
+                            if (request.getSort() == null) {
+                                requests.add("search");
+                                Collections.reverse(docs);
+                            } else {
+                                requests.add(request.getPointInTimeId() == null ? "search sorted" : "search pit");
+                            }
+                            int from = request.getSearchAfter() == null ? 0 : (Integer) request.getSearchAfter().get(0) + 1;
+                            ESSearchResponse response = new ESSearchResponse(null);
+                            response.setPointInTimeId(request.getPointInTimeId());
+                            for (int doc : docs.subList(Math.min(from, size), Math.min(from + request.getSize(), size))) {
+                                ESSearchHit hit = new ESSearchHit();
+                                hit.setId("doc-" + doc);
+                                hit.setSort(Collections.singletonList(doc));
+                                response.addHit(hit);
+                            }
+                            return response;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static List<String> readAll(int size, int pageSize, boolean pointInTime, List<String> requests) {
+        ESSearchIterator iterator = new ESSearchIterator(recordingClient(size, requests),
+                new ESSearchRequest().withIndex("docs"), pageSize, pointInTime);
+        List<String> ids = new ArrayList<>();
+        iterator.forEachRemaining(hit -> ids.add(hit.getId()));
+        return ids;
+    }
+
+    private static String[] ids(int size) {
+        String[] ids = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = "doc-" + i;
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSinglePageDoesNotOpenPointInTime() {
+        List<String> requests = new ArrayList<>();
+        assertThat(readAll(3, 5, true, requests), containsInAnyOrder(ids(3)));
+        assertThat(requests, is(List.of("search")));
+    }
+
+    @Test
+    public void testFullFirstPageOpensPointInTime() {
+        List<String> requests = new ArrayList<>();
+        // The first page gives doc-11 to doc-7, which we must not return twice
+        assertThat(readAll(12, 5, true, requests), containsInAnyOrder(ids(12)));
+        assertThat(requests, is(List.of("search", "open", "search pit", "search pit", "search pit", "close")));
+    }
+
+    @Test
+    public void testPointInTimePageWithOnlyKnownHits() {
+        List<String> requests = new ArrayList<>();
+        assertThat(readAll(5, 5, true, requests), containsInAnyOrder(ids(5)));
+        assertThat(requests, is(List.of("search", "open", "search pit", "search pit", "close")));
+    }
+
+    @Test
+    public void testWithoutPointInTime() {
+        List<String> requests = new ArrayList<>();
+        assertThat(readAll(7, 5, false, requests), containsInAnyOrder(ids(7)));
+        assertThat(requests, is(List.of("search sorted", "search sorted")));
+    }
+}
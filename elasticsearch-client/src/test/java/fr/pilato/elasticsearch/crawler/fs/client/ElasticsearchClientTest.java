@@ -0,0 +1,41 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import static fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient.isPointInTimeSupported;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ElasticsearchClientTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testPointInTimeSupport() {
+        assertThat(isPointInTimeSupported(null), is(false));
+        assertThat(isPointInTimeSupported("6.8.23"), is(false));
+        assertThat(isPointInTimeSupported("7.11.2"), is(false));
+        assertThat(isPointInTimeSupported("7.12.0"), is(true));
+        assertThat(isPointInTimeSupported("7.17.9"), is(true));
+        assertThat(isPointInTimeSupported("8.10.0-SNAPSHOT"), is(true));
+        assertThat(isPointInTimeSupported("foo"), is(false));
+    }
+}
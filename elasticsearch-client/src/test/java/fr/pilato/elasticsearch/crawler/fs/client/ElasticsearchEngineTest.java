@@ -0,0 +1,104 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class ElasticsearchEngineTest extends AbstractFSCrawlerTestCase {
+
+    /**
+     * Creates a client which only records the bulk requests it receives
+     */
+    private static IElasticsearchClient recordingClient(int majorVersion, List<String> requests) {
+        return (IElasticsearchClient) Proxy.newProxyInstance(IElasticsearchClient.class.getClassLoader(),
+                new Class<?>[]{IElasticsearchClient.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMajorVersion":
+                            return majorVersion;
+                        case "bulk":
+                            try (InputStream ndjson = (InputStream) args[0]) {
+                                requests.add(new String(ndjson.readAllBytes(), StandardCharsets.UTF_8));
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return "{\"errors\":false,\"items\":[]}";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Test
+    public void testBulkRequestIsNdjson() {
+        List<String> requests = new ArrayList<>();
+        ElasticsearchEngine engine = new ElasticsearchEngine(recordingClient(8, requests));
+
+        Doc doc = new Doc("Some text with \"quotes\"\nand a new line");
+        doc.getFile().setFilename("foo.txt");
+        doc.getFile().setIndexedChars(42);
+
+        ElasticsearchBulkRequest request = new ElasticsearchBulkRequest();
+        request.add(new ElasticsearchIndexOperation("docs", "1", null, doc));
+        request.add(new ElasticsearchIndexOperation("docs", "2", "my-pipeline", "{\n  \"foo\" : \"bar\"\n}"));
+        request.add(new ElasticsearchDeleteOperation("docs", "3"));
+
+        ElasticsearchBulkResponse response = engine.bulk(request);
+        assertThat(response.hasFailures(), is(false));
+        assertThat(requests, hasSize(1));
+        assertThat(requests.get(0), is(
+                "{\"index\":{\"_index\":\"docs\",\"_id\":\"1\"}}\n" +
+                "{\"content\":\"Some text with \\\"quotes\\\"\\nand a new line\",\"meta\":{},\"file\":{\"filename\":\"foo.txt\",\"indexed_chars\":42},\"path\":{}}\n" +
+                "{\"index\":{\"_index\":\"docs\",\"_id\":\"2\",\"pipeline\":\"my-pipeline\"}}\n" +
+                "{\"foo\":\"bar\"}\n" +
+                "{\"delete\":{\"_index\":\"docs\",\"_id\":\"3\"}}\n"));
+
+        // The buffer is reused for the next bulk request
+        request = new ElasticsearchBulkRequest();
+        request.add(new ElasticsearchDeleteOperation("docs", "4"));
+        engine.bulk(request);
+        assertThat(requests, hasSize(2));
+        assertThat(requests.get(1), is("{\"delete\":{\"_index\":\"docs\",\"_id\":\"4\"}}\n"));
+    }
+
+    @Test
+    public void testBulkRequestWithType() {
+        List<String> requests = new ArrayList<>();
+        ElasticsearchEngine engine = new ElasticsearchEngine(recordingClient(6, requests));
+
+        ElasticsearchBulkRequest request = new ElasticsearchBulkRequest();
+        request.add(new ElasticsearchDeleteOperation("docs", "1"));
+        engine.bulk(request);
+        assertThat(requests.get(0), is("{\"delete\":{\"_index\":\"docs\",\"_type\":\"_doc\",\"_id\":\"1\"}}\n"));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches filenames against a list of includes or excludes rules like "*&#47;*.doc".
+ * The rules are compiled once: when possible, they are combined into a single regular expression.
+ * A filename matches if it matches any of the rules, ignoring the case. "?" and "*" are translated
+ * to ".?" and ".*?" and the rest of the rule is used as a regular expression.
+ */
+public class FilenameMatcher {
+
+    private static final FilenameMatcher EMPTY = new FilenameMatcher(Collections.emptyList(), new Pattern[0], null);
+
+    private final List<String> rules;
+    // The rules which have been compiled. There is only one when the rules could be combined.
+    private final Pattern[] patterns;
+    // The first rule which is not a valid regular expression. It fails when we reach it, as it used to.
+    private final String invalidRegex;
+
+    private FilenameMatcher(List<String> rules, Pattern[] patterns, String invalidRegex) {
+        this.rules = rules;
+        this.patterns = patterns;
+        this.invalidRegex = invalidRegex;
+    }
+
+    /**
+     * Compile a list of rules
+     * @param rules the rules. May be null or empty in which case nothing matches.
+     * @return the matcher
+     */
+    public static FilenameMatcher compile(List<String> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<Pattern> patterns = new ArrayList<>(rules.size());
+        StringJoiner combined = new StringJoiner("|");
+        boolean combinable = true;
+        String invalidRegex = null;
+        for (String rule : rules) {
+            String regex = toRegex(rule);
+            try {
+                patterns.add(Pattern.compile(regex));
+            } catch (PatternSyntaxException e) {
+                invalidRegex = regex;
+                break;
+            }
+            // Escapes, quotes, back references and flags (like comments) could leak from one alternative to another
+            combinable &= regex.indexOf('\\') < 0 && !regex.contains("(?");
+            combined.add("(?:" + regex + ")");
+        }
+
+        if (invalidRegex == null && combinable && patterns.size() > 1) {
+            return new FilenameMatcher(rules, new Pattern[] { Pattern.compile(combined.toString()) }, null);
+        }
+        return new FilenameMatcher(rules, patterns.toArray(new Pattern[0]), invalidRegex);
+    }
+
+    private static String toRegex(String rule) {
+        return rule.toLowerCase().replace("?", ".?").replace("*", ".*?");
+    }
+
+    /**
+     * @return true if there is no rule
+     */
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Check if a filename matches any of the rules
+     * @param filename the filename
+     * @return true if the filename matches any rule
+     * @throws PatternSyntaxException if a rule is not a valid regular expression and no previous rule matched
+     */
+    public boolean matches(String filename) {
+        String lowerCaseFilename = filename.toLowerCase();
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(lowerCaseFilename).matches()) {
+                return true;
+            }
+        }
+        if (invalidRegex != null) {
+            return lowerCaseFilename.matches(invalidRegex);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return rules.toString();
+    }
+}
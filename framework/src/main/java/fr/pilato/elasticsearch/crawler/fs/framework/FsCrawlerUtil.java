@@ -63,6 +63,7 @@ import java.util.regex.Pattern;
 
 public class FsCrawlerUtil {
     public static final String INDEX_SUFFIX_FOLDER = "_folder";
+    public static final String INDEX_SUFFIX_COORDINATION = "_coordination";
     public static final String INDEX_SETTINGS_FILE = "_settings";
     public static final String INDEX_WORKPLACE_SEARCH_SETTINGS_FILE = "_wpsearch_settings";
     public static final String INDEX_SETTINGS_FOLDER_FILE = "_settings_folder";
@@ -158,15 +159,13 @@ public class FsCrawlerUtil {
     /**
      * We check if we can index the file or if we should ignore it
      *
+     * @param directory true if the current file is a directory, false in other case (actual file)
      * @param filename The filename to scan
      * @param includes include rules, may be empty not null
      * @param excludes exclude rules, may be empty not null
      */
-    private static boolean isIndexable(String filename, List<String> includes, List<String> excludes) {
-        boolean excluded = isExcluded(filename, excludes);
-        if (excluded) return false;
-
-        return isIncluded(filename, includes);
+    public static boolean isIndexable(boolean directory, String filename, List<String> includes, List<String> excludes) {
+        return isIndexable(directory, filename, FilenameMatcher.compile(includes), FilenameMatcher.compile(excludes));
     }
 
     /**
@@ -174,21 +173,19 @@ public class FsCrawlerUtil {
      *
      * @param directory true if the current file is a directory, false in other case (actual file)
      * @param filename The filename to scan
-     * @param includes include rules, may be empty not null
-     * @param excludes exclude rules, may be empty not null
+     * @param includes compiled include rules
+     * @param excludes compiled exclude rules
      */
-    public static boolean isIndexable(boolean directory, String filename, List<String> includes, List<String> excludes) {
-        logger.debug("directory = [{}], filename = [{}], includes = [{}], excludes = [{}]", directory, filename, includes, excludes);
+    public static boolean isIndexable(boolean directory, String filename, FilenameMatcher includes, FilenameMatcher excludes) {
+        logger.trace("directory = [{}], filename = [{}], includes = [{}], excludes = [{}]", directory, filename, includes, excludes);
 
-        boolean isIndexable = isIndexable(filename, includes, excludes);
+        if (isExcluded(filename, excludes)) {
+            return false;
+        }
 
         // It can happen that we have a dir "foo" which does not match the included name like "*.txt"
         // We need to go in it unless it has been explicitly excluded by the user
-        if (directory && !isExcluded(filename, excludes)) {
-            isIndexable = true;
-        }
-
-        return isIndexable;
+        return isIncluded(filename, includes) || directory;
     }
 
     /**
@@ -198,22 +195,26 @@ public class FsCrawlerUtil {
      * @param excludes exclude rules, may be empty not null
      */
     public static boolean isExcluded(String filename, List<String> excludes) {
-        logger.debug("filename = [{}], excludes = [{}]", filename, excludes);
+        return isExcluded(filename, FilenameMatcher.compile(excludes));
+    }
 
+    /**
+     * We check if we can index the file or if we should ignore it
+     *
+     * @param filename The filename to scan
+     * @param excludes compiled exclude rules
+     */
+    public static boolean isExcluded(String filename, FilenameMatcher excludes) {
         // No rules ? Fine, we index everything
-        if (excludes == null || excludes.isEmpty()) {
+        if (excludes.isEmpty()) {
             logger.trace("no rules");
             return false;
         }
 
         // Exclude rules : we know that whatever includes rules are, we should exclude matching files
-        for (String exclude : excludes) {
-            String regex = exclude.toLowerCase().replace("?", ".?").replace("*", ".*?");
-            logger.trace("regex is [{}]", regex);
-            if (filename.toLowerCase().matches(regex)) {
-                logger.trace("does match exclude regex");
-                return true;
-            }
+        if (excludes.matches(filename)) {
+            logger.trace("does match exclude regex");
+            return true;
         }
 
         logger.trace("does not match any exclude pattern");
@@ -227,21 +228,25 @@ public class FsCrawlerUtil {
      * @param includes include rules, may be empty not null
      */
     public static boolean isIncluded(String filename, List<String> includes) {
-        logger.debug("filename = [{}], includes = [{}]", filename, includes);
+        return isIncluded(filename, FilenameMatcher.compile(includes));
+    }
 
+    /**
+     * We check if we can index the file or if we should ignore it
+     *
+     * @param filename The filename to scan
+     * @param includes compiled include rules
+     */
+    public static boolean isIncluded(String filename, FilenameMatcher includes) {
         // No rules ? Fine, we index everything
-        if (includes == null || includes.isEmpty()) {
+        if (includes.isEmpty()) {
             logger.trace("no include rules");
             return true;
         }
 
-        for (String include : includes) {
-            String regex = include.toLowerCase().replace("?", ".?").replace("*", ".*?");
-            logger.trace("regex is [{}]", regex);
-            if (filename.toLowerCase().matches(regex)) {
-                logger.trace("does match include regex");
-                return true;
-            }
+        if (includes.matches(filename)) {
+            logger.trace("does match include regex");
+            return true;
         }
 
         logger.trace("does not match any include pattern");
@@ -420,21 +425,7 @@ public class FsCrawlerUtil {
         try {
             final Path path = Paths.get(file.getAbsolutePath());
             PosixFileAttributes attrs = Files.getFileAttributeView(path, PosixFileAttributeView.class).readAttributes();
-            Set<PosixFilePermission> permissions = attrs.permissions();
-            int user = toOctalPermission(
-                    permissions.contains(PosixFilePermission.OWNER_READ),
-                    permissions.contains(PosixFilePermission.OWNER_WRITE),
-                    permissions.contains(PosixFilePermission.OWNER_EXECUTE));
-            int group = toOctalPermission(
-                    permissions.contains(PosixFilePermission.GROUP_READ),
-                    permissions.contains(PosixFilePermission.GROUP_WRITE),
-                    permissions.contains(PosixFilePermission.GROUP_EXECUTE));
-            int others = toOctalPermission(
-                    permissions.contains(PosixFilePermission.OTHERS_READ),
-                    permissions.contains(PosixFilePermission.OTHERS_WRITE),
-                    permissions.contains(PosixFilePermission.OTHERS_EXECUTE));
-
-            return user * 100 + group * 10 + others;
+            return getFilePermissions(attrs.permissions());
         }
         catch(Exception e) {
             logger.warn("Failed to determine 'permissions' of {}: {}", file, e.getMessage());
@@ -442,6 +433,26 @@ public class FsCrawlerUtil {
         }
     }
 
+    /**
+     * Converts file permissions to their octal representation, like 644.
+     */
+    public static int getFilePermissions(final Set<PosixFilePermission> permissions) {
+        int user = toOctalPermission(
+                permissions.contains(PosixFilePermission.OWNER_READ),
+                permissions.contains(PosixFilePermission.OWNER_WRITE),
+                permissions.contains(PosixFilePermission.OWNER_EXECUTE));
+        int group = toOctalPermission(
+                permissions.contains(PosixFilePermission.GROUP_READ),
+                permissions.contains(PosixFilePermission.GROUP_WRITE),
+                permissions.contains(PosixFilePermission.GROUP_EXECUTE));
+        int others = toOctalPermission(
+                permissions.contains(PosixFilePermission.OTHERS_READ),
+                permissions.contains(PosixFilePermission.OTHERS_WRITE),
+                permissions.contains(PosixFilePermission.OTHERS_EXECUTE));
+
+        return user * 100 + group * 10 + others;
+    }
+
     public static int toOctalPermission(boolean read, boolean write, boolean execute) {
         return (read ? 4 : 0) + (write ? 2 : 0) + (execute ? 1 : 0);
     }
@@ -24,9 +24,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Provides utility methods to read and write metadata and settings files
@@ -58,6 +63,23 @@ public class MetaFileHandler {
         return Files.readString(dir.resolve(filename));
     }
 
+    /**
+     * Open a file in ~/.fscrawler/{subdir} dir. Use it instead of {@link #readFile(String, String)} for
+     * the files which can be too big to be read as a String.
+     * @param subdir subdir where we can read the file (null if we read in the root dir)
+     * @param filename filename
+     * @return The content. It must be closed by the caller.
+     * @throws IOException in case of error while opening
+     */
+    protected InputStream openFile(String subdir, String filename) throws IOException {
+        Path dir = root;
+        if (subdir != null) {
+            dir = dir.resolve(subdir);
+        }
+        logger.trace("Opening file {} from {}", filename, dir);
+        return Files.newInputStream(dir.resolve(filename));
+    }
+
     /**
      * Write a file in ~/.fscrawler/{subdir} dir
      * @param subdir subdir where we can read the file (null if we read in the root dir)
@@ -66,6 +88,12 @@ public class MetaFileHandler {
      * @throws IOException in case of error while reading
      */
     protected void writeFile(String subdir, String filename, String content) throws IOException {
+        Path dir = createDir(subdir);
+        logger.trace("Writing file {} to {}", filename, dir);
+        Files.writeString(dir.resolve(filename), content);
+    }
+
+    private Path createDir(String subdir) throws IOException {
         Path dir = root;
         if (subdir != null) {
             dir = dir.resolve(subdir);
@@ -75,8 +103,44 @@ public class MetaFileHandler {
                 Files.createDirectory(dir);
             }
         }
-        logger.trace("Writing file {} to {}", filename, dir);
-        Files.writeString(dir.resolve(filename), content);
+        return dir;
+    }
+
+    /**
+     * Write a file in ~/.fscrawler/{subdir} dir. The content is first written to a temporary file
+     * which then replaces the existing file, so a crash can never leave a partially written file.
+     * @param subdir subdir where we can read the file (null if we read in the root dir)
+     * @param filename filename
+     * @param content The String UTF-8 content to write
+     * @throws IOException in case of error while writing
+     */
+    protected void writeFileAtomically(String subdir, String filename, String content) throws IOException {
+        writeFileAtomically(subdir, filename, out -> out.write(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Write a file in ~/.fscrawler/{subdir} dir without holding its whole content in memory. The content is
+     * first written to a temporary file which then replaces the existing file, so a crash can never leave
+     * a partially written file.
+     * @param subdir subdir where we can read the file (null if we read in the root dir)
+     * @param filename filename
+     * @param writer writes the content to the temporary file
+     * @throws IOException in case of error while writing
+     */
+    protected void writeFileAtomically(String subdir, String filename, ContentWriter writer) throws IOException {
+        String tmpFilename = filename + ".tmp";
+        Path dir = createDir(subdir);
+        logger.trace("Writing file {} to {}", tmpFilename, dir);
+        try (OutputStream out = Files.newOutputStream(dir.resolve(tmpFilename))) {
+            writer.write(out);
+        }
+        try {
+            Files.move(dir.resolve(tmpFilename), dir.resolve(filename), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            logger.debug("Atomic move is not supported in {}. Falling back to a simple move.", dir);
+            Files.move(dir.resolve(tmpFilename), dir.resolve(filename), StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
     /**
@@ -93,4 +157,12 @@ public class MetaFileHandler {
         logger.trace("Removing file {} from {} if exists", filename, dir);
         Files.deleteIfExists(dir.resolve(filename));
     }
+
+    /**
+     * Writes the content of a file
+     */
+    @FunctionalInterface
+    protected interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
 }
@@ -19,29 +19,305 @@
 
 package fr.pilato.elasticsearch.crawler.fs.framework;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
 /**
- * Utility class to sign *things*
+ * Utility class to sign *things*. We use it to generate the ids of the documents.
+ * <p>
+ * md5 is the default as it has always been used, so existing indices are still valid.
+ * murmur3_128 is a much faster non cryptographic hash of the UTF-8 bytes which can be used for new indices.
+ * Each thread reuses its own digest and buffers.
  *
  * @author David Pilato (aka dadoonet)
  */
-public class SignTool {
+public abstract class SignTool {
 
+    public static final String MD5 = "md5";
+    public static final String MURMUR3_128 = "murmur3_128";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // md5 always hashed the bytes in the platform charset
+    private static final Charset PLATFORM_CHARSET = Charset.defaultCharset();
+    private static final boolean PLATFORM_UTF8 = StandardCharsets.UTF_8.equals(PLATFORM_CHARSET);
+
+    private static final SignTool MD5_TOOL = new Md5();
+    private static final SignTool MURMUR3_128_TOOL = new Murmur3();
+
+    /**
+     * Sign a String with the default md5 algorithm
+     * @param toSign the String to sign
+     * @return the signature
+     */
     public static String sign(String toSign) throws NoSuchAlgorithmException {
+        return MD5_TOOL.hash(toSign);
+    }
+
+    /**
+     * Get the tool for an algorithm
+     * @param algorithm md5 or murmur3_128. md5 if null.
+     * @return the tool which can be shared by all threads
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public static SignTool getInstance(String algorithm) {
+        if (algorithm == null || MD5.equalsIgnoreCase(algorithm)) {
+            return MD5_TOOL;
+        }
+        if (MURMUR3_128.equalsIgnoreCase(algorithm)) {
+            return MURMUR3_128_TOOL;
+        }
+        throw new IllegalArgumentException("Id hash algorithm [" + algorithm + "] is not supported. Use " +
+                MD5 + " or " + MURMUR3_128 + ".");
+    }
+
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(this::newBuffers);
+    private final boolean platformCharset;
 
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        md.update(toSign.getBytes());
+    /**
+     * @param platformCharset true to hash the bytes in the platform charset instead of UTF-8
+     */
+    private SignTool(boolean platformCharset) {
+        this.platformCharset = platformCharset;
+    }
 
-        StringBuilder key = new StringBuilder();
-        byte[] b = md.digest();
-        for (byte aB : b) {
-            long t = aB < 0 ? 256 + aB : aB;
-            key.append(Long.toHexString(t));
+    /**
+     * Hash a String
+     * @param toSign the String to hash
+     * @return the hash as an hexadecimal String
+     */
+    public String hash(String toSign) {
+        Buffers local = buffers.get();
+        int length = platformCharset && !PLATFORM_UTF8 ? encode(toSign, PLATFORM_CHARSET, local) : encodeUtf8(toSign, local);
+        return hash(local, length);
+    }
+
+    /**
+     * Hash the path of a directory. All the files of a directory are generally processed one after
+     * the other by the same thread, so we remember the last directory we hashed for each thread.
+     * @param path the directory
+     * @return the hash as an hexadecimal String
+     */
+    public String hashDirectory(String path) {
+        Buffers local = buffers.get();
+        if (path.equals(local.lastDirectory)) {
+            return local.lastDirectoryHash;
         }
+        String hash = hash(path);
+        local.lastDirectory = path;
+        local.lastDirectoryHash = hash;
+        return hash;
+    }
+
+    abstract String hash(Buffers buffers, int length);
 
-        return key.toString();
+    Buffers newBuffers() {
+        return new Buffers();
     }
 
+    /**
+     * What each thread reuses
+     */
+    static class Buffers {
+        byte[] bytes = new byte[256];
+        final char[] hex = new char[32];
+        String lastDirectory;
+        String lastDirectoryHash;
+    }
+
+    private static int encode(String value, Charset charset, Buffers local) {
+        local.bytes = value.getBytes(charset);
+        return local.bytes.length;
+    }
+
+    /**
+     * Write the UTF-8 bytes of a String in the buffer of the thread as String.getBytes() would
+     * @return the number of bytes
+     */
+    private static int encodeUtf8(String value, Buffers local) {
+        int length = value.length();
+        if (local.bytes.length < length * 3) {
+            local.bytes = new byte[Math.max(length * 3, local.bytes.length * 2)];
+        }
+        byte[] bytes = local.bytes;
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xc0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    bytes[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                    bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    bytes[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    // Malformed, like String.getBytes() does
+                    bytes[pos++] = '?';
+                }
+            } else {
+                bytes[pos++] = (byte) (0xe0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return pos;
+    }
+
+    private static class Md5 extends SignTool {
+        private Md5() {
+            super(true);
+        }
+
+        @Override
+        Buffers newBuffers() {
+            return new Md5Buffers();
+        }
+
+        @Override
+        String hash(Buffers buffers, int length) {
+            Md5Buffers local = (Md5Buffers) buffers;
+            local.digest.update(local.bytes, 0, length);
+            byte[] digest = local.digest.digest();
+
+            // We don't pad the bytes with a 0 so the ids are the same as the ones we always generated
+            char[] hex = local.hex;
+            int pos = 0;
+            for (byte b : digest) {
+                int t = b & 0xff;
+                if (t >= 0x10) {
+                    hex[pos++] = HEX[t >> 4];
+                }
+                hex[pos++] = HEX[t & 0x0f];
+            }
+            return new String(hex, 0, pos);
+        }
+    }
+
+    private static class Md5Buffers extends Buffers {
+        private final MessageDigest digest;
+
+        private Md5Buffers() {
+            try {
+                digest = MessageDigest.getInstance(MD5.toUpperCase(Locale.ROOT));
+            } catch (NoSuchAlgorithmException e) {
+                // Every JVM has to support MD5
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * MurmurHash3 x64 128 bits, with a seed of 0. The 16 bytes are written in little-endian order.
+     */
+    private static class Murmur3 extends SignTool {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private Murmur3() {
+            super(false);
+        }
+
+        @Override
+        String hash(Buffers buffers, int length) {
+            byte[] bytes = buffers.bytes;
+            long h1 = 0;
+            long h2 = 0;
+
+            int blocks = length / 16;
+            for (int i = 0; i < blocks; i++) {
+                long k1 = getLong(bytes, i * 16);
+                long k2 = getLong(bytes, i * 16 + 8);
+
+                h1 ^= mixK1(k1);
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+
+                h2 ^= mixK2(k2);
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+
+            int tail = blocks * 16;
+            long k1 = 0;
+            long k2 = 0;
+            int remaining = length & 15;
+            for (int i = remaining - 1; i >= 8; i--) {
+                k2 ^= (long) (bytes[tail + i] & 0xff) << ((i - 8) * 8);
+            }
+            if (remaining > 8) {
+                h2 ^= mixK2(k2);
+            }
+            for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+                k1 ^= (long) (bytes[tail + i] & 0xff) << (i * 8);
+            }
+            if (remaining > 0) {
+                h1 ^= mixK1(k1);
+            }
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+
+            char[] hex = buffers.hex;
+            writeHex(hex, 0, h1);
+            writeHex(hex, 16, h2);
+            return new String(hex, 0, 32);
+        }
+
+        private static long getLong(byte[] bytes, int offset) {
+            long value = 0;
+            for (int i = 7; i >= 0; i--) {
+                value = (value << 8) | (bytes[offset + i] & 0xff);
+            }
+            return value;
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        /**
+         * Write the 8 bytes of a long in little-endian order
+         */
+        private static void writeHex(char[] hex, int offset, long value) {
+            for (int i = 0; i < 8; i++) {
+                int b = (int) (value >>> (i * 8)) & 0xff;
+                hex[offset + i * 2] = HEX[b >> 4];
+                hex[offset + i * 2 + 1] = HEX[b & 0x0f];
+            }
+        }
+    }
 }
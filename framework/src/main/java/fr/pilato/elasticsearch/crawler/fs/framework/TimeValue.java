@@ -47,6 +47,10 @@ public class TimeValue {
         return new TimeValue(hours, TimeUnit.HOURS);
     }
 
+    public static TimeValue timeValueDays(long days) {
+        return new TimeValue(days, TimeUnit.DAYS);
+    }
+
     private long duration;
 
     private TimeUnit timeUnit;
@@ -171,20 +175,20 @@ public class TimeValue {
         }
         try {
             String lowerSValue = sValue.toLowerCase(Locale.ROOT).trim();
-            long duration = Long.parseLong(lowerSValue.substring(0, lowerSValue.length() - 1));
-            TimeUnit unit;
             if (lowerSValue.endsWith("ms")) {
                 // Well, with ms, we need to substring 2 chars
-                duration = Long.parseLong(lowerSValue.substring(0, lowerSValue.length() - 2));
-                unit = TimeUnit.MILLISECONDS;
-            } else if (lowerSValue.endsWith("s")) {
+                return new TimeValue(Long.parseLong(lowerSValue.substring(0, lowerSValue.length() - 2)), TimeUnit.MILLISECONDS);
+            }
+            long duration = Long.parseLong(lowerSValue.substring(0, lowerSValue.length() - 1));
+            TimeUnit unit;
+            if (lowerSValue.endsWith("s")) {
                 unit = TimeUnit.SECONDS;
             } else if (lowerSValue.endsWith("m")) {
                 unit = TimeUnit.MINUTES;
             } else if (lowerSValue.endsWith("h")) {
                 unit = TimeUnit.HOURS;
             } else if (lowerSValue.endsWith("d")) {
-                unit = TimeUnit.HOURS;
+                unit = TimeUnit.DAYS;
             } else {
                 throw new IllegalArgumentException("Failed to parse timevalue [" + sValue + "]: unit is missing or unrecognized");
             }
@@ -127,7 +127,7 @@ public class FsCrawlerBulkProcessor<
         }
     }
 
-    private void executeWhenNeeded() {
+    private synchronized void executeWhenNeeded() {
         ensureOpen();
         if (bulkRequest.numberOfActions() > 0) {
             execute();
@@ -161,8 +161,14 @@ public class FsCrawlerBulkProcessor<
         return listener;
     }
 
-    public void flush() {
-        execute();
+    /**
+     * Execute the pending requests, if any. Requests which are added while
+     * we are flushing are sent with the next bulk.
+     */
+    public synchronized void flush() {
+        if (bulkRequest.numberOfActions() > 0) {
+            execute();
+        }
     }
 
     public static class Builder<O extends FsCrawlerOperation<O>,
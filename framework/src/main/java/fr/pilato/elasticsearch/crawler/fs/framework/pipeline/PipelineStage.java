@@ -0,0 +1,246 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework.pipeline;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A stage of a processing pipeline. Items are put in a bounded queue and consumed by a fixed
+ * number of worker threads. When the queue is full, {@link #submit(Object)} blocks, so a slow stage
+ * slows down the stages which are feeding it (backpressure).
+ * @param <T> Type of the items processed by this stage
+ */
+public class PipelineStage<T> {
+    private static final Logger logger = LogManager.getLogger(PipelineStage.class);
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final String name;
+    private final int threads;
+    private final int queueSize;
+    private final BlockingQueue<T> queue;
+    private final Handler<T> handler;
+    private final Consumer<T> discarder;
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private volatile boolean finishing = false;
+    private volatile boolean aborted = false;
+    private long startNanos;
+
+    public PipelineStage(String name, int threads, int queueSize, Handler<T> handler) {
+        this(name, threads, queueSize, handler, item -> { });
+    }
+
+    /**
+     * @param discarder called for every item which is dropped from the queue when the stage is aborted or
+     *                  has failed, so the resources held by the item can be released
+     */
+    public PipelineStage(String name, int threads, int queueSize, Handler<T> handler, Consumer<T> discarder) {
+        this.name = name;
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.handler = handler;
+        this.discarder = discarder;
+    }
+
+    /**
+     * Start the worker threads
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "fs-crawler-" + name + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        logger.debug("Pipeline stage [{}] started with [{}] threads and a queue of [{}]", name, threads, queueSize);
+    }
+
+    /**
+     * Add an item to the queue. Wait while the queue is full.
+     * @param item the item to process
+     * @throws Exception if the stage has failed or has been aborted
+     */
+    public void submit(T item) throws Exception {
+        while (!queue.offer(item, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            checkState();
+        }
+        try {
+            checkState();
+        } catch (Exception e) {
+            // The stage has been stopped while we were adding the item, so nobody will ever process it.
+            // We leave it to the caller who still owns it.
+            queue.remove(item);
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until all the submitted items have been processed and stop the worker threads
+     * @throws Exception the first error raised by the handler if any
+     */
+    public void finish() throws Exception {
+        finishing = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        logger.debug("Pipeline stage [{}] is now finished: {}", name, this);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Stop the worker threads as soon as possible. Items which are still in the queue are dropped
+     * and given to the discarder.
+     */
+    public void abort() {
+        aborted = true;
+        discardQueue();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        logger.debug("Pipeline stage [{}] has been aborted", name);
+    }
+
+    private void checkState() throws Exception {
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        if (aborted) {
+            throw new IllegalStateException("Pipeline stage [" + name + "] has been aborted");
+        }
+    }
+
+    private void work() {
+        while (!aborted) {
+            T item;
+            try {
+                item = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (item == null) {
+                if (finishing) {
+                    return;
+                }
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                handler.handle(item);
+                processed.incrementAndGet();
+            } catch (Exception e) {
+                if (!aborted) {
+                    logger.debug("Pipeline stage [{}] failed: {}", name, e.getMessage());
+                    failure.compareAndSet(null, e);
+                    // We stop processing new items. Producers will get the failure on their next submission.
+                    aborted = true;
+                    discardQueue();
+                }
+                return;
+            } finally {
+                busyNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void discardQueue() {
+        List<T> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        for (T item : dropped) {
+            try {
+                discarder.accept(item);
+            } catch (Exception e) {
+                logger.debug("Pipeline stage [{}] failed to discard an item: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of items waiting to be processed
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of items successfully processed
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return the number of items processed per second since the stage started
+     */
+    public double getThroughput() {
+        long elapsed = System.nanoTime() - startNanos;
+        if (startNanos == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return processed.get() * TimeUnit.SECONDS.toNanos(1) / (double) elapsed;
+    }
+
+    /**
+     * @return the ratio of time the workers have spent processing items (between 0 and 1)
+     */
+    public double getUtilization() {
+        long elapsed = System.nanoTime() - startNanos;
+        if (startNanos == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return Math.min(1, busyNanos.get() / ((double) elapsed * threads));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s] queue [%d/%d], processed [%d], throughput [%.1f/s], utilization [%.0f%%] on [%d] threads",
+                name, getQueueDepth(), queueSize, getProcessed(), getThroughput(), getUtilization() * 100, threads);
+    }
+
+    /**
+     * Process one item of the stage
+     * @param <T> Type of the items processed by the stage
+     */
+    @FunctionalInterface
+    public interface Handler<T> {
+        void handle(T item) throws Exception;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.PatternSyntaxException;
+
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomAsciiLettersOfLengthBetween;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomBoolean;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomFrom;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomIntBetween;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class FilenameMatcherTest extends AbstractFSCrawlerTestCase {
+
+    private static final String[] EXTENSIONS = { "doc", "DOC", "txt", "pdf", "xls", "d?c", "*" };
+
+    /**
+     * How the rules were matched before they were compiled
+     */
+    private static boolean legacyMatches(String filename, List<String> rules) {
+        for (String rule : rules) {
+            String regex = rule.toLowerCase().replace("?", ".?").replace("*", ".*?");
+            if (filename.toLowerCase().matches(regex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String randomRule() {
+        switch (randomIntBetween(0, 4)) {
+            case 0: return "*/*." + randomFrom(EXTENSIONS);
+            case 1: return "*/~*";
+            case 2: return "/" + randomAsciiLettersOfLengthBetween(1, 3) + "*/*";
+            case 3: return "*" + randomAsciiLettersOfLengthBetween(1, 2) + "?*";
+            default: return "*/." + randomAsciiLettersOfLengthBetween(1, 3);
+        }
+    }
+
+    private static String randomFilename() {
+        StringBuilder filename = new StringBuilder();
+        int depth = randomIntBetween(1, 3);
+        for (int i = 0; i < depth; i++) {
+            filename.append("/");
+            if (randomBoolean()) {
+                filename.append(randomFrom(new String[]{ "~", ".", "" }));
+            }
+            filename.append(randomAsciiLettersOfLengthBetween(1, 4));
+        }
+        if (randomBoolean()) {
+            filename.append(".").append(randomFrom(EXTENSIONS).replace("?", "o").replace("*", "tmp"));
+        }
+        return filename.toString();
+    }
+
+    @Test
+    public void testSameAsLegacy() {
+        for (int iteration = 0; iteration < 100; iteration++) {
+            List<String> rules = new ArrayList<>();
+            int nbRules = randomIntBetween(1, 10);
+            for (int i = 0; i < nbRules; i++) {
+                rules.add(randomRule());
+            }
+            FilenameMatcher matcher = FilenameMatcher.compile(rules);
+            for (int i = 0; i < 100; i++) {
+                String filename = randomFilename();
+                assertThat("rules " + rules + " on " + filename, matcher.matches(filename), is(legacyMatches(filename, rules)));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        assertThat(FilenameMatcher.compile(null).isEmpty(), is(true));
+        assertThat(FilenameMatcher.compile(Collections.emptyList()).isEmpty(), is(true));
+        assertThat(FilenameMatcher.compile(Collections.emptyList()).matches("/foo.txt"), is(false));
+        assertThat(FilenameMatcher.compile(Collections.singletonList("*")).isEmpty(), is(false));
+    }
+
+    @Test
+    public void testRegularExpressions() {
+        // Rules are regular expressions once "?" and "*" have been translated
+        List<String> rules = Arrays.asList("*/[0-9]+.txt", "*/(a|b)", "*\\.pdf");
+        FilenameMatcher matcher = FilenameMatcher.compile(rules);
+        for (String filename : new String[]{ "/123.txt", "/12a.txt", "/a", "/b", "/c", "/foo.pdf", "/foo\\.pdf", "/FOO.PDF" }) {
+            assertThat(filename, matcher.matches(filename), is(legacyMatches(filename, rules)));
+        }
+        // A group in one rule can not leak into another one
+        rules = Arrays.asList("*/(a", "b)");
+        try {
+            FilenameMatcher.compile(rules).matches("/c");
+            fail("We should have thrown an exception for an invalid rule");
+        } catch (PatternSyntaxException ignored) {
+            // This is expected
+        }
+        // As before, an invalid rule only fails if no previous rule matched
+        assertThat(FilenameMatcher.compile(Arrays.asList("*/a", "b)")).matches("/a"), is(true));
+    }
+
+    /**
+     * Compare the matching time with the previous implementation for 10, 100 and 1000 rules
+     */
+    @Test
+    public void testBenchmark() {
+        List<String> filenames = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            filenames.add(randomFilename());
+        }
+        for (int nbRules : new int[]{ 10, 100, 1000 }) {
+            List<String> rules = new ArrayList<>();
+            for (int i = 0; i < nbRules; i++) {
+                rules.add("*/" + randomAsciiLettersOfLengthBetween(3, 6) + "*." + randomFrom(EXTENSIONS));
+            }
+            FilenameMatcher matcher = FilenameMatcher.compile(rules);
+            // The legacy implementation is really slow with many rules
+            int iterations = Math.max(1, 1000 / nbRules);
+
+            // Warm up
+            for (String filename : filenames) {
+                assertThat(matcher.matches(filename), is(legacyMatches(filename, rules)));
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (String filename : filenames) {
+                    legacyMatches(filename, rules);
+                }
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (String filename : filenames) {
+                    matcher.matches(filename);
+                }
+            }
+            long nanos = System.nanoTime() - start;
+
+            long matches = (long) iterations * filenames.size();
+            logger.info("[{}] rules: legacy [{}] matches/s, compiled [{}] matches/s", nbRules,
+                    matches * TimeUnit.SECONDS.toNanos(1) / Math.max(1, legacyNanos),
+                    matches * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos));
+        }
+    }
+}
@@ -22,11 +22,21 @@ package fr.pilato.elasticsearch.crawler.fs.framework;
 import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
 import org.junit.Test;
 
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomAsciiAlphanumOfLength;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomIntBetween;
 import static fr.pilato.elasticsearch.crawler.fs.framework.SignTool.sign;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
 
 public class SignToolTest extends AbstractFSCrawlerTestCase {
 
@@ -34,6 +44,91 @@ public class SignToolTest extends AbstractFSCrawlerTestCase {
     public void testSign() throws NoSuchAlgorithmException {
         String signature = sign("ABCD");
         assertThat(signature, is("cb8ca4a7bb5f9683c19133a84872ca7"));
+        assertThat(SignTool.getInstance(null).hash("ABCD"), is(signature));
+        assertThat(SignTool.getInstance(SignTool.MD5).hash("ABCD"), is(signature));
     }
 
+    @Test
+    public void testSignIsTheSameAsBefore() throws NoSuchAlgorithmException {
+        for (String value : new String[]{ "", "/tmp/es", "/tmp/es/foo/bar.txt", "c:\\es\\foo", "/tmp/\u00e9t\u00e9/\u20ac.txt",
+                "/tmp/\ud83d\ude00", randomAsciiAlphanumOfLength(randomIntBetween(1, 500)) }) {
+            assertThat(sign(value), is(legacySign(value)));
+        }
+    }
+
+    @Test
+    public void testMurmur3() {
+        SignTool tool = SignTool.getInstance(SignTool.MURMUR3_128);
+        assertThat(SignTool.getInstance("MURMUR3_128"), is(tool));
+        assertThat(tool.hash(""), is("00000000000000000000000000000000"));
+        assertThat(tool.hash("hello"), is("029bbd41b3a7d8cb191dae486a901e5b"));
+        assertThat(tool.hash("0123456789abcdef"), is("a7d14acf946de04bda08a7635c5bc387"));
+        assertThat(tool.hash("0123456789abcdefXYZ"), is("1d904a6c0275d399f39cf8ea56e2694e"));
+        assertThat(tool.hash("ABCD"), is("192fd5bacbf6126b733e124749fdd55e"));
+    }
+
+    @Test
+    public void testHashDirectory() {
+        for (String algorithm : new String[]{ SignTool.MD5, SignTool.MURMUR3_128 }) {
+            SignTool tool = SignTool.getInstance(algorithm);
+            String foo = tool.hashDirectory("/tmp/es/foo");
+            assertThat(foo, is(tool.hash("/tmp/es/foo")));
+            assertThat(tool.hashDirectory("/tmp/es/foo"), is(foo));
+            assertThat(tool.hashDirectory("/tmp/es/bar"), is(tool.hash("/tmp/es/bar")));
+            assertThat(tool.hashDirectory("/tmp/es/foo"), is(foo));
+        }
+    }
+
+    @Test
+    public void testUnknownAlgorithm() {
+        try {
+            SignTool.getInstance("FSCRAWLER");
+            fail("We should have caught an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("FSCRAWLER"));
+        }
+    }
+
+    @Test
+    public void testConcurrentSign() throws Exception {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add("/tmp/es/dir-" + i + "/file-" + i + ".txt");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    for (String value : values) {
+                        if (!sign(value).equals(legacySign(value))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * How we used to sign the values
+     */
+    private static String legacySign(String toSign) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(toSign.getBytes());
+
+        StringBuilder key = new StringBuilder();
+        byte[] b = md.digest();
+        for (byte aB : b) {
+            long t = aB < 0 ? 256 + aB : aB;
+            key.append(Long.toHexString(t));
+        }
+        return key.toString();
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Licensed to David Pilato under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class TimeValueTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testParseTimeValue() {
+        assertThat(TimeValue.parseTimeValue("100ms"), is(TimeValue.timeValueMillis(100)));
+        assertThat(TimeValue.parseTimeValue("10s"), is(TimeValue.timeValueSeconds(10)));
+        assertThat(TimeValue.parseTimeValue("15m"), is(TimeValue.timeValueMinutes(15)));
+        assertThat(TimeValue.parseTimeValue("3h"), is(TimeValue.timeValueHours(3)));
+        assertThat(TimeValue.parseTimeValue("3H"), is(TimeValue.timeValueHours(3)));
+        assertThat(TimeValue.parseTimeValue(null), is((TimeValue) null));
+    }
+
+    @Test
+    public void testParseDays() {
+        // "d" used to be read as hours
+        assertThat(TimeValue.parseTimeValue("1d"), is(TimeValue.timeValueDays(1)));
+        assertThat(TimeValue.parseTimeValue("1d").millis(), is(TimeValue.timeValueHours(24).millis()));
+        assertThat(TimeValue.parseTimeValue("7d").hours(), is(168L));
+    }
+
+    @Test
+    public void testParseInvalidTimeValue() {
+        for (String value : new String[]{ "10", "10w", "abcs" }) {
+            try {
+                TimeValue.parseTimeValue(value);
+                fail("We should have failed to parse [" + value + "]");
+            } catch (IllegalArgumentException ignored) {
+                // This is expected
+            }
+        }
+    }
+}
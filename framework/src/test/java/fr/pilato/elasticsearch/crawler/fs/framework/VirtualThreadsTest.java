@@ -0,0 +1,82 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+public class VirtualThreadsTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testThreadPerTask() throws Exception {
+        logger.info("  -> Virtual threads available: [{}]", VirtualThreads.isAvailable());
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("fs-crawler-test");
+        try {
+            // All the tasks must run concurrently
+            int tasks = 50;
+            CountDownLatch started = new CountDownLatch(tasks);
+            CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+            release.countDown();
+
+            Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+            assertThat(name.get(), startsWith("fs-crawler-test-"));
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        }
+    }
+
+    @Test
+    public void testShutdownNowInterruptsTasks() throws Exception {
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("fs-crawler-test");
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        executor.shutdownNow();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+    }
+}
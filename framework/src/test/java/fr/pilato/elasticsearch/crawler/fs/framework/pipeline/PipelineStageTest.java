@@ -0,0 +1,151 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework.pipeline;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+public class PipelineStageTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testAllItemsGoThroughTheStages() throws Exception {
+        Set<Integer> results = ConcurrentHashMap.newKeySet();
+        PipelineStage<Integer> second = new PipelineStage<>("second", 2, 5, results::add);
+        PipelineStage<Integer> first = new PipelineStage<>("first", 4, 5, item -> second.submit(item * 2));
+        second.start();
+        first.start();
+
+        for (int i = 0; i < 1000; i++) {
+            first.submit(i);
+        }
+
+        first.finish();
+        second.finish();
+
+        assertThat(results.size(), is(1000));
+        assertThat(first.getProcessed(), is(1000L));
+        assertThat(second.getProcessed(), is(1000L));
+        assertThat(second.getQueueDepth(), is(0));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(results.contains(i * 2), is(true));
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<>("slow", 1, 2, item -> release.await());
+        stage.start();
+
+        AtomicBoolean blocked = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 10; i++) {
+                    stage.submit(i);
+                }
+                blocked.set(false);
+            } catch (Exception e) {
+                logger.warn("producer failed", e);
+            }
+        });
+        producer.start();
+
+        // The producer can not submit more items than the queue can hold
+        producer.join(TimeUnit.SECONDS.toMillis(1));
+        assertThat(blocked.get(), is(true));
+        assertThat(stage.getQueueDepth(), lessThanOrEqualTo(2));
+
+        release.countDown();
+        producer.join();
+        stage.finish();
+        assertThat(blocked.get(), is(false));
+        assertThat(stage.getProcessed(), is(10L));
+    }
+
+    @Test
+    public void testFailureIsPropagated() throws Exception {
+        PipelineStage<Integer> stage = new PipelineStage<>("failing", 2, 10, item -> {
+            if (item == 5) {
+                throw new IllegalArgumentException("boom");
+            }
+        });
+        stage.start();
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                stage.submit(i);
+            }
+            stage.finish();
+            fail("We should have caught the handler failure");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("boom"));
+        }
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        PipelineStage<Integer> stage = new PipelineStage<>("aborted", 1, 10, item -> Thread.sleep(10000));
+        stage.start();
+        stage.submit(1);
+        stage.submit(2);
+        stage.abort();
+        stage.finish();
+
+        try {
+            stage.submit(3);
+            fail("We should not be able to submit to an aborted stage");
+        } catch (Exception e) {
+            assertThat(e, instanceOf(IllegalStateException.class));
+        }
+    }
+
+    @Test
+    public void testAbortDiscardsQueuedItems() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Set<Integer> discarded = ConcurrentHashMap.newKeySet();
+        PipelineStage<Integer> stage = new PipelineStage<>("aborted", 1, 10, item -> {
+            started.countDown();
+            Thread.sleep(10000);
+        }, discarded::add);
+        stage.start();
+        stage.submit(1);
+        started.await();
+        stage.submit(2);
+        stage.submit(3);
+        stage.abort();
+        stage.finish();
+
+        // The item being processed belongs to the handler, the queued ones to the discarder
+        assertThat(discarded, containsInAnyOrder(2, 3));
+    }
+}
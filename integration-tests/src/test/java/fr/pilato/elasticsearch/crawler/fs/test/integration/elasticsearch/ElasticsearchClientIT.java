@@ -25,8 +25,10 @@ import fr.pilato.elasticsearch.crawler.fs.client.ESMatchQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESPrefixQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESRangeQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchHit;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchIterator;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchResponse;
+import fr.pilato.elasticsearch.crawler.fs.client.ESTask;
 import fr.pilato.elasticsearch.crawler.fs.client.ESTermQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESTermsAggregation;
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchBulkRequest;
@@ -49,8 +51,10 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.ConnectException;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import static fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient.CHECK_NODES_EVERY;
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.INDEX_SUFFIX_FOLDER;
@@ -566,6 +570,92 @@ public class ElasticsearchClientIT extends AbstractITCase {
         assertThat(response.getTotalHits(), is(3L));
     }
 
+    @Test
+    public void testDeleteByQuery() throws Exception {
+        esClient.createIndex(getCrawlerName(), false,
+                "{\"mappings\":{\"properties\":{\"path\":{\"properties\":{\"real\":{\"type\":\"keyword\"}}}}}}");
+        esClient.indexSingle(getCrawlerName(), "1", "{ \"path\": { \"real\": \"/tmp/es/foo\" } }", null);
+        esClient.indexSingle(getCrawlerName(), "2", "{ \"path\": { \"real\": \"/tmp/es/foo/bar.txt\" } }", null);
+        esClient.indexSingle(getCrawlerName(), "3", "{ \"path\": { \"real\": \"/tmp/es/foo/bar/baz.txt\" } }", null);
+        esClient.indexSingle(getCrawlerName(), "4", "{ \"path\": { \"real\": \"/tmp/es/foobar.txt\" } }", null);
+        esClient.indexSingle(getCrawlerName(), "5", "{ \"path\": { \"real\": \"c:\\\\es\\\\foo\\\\bar.txt\" } }", null);
+        esClient.refresh(getCrawlerName());
+
+        String taskId = esClient.deleteByQuery(getCrawlerName(), new ESBoolQuery()
+                .addShould(new ESTermQuery("path.real", "/tmp/es/foo"))
+                .addShould(new ESPrefixQuery("path.real", "/tmp/es/foo/")));
+        assertThat(taskId, notNullValue());
+        assertThat(awaitBusy(() -> {
+            try {
+                return esClient.getTask(taskId).isCompleted();
+            } catch (ElasticsearchClientException e) {
+                return false;
+            }
+        }), is(true));
+        ESTask task = esClient.getTask(taskId);
+        assertThat(task.getDeleted(), is(3L));
+        assertThat(task.getFailures(), is(0L));
+        assertThat(task.getError(), nullValue());
+
+        // The delete by query refreshes the index
+        ESSearchResponse response = esClient.search(new ESSearchRequest().withIndex(getCrawlerName()));
+        assertThat(response.getTotalHits(), is(2L));
+
+        // Windows paths are correctly escaped
+        String windowsTaskId = esClient.deleteByQuery(getCrawlerName(), new ESPrefixQuery("path.real", "c:\\es\\foo\\"));
+        assertThat(awaitBusy(() -> {
+            try {
+                return esClient.getTask(windowsTaskId).isCompleted();
+            } catch (ElasticsearchClientException e) {
+                return false;
+            }
+        }), is(true));
+        assertThat(esClient.getTask(windowsTaskId).getDeleted(), is(1L));
+    }
+
+    @Test
+    public void testSearchAll() throws IOException, ElasticsearchClientException {
+        int nbDocs = 25;
+        ElasticsearchBulkRequest bulkRequest = new ElasticsearchBulkRequest();
+        for (int i = 0; i < nbDocs; i++) {
+            bulkRequest.add(new ElasticsearchIndexOperation(getCrawlerName(), "" + i, null,
+                    "{\"foo\":{\"bar\":\"bar\"}, \"num\": " + i + "}"));
+        }
+        bulkRequest.add(new ElasticsearchIndexOperation(getCrawlerName(), "other", null, "{\"foo\":{\"bar\":\"baz\"}}"));
+        ElasticsearchBulkResponse bulkResponse = new ElasticsearchEngine(esClient).bulk(bulkRequest);
+        assertThat(bulkResponse.hasFailures(), is(false));
+        esClient.refresh(getCrawlerName());
+
+        // We read all the hits with pages of 10 hits
+        Set<String> ids = new HashSet<>();
+        try (ESSearchIterator iterator = esClient.searchAll(new ESSearchRequest()
+                .withIndex(getCrawlerName())
+                .withSize(10)
+                .withESQuery(new ESMatchQuery("foo.bar", "bar")))) {
+            while (iterator.hasNext()) {
+                ESSearchHit hit = iterator.next();
+                assertThat(hit.getIndex(), is(getCrawlerName()));
+                assertThat(ids.add(hit.getId()), is(true));
+            }
+        }
+        assertThat(ids, hasSize(nbDocs));
+
+        // We can stop before the end
+        try (ESSearchIterator iterator = esClient.searchAll(new ESSearchRequest()
+                .withIndex(getCrawlerName())
+                .withSize(10))) {
+            assertThat(iterator.hasNext(), is(true));
+            assertThat(iterator.next(), notNullValue());
+        }
+
+        // Nothing is found
+        try (ESSearchIterator iterator = esClient.searchAll(new ESSearchRequest()
+                .withIndex(getCrawlerName())
+                .withESQuery(new ESTermQuery("foo.bar", "nothing")))) {
+            assertThat(iterator.hasNext(), is(false));
+        }
+    }
+
     @Test
     public void testExists() throws IOException, ElasticsearchClientException {
         esClient.indexSingle(getCrawlerName(), "1", "{ \"foo\": { \"bar\": \"bar\" } }", null);
@@ -0,0 +1,82 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.test.integration.elasticsearch;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.FsCheckpoint;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsCheckpointFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsJobFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.test.integration.AbstractFsCrawlerITCase;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Test the crawl checkpoints
+ */
+public class FsCrawlerTestCheckpointIT extends AbstractFsCrawlerITCase {
+
+    @Test
+    public void test_checkpoint() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setCheckpointInterval(TimeValue.timeValueMillis(1))
+                .setWalkerThreads(2)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should have 7 docs
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 7L, currentTestResourceDir);
+
+        // The checkpoint is removed once the run is done
+        assertThat(Files.exists(metadataDir.resolve(getCrawlerName()).resolve(FsCheckpointFileHandler.FILENAME)), is(false));
+    }
+
+    @Test
+    public void test_checkpoint_resume() throws Exception {
+        // We simulate a previous run which has been interrupted after having indexed
+        // the files of the root dir and the whole subdir1 directory
+        LocalDateTime scanDate = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        FsCheckpoint checkpoint = new FsCheckpoint(scanDate);
+        checkpoint.addPending(currentTestResourceDir.toString());
+        checkpoint.complete(currentTestResourceDir.resolve("subdir1").toString(), List.of());
+        Files.createDirectories(metadataDir.resolve(getCrawlerName()));
+        new FsCheckpointFileHandler(metadataDir).write(getCrawlerName(), checkpoint);
+
+        Fs fs = startCrawlerDefinition(TimeValue.timeValueMinutes(1))
+                .setCheckpointInterval(TimeValue.timeValueMinutes(1))
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should only have the 3 docs from subdir2
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 3L, currentTestResourceDir);
+
+        // The next run will start from the date of the interrupted run
+        assertThat(new FsJobFileHandler(metadataDir).read(getCrawlerName()).getLastrun(), is(scanDate.minusSeconds(2)));
+        assertThat(Files.exists(metadataDir.resolve(getCrawlerName()).resolve(FsCheckpointFileHandler.FILENAME)), is(false));
+    }
+}
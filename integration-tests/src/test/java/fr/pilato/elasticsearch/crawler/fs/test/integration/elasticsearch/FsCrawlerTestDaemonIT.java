@@ -0,0 +1,87 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.test.integration.elasticsearch;
+
+import fr.pilato.elasticsearch.crawler.fs.FsCrawlerDaemon;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsJob;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsJobFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsCrawlerValidator;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.test.integration.AbstractFsCrawlerITCase;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.INDEX_SUFFIX_FOLDER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Test running many jobs in the same daemon
+ */
+public class FsCrawlerTestDaemonIT extends AbstractFsCrawlerITCase {
+
+    @Test
+    public void test_daemon() throws Exception {
+        String job1 = getCrawlerName() + "_1";
+        String job2 = getCrawlerName() + "_2";
+        for (String job : new String[]{job1, job2}) {
+            managementService.getClient().deleteIndex(job);
+            managementService.getClient().deleteIndex(job + INDEX_SUFFIX_FOLDER);
+        }
+
+        FsSettings settings1 = FsSettings.builder(job1)
+                .setFs(startCrawlerDefinition(currentTestResourceDir.resolve("job1").toString()).build())
+                .setElasticsearch(endCrawlerDefinition(job1))
+                .build();
+        FsSettings settings2 = FsSettings.builder(job2)
+                .setFs(startCrawlerDefinition(currentTestResourceDir.resolve("job2").toString()).build())
+                .setElasticsearch(endCrawlerDefinition(job2))
+                .build();
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings1, false), is(false));
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings2, false), is(false));
+
+        try (FsCrawlerDaemon daemon = new FsCrawlerDaemon(metadataDir, 1)) {
+            daemon.addJob(settings1, 1);
+            daemon.addJob(settings2, 1);
+            // Both jobs send their documents to the same cluster
+            assertThat(daemon.getClientCount(), is(1));
+            daemon.start();
+
+            // Both jobs run once then the daemon is done
+            assertThat(awaitBusy(daemon::isClosed, 30, TimeUnit.SECONDS), is(true));
+        }
+
+        countTestHelper(new ESSearchRequest().withIndex(job1), 1L, null);
+        countTestHelper(new ESSearchRequest().withIndex(job2), 2L, null);
+
+        // Every job has its own status
+        FsJob status1 = new FsJobFileHandler(metadataDir).read(job1);
+        FsJob status2 = new FsJobFileHandler(metadataDir).read(job2);
+        assertThat(status1.getIndexed(), is(1L));
+        assertThat(status2.getIndexed(), is(2L));
+
+        for (String job : new String[]{job1, job2}) {
+            managementService.getClient().deleteIndex(job);
+            managementService.getClient().deleteIndex(job + INDEX_SUFFIX_FOLDER);
+        }
+    }
+}
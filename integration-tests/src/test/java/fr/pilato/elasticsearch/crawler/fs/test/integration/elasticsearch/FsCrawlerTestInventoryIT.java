@@ -0,0 +1,107 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.test.integration.elasticsearch;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.FsInventory;
+import fr.pilato.elasticsearch.crawler.fs.beans.FsInventoryFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.test.integration.AbstractFsCrawlerITCase;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Test the local inventory
+ */
+public class FsCrawlerTestInventoryIT extends AbstractFsCrawlerITCase {
+
+    @Test
+    public void test_inventory_remove_deleted() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setRemoveDeleted(true)
+                .setInventory(true)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should have two docs first
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, currentTestResourceDir);
+
+        FsInventory inventory = new FsInventoryFileHandler(metadataDir).read(getCrawlerName());
+        assertThat(inventory.getDirectory(currentTestResourceDir.toString()), notNullValue());
+        assertThat(inventory.countFiles(), is(2L));
+
+        // We remove a file
+        logger.info("  ---> Removing file deleted_roottxtfile.txt");
+        Files.delete(currentTestResourceDir.resolve("deleted_roottxtfile.txt"));
+
+        // We expect to have one file
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 1L, currentTestResourceDir);
+    }
+
+    @Test
+    public void test_inventory_remove_folder_deleted() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setRemoveDeleted(true)
+                .setInventory(true)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should have 7 docs first
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 7L, currentTestResourceDir);
+
+        // We remove a directory
+        logger.info("  ---> Removing dir subdir1");
+        deleteRecursively(currentTestResourceDir.resolve("subdir1"));
+
+        // We expect to have 4 docs now
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 4L, currentTestResourceDir);
+    }
+
+    /**
+     * A file which is added with a date older than the last scan must be indexed
+     */
+    @Test
+    public void test_inventory_old_file() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setInventory(true)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should have two docs first
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, currentTestResourceDir);
+
+        // We add a file with an old date
+        logger.info("  ---> Adding file old_file.txt with a date in the past");
+        Path file = Files.writeString(currentTestResourceDir.resolve("old_file.txt"), "This is an old file");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(365, ChronoUnit.DAYS)));
+
+        // We expect to have three files
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 3L, currentTestResourceDir);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.test.integration.elasticsearch;
+
+import fr.pilato.elasticsearch.crawler.fs.client.ESPrefixQuery;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
+import fr.pilato.elasticsearch.crawler.fs.client.ESTermQuery;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.test.integration.AbstractFsCrawlerITCase;
+import org.junit.Test;
+
+/**
+ * Test the metadata only mode
+ */
+public class FsCrawlerTestMetadataOnlyIT extends AbstractFsCrawlerITCase {
+
+    @Test
+    public void test_metadata_only() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setMetadataOnly(true)
+                .setStoreSource(true)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We expect to have one file
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 1L, null);
+
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()).withESQuery(new ESPrefixQuery("content", "file*")), 0L, null);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()).withESQuery(new ESTermQuery("file.content_type", "text/plain")), 1L, null);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()).withESQuery(new ESTermQuery("file.extension", "txt")), 1L, null);
+    }
+
+    @Test
+    public void test_metadata_only_magic() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setMetadataOnly(true)
+                .setContentTypeDetection(Fs.CONTENT_TYPE_DETECTION.MAGIC)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 1L, null);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()).withESQuery(new ESPrefixQuery("content", "file*")), 0L, null);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()).withESQuery(new ESTermQuery("file.content_type", "text/plain")), 1L, null);
+    }
+
+    @Test
+    public void test_metadata_only_no_content_type() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setMetadataOnly(true)
+                .setContentTypeDetection(Fs.CONTENT_TYPE_DETECTION.NONE)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 1L, null);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()).withESQuery(new ESPrefixQuery("file.content_type", "text")), 0L, null);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.test.integration.elasticsearch;
+
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.Pipeline;
+import fr.pilato.elasticsearch.crawler.fs.test.integration.AbstractFsCrawlerITCase;
+import org.junit.Test;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.INDEX_SUFFIX_FOLDER;
+
+/**
+ * Test crawler with the staged pipeline
+ */
+public class FsCrawlerTestPipelineIT extends AbstractFsCrawlerITCase {
+
+    @Test
+    public void test_pipeline_deep_tree() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setWalkerThreads(2)
+                .setPipeline(Pipeline.builder()
+                        .setEnabled(true)
+                        .setReadThreads(2)
+                        .setParseThreads(2)
+                        .setQueueSize(2)
+                        .build())
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We expect to have 7 files and 7 folders
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 7L, null);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName() + INDEX_SUFFIX_FOLDER), 7L, null);
+    }
+
+    @Test
+    public void test_pipeline_streamed_files() throws Exception {
+        // Files are not buffered by the read stage but streamed to the parse stage
+        Fs fs = startCrawlerDefinition()
+                .setPipeline(Pipeline.builder()
+                        .setEnabled(true)
+                        .setBufferSize(new ByteSizeValue(0))
+                        .build())
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We expect to have 7 files
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 7L, null);
+    }
+}
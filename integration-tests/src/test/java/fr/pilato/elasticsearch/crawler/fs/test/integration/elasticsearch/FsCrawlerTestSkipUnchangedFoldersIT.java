@@ -0,0 +1,60 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.test.integration.elasticsearch;
+
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.test.integration.AbstractFsCrawlerITCase;
+import org.junit.Test;
+
+import java.nio.file.Files;
+
+/**
+ * Test that changes are still detected when we skip the unchanged folders
+ */
+public class FsCrawlerTestSkipUnchangedFoldersIT extends AbstractFsCrawlerITCase {
+
+    @Test
+    public void test_skip_unchanged_folders() throws Exception {
+        Fs fs = startCrawlerDefinition()
+                .setRemoveDeleted(true)
+                .setSkipUnchangedFolders(true)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should have 7 docs first
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 7L, currentTestResourceDir);
+
+        // We remove a file in a deep directory
+        logger.info("  ---> Removing file subdir1/subdir11/roottxtfile.txt");
+        Files.delete(currentTestResourceDir.resolve("subdir1").resolve("subdir11").resolve("roottxtfile.txt"));
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 6L, currentTestResourceDir);
+
+        // We add a file in another deep directory
+        logger.info("  ---> Adding file subdir2/subdir21/new_file.txt");
+        Files.writeString(currentTestResourceDir.resolve("subdir2").resolve("subdir21").resolve("new_file.txt"), "This is a new file");
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 7L, currentTestResourceDir);
+
+        // We remove a directory
+        logger.info("  ---> Removing dir subdir2");
+        deleteRecursively(currentTestResourceDir.resolve("subdir2"));
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 3L, currentTestResourceDir);
+    }
+}
@@ -26,6 +26,10 @@ import fr.pilato.elasticsearch.crawler.fs.test.integration.AbstractFsCrawlerITCa
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
 /**
  * Test crawler with SSH
  */
@@ -74,4 +78,43 @@ public class FsCrawlerTestSshIT extends AbstractFsCrawlerITCase {
 
         countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 1L, null);
     }
+
+    /**
+     * You have to adapt this test to your own system (login / password and SSH connexion).
+     * The server needs GNU find. So this test is disabled by default
+     */
+    @Test @Ignore
+    public void test_ssh_find_changes() throws Exception {
+        String username = "USERNAME";
+        String password = "PASSWORD";
+        String hostname = "localhost";
+
+        Fs fs = startCrawlerDefinition().build();
+        Server server = Server.builder()
+                .setHostname(hostname)
+                .setUsername(username)
+                .setPassword(password)
+                .setProtocol(Server.PROTOCOL.SSH)
+                .setChangeDetection(Server.CHANGE_DETECTION.FIND)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), server);
+
+        // The first run is a full scan
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, null);
+
+        // The next runs only index the files found by the server
+        logger.info("  ---> Adding file new_file.txt");
+        Files.writeString(currentTestResourceDir.resolve("new_file.txt"), "This is a new file");
+
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 3L, null);
+
+        // find only reports a directory moved into the tree, not its content
+        logger.info("  ---> Moving directory moved_dir within the tree");
+        Path movedDir = Files.createDirectories(currentTestResourceDir.getParent().resolve("moved_dir"));
+        Files.writeString(movedDir.resolve("moved_file.txt"), "This is a moved file");
+        Files.setLastModifiedTime(movedDir.resolve("moved_file.txt"), FileTime.fromMillis(0));
+        Files.move(movedDir, currentTestResourceDir.resolve("moved_dir"));
+
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 4L, null);
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.test.integration.elasticsearch;
+
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.test.integration.AbstractFsCrawlerITCase;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.INDEX_SUFFIX_FOLDER;
+
+/**
+ * Test the watch mode: changes must be indexed long before the next full scan
+ */
+public class FsCrawlerTestWatchIT extends AbstractFsCrawlerITCase {
+
+    @Test
+    public void test_watch_changes() throws Exception {
+        Fs fs = startCrawlerDefinition(TimeValue.timeValueHours(1))
+                .setWatch(true)
+                .setWatchDelay(TimeValue.timeValueMillis(200))
+                .setRemoveDeleted(true)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should have two docs first
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, currentTestResourceDir);
+
+        // We add a file
+        logger.info("  ---> Adding file new_file.txt");
+        Files.writeString(currentTestResourceDir.resolve("new_file.txt"), "This is a new file");
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 3L, currentTestResourceDir);
+
+        // We remove a file
+        logger.info("  ---> Removing file deleted_roottxtfile.txt");
+        Files.delete(currentTestResourceDir.resolve("deleted_roottxtfile.txt"));
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, currentTestResourceDir);
+    }
+
+    @Test
+    public void test_watch_new_directory() throws Exception {
+        Fs fs = startCrawlerDefinition(TimeValue.timeValueHours(1))
+                .setWatch(true)
+                .setRemoveDeleted(true)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should have two docs and one folder first
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, currentTestResourceDir);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName() + INDEX_SUFFIX_FOLDER), 1L, currentTestResourceDir);
+
+        // We add a directory tree
+        logger.info("  ---> Adding dir new_dir/sub_dir");
+        Path subDir = Files.createDirectories(currentTestResourceDir.resolve("new_dir").resolve("sub_dir"));
+        Files.writeString(subDir.resolve("new_file.txt"), "This is a new file");
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 3L, currentTestResourceDir);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName() + INDEX_SUFFIX_FOLDER), 3L, currentTestResourceDir);
+
+        // We remove the directory tree
+        logger.info("  ---> Removing dir new_dir");
+        deleteRecursively(currentTestResourceDir.resolve("new_dir"));
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, currentTestResourceDir);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName() + INDEX_SUFFIX_FOLDER), 1L, currentTestResourceDir);
+    }
+
+    @Test
+    public void test_watch_removed_tree_without_folders() throws Exception {
+        Fs fs = startCrawlerDefinition(TimeValue.timeValueHours(1))
+                .setWatch(true)
+                .setIndexFolders(false)
+                .setRemoveDeleted(true)
+                .build();
+        crawler = startCrawler(getCrawlerName(), fs, endCrawlerDefinition(getCrawlerName()), null);
+
+        // We should have two docs first
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, currentTestResourceDir);
+
+        // We add a directory tree with files at every level
+        logger.info("  ---> Adding dir new_dir/sub_dir");
+        Path newDir = Files.createDirectories(currentTestResourceDir.resolve("new_dir"));
+        Path subDir = Files.createDirectories(newDir.resolve("sub_dir"));
+        Files.writeString(newDir.resolve("new_file.txt"), "This is a new file");
+        Files.writeString(subDir.resolve("sub_file.txt"), "This is a new file in a sub directory");
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 4L, currentTestResourceDir);
+
+        // We remove the directory tree. The watcher only reports new_dir but sub_dir must be removed as well.
+        logger.info("  ---> Removing dir new_dir");
+        deleteRecursively(newDir);
+        countTestHelper(new ESSearchRequest().withIndex(getCrawlerName()), 2L, currentTestResourceDir);
+    }
+}
@@ -60,6 +60,7 @@ public class DocumentApi extends RestApi {
     private final FsCrawlerDocumentService documentService;
     private final FsSettings settings;
     private final MessageDigest messageDigest;
+    private final SignTool signTool;
     private static final TimeBasedUUIDGenerator TIME_UUID_GENERATOR = new TimeBasedUUIDGenerator();
 
     DocumentApi(FsSettings settings, FsCrawlerDocumentService documentService) {
@@ -72,6 +73,7 @@ public class DocumentApi extends RestApi {
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("This should never happen as we checked that previously");
         }
+        signTool = SignTool.getInstance(settings.getFs().getIdHash());
     }
 
     @POST
@@ -137,7 +139,7 @@ public class DocumentApi extends RestApi {
             return response;
         }
 
-        return removeDocumentInDocumentService(SignTool.sign(filename), filename, index);
+        return removeDocumentInDocumentService(signTool.hash(filename), filename, index);
     }
 
     @Path("/{id}")
@@ -178,7 +180,7 @@ public class DocumentApi extends RestApi {
             if (settings.getFs().isFilenameAsId()) {
                 id = filename;
             } else {
-                id = SignTool.sign(filename);
+                id = signTool.hash(filename);
             }
         } else if (id.equals("_auto_")) {
             // We are using a specific id which tells us to generate a unique _id like elasticsearch does
@@ -0,0 +1,128 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.settings;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeUnit;
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.framework.MetaFileHandler;
+
+import java.util.Objects;
+
+/**
+ * Settings of the on disk cache of the extracted texts. Files which have the same content are
+ * only extracted once, whatever their name, their date or the job which crawls them.
+ */
+public class ExtractionCache {
+    public static final String DEFAULT_PATH = MetaFileHandler.DEFAULT_ROOT.resolve("_extraction_cache").toString();
+    public static final ByteSizeValue DEFAULT_MAX_SIZE = new ByteSizeValue(1, ByteSizeUnit.GB);
+
+    // Is the cache used
+    private boolean enabled = false;
+    // The directory of the cache. Jobs which use the same directory share the same cache.
+    private String path;
+    // The least recently used entries are removed when the cache grows bigger than this
+    private ByteSizeValue maxSize = DEFAULT_MAX_SIZE;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = false;
+        private String path;
+        private ByteSizeValue maxSize = DEFAULT_MAX_SIZE;
+
+        public Builder setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public Builder setPath(String path) {
+            this.path = path;
+            return this;
+        }
+
+        public Builder setMaxSize(ByteSizeValue maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public ExtractionCache build() {
+            return new ExtractionCache(enabled, path, maxSize);
+        }
+    }
+
+    public ExtractionCache( ) {
+
+    }
+
+    private ExtractionCache(boolean enabled, String path, ByteSizeValue maxSize) {
+        this.enabled = enabled;
+        this.path = path;
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public ByteSizeValue getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(ByteSizeValue maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ExtractionCache that = (ExtractionCache) o;
+        return enabled == that.enabled &&
+                Objects.equals(path, that.path) &&
+                Objects.equals(maxSize, that.maxSize);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(enabled, path, maxSize);
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractionCache{" + "enabled=" + enabled +
+                ", path='" + path + '\'' +
+                ", maxSize=" + maxSize +
+                '}';
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.settings;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeUnit;
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
+
+import java.util.Objects;
+
+/**
+ * Settings used to extract the content of the documents in child JVMs, so a document which
+ * hangs or crashes the parser does not take the crawler down.
+ */
+public class Fork {
+    public static final int DEFAULT_WORKERS = 2;
+    public static final ByteSizeValue DEFAULT_HEAP_SIZE = new ByteSizeValue(512, ByteSizeUnit.MB);
+    public static final TimeValue DEFAULT_TIMEOUT = TimeValue.timeValueMinutes(5);
+    public static final int DEFAULT_MAX_DOCUMENTS = 1000;
+
+    // Are the documents extracted in child JVMs
+    private boolean enabled = false;
+    // Number of child JVMs
+    private int workers = DEFAULT_WORKERS;
+    // Maximum heap size of each child JVM
+    private ByteSizeValue heapSize = DEFAULT_HEAP_SIZE;
+    // A child JVM which takes more than this to extract a document is killed
+    private TimeValue timeout = DEFAULT_TIMEOUT;
+    // A child JVM is replaced by a new one after having extracted this number of documents
+    private int maxDocuments = DEFAULT_MAX_DOCUMENTS;
+    // The java command. Defaults to the java command which runs FSCrawler.
+    private String javaCommand;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = false;
+        private int workers = DEFAULT_WORKERS;
+        private ByteSizeValue heapSize = DEFAULT_HEAP_SIZE;
+        private TimeValue timeout = DEFAULT_TIMEOUT;
+        private int maxDocuments = DEFAULT_MAX_DOCUMENTS;
+        private String javaCommand;
+
+        public Builder setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public Builder setWorkers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        public Builder setHeapSize(ByteSizeValue heapSize) {
+            this.heapSize = heapSize;
+            return this;
+        }
+
+        public Builder setTimeout(TimeValue timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder setMaxDocuments(int maxDocuments) {
+            this.maxDocuments = maxDocuments;
+            return this;
+        }
+
+        public Builder setJavaCommand(String javaCommand) {
+            this.javaCommand = javaCommand;
+            return this;
+        }
+
+        public Fork build() {
+            return new Fork(enabled, workers, heapSize, timeout, maxDocuments, javaCommand);
+        }
+    }
+
+    public Fork( ) {
+
+    }
+
+    private Fork(boolean enabled, int workers, ByteSizeValue heapSize, TimeValue timeout, int maxDocuments, String javaCommand) {
+        this.enabled = enabled;
+        this.workers = workers;
+        this.heapSize = heapSize;
+        this.timeout = timeout;
+        this.maxDocuments = maxDocuments;
+        this.javaCommand = javaCommand;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public ByteSizeValue getHeapSize() {
+        return heapSize;
+    }
+
+    public void setHeapSize(ByteSizeValue heapSize) {
+        this.heapSize = heapSize;
+    }
+
+    public TimeValue getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(TimeValue timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getMaxDocuments() {
+        return maxDocuments;
+    }
+
+    public void setMaxDocuments(int maxDocuments) {
+        this.maxDocuments = maxDocuments;
+    }
+
+    public String getJavaCommand() {
+        return javaCommand;
+    }
+
+    public void setJavaCommand(String javaCommand) {
+        this.javaCommand = javaCommand;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Fork fork = (Fork) o;
+        return enabled == fork.enabled &&
+                workers == fork.workers &&
+                maxDocuments == fork.maxDocuments &&
+                Objects.equals(heapSize, fork.heapSize) &&
+                Objects.equals(timeout, fork.timeout) &&
+                Objects.equals(javaCommand, fork.javaCommand);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(enabled, workers, heapSize, timeout, maxDocuments, javaCommand);
+    }
+
+    @Override
+    public String toString() {
+        return "Fork{" + "enabled=" + enabled +
+                ", workers=" + workers +
+                ", heapSize=" + heapSize +
+                ", timeout=" + timeout +
+                ", maxDocuments=" + maxDocuments +
+                ", javaCommand='" + javaCommand + '\'' +
+                '}';
+    }
+}
@@ -21,6 +21,7 @@ package fr.pilato.elasticsearch.crawler.fs.settings;
 
 import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
 import fr.pilato.elasticsearch.crawler.fs.framework.Percentage;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
 import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -29,10 +30,21 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @SuppressWarnings("SameParameterValue")
 public class Fs {
+
+    public static final class CONTENT_TYPE_DETECTION {
+        // From the file name
+        public static final String EXTENSION = "extension";
+        // From the first bytes of the file, and then from the file name
+        public static final String MAGIC = "magic";
+        // We don't detect the content type
+        public static final String NONE = "none";
+    }
+
     protected static final Logger logger = LogManager.getLogger(Fs.class);
 
     private String url;
@@ -59,6 +71,24 @@ public class Fs {
     private ByteSizeValue ignoreAbove = null;
     private boolean followSymlinks = false;
     private String tikaConfigPath = null;
+    private int walkerThreads = 1;
+    private Pipeline pipeline = new Pipeline();
+    private boolean threadPerFile = false;
+    private int maxParsingThreads = DEFAULT_MAX_PARSING_THREADS;
+    private boolean watch = false;
+    private TimeValue watchDelay = TimeValue.timeValueSeconds(1);
+    private boolean inventory = false;
+    private boolean skipUnchangedFolders = false;
+    private TimeValue checkpointInterval = null;
+    private Sharding sharding = new Sharding();
+    private String idHash = SignTool.MD5;
+    private boolean metadataOnly = false;
+    private String contentTypeDetection = CONTENT_TYPE_DETECTION.EXTENSION;
+    private int parserPoolSize = DEFAULT_PARSER_POOL_SIZE;
+    private Fork fork = new Fork();
+    private TimeValue extractionTimeout = null;
+    private Map<String, TimeValue> extractionTimeouts = null;
+    private ExtractionCache extractionCache = new ExtractionCache();
 
     public static Builder builder() {
         return new Builder();
@@ -66,6 +96,8 @@ public class Fs {
 
     public static final String DEFAULT_DIR = Paths.get("/tmp/es").toString();
     public static final List<String> DEFAULT_EXCLUDED = Collections.singletonList("*/~*");
+    public static final int DEFAULT_MAX_PARSING_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_PARSER_POOL_SIZE = Runtime.getRuntime().availableProcessors();
     public static final Fs DEFAULT = Fs.builder().setUrl(DEFAULT_DIR).setExcludes(DEFAULT_EXCLUDED).build();
 
     public static class Builder {
@@ -93,6 +125,24 @@ public class Fs {
         private ByteSizeValue ignoreAbove = null;
         private boolean followSymlinks = false;
         private String tikaConfigPath = null;
+        private int walkerThreads = 1;
+        private Pipeline pipeline = new Pipeline();
+        private boolean threadPerFile = false;
+        private int maxParsingThreads = DEFAULT_MAX_PARSING_THREADS;
+        private boolean watch = false;
+        private TimeValue watchDelay = TimeValue.timeValueSeconds(1);
+        private boolean inventory = false;
+        private boolean skipUnchangedFolders = false;
+        private TimeValue checkpointInterval = null;
+        private Sharding sharding = new Sharding();
+        private String idHash = SignTool.MD5;
+        private boolean metadataOnly = false;
+        private String contentTypeDetection = CONTENT_TYPE_DETECTION.EXTENSION;
+        private int parserPoolSize = DEFAULT_PARSER_POOL_SIZE;
+        private Fork fork = new Fork();
+        private TimeValue extractionTimeout = null;
+        private Map<String, TimeValue> extractionTimeouts = null;
+        private ExtractionCache extractionCache = new ExtractionCache();
 
         public Builder setUrl(String url) {
             this.url = url;
@@ -253,11 +303,102 @@ public class Fs {
             return this;
         }
 
+        public Builder setWalkerThreads(int walkerThreads) {
+            this.walkerThreads = walkerThreads;
+            return this;
+        }
+
+        public Builder setPipeline(Pipeline pipeline) {
+            this.pipeline = pipeline;
+            return this;
+        }
+
+        public Builder setThreadPerFile(boolean threadPerFile) {
+            this.threadPerFile = threadPerFile;
+            return this;
+        }
+
+        public Builder setMaxParsingThreads(int maxParsingThreads) {
+            this.maxParsingThreads = maxParsingThreads;
+            return this;
+        }
+
+        public Builder setWatch(boolean watch) {
+            this.watch = watch;
+            return this;
+        }
+
+        public Builder setWatchDelay(TimeValue watchDelay) {
+            this.watchDelay = watchDelay;
+            return this;
+        }
+
+        public Builder setInventory(boolean inventory) {
+            this.inventory = inventory;
+            return this;
+        }
+
+        public Builder setSkipUnchangedFolders(boolean skipUnchangedFolders) {
+            this.skipUnchangedFolders = skipUnchangedFolders;
+            return this;
+        }
+
+        public Builder setCheckpointInterval(TimeValue checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        public Builder setSharding(Sharding sharding) {
+            this.sharding = sharding;
+            return this;
+        }
+
+        public Builder setIdHash(String idHash) {
+            this.idHash = idHash;
+            return this;
+        }
+
+        public Builder setMetadataOnly(boolean metadataOnly) {
+            this.metadataOnly = metadataOnly;
+            return this;
+        }
+
+        public Builder setContentTypeDetection(String contentTypeDetection) {
+            this.contentTypeDetection = contentTypeDetection;
+            return this;
+        }
+
+        public Builder setParserPoolSize(int parserPoolSize) {
+            this.parserPoolSize = parserPoolSize;
+            return this;
+        }
+
+        public Builder setFork(Fork fork) {
+            this.fork = fork;
+            return this;
+        }
+
+        public Builder setExtractionTimeout(TimeValue extractionTimeout) {
+            this.extractionTimeout = extractionTimeout;
+            return this;
+        }
+
+        public Builder setExtractionTimeouts(Map<String, TimeValue> extractionTimeouts) {
+            this.extractionTimeouts = extractionTimeouts;
+            return this;
+        }
+
+        public Builder setExtractionCache(ExtractionCache extractionCache) {
+            this.extractionCache = extractionCache;
+            return this;
+        }
+
         public Fs build() {
             return new Fs(url, updateRate, includes, excludes, filters, jsonSupport, filenameAsId, addFilesize,
                     removeDeleted, addAsInnerObject, storeSource, indexedChars, indexContent, attributesSupport, rawMetadata,
                     checksum, xmlSupport, indexFolders, langDetect, continueOnError, ocr, ignoreAbove, followSymlinks,
-                    tikaConfigPath);
+                    tikaConfigPath, walkerThreads, pipeline, threadPerFile, maxParsingThreads, watch, watchDelay, inventory, skipUnchangedFolders, checkpointInterval, sharding, idHash, metadataOnly, contentTypeDetection,
+                    parserPoolSize, fork, extractionTimeout, extractionTimeouts, extractionCache);
         }
     }
 
@@ -269,7 +410,10 @@ public class Fs {
                boolean filenameAsId, boolean addFilesize, boolean removeDeleted, boolean addAsInnerObject, boolean storeSource,
                Percentage indexedChars, boolean indexContent, boolean attributesSupport, boolean rawMetadata, String checksum, boolean xmlSupport,
                boolean indexFolders, boolean langDetect, boolean continueOnError, Ocr ocr, ByteSizeValue ignoreAbove, boolean followSymlinks,
-               String tikaConfigPath) {
+               String tikaConfigPath, int walkerThreads, Pipeline pipeline, boolean threadPerFile, int maxParsingThreads,
+               boolean watch, TimeValue watchDelay, boolean inventory, boolean skipUnchangedFolders, TimeValue checkpointInterval, Sharding sharding, String idHash, boolean metadataOnly, String contentTypeDetection,
+               int parserPoolSize, Fork fork, TimeValue extractionTimeout, Map<String, TimeValue> extractionTimeouts,
+               ExtractionCache extractionCache) {
         this.url = url;
         this.updateRate = updateRate;
         this.includes = includes;
@@ -294,6 +438,24 @@ public class Fs {
         this.ignoreAbove = ignoreAbove;
         this.followSymlinks = followSymlinks;
         this.tikaConfigPath = tikaConfigPath;
+        this.walkerThreads = walkerThreads;
+        this.pipeline = pipeline;
+        this.threadPerFile = threadPerFile;
+        this.maxParsingThreads = maxParsingThreads;
+        this.watch = watch;
+        this.watchDelay = watchDelay;
+        this.inventory = inventory;
+        this.skipUnchangedFolders = skipUnchangedFolders;
+        this.checkpointInterval = checkpointInterval;
+        this.sharding = sharding;
+        this.idHash = idHash;
+        this.metadataOnly = metadataOnly;
+        this.contentTypeDetection = contentTypeDetection;
+        this.parserPoolSize = parserPoolSize;
+        this.fork = fork;
+        this.extractionTimeout = extractionTimeout;
+        this.extractionTimeouts = extractionTimeouts;
+        this.extractionCache = extractionCache;
     }
 
     public String getUrl() {
@@ -504,6 +666,150 @@ public class Fs {
       this.tikaConfigPath = tikaConfigPath;
     }
 
+    public int getWalkerThreads() {
+        return walkerThreads;
+    }
+
+    public void setWalkerThreads(int walkerThreads) {
+        this.walkerThreads = walkerThreads;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public boolean isThreadPerFile() {
+        return threadPerFile;
+    }
+
+    public void setThreadPerFile(boolean threadPerFile) {
+        this.threadPerFile = threadPerFile;
+    }
+
+    public int getMaxParsingThreads() {
+        return maxParsingThreads;
+    }
+
+    public void setMaxParsingThreads(int maxParsingThreads) {
+        this.maxParsingThreads = maxParsingThreads;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    public TimeValue getWatchDelay() {
+        return watchDelay;
+    }
+
+    public void setWatchDelay(TimeValue watchDelay) {
+        this.watchDelay = watchDelay;
+    }
+
+    public boolean isInventory() {
+        return inventory;
+    }
+
+    public void setInventory(boolean inventory) {
+        this.inventory = inventory;
+    }
+
+    public boolean isSkipUnchangedFolders() {
+        return skipUnchangedFolders;
+    }
+
+    public void setSkipUnchangedFolders(boolean skipUnchangedFolders) {
+        this.skipUnchangedFolders = skipUnchangedFolders;
+    }
+
+    public TimeValue getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(TimeValue checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public Sharding getSharding() {
+        return sharding;
+    }
+
+    public void setSharding(Sharding sharding) {
+        this.sharding = sharding;
+    }
+
+    public String getIdHash() {
+        return idHash;
+    }
+
+    public void setIdHash(String idHash) {
+        this.idHash = idHash;
+    }
+
+    public boolean isMetadataOnly() {
+        return metadataOnly;
+    }
+
+    public void setMetadataOnly(boolean metadataOnly) {
+        this.metadataOnly = metadataOnly;
+    }
+
+    public String getContentTypeDetection() {
+        return contentTypeDetection;
+    }
+
+    public void setContentTypeDetection(String contentTypeDetection) {
+        this.contentTypeDetection = contentTypeDetection;
+    }
+
+    public int getParserPoolSize() {
+        return parserPoolSize;
+    }
+
+    public void setParserPoolSize(int parserPoolSize) {
+        this.parserPoolSize = parserPoolSize;
+    }
+
+    public Fork getFork() {
+        return fork;
+    }
+
+    public void setFork(Fork fork) {
+        this.fork = fork;
+    }
+
+    public TimeValue getExtractionTimeout() {
+        return extractionTimeout;
+    }
+
+    public void setExtractionTimeout(TimeValue extractionTimeout) {
+        this.extractionTimeout = extractionTimeout;
+    }
+
+    public Map<String, TimeValue> getExtractionTimeouts() {
+        return extractionTimeouts;
+    }
+
+    public void setExtractionTimeouts(Map<String, TimeValue> extractionTimeouts) {
+        this.extractionTimeouts = extractionTimeouts;
+    }
+
+    public ExtractionCache getExtractionCache() {
+        return extractionCache;
+    }
+
+    public void setExtractionCache(ExtractionCache extractionCache) {
+        this.extractionCache = extractionCache;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -523,6 +829,12 @@ public class Fs {
                 langDetect == fs.langDetect &&
                 continueOnError == fs.continueOnError &&
                 followSymlinks == fs.followSymlinks &&
+                walkerThreads == fs.walkerThreads &&
+                threadPerFile == fs.threadPerFile &&
+                maxParsingThreads == fs.maxParsingThreads &&
+                watch == fs.watch &&
+                inventory == fs.inventory &&
+                skipUnchangedFolders == fs.skipUnchangedFolders &&
                 Objects.equals(url, fs.url) &&
                 Objects.equals(updateRate, fs.updateRate) &&
                 Objects.equals(includes, fs.includes) &&
@@ -532,14 +844,28 @@ public class Fs {
                 Objects.equals(checksum, fs.checksum) &&
                 Objects.equals(ocr, fs.ocr) &&
                 Objects.equals(ignoreAbove, fs.ignoreAbove) &&
-                Objects.equals(tikaConfigPath, fs.tikaConfigPath);
+                Objects.equals(tikaConfigPath, fs.tikaConfigPath) &&
+                Objects.equals(pipeline, fs.pipeline) &&
+                Objects.equals(watchDelay, fs.watchDelay) &&
+                Objects.equals(checkpointInterval, fs.checkpointInterval) &&
+                Objects.equals(sharding, fs.sharding) &&
+                Objects.equals(idHash, fs.idHash) &&
+                metadataOnly == fs.metadataOnly &&
+                Objects.equals(contentTypeDetection, fs.contentTypeDetection) &&
+                parserPoolSize == fs.parserPoolSize &&
+                Objects.equals(fork, fs.fork) &&
+                Objects.equals(extractionTimeout, fs.extractionTimeout) &&
+                Objects.equals(extractionTimeouts, fs.extractionTimeouts) &&
+                Objects.equals(extractionCache, fs.extractionCache);
     }
 
     @Override
     public int hashCode() {
         return Objects.hash(url, updateRate, includes, excludes, filters, jsonSupport, filenameAsId, addFilesize,
                 removeDeleted, addAsInnerObject, storeSource, indexContent, indexedChars, attributesSupport, rawMetadata, xmlSupport,
-                checksum, indexFolders, langDetect, continueOnError, ocr, ignoreAbove, followSymlinks, tikaConfigPath);
+                checksum, indexFolders, langDetect, continueOnError, ocr, ignoreAbove, followSymlinks, tikaConfigPath,
+                walkerThreads, pipeline, threadPerFile, maxParsingThreads, watch, watchDelay, inventory, skipUnchangedFolders, checkpointInterval, sharding, idHash, metadataOnly, contentTypeDetection,
+                parserPoolSize, fork, extractionTimeout, extractionTimeouts, extractionCache);
     }
 
     @Override
@@ -568,6 +894,24 @@ public class Fs {
                 ", ignoreAbove=" + ignoreAbove +
                 ", followSymlinks=" + followSymlinks +
                 ", tikaConfigPath='" + tikaConfigPath + '\'' +
+                ", walkerThreads=" + walkerThreads +
+                ", pipeline=" + pipeline +
+                ", threadPerFile=" + threadPerFile +
+                ", maxParsingThreads=" + maxParsingThreads +
+                ", watch=" + watch +
+                ", watchDelay=" + watchDelay +
+                ", inventory=" + inventory +
+                ", skipUnchangedFolders=" + skipUnchangedFolders +
+                ", checkpointInterval=" + checkpointInterval +
+                ", sharding=" + sharding +
+                ", idHash='" + idHash + '\'' +
+                ", metadataOnly=" + metadataOnly +
+                ", contentTypeDetection='" + contentTypeDetection + '\'' +
+                ", parserPoolSize=" + parserPoolSize +
+                ", fork=" + fork +
+                ", extractionTimeout=" + extractionTimeout +
+                ", extractionTimeouts=" + extractionTimeouts +
+                ", extractionCache=" + extractionCache +
                 '}';
     }
 }
@@ -21,8 +21,12 @@ package fr.pilato.elasticsearch.crawler.fs.settings;
 
 import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
 import fr.pilato.elasticsearch.crawler.fs.framework.OsValidator;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
 import org.apache.logging.log4j.Logger;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -79,6 +83,36 @@ public class FsCrawlerValidator {
                 logger.error("When using FTP, you need to set a username and probably a password. Disabling crawler");
                 return true;
             }
+
+            // Checking the number of connections we can open to the server
+            if (settings.getServer().getMaxConnections() < 1) {
+                logger.warn("server.max_connections is set to [{}] but must be at least 1. Falling back to 1.",
+                        settings.getServer().getMaxConnections());
+                settings.getServer().setMaxConnections(1);
+            }
+            if (settings.getServer().getMaxSessions() < 1) {
+                logger.warn("server.max_sessions is set to [{}] but must be at least 1. Falling back to 1.",
+                        settings.getServer().getMaxSessions());
+                settings.getServer().setMaxSessions(1);
+            }
+
+            // Checking how we detect the changes
+            String changeDetection = settings.getServer().getChangeDetection();
+            if (!Server.CHANGE_DETECTION.LIST.equals(changeDetection) && !Server.CHANGE_DETECTION.FIND.equals(changeDetection)) {
+                logger.error("change_detection [{}] is not supported. Please use {} or {}. Disabling crawler", changeDetection,
+                        Server.CHANGE_DETECTION.LIST, Server.CHANGE_DETECTION.FIND);
+                return true;
+            }
+            if (Server.CHANGE_DETECTION.FIND.equals(changeDetection) &&
+                    !Server.PROTOCOL.SSH.equals(settings.getServer().getProtocol())) {
+                logger.warn("change_detection [{}] is only supported with the [{}] protocol. Falling back to [{}].",
+                        changeDetection, Server.PROTOCOL.SSH, Server.CHANGE_DETECTION.LIST);
+                settings.getServer().setChangeDetection(Server.CHANGE_DETECTION.LIST);
+            }
+            if (settings.getServer().getFullScanInterval() == null || settings.getServer().getFullScanInterval().millis() <= 0) {
+                logger.warn("full_scan_interval must be positive. Falling back to [{}].", Server.DEFAULT_FULL_SCAN_INTERVAL);
+                settings.getServer().setFullScanInterval(Server.DEFAULT_FULL_SCAN_INTERVAL);
+            }
         }
 
         // Checking Checksum Algorithm
@@ -92,6 +126,46 @@ public class FsCrawlerValidator {
             }
         }
 
+        // Checking the algorithm we use to generate the ids
+        try {
+            SignTool.getInstance(settings.getFs().getIdHash());
+        } catch (IllegalArgumentException e) {
+            logger.error("{} Disabling crawler", e.getMessage());
+            return true;
+        }
+
+        // Checking the metadata only mode: we never read the content of the files
+        if (settings.getFs().isMetadataOnly()) {
+            String detection = settings.getFs().getContentTypeDetection();
+            if (!Fs.CONTENT_TYPE_DETECTION.EXTENSION.equals(detection) && !Fs.CONTENT_TYPE_DETECTION.MAGIC.equals(detection) &&
+                    !Fs.CONTENT_TYPE_DETECTION.NONE.equals(detection)) {
+                logger.error("content_type_detection [{}] is not supported. Please use {}, {} or {}. Disabling crawler", detection,
+                        Fs.CONTENT_TYPE_DETECTION.EXTENSION, Fs.CONTENT_TYPE_DETECTION.MAGIC, Fs.CONTENT_TYPE_DETECTION.NONE);
+                return true;
+            }
+            if (settings.getFs().isIndexContent()) {
+                logger.debug("metadata_only is set. Setting index_content to false.");
+                settings.getFs().setIndexContent(false);
+            }
+            if (settings.getFs().isStoreSource()) {
+                logger.warn("store_source can not be used with metadata_only. Setting store_source to false.");
+                settings.getFs().setStoreSource(false);
+            }
+            if (settings.getFs().getChecksum() != null) {
+                logger.warn("checksum can not be used with metadata_only. Removing checksum.");
+                settings.getFs().setChecksum(null);
+            }
+            // There is nothing to parse, so we index the files from the walker threads
+            if (settings.getFs().getPipeline() != null && settings.getFs().getPipeline().isEnabled()) {
+                logger.info("metadata_only is set. Disabling the pipeline as there is nothing to parse.");
+                settings.getFs().getPipeline().setEnabled(false);
+            }
+            if (settings.getFs().isThreadPerFile()) {
+                logger.info("metadata_only is set. Disabling thread_per_file as there is nothing to parse.");
+                settings.getFs().setThreadPerFile(false);
+            }
+        }
+
         // Checking That we don't try to do both xml and json
         if (settings.getFs().isJsonSupport() && settings.getFs().isXmlSupport()) {
             logger.error("Can not support both xml and json parsing. Disabling crawler");
@@ -104,6 +178,157 @@ public class FsCrawlerValidator {
             return true;
         }
 
+        // Checking the number of walker threads
+        if (settings.getFs().getWalkerThreads() < 1) {
+            logger.warn("walker_threads is set to [{}] but must be at least 1. Falling back to 1.", settings.getFs().getWalkerThreads());
+            settings.getFs().setWalkerThreads(1);
+        }
+
+        // Checking the number of parsing threads
+        if (settings.getFs().getMaxParsingThreads() < 1) {
+            logger.warn("max_parsing_threads is set to [{}] but must be at least 1. Falling back to [{}].",
+                    settings.getFs().getMaxParsingThreads(), Fs.DEFAULT_MAX_PARSING_THREADS);
+            settings.getFs().setMaxParsingThreads(Fs.DEFAULT_MAX_PARSING_THREADS);
+        }
+
+        // Checking the number of Tika parsers
+        if (settings.getFs().getParserPoolSize() < 1) {
+            logger.warn("parser_pool_size is set to [{}] but must be at least 1. Falling back to [{}].",
+                    settings.getFs().getParserPoolSize(), Fs.DEFAULT_PARSER_POOL_SIZE);
+            settings.getFs().setParserPoolSize(Fs.DEFAULT_PARSER_POOL_SIZE);
+        }
+
+        // Checking that we can watch the file system
+        if (settings.getFs().isWatch() && settings.getServer() != null &&
+                !Server.PROTOCOL.LOCAL.equals(settings.getServer().getProtocol())) {
+            logger.warn("watch is only supported for the local file system but protocol is [{}]. Falling back to update_rate only.",
+                    settings.getServer().getProtocol());
+            settings.getFs().setWatch(false);
+        }
+        if (settings.getFs().getWatchDelay() == null || settings.getFs().getWatchDelay().millis() < 1) {
+            logger.warn("watch_delay is set to [{}] but must be positive. Falling back to [1s].", settings.getFs().getWatchDelay());
+            settings.getFs().setWatchDelay(TimeValue.timeValueSeconds(1));
+        }
+
+        // Checking that we can skip the unchanged folders
+        if (settings.getFs().isSkipUnchangedFolders() && !settings.getFs().isInventory()) {
+            logger.info("skip_unchanged_folders needs the local inventory. Setting inventory to true.");
+            settings.getFs().setInventory(true);
+        }
+
+        // Checking the checkpoint interval
+        if (settings.getFs().getCheckpointInterval() != null && settings.getFs().getCheckpointInterval().millis() < 1) {
+            logger.warn("checkpoint_interval is set to [{}] but must be positive. Disabling checkpoints.",
+                    settings.getFs().getCheckpointInterval());
+            settings.getFs().setCheckpointInterval(null);
+        }
+
+        // Checking the pipeline settings
+        if (settings.getFs().getPipeline() == null) {
+            settings.getFs().setPipeline(new Pipeline());
+        }
+        Pipeline pipeline = settings.getFs().getPipeline();
+        if (pipeline.getReadThreads() < 1) {
+            logger.warn("pipeline.read_threads is set to [{}] but must be at least 1. Falling back to 1.", pipeline.getReadThreads());
+            pipeline.setReadThreads(1);
+        }
+        if (pipeline.getParseThreads() < 1) {
+            logger.warn("pipeline.parse_threads is set to [{}] but must be at least 1. Falling back to [{}].",
+                    pipeline.getParseThreads(), Pipeline.DEFAULT_PARSE_THREADS);
+            pipeline.setParseThreads(Pipeline.DEFAULT_PARSE_THREADS);
+        }
+        if (pipeline.getQueueSize() < 1) {
+            logger.warn("pipeline.queue_size is set to [{}] but must be at least 1. Falling back to [{}].",
+                    pipeline.getQueueSize(), Pipeline.DEFAULT_QUEUE_SIZE);
+            pipeline.setQueueSize(Pipeline.DEFAULT_QUEUE_SIZE);
+        }
+
+        // Checking the sharding settings
+        if (settings.getFs().getSharding() == null) {
+            settings.getFs().setSharding(new Sharding());
+        }
+        Sharding sharding = settings.getFs().getSharding();
+        if (sharding.isEnabled()) {
+            if (sharding.getShards() < 1) {
+                logger.warn("sharding.shards is set to [{}] but must be at least 1. Falling back to 1.", sharding.getShards());
+                sharding.setShards(1);
+            }
+            if (sharding.getLeaseDuration() == null || sharding.getLeaseDuration().millis() < 1000) {
+                logger.warn("sharding.lease_duration is set to [{}] but must be at least [1s]. Falling back to [{}].",
+                        sharding.getLeaseDuration(), Sharding.DEFAULT_LEASE_DURATION);
+                sharding.setLeaseDuration(Sharding.DEFAULT_LEASE_DURATION);
+            }
+            if (FsCrawlerUtil.isNullOrEmpty(sharding.getNode())) {
+                sharding.setNode(getHostName());
+                logger.debug("sharding.node is not set. Falling back to [{}].", sharding.getNode());
+            }
+            if (settings.getFs().isWatch()) {
+                logger.warn("watch can not be used with sharding. Falling back to update_rate only.");
+                settings.getFs().setWatch(false);
+            }
+        }
+
+        // Checking the settings of the child JVMs which extract the documents
+        if (settings.getFs().getFork() == null) {
+            settings.getFs().setFork(new Fork());
+        }
+        Fork fork = settings.getFs().getFork();
+        if (fork.isEnabled()) {
+            if (fork.getWorkers() < 1) {
+                logger.warn("fork.workers is set to [{}] but must be at least 1. Falling back to 1.", fork.getWorkers());
+                fork.setWorkers(1);
+            }
+            if (fork.getHeapSize() == null || fork.getHeapSize().getBytes() <= 0) {
+                logger.warn("fork.heap_size is set to [{}] but must be positive. Falling back to [{}].",
+                        fork.getHeapSize(), Fork.DEFAULT_HEAP_SIZE);
+                fork.setHeapSize(Fork.DEFAULT_HEAP_SIZE);
+            }
+            if (fork.getTimeout() == null || fork.getTimeout().millis() < 1000) {
+                logger.warn("fork.timeout is set to [{}] but must be at least [1s]. Falling back to [{}].",
+                        fork.getTimeout(), Fork.DEFAULT_TIMEOUT);
+                fork.setTimeout(Fork.DEFAULT_TIMEOUT);
+            }
+            if (fork.getMaxDocuments() < 1) {
+                logger.warn("fork.max_documents is set to [{}] but must be at least 1. Falling back to [{}].",
+                        fork.getMaxDocuments(), Fork.DEFAULT_MAX_DOCUMENTS);
+                fork.setMaxDocuments(Fork.DEFAULT_MAX_DOCUMENTS);
+            }
+        }
+
+        // Checking the extraction deadlines. A missing deadline means that we wait for the parser as long as needed.
+        if (settings.getFs().getExtractionTimeout() != null && settings.getFs().getExtractionTimeout().millis() < 1) {
+            logger.warn("extraction_timeout is set to [{}] but must be positive. Extractions won't have any deadline.",
+                    settings.getFs().getExtractionTimeout());
+            settings.getFs().setExtractionTimeout(null);
+        }
+        if (settings.getFs().getExtractionTimeouts() != null) {
+            settings.getFs().getExtractionTimeouts().entrySet().removeIf(entry -> {
+                if (entry.getValue() == null || entry.getValue().millis() < 1) {
+                    logger.warn("extraction_timeouts.{} is set to [{}] but must be positive. Using extraction_timeout [{}] instead.",
+                            entry.getKey(), entry.getValue(), settings.getFs().getExtractionTimeout());
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        // Checking the extraction cache
+        if (settings.getFs().getExtractionCache() == null) {
+            settings.getFs().setExtractionCache(new ExtractionCache());
+        }
+        ExtractionCache extractionCache = settings.getFs().getExtractionCache();
+        if (extractionCache.isEnabled()) {
+            if (extractionCache.getPath() == null) {
+                extractionCache.setPath(ExtractionCache.DEFAULT_PATH);
+                logger.debug("extraction_cache.path is not set. Falling back to [{}].", extractionCache.getPath());
+            }
+            if (extractionCache.getMaxSize() == null || extractionCache.getMaxSize().getBytes() <= 0) {
+                logger.warn("extraction_cache.max_size is set to [{}] but must be positive. Falling back to [{}].",
+                        extractionCache.getMaxSize(), ExtractionCache.DEFAULT_MAX_SIZE);
+                extractionCache.setMaxSize(ExtractionCache.DEFAULT_MAX_SIZE);
+            }
+        }
+
         // We just warn the user if he is running on Windows but want to get attributes
         if (OsValidator.WINDOWS && settings.getFs().isAttributesSupport()) {
             logger.info("attributes_support is set to true but getting group is not available on [{}].", OsValidator.OS);
@@ -123,4 +348,12 @@ public class FsCrawlerValidator {
 
         return false;
     }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "fscrawler-" + ProcessHandle.current().pid();
+        }
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.settings;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeUnit;
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+
+import java.util.Objects;
+
+/**
+ * Settings of the staged crawl pipeline: read, parse and bulk stages
+ * linked by bounded queues.
+ */
+public class Pipeline {
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+    public static final int DEFAULT_PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final ByteSizeValue DEFAULT_BUFFER_SIZE = new ByteSizeValue(10, ByteSizeUnit.MB);
+
+    // Is the pipeline mode enabled
+    private boolean enabled = false;
+    // Number of threads reading files from the source
+    private int readThreads = 1;
+    // Number of threads extracting content with Tika
+    private int parseThreads = DEFAULT_PARSE_THREADS;
+    // Maximum number of documents waiting in front of each stage
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    // Files up to this size are read in memory by the read stage. Bigger files are streamed by the parse stage.
+    private ByteSizeValue bufferSize = DEFAULT_BUFFER_SIZE;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = false;
+        private int readThreads = 1;
+        private int parseThreads = DEFAULT_PARSE_THREADS;
+        private int queueSize = DEFAULT_QUEUE_SIZE;
+        private ByteSizeValue bufferSize = DEFAULT_BUFFER_SIZE;
+
+        public Builder setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public Builder setReadThreads(int readThreads) {
+            this.readThreads = readThreads;
+            return this;
+        }
+
+        public Builder setParseThreads(int parseThreads) {
+            this.parseThreads = parseThreads;
+            return this;
+        }
+
+        public Builder setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        public Builder setBufferSize(ByteSizeValue bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Pipeline build() {
+            return new Pipeline(enabled, readThreads, parseThreads, queueSize, bufferSize);
+        }
+    }
+
+    public Pipeline( ) {
+
+    }
+
+    private Pipeline(boolean enabled, int readThreads, int parseThreads, int queueSize, ByteSizeValue bufferSize) {
+        this.enabled = enabled;
+        this.readThreads = readThreads;
+        this.parseThreads = parseThreads;
+        this.queueSize = queueSize;
+        this.bufferSize = bufferSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getReadThreads() {
+        return readThreads;
+    }
+
+    public void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public ByteSizeValue getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(ByteSizeValue bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Pipeline pipeline = (Pipeline) o;
+        return enabled == pipeline.enabled &&
+                readThreads == pipeline.readThreads &&
+                parseThreads == pipeline.parseThreads &&
+                queueSize == pipeline.queueSize &&
+                Objects.equals(bufferSize, pipeline.bufferSize);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(enabled, readThreads, parseThreads, queueSize, bufferSize);
+    }
+
+    @Override
+    public String toString() {
+        return "Pipeline{" + "enabled=" + enabled +
+                ", readThreads=" + readThreads +
+                ", parseThreads=" + parseThreads +
+                ", queueSize=" + queueSize +
+                ", bufferSize=" + bufferSize +
+                '}';
+    }
+}
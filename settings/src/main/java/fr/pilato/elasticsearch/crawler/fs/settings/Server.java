@@ -21,6 +21,7 @@ package fr.pilato.elasticsearch.crawler.fs.settings;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
 
 import java.util.Objects;
 
@@ -34,17 +35,33 @@ public class Server {
         public static final int FTP_PORT = 21;
     }
 
+    public static final class CHANGE_DETECTION {
+        // We list every directory
+        public static final String LIST = "list";
+        // The server finds the changed files with a remote command
+        public static final String FIND = "find";
+    }
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final int DEFAULT_MAX_SESSIONS = 1;
+    public static final TimeValue DEFAULT_FULL_SCAN_INTERVAL = TimeValue.timeValueDays(1);
+
     public Server() {
 
     }
 
-    private Server(String hostname, int port, String username, String password, String protocol, String pemPath) {
+    private Server(String hostname, int port, String username, String password, String protocol, String pemPath,
+                   int maxConnections, int maxSessions, String changeDetection, TimeValue fullScanInterval) {
         this.hostname = hostname;
         this.port = port;
         this.username = username;
         this.password = password;
         this.protocol = protocol;
         this.pemPath = pemPath;
+        this.maxConnections = maxConnections;
+        this.maxSessions = maxSessions;
+        this.changeDetection = changeDetection;
+        this.fullScanInterval = fullScanInterval;
     }
 
     private String hostname;
@@ -54,6 +71,10 @@ public class Server {
     private String password;
     private String protocol = PROTOCOL.LOCAL;
     private String pemPath;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxSessions = DEFAULT_MAX_SESSIONS;
+    private String changeDetection = CHANGE_DETECTION.LIST;
+    private TimeValue fullScanInterval = DEFAULT_FULL_SCAN_INTERVAL;
 
     public String getHostname() {
         return hostname;
@@ -105,6 +126,38 @@ public class Server {
         this.pemPath = pemPath;
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    public String getChangeDetection() {
+        return changeDetection;
+    }
+
+    public void setChangeDetection(String changeDetection) {
+        this.changeDetection = changeDetection;
+    }
+
+    public TimeValue getFullScanInterval() {
+        return fullScanInterval;
+    }
+
+    public void setFullScanInterval(TimeValue fullScanInterval) {
+        this.fullScanInterval = fullScanInterval;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -116,6 +169,10 @@ public class Server {
         private String password = null;
         private String protocol = PROTOCOL.LOCAL;
         private String pemPath = null;
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        private int maxSessions = DEFAULT_MAX_SESSIONS;
+        private String changeDetection = CHANGE_DETECTION.LIST;
+        private TimeValue fullScanInterval = DEFAULT_FULL_SCAN_INTERVAL;
 
         public Builder setHostname(String hostname) {
             this.hostname = hostname;
@@ -147,8 +204,29 @@ public class Server {
             return this;
         }
 
+        public Builder setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public Builder setMaxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        public Builder setChangeDetection(String changeDetection) {
+            this.changeDetection = changeDetection;
+            return this;
+        }
+
+        public Builder setFullScanInterval(TimeValue fullScanInterval) {
+            this.fullScanInterval = fullScanInterval;
+            return this;
+        }
+
         public Server build() {
-            return new Server(hostname, port, username, password, protocol, pemPath);
+            return new Server(hostname, port, username, password, protocol, pemPath, maxConnections, maxSessions,
+                    changeDetection, fullScanInterval);
         }
     }
 
@@ -160,10 +238,14 @@ public class Server {
         Server server = (Server) o;
 
         if (port != server.port) return false;
+        if (maxConnections != server.maxConnections) return false;
+        if (maxSessions != server.maxSessions) return false;
         if (!Objects.equals(hostname, server.hostname)) return false;
         if (!Objects.equals(username, server.username)) return false;
         // We can't really test the password as it may be obfuscated
         if (!Objects.equals(protocol, server.protocol)) return false;
+        if (!Objects.equals(changeDetection, server.changeDetection)) return false;
+        if (!Objects.equals(fullScanInterval, server.fullScanInterval)) return false;
         return Objects.equals(pemPath, server.pemPath);
 
     }
@@ -175,6 +257,10 @@ public class Server {
         result = 31 * result + (username != null ? username.hashCode() : 0);
         result = 31 * result + (protocol != null ? protocol.hashCode() : 0);
         result = 31 * result + (pemPath != null ? pemPath.hashCode() : 0);
+        result = 31 * result + maxConnections;
+        result = 31 * result + maxSessions;
+        result = 31 * result + (changeDetection != null ? changeDetection.hashCode() : 0);
+        result = 31 * result + (fullScanInterval != null ? fullScanInterval.hashCode() : 0);
         return result;
     }
 
@@ -185,6 +271,10 @@ public class Server {
                 ", username='" + username + '\'' +
                 ", protocol='" + protocol + '\'' +
                 ", pemPath='" + pemPath + '\'' +
+                ", maxConnections=" + maxConnections +
+                ", maxSessions=" + maxSessions +
+                ", changeDetection='" + changeDetection + '\'' +
+                ", fullScanInterval=" + fullScanInterval +
                 '}';
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.settings;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
+
+import java.util.Objects;
+
+/**
+ * Settings used to share the crawl of the same directory tree between several FSCrawler nodes.
+ * The top level subdirectories are dispatched in shards and each shard is crawled by the node
+ * which owns its lease.
+ */
+public class Sharding {
+    public static final int DEFAULT_SHARDS = 16;
+    public static final TimeValue DEFAULT_LEASE_DURATION = TimeValue.timeValueMinutes(1);
+
+    // Is the sharded crawl enabled
+    private boolean enabled = false;
+    // Name of this node. Defaults to the host name.
+    private String node;
+    // Number of shards the top level subdirectories are dispatched in
+    private int shards = DEFAULT_SHARDS;
+    // A lease which has not been renewed within this duration can be taken by another node
+    private TimeValue leaseDuration = DEFAULT_LEASE_DURATION;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = false;
+        private String node;
+        private int shards = DEFAULT_SHARDS;
+        private TimeValue leaseDuration = DEFAULT_LEASE_DURATION;
+
+        public Builder setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public Builder setNode(String node) {
+            this.node = node;
+            return this;
+        }
+
+        public Builder setShards(int shards) {
+            this.shards = shards;
+            return this;
+        }
+
+        public Builder setLeaseDuration(TimeValue leaseDuration) {
+            this.leaseDuration = leaseDuration;
+            return this;
+        }
+
+        public Sharding build() {
+            return new Sharding(enabled, node, shards, leaseDuration);
+        }
+    }
+
+    public Sharding( ) {
+
+    }
+
+    private Sharding(boolean enabled, String node, int shards, TimeValue leaseDuration) {
+        this.enabled = enabled;
+        this.node = node;
+        this.shards = shards;
+        this.leaseDuration = leaseDuration;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public TimeValue getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public void setLeaseDuration(TimeValue leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Sharding sharding = (Sharding) o;
+        return enabled == sharding.enabled &&
+                shards == sharding.shards &&
+                Objects.equals(node, sharding.node) &&
+                Objects.equals(leaseDuration, sharding.leaseDuration);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(enabled, node, shards, leaseDuration);
+    }
+
+    @Override
+    public String toString() {
+        return "Sharding{" + "enabled=" + enabled +
+                ", node='" + node + '\'' +
+                ", shards=" + shards +
+                ", leaseDuration=" + leaseDuration +
+                '}';
+    }
+}
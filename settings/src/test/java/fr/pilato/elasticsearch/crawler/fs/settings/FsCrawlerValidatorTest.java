@@ -19,9 +19,15 @@
 
 package fr.pilato.elasticsearch.crawler.fs.settings;
 
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
 import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.INDEX_SUFFIX_FOLDER;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasItem;
@@ -58,6 +64,36 @@ public class FsCrawlerValidatorTest extends AbstractFSCrawlerTestCase {
         settings = buildSettings(Fs.builder().setChecksum("FSCRAWLER").build(), null);
         assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
 
+        // Checking the id hash algorithm
+        settings = buildSettings(Fs.builder().setIdHash("FSCRAWLER").build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
+        settings = buildSettings(Fs.builder().setIdHash(SignTool.MURMUR3_128).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+
+        // Checking that the metadata only mode never reads the files
+        settings = buildSettings(Fs.builder()
+                .setMetadataOnly(true)
+                .setStoreSource(true)
+                .setChecksum("MD5")
+                .setThreadPerFile(true)
+                .setPipeline(Pipeline.builder().setEnabled(true).build())
+                .build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().isIndexContent(), is(false));
+        assertThat(settings.getFs().isStoreSource(), is(false));
+        assertThat(settings.getFs().getChecksum(), nullValue());
+        assertThat(settings.getFs().isThreadPerFile(), is(false));
+        assertThat(settings.getFs().getPipeline().isEnabled(), is(false));
+        assertThat(settings.getFs().getContentTypeDetection(), is(Fs.CONTENT_TYPE_DETECTION.EXTENSION));
+
+        // Checking the content type detection
+        settings = buildSettings(Fs.builder().setMetadataOnly(true).setContentTypeDetection("FSCRAWLER").build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
+
+        // Checking that we can not index json in the metadata only mode
+        settings = buildSettings(Fs.builder().setMetadataOnly(true).setJsonSupport(true).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
+
         // Checking protocol
         settings = buildSettings(null, Server.builder().setProtocol("FSCRAWLER").build());
         assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
@@ -70,6 +106,43 @@ public class FsCrawlerValidatorTest extends AbstractFSCrawlerTestCase {
         settings = buildSettings(null, Server.builder().setProtocol(Server.PROTOCOL.FTP).build());
         assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
 
+        // Checking that we open at least one connection to the server
+        settings = buildSettings(null, Server.builder()
+                .setProtocol(Server.PROTOCOL.FTP)
+                .setUsername("dadoonet")
+                .setMaxConnections(0)
+                .setMaxSessions(0)
+                .build());
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getServer().getMaxConnections(), is(1));
+        assertThat(settings.getServer().getMaxSessions(), is(1));
+
+        // Checking the change detection
+        settings = buildSettings(null, Server.builder()
+                .setProtocol(Server.PROTOCOL.SSH)
+                .setUsername("dadoonet")
+                .setChangeDetection("FSCRAWLER")
+                .build());
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
+        settings = buildSettings(null, Server.builder()
+                .setProtocol(Server.PROTOCOL.SSH)
+                .setUsername("dadoonet")
+                .setChangeDetection(Server.CHANGE_DETECTION.FIND)
+                .setFullScanInterval(TimeValue.timeValueMillis(0))
+                .build());
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getServer().getChangeDetection(), is(Server.CHANGE_DETECTION.FIND));
+        assertThat(settings.getServer().getFullScanInterval(), is(Server.DEFAULT_FULL_SCAN_INTERVAL));
+
+        // Checking that only SSH can find the changes on the server
+        settings = buildSettings(null, Server.builder()
+                .setProtocol(Server.PROTOCOL.FTP)
+                .setUsername("dadoonet")
+                .setChangeDetection(Server.CHANGE_DETECTION.FIND)
+                .build());
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getServer().getChangeDetection(), is(Server.CHANGE_DETECTION.LIST));
+
         // Checking That we don't try to do both xml and json
         settings = buildSettings(Fs.builder().setJsonSupport(true).setXmlSupport(true).build(), null);
         assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
@@ -82,6 +155,97 @@ public class FsCrawlerValidatorTest extends AbstractFSCrawlerTestCase {
         settings = buildSettings(Fs.builder().setIndexContent(false).setJsonSupport(true).build(), null);
         assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
 
+        // Checking that we fall back to one walker thread
+        settings = buildSettings(Fs.builder().setWalkerThreads(0).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getWalkerThreads(), is(1));
+
+        // Checking that we fall back to the default number of parsing threads
+        settings = buildSettings(Fs.builder().setMaxParsingThreads(0).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getMaxParsingThreads(), is(Fs.DEFAULT_MAX_PARSING_THREADS));
+
+        // Checking that we fall back to the default number of Tika parsers
+        settings = buildSettings(Fs.builder().setParserPoolSize(0).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getParserPoolSize(), is(Fs.DEFAULT_PARSER_POOL_SIZE));
+
+        // Checking that we can not watch a remote server
+        settings = buildSettings(Fs.builder().setWatch(true).build(), Server.builder()
+                .setProtocol(Server.PROTOCOL.SSH)
+                .setUsername("dadoonet")
+                .build());
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().isWatch(), is(false));
+
+        // Checking that skipping the unchanged folders enables the inventory
+        settings = buildSettings(Fs.builder().setSkipUnchangedFolders(true).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().isInventory(), is(true));
+
+        // Checking that a non positive checkpoint interval disables the checkpoints
+        settings = buildSettings(Fs.builder().setCheckpointInterval(TimeValue.timeValueMillis(0)).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getCheckpointInterval(), nullValue());
+
+        // Checking that we fall back to valid pipeline settings
+        settings = buildSettings(Fs.builder().setPipeline(Pipeline.builder()
+                .setReadThreads(0)
+                .setParseThreads(-1)
+                .setQueueSize(0)
+                .build()).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getPipeline().getReadThreads(), is(1));
+        assertThat(settings.getFs().getPipeline().getParseThreads(), is(Pipeline.DEFAULT_PARSE_THREADS));
+        assertThat(settings.getFs().getPipeline().getQueueSize(), is(Pipeline.DEFAULT_QUEUE_SIZE));
+
+        // Checking that we fall back to valid sharding settings
+        settings = buildSettings(Fs.builder().setWatch(true).setSharding(Sharding.builder()
+                .setEnabled(true)
+                .setShards(0)
+                .setLeaseDuration(TimeValue.timeValueMillis(10))
+                .build()).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getSharding().getShards(), is(1));
+        assertThat(settings.getFs().getSharding().getLeaseDuration(), is(Sharding.DEFAULT_LEASE_DURATION));
+        assertThat(settings.getFs().getSharding().getNode(), notNullValue());
+        assertThat(settings.getFs().isWatch(), is(false));
+
+        // Checking that we fall back to valid fork settings
+        settings = buildSettings(Fs.builder().setFork(Fork.builder()
+                .setEnabled(true)
+                .setWorkers(0)
+                .setHeapSize(null)
+                .setTimeout(TimeValue.timeValueMillis(10))
+                .setMaxDocuments(0)
+                .build()).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getFork().getWorkers(), is(1));
+        assertThat(settings.getFs().getFork().getHeapSize(), is(Fork.DEFAULT_HEAP_SIZE));
+        assertThat(settings.getFs().getFork().getTimeout(), is(Fork.DEFAULT_TIMEOUT));
+        assertThat(settings.getFs().getFork().getMaxDocuments(), is(Fork.DEFAULT_MAX_DOCUMENTS));
+
+        // Checking that we ignore the extraction deadlines which are not positive
+        Map<String, TimeValue> extractionTimeouts = new HashMap<>();
+        extractionTimeouts.put("application/pdf", TimeValue.timeValueSeconds(0));
+        extractionTimeouts.put("image/*", TimeValue.timeValueMinutes(5));
+        settings = buildSettings(Fs.builder()
+                .setExtractionTimeout(TimeValue.timeValueMillis(0))
+                .setExtractionTimeouts(extractionTimeouts)
+                .build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getExtractionTimeout(), nullValue());
+        assertThat(settings.getFs().getExtractionTimeouts(), is(Map.of("image/*", TimeValue.timeValueMinutes(5))));
+
+        // Checking that we fall back to valid extraction cache settings
+        settings = buildSettings(Fs.builder().setExtractionCache(ExtractionCache.builder()
+                .setEnabled(true)
+                .setMaxSize(new ByteSizeValue(0))
+                .build()).build(), null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().getExtractionCache().getPath(), is(ExtractionCache.DEFAULT_PATH));
+        assertThat(settings.getFs().getExtractionCache().getMaxSize(), is(ExtractionCache.DEFAULT_MAX_SIZE));
+
         // Checking with Rest but no Rest settings
         settings = buildSettings(null, null);
         assertThat(FsCrawlerValidator.validateSettings(logger, settings, true), is(false));
@@ -146,6 +146,9 @@ public class FsMappingTest extends AbstractFSCrawlerMetadataTestCase {
                 "          \"checksum\": {\n" +
                 "            \"type\": \"keyword\"\n" +
                 "          },\n" +
+                "          \"extraction_status\": {\n" +
+                "            \"type\": \"keyword\"\n" +
+                "          },\n" +
                 "          \"url\": {\n" +
                 "            \"type\": \"keyword\",\n" +
                 "            \"index\": false\n" +
@@ -462,6 +465,9 @@ public class FsMappingTest extends AbstractFSCrawlerMetadataTestCase {
                 "          \"checksum\": {\n" +
                 "            \"type\": \"keyword\"\n" +
                 "          },\n" +
+                "          \"extraction_status\": {\n" +
+                "            \"type\": \"keyword\"\n" +
+                "          },\n" +
                 "          \"url\": {\n" +
                 "            \"type\": \"keyword\",\n" +
                 "            \"index\": false\n" +
@@ -895,6 +901,9 @@ public class FsMappingTest extends AbstractFSCrawlerMetadataTestCase {
                 "          \"checksum\": {\n" +
                 "            \"type\": \"keyword\"\n" +
                 "          },\n" +
+                "          \"extraction_status\": {\n" +
+                "            \"type\": \"keyword\"\n" +
+                "          },\n" +
                 "          \"url\": {\n" +
                 "            \"type\": \"keyword\",\n" +
                 "            \"index\": false\n" +
@@ -23,6 +23,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeUnit;
 import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
 import fr.pilato.elasticsearch.crawler.fs.framework.Percentage;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
 import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
 import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
 import org.junit.Test;
@@ -30,6 +31,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -53,6 +55,47 @@ public class FsSettingsParserTest extends AbstractFSCrawlerTestCase {
             .setUpdateRate(TimeValue.timeValueMinutes(5))
             .setIndexContent(true)
             .setOcr(OCR_FULL)
+            .setWalkerThreads(4)
+            .setThreadPerFile(true)
+            .setMaxParsingThreads(2)
+            .setWatch(true)
+            .setWatchDelay(TimeValue.timeValueMillis(500))
+            .setInventory(true)
+            .setSkipUnchangedFolders(true)
+            .setCheckpointInterval(TimeValue.timeValueMinutes(5))
+            .setPipeline(Pipeline.builder()
+                    .setEnabled(true)
+                    .setReadThreads(2)
+                    .setParseThreads(8)
+                    .setQueueSize(500)
+                    .setBufferSize(ByteSizeValue.parseBytesSizeValue("1mb"))
+                    .build())
+            .setSharding(Sharding.builder()
+                    .setEnabled(true)
+                    .setNode("node-1")
+                    .setShards(32)
+                    .setLeaseDuration(TimeValue.timeValueSeconds(30))
+                    .build())
+            .setIdHash(SignTool.MURMUR3_128)
+            .setMetadataOnly(true)
+            .setContentTypeDetection(Fs.CONTENT_TYPE_DETECTION.MAGIC)
+            .setParserPoolSize(3)
+            .setFork(Fork.builder()
+                    .setEnabled(true)
+                    .setWorkers(4)
+                    .setHeapSize(ByteSizeValue.parseBytesSizeValue("1gb"))
+                    .setTimeout(TimeValue.timeValueMinutes(2))
+                    .setMaxDocuments(100)
+                    .setJavaCommand("/usr/bin/java")
+                    .build())
+            .setExtractionTimeout(TimeValue.timeValueSeconds(30))
+            .setExtractionTimeouts(Map.of("application/pdf", TimeValue.timeValueMinutes(2),
+                    "image/*", TimeValue.timeValueMinutes(10)))
+            .setExtractionCache(ExtractionCache.builder()
+                    .setEnabled(true)
+                    .setPath("/var/cache/fscrawler")
+                    .setMaxSize(ByteSizeValue.parseBytesSizeValue("10gb"))
+                    .build())
             .build();
     private static final Elasticsearch ELASTICSEARCH_EMPTY = Elasticsearch.builder().build();
     private static final Elasticsearch ELASTICSEARCH_FULL = Elasticsearch.builder()
@@ -157,6 +200,39 @@ public class FsSettingsParserTest extends AbstractFSCrawlerTestCase {
         assertThat(settings.getFs().isRemoveDeleted(), is(true));
         assertThat(settings.getFs().isStoreSource(), is(false));
         assertThat(settings.getFs().isXmlSupport(), is(false));
+        assertThat(settings.getFs().getWalkerThreads(), is(1));
+        assertThat(settings.getFs().isThreadPerFile(), is(false));
+        assertThat(settings.getFs().getMaxParsingThreads(), is(Fs.DEFAULT_MAX_PARSING_THREADS));
+        assertThat(settings.getFs().isWatch(), is(false));
+        assertThat(settings.getFs().getWatchDelay(), is(TimeValue.timeValueSeconds(1)));
+        assertThat(settings.getFs().isInventory(), is(false));
+        assertThat(settings.getFs().isSkipUnchangedFolders(), is(false));
+        assertThat(settings.getFs().getCheckpointInterval(), nullValue());
+        assertThat(settings.getFs().getPipeline(), notNullValue());
+        assertThat(settings.getFs().getPipeline().isEnabled(), is(false));
+        assertThat(settings.getFs().getPipeline().getReadThreads(), is(1));
+        assertThat(settings.getFs().getPipeline().getParseThreads(), is(Pipeline.DEFAULT_PARSE_THREADS));
+        assertThat(settings.getFs().getPipeline().getQueueSize(), is(100));
+        assertThat(settings.getFs().getPipeline().getBufferSize(), is(new ByteSizeValue(10, ByteSizeUnit.MB)));
+        assertThat(settings.getFs().getSharding(), notNullValue());
+        assertThat(settings.getFs().getSharding().isEnabled(), is(false));
+        assertThat(settings.getFs().getSharding().getNode(), nullValue());
+        assertThat(settings.getFs().getSharding().getShards(), is(Sharding.DEFAULT_SHARDS));
+        assertThat(settings.getFs().getSharding().getLeaseDuration(), is(TimeValue.timeValueMinutes(1)));
+        assertThat(settings.getFs().getParserPoolSize(), is(Fs.DEFAULT_PARSER_POOL_SIZE));
+        assertThat(settings.getFs().getFork(), notNullValue());
+        assertThat(settings.getFs().getFork().isEnabled(), is(false));
+        assertThat(settings.getFs().getFork().getWorkers(), is(Fork.DEFAULT_WORKERS));
+        assertThat(settings.getFs().getFork().getHeapSize(), is(Fork.DEFAULT_HEAP_SIZE));
+        assertThat(settings.getFs().getFork().getTimeout(), is(Fork.DEFAULT_TIMEOUT));
+        assertThat(settings.getFs().getFork().getMaxDocuments(), is(Fork.DEFAULT_MAX_DOCUMENTS));
+        assertThat(settings.getFs().getFork().getJavaCommand(), nullValue());
+        assertThat(settings.getFs().getExtractionTimeout(), nullValue());
+        assertThat(settings.getFs().getExtractionTimeouts(), nullValue());
+        assertThat(settings.getFs().getExtractionCache(), notNullValue());
+        assertThat(settings.getFs().getExtractionCache().isEnabled(), is(false));
+        assertThat(settings.getFs().getExtractionCache().getPath(), nullValue());
+        assertThat(settings.getFs().getExtractionCache().getMaxSize(), is(ExtractionCache.DEFAULT_MAX_SIZE));
     }
 
     @Test
@@ -0,0 +1,58 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MimeTypes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Detect the content type of a document without parsing it
+ */
+public class ContentTypeDetector {
+
+    private final static Logger logger = LogManager.getLogger(ContentTypeDetector.class);
+
+    // Number of bytes we read at most to find the magic bytes
+    public static final int HEADER_SIZE = 4096;
+
+    private static final MimeTypes mimeTypes = MimeTypes.getDefaultMimeTypes();
+
+    /**
+     * Detect the content type of a file
+     * @param filename      the file name
+     * @param inputStream   the content of the file if we can use its first bytes. Only the first bytes are read.
+     * @return the content type, like "application/pdf"
+     */
+    public static String detect(String filename, InputStream inputStream) throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, filename);
+        InputStream header = inputStream == null ? null : new ByteArrayInputStream(inputStream.readNBytes(HEADER_SIZE));
+        String contentType = mimeTypes.detect(header, metadata).toString();
+        logger.trace("Content type of [{}] is [{}]", filename, contentType);
+        return contentType;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
+import org.apache.tika.exception.TikaException;
+
+/**
+ * Thrown when the parser did not extract a document before the deadline. We gave up on the parser,
+ * but we still have the text it extracted so far.
+ */
+public class ExtractionTimeoutException extends TikaException {
+
+    private final TimeValue timeout;
+    private final String text;
+
+    ExtractionTimeoutException(String resourceName, TimeValue timeout, String text) {
+        super("Extraction of [" + resourceName + "] did not end after [" + timeout + "]");
+        this.timeout = timeout;
+        this.text = text;
+    }
+
+    public TimeValue getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the text extracted before the deadline
+     */
+    public String getText() {
+        return text;
+    }
+}
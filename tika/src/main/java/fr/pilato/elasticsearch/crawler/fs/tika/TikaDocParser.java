@@ -20,6 +20,7 @@
 package fr.pilato.elasticsearch.crawler.fs.tika;
 
 import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.beans.File;
 import fr.pilato.elasticsearch.crawler.fs.framework.FSCrawlerLogger;
 import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
 import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
@@ -36,6 +37,8 @@ import org.apache.tika.metadata.TikaCoreProperties;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -48,7 +51,7 @@ import java.util.function.Function;
 import static fr.pilato.elasticsearch.crawler.fs.framework.FSCrawlerLogger.*;
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.computeVirtualPathName;
 import static fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance.extractText;
-import static fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance.langDetector;
+import static fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance.detectLanguages;
 
 /**
  * Parse a binary document and generate a FSCrawler Doc
@@ -92,12 +95,55 @@ public class TikaDocParser {
         }
 
         if (fsSettings.getFs().isIndexContent()) {
+            boolean timedOut = false;
+            String checksum = null;
+            Path spooled = null;
+            TikaExtractionCache.SpoolException spoolFailure = null;
+            String cacheKey = null;
+
             try {
-                // Set the maximum length of strings returned by the parseToString method, -1 sets no limit
-                logger.trace("Beginning Tika extraction");
-                parsedContent = extractText(fsSettings, indexedChars, inputStream, metadata);
-                logger.trace("End of Tika extraction");
+                TikaExtractionCache cache = openExtractionCache(fsSettings);
+                TikaExtractionCache.Extraction cached = null;
+                if (cache != null) {
+                    // We need the hash of the content before extracting it, so we read the whole file once
+                    MessageDigest contentDigest = newContentDigest();
+                    try {
+                        spooled = cache.spool(new DigestInputStream(inputStream, contentDigest));
+                        cacheKey = TikaExtractionCache.key(toHex(contentDigest.digest()), fsSettings.getFs(), indexedChars);
+                        if (messageDigest != null) {
+                            checksum = toHex(messageDigest.digest());
+                        }
+                        cached = cache.get(cacheKey);
+                    } catch (TikaExtractionCache.SpoolException e) {
+                        logger.warn("Can not use the extraction cache for [{}]. Extracting it without the cache: {}",
+                                fullFilename, e.getMessage());
+                        spoolFailure = e;
+                        inputStream = e.getContent();
+                    }
+                }
+                if (cached != null) {
+                    logger.debug("Reusing the text extracted from a file with the same content as [{}]", fullFilename);
+                    cached.copyMetadataTo(metadata);
+                    parsedContent = cached.getContent();
+                } else if (spooled != null) {
+                    logger.trace("Beginning Tika extraction");
+                    try (InputStream spooledStream = Files.newInputStream(spooled)) {
+                        parsedContent = extractText(fsSettings, indexedChars, spooledStream, metadata);
+                    }
+                    logger.trace("End of Tika extraction");
+                    cache.put(cacheKey, parsedContent, metadata);
+                } else {
+                    // Set the maximum length of strings returned by the parseToString method, -1 sets no limit
+                    logger.trace("Beginning Tika extraction");
+                    parsedContent = extractText(fsSettings, indexedChars, inputStream, metadata);
+                    logger.trace("End of Tika extraction");
+                }
             } catch (Throwable e) {
+                if (e instanceof ExtractionTimeoutException) {
+                    // We index what we extracted before the deadline
+                    timedOut = true;
+                    parsedContent = ((ExtractionTimeoutException) e).getText();
+                }
                 // Build a message from embedded errors
                 Throwable current = e;
                 StringBuilder sb = new StringBuilder();
@@ -109,20 +155,36 @@ public class TikaDocParser {
                     }
                 }
 
-                try {
-                    FSCrawlerLogger.documentError(
-                            fsSettings.getFs().isFilenameAsId() ? filename : SignTool.sign(fullFilename),
-                            computeVirtualPathName(fsSettings.getFs().getUrl(), fullFilename),
-                            sb.toString());
-                } catch (NoSuchAlgorithmException ignored) { }
+                FSCrawlerLogger.documentError(
+                        fsSettings.getFs().isFilenameAsId() ? filename :
+                                SignTool.getInstance(fsSettings.getFs().getIdHash()).hash(fullFilename),
+                        computeVirtualPathName(fsSettings.getFs().getUrl(), fullFilename),
+                        sb.toString());
                 logger.warn("Failed to extract [{}] characters of text for [{}]: {}", indexedChars, fullFilename, sb.toString());
                 logger.debug("Failed to extract [" + indexedChars + "] characters of text for [" + fullFilename + "]", e);
+            } finally {
+                if (spooled != null) {
+                    Files.deleteIfExists(spooled);
+                }
+                if (spoolFailure != null) {
+                    spoolFailure.discard();
+                }
             }
 
             // Adding what we found to the document we want to index
 
             // File
-            doc.getFile().setContentType(metadata.get(Metadata.CONTENT_TYPE));
+            if (timedOut) {
+                // The parser did not read the whole file, so we can't compute its checksum
+                if (messageDigest != null && checksum == null) {
+                    messageDigest.reset();
+                }
+                // The parser did not give us the content type, so we guess it from the file name
+                doc.getFile().setContentType(ContentTypeDetector.detect(filename, null));
+                doc.getFile().setExtractionStatus(File.EXTRACTION_STATUS.TIMEOUT);
+            } else {
+                doc.getFile().setContentType(metadata.get(Metadata.CONTENT_TYPE));
+            }
 
             // We only add `indexed_chars` if we have other value than default or -1
             if (fsSettings.getFs().getIndexedChars() != null && fsSettings.getFs().getIndexedChars().value() != -1) {
@@ -135,14 +197,11 @@ public class TikaDocParser {
                     doc.getFile().setFilesize(Long.parseLong(metadata.get(Metadata.CONTENT_LENGTH)));
                 }
             }
-            if (messageDigest != null) {
-                byte[] digest = messageDigest.digest();
-                StringBuilder result = new StringBuilder();
-                // Convert to Hexa
-                for (byte aDigest : digest) {
-                    result.append(Integer.toString((aDigest & 0xff) + 0x100, 16).substring(1));
-                }
-                doc.getFile().setChecksum(result.toString());
+            if (messageDigest != null && !timedOut && checksum == null) {
+                checksum = toHex(messageDigest.digest());
+            }
+            if (checksum != null) {
+                doc.getFile().setChecksum(checksum);
             }
             // File
 
@@ -169,7 +228,7 @@ public class TikaDocParser {
                 if (lang != null) {
                     return lang;
                 } else if (fsSettings.getFs().isLangDetect() && finalParsedContent != null) {
-                    List<LanguageResult> languages = langDetector().detectAll(finalParsedContent);
+                    List<LanguageResult> languages = detectLanguages(finalParsedContent);
                     if (!languages.isEmpty()) {
                         LanguageResult language = languages.get(0);
                         logger.trace("Main detected language: [{}]", language);
@@ -226,6 +285,36 @@ public class TikaDocParser {
         // End of our document
     }
 
+    /**
+     * @return the extraction cache or null if it is disabled or if we can not open it
+     */
+    private static TikaExtractionCache openExtractionCache(FsSettings fsSettings) {
+        try {
+            return TikaExtractionCache.getInstance(fsSettings.getFs().getExtractionCache());
+        } catch (IOException e) {
+            logger.warn("Can not open the extraction cache [{}]. Extracting without the cache: {}",
+                    fsSettings.getFs().getExtractionCache().getPath(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance(TikaExtractionCache.DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder result = new StringBuilder();
+        // Convert to Hexa
+        for (byte aDigest : digest) {
+            result.append(Integer.toString((aDigest & 0xff) + 0x100, 16).substring(1));
+        }
+        return result.toString();
+    }
+
     private static <T> void setMeta(String filename, Metadata metadata, Property property, Consumer<T> setter, Function<String,T> transformer) {
         String sMeta = metadata.get(property);
         try {
@@ -0,0 +1,413 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.settings.ExtractionCache;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil.mapper;
+
+/**
+ * An on disk cache of the texts and metadata extracted by Tika, addressed by the hash of the content of
+ * the files. Jobs which use the same directory share the same instance, and the entries are written
+ * atomically so several FSCrawler processes can also use the same directory. When the cache grows bigger
+ * than its maximum size, the least recently used entries are removed.
+ */
+public class TikaExtractionCache {
+
+    private static final Logger logger = LogManager.getLogger(TikaExtractionCache.class);
+
+    static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String ENTRY_SUFFIX = ".json.gz";
+    // Temporary files older than this have been left by a process which died
+    private static final long STALE_TMP_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final Map<Path, TikaExtractionCache> instances = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final Path tmpDir;
+    private final long maxSize;
+
+    // Size of the entries on disk, from the least recently used to the most recently used
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    /**
+     * Get the cache for the given settings
+     * @param extractionCache the extraction cache settings
+     * @return the cache or null if the cache is disabled
+     * @throws IOException if the cache directory can not be read or created
+     */
+    static TikaExtractionCache getInstance(ExtractionCache extractionCache) throws IOException {
+        if (extractionCache == null || !extractionCache.isEnabled()) {
+            return null;
+        }
+        Path root = Paths.get(extractionCache.getPath()).toAbsolutePath().normalize();
+        try {
+            return instances.computeIfAbsent(root, path -> {
+                try {
+                    return new TikaExtractionCache(path, extractionCache.getMaxSize().getBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    TikaExtractionCache(Path root, long maxSize) throws IOException {
+        this.root = root;
+        this.tmpDir = root.resolve("tmp");
+        this.maxSize = maxSize;
+        Files.createDirectories(tmpDir);
+
+        try (Stream<Path> files = Files.list(tmpDir)) {
+            long staleBefore = System.currentTimeMillis() - STALE_TMP_FILE_MILLIS;
+            files.filter(file -> lastModified(file) < staleBefore).forEach(TikaExtractionCache::deleteQuietly);
+        }
+
+        // We read the entries which have been written by previous runs or by other processes
+        List<Path> existing;
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            existing = files
+                    .filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .sorted(Comparator.comparingLong(TikaExtractionCache::lastModified))
+                    .collect(Collectors.toList());
+        }
+        synchronized (this) {
+            for (Path file : existing) {
+                String name = file.getFileName().toString();
+                record(name.substring(0, name.length() - ENTRY_SUFFIX.length()), file.toFile().length());
+            }
+            evict();
+        }
+        logger.debug("Extraction cache [{}] opened with [{}] entries ([{}] bytes)", root, existing.size(), size);
+    }
+
+    /**
+     * Compute the key of an extraction. The settings which change the extracted text are part of the key,
+     * so jobs which extract the documents differently do not share their entries.
+     * @param contentHash   the hash of the content of the file
+     * @param fs            the fs settings
+     * @param indexedChars  the maximum number of characters extracted
+     * @return the key
+     */
+    static String key(String contentHash, Fs fs, int indexedChars) {
+        int variant = Objects.hash(indexedChars, fs.getOcr(), fs.getTikaConfigPath(), fs.getContentTypeDetection());
+        return contentHash + "-" + String.format(Locale.ROOT, "%08x", variant);
+    }
+
+    /**
+     * Copy a stream to a temporary file, so we can read it again once we computed its hash
+     * @param stream    the stream to copy
+     * @return the temporary file. It must be removed by the caller.
+     * @throws SpoolException if the file can not be written. The content can still be read from the exception.
+     * @throws IOException if the stream can not be read
+     */
+    Path spool(InputStream stream) throws IOException {
+        Path file;
+        OutputStream os;
+        try {
+            file = Files.createTempFile(tmpDir, "spool-", ".tmp");
+        } catch (IOException e) {
+            throw new SpoolException(e, null, stream);
+        }
+        try {
+            os = Files.newOutputStream(file);
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw new SpoolException(e, null, stream);
+        }
+
+        long written = 0;
+        byte[] buffer = new byte[8192];
+        try (OutputStream out = os) {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                try {
+                    out.write(buffer, 0, read);
+                } catch (IOException e) {
+                    throw replay(e, file, written, buffer, read, stream);
+                }
+                written += read;
+            }
+        } catch (SpoolException e) {
+            throw e;
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Give back the content of a stream we could not fully copy: what we copied so far, what we just read
+     * and the rest of the stream. The copy is removed once it has been closed.
+     */
+    private static SpoolException replay(IOException cause, Path file, long written, byte[] buffer, int read,
+                                         InputStream stream) throws IOException {
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                // A failed write might have partially written the buffer
+                channel.truncate(written);
+            }
+            InputStream copied = Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+            return new SpoolException(cause, copied, new SequenceInputStream(Collections.enumeration(List.of(copied,
+                    new ByteArrayInputStream(Arrays.copyOf(buffer, read)), stream))));
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Get an extraction from the cache
+     * @param key   the key of the extraction
+     * @return the extraction or null if it's not in the cache
+     */
+    Extraction get(String key) {
+        Path file = entryPath(key);
+        Extraction extraction;
+        long fileSize;
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(file))) {
+            extraction = mapper.readValue(is, Extraction.class);
+            fileSize = Files.size(file);
+        } catch (NoSuchFileException e) {
+            forget(key);
+            return null;
+        } catch (IOException e) {
+            logger.debug("Can not read the extraction cache entry [{}]. Removing it.", file, e);
+            forget(key);
+            deleteQuietly(file);
+            return null;
+        }
+
+        // So other processes and the next runs know that this entry has been used recently
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.trace("Can not touch the extraction cache entry [{}]: {}", file, e.getMessage());
+        }
+        synchronized (this) {
+            record(key, fileSize);
+        }
+        return extraction;
+    }
+
+    /**
+     * Add an extraction to the cache. Failing to write it is not an error: we will just extract the text again.
+     * @param key       the key of the extraction
+     * @param content   the extracted text
+     * @param metadata  the extracted metadata
+     */
+    void put(String key, String content, Metadata metadata) {
+        Path file = entryPath(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(tmpDir, "entry-", ".tmp");
+            try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                mapper.writeValue(os, new Extraction(content, metadata));
+            }
+            long fileSize = Files.size(tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                record(key, fileSize);
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Can not add [{}] to the extraction cache [{}]: {}", key, root, e.getMessage());
+            logger.debug("Can not add [" + key + "] to the extraction cache [" + root + "]", e);
+            if (tmp != null) {
+                deleteQuietly(tmp);
+            }
+        }
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized int count() {
+        return entries.size();
+    }
+
+    private Path entryPath(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    private void record(String key, long fileSize) {
+        Long previous = entries.put(key, fileSize);
+        size += fileSize - (previous == null ? 0 : previous);
+    }
+
+    private synchronized void forget(String key) {
+        Long previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            logger.trace("Removing [{}] from the extraction cache", eldest.getKey());
+            deleteQuietly(entryPath(eldest.getKey()));
+        }
+    }
+
+    private static long lastModified(Path file) {
+        return file.toFile().lastModified();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.trace("Can not remove [{}]: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * The cache could not copy a stream. The stream has been partially read but its whole content
+     * is still available from {@link #getContent()}.
+     */
+    static class SpoolException extends IOException {
+        private final transient InputStream copied;
+        private final transient InputStream content;
+
+        private SpoolException(IOException cause, InputStream copied, InputStream content) {
+            super(cause.getMessage(), cause);
+            this.copied = copied;
+            this.content = content;
+        }
+
+        /**
+         * @return the whole content of the stream we tried to copy
+         */
+        InputStream getContent() {
+            return content;
+        }
+
+        /**
+         * Remove what we copied so far. The stream we tried to copy is left open.
+         */
+        void discard() {
+            if (copied != null) {
+                try {
+                    copied.close();
+                } catch (IOException e) {
+                    logger.trace("Can not remove the partial copy: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * The text and metadata extracted from a file
+     */
+    public static class Extraction {
+        private String content;
+        private Map<String, List<String>> metadata;
+
+        public Extraction() {
+
+        }
+
+        Extraction(String content, Metadata metadata) {
+            this.content = content;
+            this.metadata = new HashMap<>();
+            for (String name : metadata.names()) {
+                // The name of the file is not part of its content
+                if (!name.equals(TikaCoreProperties.RESOURCE_NAME_KEY)) {
+                    this.metadata.put(name, Arrays.asList(metadata.getValues(name)));
+                }
+            }
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public void setContent(String content) {
+            this.content = content;
+        }
+
+        public Map<String, List<String>> getMetadata() {
+            return metadata;
+        }
+
+        public void setMetadata(Map<String, List<String>> metadata) {
+            this.metadata = metadata;
+        }
+
+        /**
+         * Add the cached metadata to the metadata of the file we are extracting
+         * @param target    the metadata of the file
+         */
+        void copyMetadataTo(Metadata target) {
+            if (metadata != null) {
+                metadata.forEach((name, values) -> {
+                    target.remove(name);
+                    values.forEach(value -> target.add(name, value));
+                });
+            }
+        }
+    }
+}
@@ -20,8 +20,11 @@
 package fr.pilato.elasticsearch.crawler.fs.tika;
 
 
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fork;
 import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.tika.config.ServiceLoader;
@@ -30,8 +33,11 @@ import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.exception.WriteLimitReachedException;
 import org.apache.tika.exception.ZeroByteFileException;
+import org.apache.tika.fork.ForkParser;
 import org.apache.tika.language.detect.LanguageDetector;
+import org.apache.tika.language.detect.LanguageResult;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.mime.MediaTypeRegistry;
 import org.apache.tika.parser.AutoDetectParser;
@@ -44,49 +50,250 @@ import org.apache.tika.parser.ocr.TesseractOCRConfig;
 import org.apache.tika.parser.ocr.TesseractOCRParser;
 import org.apache.tika.parser.pdf.PDFParser;
 import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.ContentHandlerDecorator;
 import org.apache.tika.sax.WriteOutContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.tika.langdetect.optimaize.OptimaizeLangDetector.getDefaultLanguageDetector;
 
 /**
- * a
+ * A Tika parser and its parse context. A parse context can not be used by two extractions at the same time,
+ * so each extraction borrows an instance from a pool. The pools are shared by all the jobs running in the same
+ * JVM which have the same Tika settings (OCR settings and custom Tika configuration), whatever the thread
+ * (crawler or REST service) which extracts the text.
  */
 public class TikaInstance {
 
     private static final Logger logger = LogManager.getLogger(TikaInstance.class);
 
-    private static Parser parser;
-    private static ParseContext context;
-    private static LanguageDetector detector;
-    private static boolean ocrActivated = false;
+    private static final Map<List<Object>, Pool> pools = new ConcurrentHashMap<>();
+    // The language detector keeps the text it analyzes, so each detection borrows one. Detecting the language only
+    // needs some CPU, so we never build more detectors than we have processors, whatever the number of threads.
+    private static final DetectorPool detectors = new DetectorPool(Runtime.getRuntime().availableProcessors());
+    // Names the threads which run the extractions which have a deadline
+    private static final ThreadFactory extractorThreads = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "fscrawler-tika-extractor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private Parser parser;
+    private ParseContext context;
+    private boolean ocrActivated;
 
     /* For tests only */
     public static void reloadTika() {
-        parser = null;
-        context = null;
-        ocrActivated = false;
+        close();
+    }
+
+    /**
+     * Stop the child JVMs started to extract the documents. It must be called when the crawler stops.
+     * The parsers which are still in use are stopped when they are given back. New pools are created
+     * if we extract more documents afterwards.
+     */
+    public static void close() {
+        for (List<Object> key : pools.keySet()) {
+            Pool pool = pools.remove(key);
+            if (pool != null) {
+                pool.close();
+            }
+        }
     }
 
     /**
-     * This initializes if needed a parser and a parse context for tika
+     * This gets or initializes the pool of parsers for the given settings.
+     * It can be called concurrently when the crawler runs with more than one walker thread or more than one job.
      * @param fs fs settings
      */
-    private static void initTika(Fs fs) {
-        ocrActivated = fs.getOcr().isEnabled();
-        initContext(fs);
-        initParser(fs);
+    private static Pool getPool(Fs fs) {
+        return pools.computeIfAbsent(Arrays.asList(fs.getTikaConfigPath(), fs.getOcr(), fs.getParserPoolSize(), fs.getFork()),
+                key -> new Pool(fs));
+    }
+
+    private static TikaInstance newInstance(Fs fs) {
+        TikaInstance instance = new TikaInstance();
+        instance.ocrActivated = fs.getOcr().isEnabled();
+        instance.initContext(fs);
+        instance.initParser(fs);
+        if (fs.getFork() != null && fs.getFork().isEnabled()) {
+            instance.parser = newForkParser(fs.getFork(), instance.parser);
+        }
+        return instance;
+    }
+
+    /**
+     * Build a parser which sends the documents to a child JVM where they are extracted by the given parser.
+     * The child JVM is started on the first document and restarted when it has been killed because it
+     * crashed, ran out of memory, exceeded the timeout or extracted fork.max_documents documents.
+     */
+    static ForkParser newForkParser(Fork fork, Parser parser) {
+        ForkParser forkParser = new ForkParser(TikaInstance.class.getClassLoader(), parser);
+        // Each instance of the pool has its own child JVM
+        forkParser.setPoolSize(1);
+        List<String> command = new ArrayList<>();
+        command.add(fork.getJavaCommand() != null ? fork.getJavaCommand() :
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + fork.getHeapSize().getBytes() / 1024 + "k");
+        command.add("-Djava.awt.headless=true");
+        forkParser.setJavaCommand(command);
+        forkParser.setServerParseTimeoutMillis(fork.getTimeout().millis());
+        forkParser.setMaxFilesProcessedPerServer(fork.getMaxDocuments());
+        logger.debug("Documents will be extracted in a child JVM started with {}", command);
+        return forkParser;
+    }
+
+    /**
+     * The parsers are only created when all the existing ones are in use, up to fs.parser_pool_size
+     * or fs.fork.workers when the documents are extracted in child JVMs.
+     * Then we wait for a parser to be given back.
+     */
+    private static class Pool {
+        private final Fs fs;
+        private final int size;
+        private final BlockingQueue<TikaInstance> idle = new LinkedBlockingQueue<>();
+        private final AtomicInteger created = new AtomicInteger();
+        private volatile boolean closed;
+        // The parsers which are still running after we gave up on them
+        private final AtomicInteger abandoned = new AtomicInteger();
+        // The abandoned parsers we did not replace because too many of them were still running
+        private final AtomicInteger missing = new AtomicInteger();
+        // Runs the extractions which have a deadline, so the caller can give up on the parsers which never end.
+        // We never run more than the parsers we have, whether they are in the pool or abandoned.
+        private final ThreadPoolExecutor extractors;
+
+        private Pool(Fs fs) {
+            this.fs = fs;
+            this.size = Math.max(1, fs.getFork() != null && fs.getFork().isEnabled() ?
+                    fs.getFork().getWorkers() : fs.getParserPoolSize());
+            // Up to size abandoned parsers are replaced, so we might have twice more parsers than the pool size
+            this.extractors = new ThreadPoolExecutor(size * 2, size * 2, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), extractorThreads);
+            this.extractors.allowCoreThreadTimeOut(true);
+        }
+
+        private TikaInstance acquire() throws InterruptedIOException {
+            TikaInstance instance = idle.poll();
+            if (instance != null) {
+                return instance;
+            }
+            if (created.getAndUpdate(count -> count < size ? count + 1 : count) < size) {
+                logger.debug("Creating Tika parser [{}/{}]", created.get(), size);
+                try {
+                    return newInstance(fs);
+                } catch (RuntimeException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+            try {
+                return idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a Tika parser");
+            }
+        }
+
+        private void release(TikaInstance instance) {
+            if (closed) {
+                discard(instance);
+                return;
+            }
+            idle.add(instance);
+            // The pool might have been closed while we were giving the parser back
+            if (closed) {
+                close();
+            }
+        }
+
+        /**
+         * Give up on a parser which is still extracting a document after the deadline. It will not come back
+         * to the pool before it ends, so we create another one in case some threads are waiting for a parser.
+         * When as many parsers as the pool size are still running after we gave up on them, we stop creating
+         * new ones: the pool shrinks until some of the abandoned parsers end.
+         */
+        private void abandon() {
+            int running = abandoned.incrementAndGet();
+            if (running > size) {
+                missing.incrementAndGet();
+                logger.warn("[{}] Tika parsers are still running after their deadline. We don't replace them anymore " +
+                        "until they end, so [{}] parsers out of [{}] can be used.", running, size - missing.get(), size);
+                return;
+            }
+            try {
+                idle.add(newInstance(fs));
+            } catch (RuntimeException e) {
+                created.decrementAndGet();
+                logger.warn("Can not replace a Tika parser which timed out: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * A parser we gave up on has ended. It takes back its place in the pool if we did not replace it.
+         */
+        private void recover(TikaInstance instance) {
+            abandoned.decrementAndGet();
+            if (missing.getAndUpdate(count -> count > 0 ? count - 1 : count) > 0) {
+                logger.debug("A Tika parser which was not replaced is back in the pool");
+                release(instance);
+            } else {
+                discard(instance);
+            }
+        }
+
+        /**
+         * Drop a parser which has been replaced in the pool, or which has been given back to a closed pool
+         */
+        private static void discard(TikaInstance instance) {
+            if (instance.parser instanceof ForkParser) {
+                ((ForkParser) instance.parser).close();
+            }
+        }
+
+        /**
+         * Stop the child JVMs of the parsers which are not in use. The other ones are stopped when they are given back.
+         */
+        private void close() {
+            closed = true;
+            TikaInstance instance;
+            while ((instance = idle.poll()) != null) {
+                discard(instance);
+            }
+        }
     }
 
-    private static void initParser(Fs fs) {
+    private void initParser(Fs fs) {
         if (parser == null) {
             if (fs.getTikaConfigPath() != null) {
                 if (!(new File(fs.getTikaConfigPath())).exists()) {
@@ -171,7 +378,7 @@ public class TikaInstance {
         }
     }
 
-    private static void initContext(Fs fs) {
+    private void initContext(Fs fs) {
         if (context == null) {
             context = new ParseContext();
             context.set(Parser.class, parser);
@@ -193,10 +400,118 @@ public class TikaInstance {
 
     static String extractText(FsSettings fsSettings, int indexedChars, InputStream stream, Metadata metadata) throws IOException,
             TikaException {
-        initTika(fsSettings.getFs());
+        Pool pool = getPool(fsSettings.getFs());
+        TimeValue timeout = getExtractionTimeout(fsSettings.getFs(), metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY));
+        if (timeout != null) {
+            return extractText(pool, indexedChars, stream, metadata, timeout);
+        }
         WriteOutContentHandler handler = new WriteOutContentHandler(indexedChars);
+        TikaInstance tika = null;
         try (stream) {
-            parser.parse(stream, new BodyContentHandler(handler), metadata, context);
+            tika = pool.acquire();
+            tika.parse(stream, new BodyContentHandler(handler), metadata, indexedChars);
+        } finally {
+            if (tika != null) {
+                pool.release(tika);
+            }
+        }
+        return handler.toString();
+    }
+
+    /**
+     * Extract the text in another thread, and give up if the parser did not end before the deadline.
+     * The parser is interrupted and stops as soon as it reads or gives some more text, but some parsers might
+     * never end. Then the parser is abandoned and another one takes its place in the pool, up to a limit.
+     * @throws ExtractionTimeoutException with the text extracted so far when the deadline is over
+     */
+    private static String extractText(Pool pool, int indexedChars, InputStream stream, Metadata metadata, TimeValue timeout)
+            throws IOException, TikaException {
+        String resourceName = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
+        WriteOutContentHandler handler = new WriteOutContentHandler(indexedChars);
+        DeadlineContentHandler deadline = new DeadlineContentHandler(new BodyContentHandler(handler));
+        DeadlineInputStream input = new DeadlineInputStream(stream);
+        // We can not read the metadata while the parser writes them, so the parser fills a copy
+        Metadata parsed = new Metadata();
+        for (String name : metadata.names()) {
+            for (String value : metadata.getValues(name)) {
+                parsed.add(name, value);
+            }
+        }
+        // Either the parser ends first and gives its instance back to the pool, or we give up first
+        AtomicBoolean done = new AtomicBoolean();
+        TikaInstance tika;
+        try {
+            tika = pool.acquire();
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+        Future<?> future = pool.extractors.submit(() -> {
+            try (input) {
+                tika.parse(input, deadline, parsed, indexedChars);
+            } finally {
+                if (done.compareAndSet(false, true)) {
+                    pool.release(tika);
+                } else {
+                    logger.debug("The extraction of [{}] ended after the deadline", resourceName);
+                    pool.recover(tika);
+                }
+            }
+            return null;
+        });
+
+        try {
+            try {
+                future.get(timeout.millis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (done.compareAndSet(false, true)) {
+                    deadline.cancel();
+                    input.cancel();
+                    future.cancel(true);
+                    pool.abandon();
+                    IOUtils.closeQuietly(stream);
+                    throw new ExtractionTimeoutException(resourceName, timeout, handler.toString());
+                }
+                // The parser ended while we were giving up
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof TikaException) {
+                throw (TikaException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new TikaException("Unexpected failure while extracting " + resourceName, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            deadline.cancel();
+            input.cancel();
+            future.cancel(true);
+            IOUtils.closeQuietly(stream);
+            throw new InterruptedIOException("Interrupted while extracting " + resourceName);
+        }
+
+        for (String name : parsed.names()) {
+            metadata.remove(name);
+            for (String value : parsed.getValues(name)) {
+                metadata.add(name, value);
+            }
+        }
+        return handler.toString();
+    }
+
+    private void parse(InputStream stream, ContentHandler handler, Metadata metadata, int indexedChars) throws IOException,
+            TikaException {
+        try {
+            parser.parse(stream, handler, metadata, context);
         } catch (WriteLimitReachedException e) {
             String resourceName = metadata.get("resourceName");
             logger.debug("We reached the limit we set ({}) for {}: {}", indexedChars, resourceName, e.getMessage());
@@ -206,18 +521,189 @@ public class TikaInstance {
             String resourceName = metadata.get("resourceName");
             logger.debug("Got an empty file for {}, so we are just skipping it.", resourceName);
         }
-        return handler.toString();
     }
 
-    static LanguageDetector langDetector() {
+    /**
+     * Get the deadline to extract a document, from fs.extraction_timeouts for its content type
+     * (like "application/pdf" or "image/*") or from fs.extraction_timeout.
+     * @return null if we wait as long as needed
+     */
+    static TimeValue getExtractionTimeout(Fs fs, String filename) throws IOException {
+        Map<String, TimeValue> timeouts = fs.getExtractionTimeouts();
+        if (timeouts != null && !timeouts.isEmpty() && filename != null) {
+            String contentType = ContentTypeDetector.detect(filename, null);
+            TimeValue timeout = timeouts.get(contentType);
+            if (timeout == null) {
+                timeout = timeouts.get(contentType.substring(0, contentType.indexOf('/') + 1) + "*");
+            }
+            if (timeout != null) {
+                return timeout;
+            }
+        }
+        return fs.getExtractionTimeout();
+    }
+
+    /**
+     * Stops the parser as soon as it reads some more bytes after we gave up on the extraction
+     */
+    private static class DeadlineInputStream extends FilterInputStream {
+        private volatile boolean cancelled;
+
+        private DeadlineInputStream(InputStream in) {
+            super(in);
+        }
+
+        private void cancel() {
+            cancelled = true;
+        }
+
+        private void check() throws IOException {
+            if (cancelled) {
+                throw new InterruptedIOException("The extraction has been cancelled");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            check();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            check();
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            check();
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Once we gave up, the stream is closed by the thread which gave up
+            if (!cancelled) {
+                super.close();
+            }
+        }
+    }
+
+    /**
+     * Stops the parser as soon as it gives some more content after we gave up on the extraction
+     */
+    private static class DeadlineContentHandler extends ContentHandlerDecorator {
+        private volatile boolean cancelled;
+
+        private DeadlineContentHandler(ContentHandler handler) {
+            super(handler);
+        }
+
+        private void cancel() {
+            cancelled = true;
+        }
+
+        private void check() throws SAXException {
+            if (cancelled) {
+                throw new SAXException("The extraction has been cancelled");
+            }
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException {
+            check();
+            super.startElement(uri, localName, name, atts);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String name) throws SAXException {
+            check();
+            super.endElement(uri, localName, name);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            check();
+            super.characters(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            check();
+            super.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    /**
+     * Detect the languages of a text with a detector borrowed from the pool
+     * @param text the text
+     * @return the languages, the most probable first. Empty if we have been interrupted while waiting for a detector.
+     */
+    static List<LanguageResult> detectLanguages(String text) {
+        LanguageDetector detector = detectors.acquire();
         if (detector == null) {
+            return Collections.emptyList();
+        }
+        try {
+            return detector.detectAll(text);
+        } finally {
+            detectors.release(detector);
+        }
+    }
+
+    /* For tests only */
+    static int getLanguageDetectorCount() {
+        return detectors.created.get();
+    }
+
+    /**
+     * The language detectors are only created when all the existing ones are in use, up to the given size.
+     * Then we wait for a detector to be given back.
+     */
+    private static class DetectorPool {
+        private final int size;
+        private final BlockingQueue<LanguageDetector> idle = new LinkedBlockingQueue<>();
+        private final AtomicInteger created = new AtomicInteger();
+
+        private DetectorPool(int size) {
+            this.size = Math.max(1, size);
+        }
+
+        /**
+         * @return null if we have been interrupted while waiting
+         */
+        private LanguageDetector acquire() {
+            LanguageDetector detector = idle.poll();
+            if (detector != null) {
+                return detector;
+            }
+            if (created.getAndUpdate(count -> count < size ? count + 1 : count) < size) {
+                logger.debug("Creating language detector [{}/{}]", created.get(), size);
+                return loadLanguageDetector();
+            }
             try {
-                detector = getDefaultLanguageDetector();
-                detector.loadModels();
-            } catch (IOException e) {
-                logger.warn("Can not load lang detector models", e);
+                return idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.debug("Interrupted while waiting for a language detector");
+                return null;
             }
         }
+
+        private void release(LanguageDetector detector) {
+            idle.add(detector);
+        }
+    }
+
+    private static LanguageDetector loadLanguageDetector() {
+        // The models are loaded once and shared by all the detectors
+        LanguageDetector detector = getDefaultLanguageDetector();
+        try {
+            detector.loadModels();
+        } catch (IOException e) {
+            logger.warn("Can not load lang detector models", e);
+        }
         return detector;
     }
 }
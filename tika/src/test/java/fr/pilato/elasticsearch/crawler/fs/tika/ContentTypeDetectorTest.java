@@ -0,0 +1,55 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ContentTypeDetectorTest extends DocParserTestCase {
+
+    @Test
+    public void testDetectFromExtension() throws IOException {
+        assertThat(ContentTypeDetector.detect("test.pdf", null), is("application/pdf"));
+        assertThat(ContentTypeDetector.detect("test.txt", null), is("text/plain"));
+        assertThat(ContentTypeDetector.detect("test.docx", null),
+                is("application/vnd.openxmlformats-officedocument.wordprocessingml.document"));
+        assertThat(ContentTypeDetector.detect("test", null), is("application/octet-stream"));
+    }
+
+    @Test
+    public void testDetectFromMagicBytes() throws IOException {
+        // The content wins over a wrong extension
+        try (InputStream inputStream = getBinaryContent("test.pdf")) {
+            assertThat(ContentTypeDetector.detect("test.txt", inputStream), is("application/pdf"));
+        }
+        try (InputStream inputStream = getBinaryContent("test-ocr.png")) {
+            assertThat(ContentTypeDetector.detect("test", inputStream), is("image/png"));
+        }
+        // We use the extension when the first bytes are not enough
+        try (InputStream inputStream = getBinaryContent("test.txt")) {
+            assertThat(ContentTypeDetector.detect("test.txt", inputStream), is("text/plain"));
+        }
+    }
+}
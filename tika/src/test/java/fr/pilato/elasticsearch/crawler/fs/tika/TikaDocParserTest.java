@@ -20,6 +20,7 @@
 package fr.pilato.elasticsearch.crawler.fs.tika;
 
 import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.settings.ExtractionCache;
 import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 import fr.pilato.elasticsearch.crawler.fs.settings.Ocr;
@@ -27,6 +28,7 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import org.apache.tika.exception.TikaConfigException;
+import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ocr.TesseractOCRParser;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -574,6 +576,93 @@ public class TikaDocParserTest extends DocParserTestCase {
         assertThat(doc.getFile().getChecksum(), notNullValue());
     }
 
+    @Test
+    public void testExtractFromTxtWithExtractionCache() throws IOException, NoSuchAlgorithmException {
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder()
+                        .setChecksum("SHA-1")
+                        .setExtractionCache(ExtractionCache.builder()
+                                .setEnabled(true)
+                                .setPath(rootTmpDir.resolve(getCurrentTestName()).toString())
+                                .build())
+                        .build())
+                .build();
+
+        Doc doc = extractFromFile("test.txt", fsSettings);
+        assertThat(doc.getContent(), containsString("This file contains some words."));
+        assertThat(doc.getFile().getContentType(), is("text/plain; charset=ISO-8859-1"));
+        assertThat(doc.getFile().getChecksum(), notNullValue());
+        String checksum = doc.getFile().getChecksum();
+
+        TikaExtractionCache cache = TikaExtractionCache.getInstance(fsSettings.getFs().getExtractionCache());
+        assertThat(cache.count(), is(1));
+
+        // We change the cached text, so we can check that the file is not parsed again
+        byte[] hash;
+        try (InputStream data = getBinaryContent("test.txt")) {
+            hash = MessageDigest.getInstance(TikaExtractionCache.DIGEST_ALGORITHM).digest(data.readAllBytes());
+        }
+        StringBuilder contentHash = new StringBuilder();
+        for (byte b : hash) {
+            contentHash.append(String.format("%02x", b));
+        }
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        cache.put(TikaExtractionCache.key(contentHash.toString(), fsSettings.getFs(), 100000), "This is the cached text", metadata);
+
+        doc = extractFromFile("test.txt", fsSettings);
+        assertThat(doc.getContent(), is("This is the cached text"));
+        assertThat(doc.getFile().getContentType(), is("text/plain; charset=UTF-8"));
+        assertThat(doc.getFile().getChecksum(), is(checksum));
+        assertThat(cache.count(), is(1));
+    }
+
+    @Test
+    public void testExtractFromTxtWithUnwritableExtractionCache() throws IOException {
+        // The cache directory can not be created as a file already exists there
+        Path cacheDir = rootTmpDir.resolve(getCurrentTestName());
+        Files.writeString(cacheDir, "not a directory");
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder()
+                        .setChecksum("SHA-1")
+                        .setExtractionCache(ExtractionCache.builder()
+                                .setEnabled(true)
+                                .setPath(cacheDir.toString())
+                                .build())
+                        .build())
+                .build();
+
+        Doc doc = extractFromFile("test.txt", fsSettings);
+        assertThat(doc.getContent(), containsString("This file contains some words."));
+        assertThat(doc.getFile().getContentType(), is("text/plain; charset=ISO-8859-1"));
+        assertThat(doc.getFile().getChecksum(), is(extractFromFile("test.txt",
+                FsSettings.builder(getCurrentTestName()).setFs(Fs.builder().setChecksum("SHA-1").build()).build())
+                .getFile().getChecksum()));
+    }
+
+    @Test
+    public void testExtractFromTxtWhenTheExtractionCacheCanNotCopyTheFile() throws IOException {
+        Path cacheDir = rootTmpDir.resolve(getCurrentTestName());
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder()
+                        .setExtractionCache(ExtractionCache.builder()
+                                .setEnabled(true)
+                                .setPath(cacheDir.toString())
+                                .build())
+                        .build())
+                .build();
+        TikaExtractionCache cache = TikaExtractionCache.getInstance(fsSettings.getFs().getExtractionCache());
+
+        // The cache has been opened but its temporary directory is not usable anymore
+        Path tmpDir = cacheDir.resolve("tmp");
+        Files.delete(tmpDir);
+        Files.writeString(tmpDir, "not a directory");
+
+        Doc doc = extractFromFile("test.txt", fsSettings);
+        assertThat(doc.getContent(), containsString("This file contains some words."));
+        assertThat(cache.count(), is(0));
+    }
+
     @Test
     public void testOcr() throws IOException {
         assumeTrue("Tesseract is not installed so we are skipping this test", isOcrAvailable);
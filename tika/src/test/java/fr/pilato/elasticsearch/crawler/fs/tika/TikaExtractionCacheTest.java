@@ -0,0 +1,118 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.settings.ExtractionCache;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.Ocr;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomAsciiAlphanumOfLength;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class TikaExtractionCacheTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        TikaExtractionCache cache = new TikaExtractionCache(rootTmpDir.resolve(getCurrentTestName()), 1024 * 1024);
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, "foo.txt");
+        metadata.set(Metadata.CONTENT_TYPE, "text/plain; charset=ISO-8859-1");
+        metadata.add("dc:subject", "foo");
+        metadata.add("dc:subject", "bar");
+        cache.put("aa-00000001", "This is the content", metadata);
+
+        assertThat(cache.get("bb-00000001"), nullValue());
+        TikaExtractionCache.Extraction extraction = cache.get("aa-00000001");
+        assertThat(extraction, notNullValue());
+        assertThat(extraction.getContent(), is("This is the content"));
+
+        Metadata cached = new Metadata();
+        cached.set(TikaCoreProperties.RESOURCE_NAME_KEY, "bar.txt");
+        extraction.copyMetadataTo(cached);
+        assertThat(cached.get(Metadata.CONTENT_TYPE), is("text/plain; charset=ISO-8859-1"));
+        assertThat(cached.getValues("dc:subject"), arrayContaining("foo", "bar"));
+        // The name of the file is not cached
+        assertThat(cached.get(TikaCoreProperties.RESOURCE_NAME_KEY), is("bar.txt"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        Path root = rootTmpDir.resolve(getCurrentTestName());
+        TikaExtractionCache cache = new TikaExtractionCache(root, 1024 * 1024);
+        cache.put("aa-00000001", randomAsciiAlphanumOfLength(10000), new Metadata());
+        long entrySize = cache.size();
+
+        // We have room for two entries only
+        cache = new TikaExtractionCache(root, entrySize * 5 / 2);
+        assertThat(cache.count(), is(1));
+        cache.put("bb-00000001", randomAsciiAlphanumOfLength(10000), new Metadata());
+        assertThat(cache.count(), is(2));
+        // aa is now more recently used than bb
+        assertThat(cache.get("aa-00000001"), notNullValue());
+        cache.put("cc-00000001", randomAsciiAlphanumOfLength(10000), new Metadata());
+        assertThat(cache.count(), is(2));
+        assertThat(cache.get("bb-00000001"), nullValue());
+        assertThat(cache.get("aa-00000001"), notNullValue());
+        assertThat(cache.get("cc-00000001"), notNullValue());
+
+        // Reopening the cache gives the same entries
+        TikaExtractionCache reopened = new TikaExtractionCache(root, entrySize * 5 / 2);
+        assertThat(reopened.count(), is(2));
+        assertThat(reopened.size(), is(cache.size()));
+    }
+
+    @Test
+    public void testCacheIsShared() throws IOException {
+        ExtractionCache settings = ExtractionCache.builder()
+                .setEnabled(true)
+                .setPath(rootTmpDir.resolve(getCurrentTestName()).toString())
+                .setMaxSize(ByteSizeValue.parseBytesSizeValue("10mb"))
+                .build();
+        TikaExtractionCache cache = TikaExtractionCache.getInstance(settings);
+        assertThat(cache, notNullValue());
+        assertThat(TikaExtractionCache.getInstance(settings), sameInstance(cache));
+        assertThat(TikaExtractionCache.getInstance(new ExtractionCache()), nullValue());
+        assertThat(TikaExtractionCache.getInstance(null), nullValue());
+    }
+
+    @Test
+    public void testKeyDependsOnExtractionSettings() {
+        String key = TikaExtractionCache.key("abcd", Fs.builder().build(), 100000);
+        assertThat(TikaExtractionCache.key("abcd", Fs.builder().build(), 100000), is(key));
+        assertThat(TikaExtractionCache.key("abcd", Fs.builder().setChecksum("MD5").build(), 100000), is(key));
+        assertThat(TikaExtractionCache.key("abcd", Fs.builder().build(), 1000), not(key));
+        assertThat(TikaExtractionCache.key("abcd", Fs.builder().setOcr(Ocr.builder().setEnabled(false).build()).build(), 100000), not(key));
+        assertThat(TikaExtractionCache.key("efgh", Fs.builder().build(), 100000), not(key));
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.beans.File;
+import fr.pilato.elasticsearch.crawler.fs.framework.Percentage;
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
+import fr.pilato.elasticsearch.crawler.fs.framework.VirtualThreads;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fork;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.settings.Ocr;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.fork.ForkParser;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AbstractParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.junit.After;
+import org.junit.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+public class TikaInstanceTest extends DocParserTestCase {
+
+    private static final String[] DOCUMENTS = {
+            "test.txt", "test-fr.txt", "test-de.txt", "test.docx", "test.odt", "test.pdf", "test.html", "test.rtf"
+    };
+
+    @After
+    public void reloadTika() {
+        TikaInstance.reloadTika();
+    }
+
+    /**
+     * Many threads extract the text of different documents at the same time, with less parsers than threads.
+     * Each extraction must give the same result as when the documents are extracted one by one.
+     */
+    @Test
+    public void testConcurrentExtraction() throws Exception {
+        FsSettings fsSettings = buildSettings(4);
+        Map<String, byte[]> documents = readDocuments();
+
+        Map<String, Doc> expected = new HashMap<>();
+        for (Map.Entry<String, byte[]> document : documents.entrySet()) {
+            expected.put(document.getKey(), extract(fsSettings, document.getKey(), document.getValue()));
+        }
+
+        int threads = 16;
+        int iterations = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int offset = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < iterations; j++) {
+                        String filename = DOCUMENTS[(offset + j) % DOCUMENTS.length];
+                        Doc doc = extract(fsSettings, filename, documents.get(filename));
+                        assertThat(filename, doc.getContent(), is(expected.get(filename).getContent()));
+                        assertThat(filename, doc.getMeta().getLanguage(), is(expected.get(filename).getMeta().getLanguage()));
+                    }
+                    return iterations;
+                }));
+            }
+            start.countDown();
+            int extracted = 0;
+            for (Future<Integer> future : futures) {
+                extracted += future.get();
+            }
+            assertThat(extracted, is(threads * iterations));
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+        }
+
+        assertThat(expected.get("test-fr.txt").getMeta().getLanguage(), is("fr"));
+        assertThat(expected.get("test-de.txt").getMeta().getLanguage(), is("de"));
+    }
+
+    /**
+     * Many threads detect the language of a text at the same time. They share a bounded number of detectors.
+     */
+    @Test
+    public void testConcurrentLanguageDetection() throws Exception {
+        int threads = 64;
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test-lang-detect");
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                String text = i % 2 == 0 ? "Ceci est un document écrit en français pour détecter la langue du texte." :
+                        "Dies ist ein auf Deutsch geschriebenes Dokument, um die Sprache des Textes zu erkennen.";
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return TikaInstance.detectLanguages(text).get(0).getLanguage();
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < threads; i++) {
+                assertThat(futures.get(i).get(), is(i % 2 == 0 ? "fr" : "de"));
+            }
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+        }
+        assertThat(TikaInstance.getLanguageDetectorCount(), lessThanOrEqualTo(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * This benchmark gives the extraction throughput with 1, 4, 16 and 64 threads, each thread having its own parser.
+     * You can run it with more documents with -Dtests.benchmark.files=10000
+     */
+    @Test
+    public void testExtractionBenchmark() throws Exception {
+        int files = getSystemProperty("tests.benchmark.files", 200);
+        Map<String, byte[]> documents = readDocuments();
+
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            FsSettings fsSettings = buildSettings(threads);
+            // We don't measure the creation of the first parser
+            extract(fsSettings, DOCUMENTS[0], documents.get(DOCUMENTS[0]));
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                long start = System.nanoTime();
+                List<Future<Doc>> futures = new ArrayList<>(files);
+                for (int i = 0; i < files; i++) {
+                    String filename = DOCUMENTS[i % DOCUMENTS.length];
+                    futures.add(executor.submit(() -> extract(fsSettings, filename, documents.get(filename))));
+                }
+                for (Future<Doc> future : futures) {
+                    future.get();
+                }
+                long durationMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+                logger.info("Extracted [{}] documents with [{}] thread(s) in [{}] ms: [{}] documents/s",
+                        files, threads, durationMs, files * 1000L / durationMs);
+            } finally {
+                executor.shutdown();
+                assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void testForkExtraction() throws Exception {
+        Map<String, byte[]> documents = readDocuments();
+        // We also check that we still get the text when we reach the indexed_chars limit
+        for (Percentage indexedChars : new Percentage[]{null, new Percentage(7)}) {
+            FsSettings inProcess = buildForkSettings(false, indexedChars);
+            FsSettings forked = buildForkSettings(true, indexedChars);
+
+            for (String filename : new String[]{"test.txt", "test-fr.txt", "test.docx", "test.pdf"}) {
+                Doc expected = extract(inProcess, filename, documents.get(filename));
+                Doc doc = extract(forked, filename, documents.get(filename));
+                assertThat(filename, doc.getContent(), notNullValue());
+                assertThat(filename, doc.getContent(), is(expected.getContent()));
+                assertThat(filename, doc.getMeta().getTitle(), is(expected.getMeta().getTitle()));
+                assertThat(filename, doc.getMeta().getLanguage(), is(expected.getMeta().getLanguage()));
+                assertThat(filename, doc.getFile().getContentType(), is(expected.getFile().getContentType()));
+            }
+        }
+    }
+
+    /**
+     * The child JVMs are stopped when the crawler closes the pools
+     */
+    @Test
+    public void testCloseStopsChildJvms() throws Exception {
+        Map<String, byte[]> documents = readDocuments();
+        extract(buildForkSettings(true, null), "test.txt", documents.get("test.txt"));
+        assertThat(ProcessHandle.current().children().anyMatch(ProcessHandle::isAlive), is(true));
+
+        TikaInstance.close();
+        assertThat(awaitBusy(() -> ProcessHandle.current().children().noneMatch(ProcessHandle::isAlive)), is(true));
+    }
+
+    private FsSettings buildForkSettings(boolean fork, Percentage indexedChars) {
+        return FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder()
+                        .setLangDetect(true)
+                        .setIndexedChars(indexedChars)
+                        .setOcr(Ocr.builder().setEnabled(false).build())
+                        .setFork(Fork.builder().setEnabled(fork).setWorkers(1).build())
+                        .build())
+                .build();
+    }
+
+    /**
+     * A document which hangs or crashes the child JVM does not prevent the next documents to be extracted
+     */
+    @Test
+    public void testForkIsolation() throws Exception {
+        ForkParser parser = TikaInstance.newForkParser(Fork.builder()
+                .setTimeout(TimeValue.timeValueSeconds(1))
+                .build(), new TestParser());
+        try {
+            String pid = parse(parser, "pid");
+
+            long start = System.nanoTime();
+            try {
+                parse(parser, "hang");
+                fail("The child JVM should have been killed");
+            } catch (TikaException e) {
+                logger.debug("Got the expected failure: {}", e.getMessage());
+            }
+            long durationMs = (System.nanoTime() - start) / 1_000_000;
+            assertThat("Timeout took " + durationMs + "ms", durationMs < 30_000, is(true));
+
+            String newPid = parse(parser, "pid");
+            assertThat(newPid, not(pid));
+
+            try {
+                parse(parser, "crash");
+                fail("The child JVM should have crashed");
+            } catch (TikaException e) {
+                logger.debug("Got the expected failure: {}", e.getMessage());
+            }
+            assertThat(parse(parser, "pid"), not(newPid));
+        } finally {
+            parser.close();
+        }
+    }
+
+    @Test
+    public void testForkRecycling() throws Exception {
+        ForkParser parser = TikaInstance.newForkParser(Fork.builder().setMaxDocuments(2).build(), new TestParser());
+        try {
+            String pid = parse(parser, "pid");
+            assertThat(parse(parser, "pid"), is(pid));
+            String newPid = parse(parser, "pid");
+            assertThat(newPid, not(pid));
+            assertThat(parse(parser, "pid"), is(newPid));
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * A document which never ends is indexed without its content when the deadline is over, and the
+     * parser which is stuck on it does not prevent the next documents to be extracted
+     */
+    @Test
+    public void testExtractionTimeout() throws Exception {
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder()
+                        .setParserPoolSize(1)
+                        .setExtractionTimeout(TimeValue.timeValueSeconds(1))
+                        .setOcr(Ocr.builder().setEnabled(false).build())
+                        .build())
+                .build();
+        byte[] content = readDocuments().get("test.txt");
+        MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+        Doc expected = extract(fsSettings, "test.txt", content, messageDigest);
+        assertThat(expected.getFile().getExtractionStatus(), nullValue());
+
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            InputStream hanging = new SequenceInputStream(new ByteArrayInputStream(content), new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    // Like a network file system which does not answer anymore. We even ignore the interruptions.
+                    while (true) {
+                        try {
+                            release.await();
+                            return -1;
+                        } catch (InterruptedException e) {
+                            logger.debug("Ignoring the interruption");
+                        }
+                    }
+                }
+            });
+            long start = System.nanoTime();
+            Doc doc = new Doc();
+            TikaDocParser.generate(fsSettings, hanging, "test.txt", "/documents/test.txt", doc, messageDigest, content.length);
+            long durationMs = (System.nanoTime() - start) / 1_000_000;
+            assertThat("Timeout took " + durationMs + "ms", durationMs < 10_000, is(true));
+            assertThat(doc.getFile().getExtractionStatus(), is(File.EXTRACTION_STATUS.TIMEOUT));
+            assertThat(doc.getFile().getContentType(), is("text/plain"));
+            assertThat(doc.getFile().getChecksum(), nullValue());
+
+            // The only parser of the pool is still stuck, but another one took its place
+            Doc next = extract(fsSettings, "test.txt", content, messageDigest);
+            assertThat(next.getFile().getExtractionStatus(), nullValue());
+            assertThat(next.getContent(), is(expected.getContent()));
+            assertThat(next.getFile().getChecksum(), is(expected.getFile().getChecksum()));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * We don't replace more stuck parsers than the pool size, so they can not use more and more threads.
+     * A stuck parser which was not replaced takes back its place in the pool when it ends.
+     */
+    @Test
+    public void testAbandonedExtractionsAreBounded() throws Exception {
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder()
+                        .setParserPoolSize(1)
+                        .setExtractionTimeout(TimeValue.timeValueMillis(500))
+                        .setOcr(Ocr.builder().setEnabled(false).build())
+                        .build())
+                .build();
+        byte[] content = readDocuments().get("test.txt");
+        MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+        Doc expected = extract(fsSettings, "test.txt", content, messageDigest);
+
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Doc doc = new Doc();
+                TikaDocParser.generate(fsSettings, hangingStream(content, release), "test.txt", "/documents/test.txt",
+                        doc, messageDigest, content.length);
+                assertThat(doc.getFile().getExtractionStatus(), is(File.EXTRACTION_STATUS.TIMEOUT));
+            }
+
+            // The first stuck parser has been replaced, not the second one, so we wait for a parser
+            Future<Doc> next = executor.submit(() -> extract(fsSettings, "test.txt", content, MessageDigest.getInstance("MD5")));
+            try {
+                next.get(1, TimeUnit.SECONDS);
+                fail("The extraction should wait for a stuck parser to end");
+            } catch (TimeoutException e) {
+                // This is expected
+            }
+
+            // The second parser is back in the pool once it ends
+            release.countDown();
+            Doc doc = next.get(10, TimeUnit.SECONDS);
+            assertThat(doc.getFile().getExtractionStatus(), nullValue());
+            assertThat(doc.getContent(), is(expected.getContent()));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+        }
+    }
+
+    private InputStream hangingStream(byte[] content, CountDownLatch release) {
+        return new SequenceInputStream(new ByteArrayInputStream(content), new InputStream() {
+            @Override
+            public int read() {
+                // We even ignore the interruptions
+                while (true) {
+                    try {
+                        release.await();
+                        return -1;
+                    } catch (InterruptedException e) {
+                        logger.debug("Ignoring the interruption");
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testExtractionTimeoutPerContentType() throws Exception {
+        Fs fs = Fs.builder()
+                .setExtractionTimeout(TimeValue.timeValueSeconds(10))
+                .setExtractionTimeouts(Map.of(
+                        "application/pdf", TimeValue.timeValueMinutes(1),
+                        "image/*", TimeValue.timeValueMinutes(5)))
+                .build();
+        assertThat(TikaInstance.getExtractionTimeout(fs, "test.pdf"), is(TimeValue.timeValueMinutes(1)));
+        assertThat(TikaInstance.getExtractionTimeout(fs, "test.png"), is(TimeValue.timeValueMinutes(5)));
+        assertThat(TikaInstance.getExtractionTimeout(fs, "test.txt"), is(TimeValue.timeValueSeconds(10)));
+        assertThat(TikaInstance.getExtractionTimeout(fs, null), is(TimeValue.timeValueSeconds(10)));
+        assertThat(TikaInstance.getExtractionTimeout(Fs.builder().build(), "test.pdf"), nullValue());
+    }
+
+    private static String parse(ForkParser parser, String command) throws IOException, SAXException, TikaException {
+        BodyContentHandler handler = new BodyContentHandler();
+        parser.parse(new ByteArrayInputStream(command.getBytes(StandardCharsets.UTF_8)), handler, new Metadata(),
+                new ParseContext());
+        return handler.toString().trim();
+    }
+
+    /**
+     * A parser which runs in the child JVM and gives its process id, hangs or crashes
+     */
+    public static class TestParser extends AbstractParser {
+        @Override
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Collections.singleton(MediaType.TEXT_PLAIN);
+        }
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws IOException, SAXException {
+            String command = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+            switch (command) {
+                case "hang":
+                    try {
+                        Thread.sleep(Long.MAX_VALUE);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    break;
+                case "crash":
+                    Runtime.getRuntime().halt(1);
+                    break;
+                default:
+                    XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+                    xhtml.startDocument();
+                    xhtml.element("p", Long.toString(ProcessHandle.current().pid()));
+                    xhtml.endDocument();
+            }
+        }
+    }
+
+    private FsSettings buildSettings(int parserPoolSize) {
+        return FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder()
+                        .setLangDetect(true)
+                        .setParserPoolSize(parserPoolSize)
+                        .setOcr(Ocr.builder().setEnabled(false).build())
+                        .build())
+                .build();
+    }
+
+    private Map<String, byte[]> readDocuments() throws IOException {
+        Map<String, byte[]> documents = new HashMap<>();
+        for (String filename : DOCUMENTS) {
+            try (InputStream data = getBinaryContent(filename)) {
+                documents.put(filename, data.readAllBytes());
+            }
+        }
+        return documents;
+    }
+
+    private static Doc extract(FsSettings fsSettings, String filename, byte[] content) throws IOException {
+        return extract(fsSettings, filename, content, null);
+    }
+
+    private static Doc extract(FsSettings fsSettings, String filename, byte[] content, MessageDigest messageDigest)
+            throws IOException {
+        Doc doc = new Doc();
+        TikaDocParser.generate(fsSettings, new ByteArrayInputStream(content), filename, "/documents/" + filename,
+                doc, messageDigest, content.length);
+        return doc;
+    }
+}